@@ -0,0 +1,49 @@
+package uw.dao;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 批量加载器，收集多次按主键的load，按实体类+表名合并为where pk in (...)查询.
+ * 通过DaoFactory.beginBatchLoad获得的加载器在dispatch时执行，通过DaoFactory.loadAsync加载时在一个很短的时间窗口后自动执行.
+ *
+ * @author axeon
+ */
+public interface BatchLoader {
+
+    /**
+     * 加入一个按主键加载的请求.
+     *
+     * @param cls 要映射的对象类型
+     * @param id  主键
+     * @param <T> 映射的类型
+     * @return 加载完成的future
+     */
+    <T> CompletableFuture<Optional<T>> load(Class<T> cls, Serializable id);
+
+    /**
+     * 加入一个按主键加载的请求.
+     *
+     * @param connName  连接名，如设置为null，则根据表名动态路由确定
+     * @param cls       要映射的对象类型
+     * @param tableName 指定表名
+     * @param id        主键
+     * @param <T>       映射的类型
+     * @return 加载完成的future
+     */
+    <T> CompletableFuture<Optional<T>> load(String connName, Class<T> cls, String tableName, Serializable id);
+
+    /**
+     * 获得等待执行的请求数.
+     *
+     * @return 请求数
+     */
+    int getPendingSize();
+
+    /**
+     * 执行全部等待的请求，执行结果或异常通过每个请求的future返回.
+     */
+    void dispatch();
+
+}
@@ -4,6 +4,8 @@ import java.util.List;
 
 /**
  * 批量更新的管理类.
+ * 批量模式下实体的save也会被缓存，连续的同表insert会合并为多行insert执行，此时不会回填自增主键.
+ * 自动提交的连接上save仍然立即执行.
  */
 
 public interface BatchupdateManager {
@@ -33,7 +35,7 @@ public interface BatchupdateManager {
 	/**
 	 * 提交该事务.
 	 * 
-	 * @return 执行结果
+	 * @return 执行结果，每条sql一个列表，每行一个结果；合并执行的insert无法区分单行结果时为Statement.SUCCESS_NO_INFO
 	 * @throws TransactionException
 	 *             事务异常
 	 */
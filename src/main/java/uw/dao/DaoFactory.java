@@ -1,14 +1,21 @@
 package uw.dao;
 
 import uw.dao.impl.DAOFactoryImpl;
+import uw.dao.vo.CopyProgress;
+import uw.dao.vo.ScanRange;
 import uw.dao.vo.SqlExecuteStats;
 
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 整个Dao模块的入口，所有数据库操作都从这个类开始.
@@ -35,6 +42,137 @@ public abstract class DaoFactory {
 		return new DAOFactoryImpl(connName);
 	}
 
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 等待数据提交后返回.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void append(String connName, T entity) throws TransactionException;
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 等待数据提交后返回.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void append(String connName, T entity, String tableName) throws TransactionException;
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 等待数据提交后返回.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param entity
+	 *            要写入的对象
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void append(T entity) throws TransactionException;
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 等待数据提交后返回.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void append(T entity, String tableName) throws TransactionException;
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 入队后立即返回，队列满时最多等待配置的offerTimeout.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @return 提交后完成的future，失败时以TransactionException结束
+	 */
+	public abstract <T extends DataEntity> CompletableFuture<Void> appendAsync(String connName, T entity);
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 入队后立即返回，队列满时最多等待配置的offerTimeout.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @return 提交后完成的future，失败时以TransactionException结束
+	 */
+	public abstract <T extends DataEntity> CompletableFuture<Void> appendAsync(String connName, T entity, String tableName);
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 入队后立即返回，队列满时最多等待配置的offerTimeout.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param entity
+	 *            要写入的对象
+	 * @return 提交后完成的future，失败时以TransactionException结束
+	 */
+	public abstract <T extends DataEntity> CompletableFuture<Void> appendAsync(T entity);
+
+	/**
+	 * 追加写入一个Entity实例，多个线程的追加写入按表合并为多行insert，由后台写入线程提交.
+	 * 按日期分表的表会写入当前日期的分表，不回填自增主键.
+	 * 入队后立即返回，队列满时最多等待配置的offerTimeout.
+	 *
+	 * @param <T>
+	 *            映射的类型
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @return 提交后完成的future，失败时以TransactionException结束
+	 */
+	public abstract <T extends DataEntity> CompletableFuture<Void> appendAsync(T entity, String tableName);
+
+	/**
+	 * 开始一个批量加载，加载器的load请求在dispatch时合并为where pk in (...)查询执行.
+	 *
+	 * @return BatchLoader对象
+	 */
+	public abstract BatchLoader beginBatchLoad();
+
 	/**
 	 * 获得一个batchupdate handle.
 	 *
@@ -53,6 +191,54 @@ public abstract class DaoFactory {
 	 */
 	public abstract TransactionManager beginTransaction();
 
+	/**
+	 * 把源连接上查询的结果复制到目标连接的表中，使用默认的写入线程数和批次行数.
+	 *
+	 * @param srcConnName
+	 *            源连接名，如设置为null，则根据sql语句动态路由确定
+	 * @param selectSql
+	 *            源查询sql，查询的列名需要和目标表的列名一致
+	 * @param paramList
+	 *            源查询的参数
+	 * @param targetConnName
+	 *            目标连接名，如设置为null，则根据目标表名动态路由确定
+	 * @param targetTable
+	 *            目标表名
+	 * @return 写入的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract long copyTable(String srcConnName, String selectSql, Object[] paramList, String targetConnName, String targetTable)
+			throws TransactionException;
+
+	/**
+	 * 把源连接上查询的结果复制到目标连接的表中.
+	 * 源查询流式读取，多个写入线程在目标连接池的独立连接上按目标列的类型转换后多行插入，读取和写入同时进行.
+	 * 每个批次单独提交，出错时已写入的批次不会回滚.
+	 *
+	 * @param srcConnName
+	 *            源连接名，如设置为null，则根据sql语句动态路由确定
+	 * @param selectSql
+	 *            源查询sql，查询的列名需要和目标表的列名一致
+	 * @param paramList
+	 *            源查询的参数
+	 * @param targetConnName
+	 *            目标连接名，如设置为null，则根据目标表名动态路由确定
+	 * @param targetTable
+	 *            目标表名
+	 * @param writerThreads
+	 *            写入线程数
+	 * @param batchSize
+	 *            每批次的行数
+	 * @param progress
+	 *            进度，可以在其它线程读取，可以为null
+	 * @return 写入的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract long copyTable(String srcConnName, String selectSql, Object[] paramList, String targetConnName, String targetTable,
+			int writerThreads, int batchSize, CopyProgress progress) throws TransactionException;
+
 	/**
 	 * 根据主键删除一个Entity实例，等效于delete.
 	 *
@@ -114,6 +300,66 @@ public abstract class DaoFactory {
 	 */
 	public abstract <T extends DataEntity> int delete(T entity, String tableName) throws TransactionException;
 
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int deleteAll(String connName, List<T> list) throws TransactionException;
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int deleteAll(String connName, List<T> list, String tableName) throws TransactionException;
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int deleteAll(List<T> list) throws TransactionException;
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int deleteAll(List<T> list, String tableName) throws TransactionException;
+
 	/**
 	 * 关闭sql执行统计，将会影响getSqlExecuteStatsList的数据.
 	 */
@@ -218,6 +464,27 @@ public abstract class DaoFactory {
 	 */
 	public abstract int getInvokeCount();
 
+	/**
+	 * 按主键拆分整表扫描的范围，第一个范围没有下界，最后一个范围没有上界.
+	 * 实体需要有单个数值主键.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            表名，为null时使用实体类的表名
+	 * @param rangeCount
+	 *            范围数量
+	 * @param sampled
+	 *            是否按主键的分位点拆分，适用于主键分布不均匀的表，否则按主键的最小最大值等分
+	 * @return 范围列表，可以保存后用于断点续扫
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract List<ScanRange> getScanRanges(String connName, Class<?> cls, String tableName, int rangeCount, boolean sampled)
+			throws TransactionException;
+
 	/**
 	 * 根据Entity来获得seq序列。 此序列通过一个系统数据库来维护，可以保证在分布式下的可用性.
 	 *
@@ -243,6 +510,43 @@ public abstract class DaoFactory {
 	 */
 	public abstract ArrayList<SqlExecuteStats> getSqlExecuteStatsList();
 
+	/**
+	 * 延迟累加一个计数字段，同一行的多次累加在内存中合并，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的计数.
+	 *
+	 * @param tableName
+	 *            表名
+	 * @param pkColumn
+	 *            主键列名
+	 * @param pkValue
+	 *            主键值
+	 * @param column
+	 *            计数列名
+	 * @param delta
+	 *            增量
+	 */
+	public abstract void incrementBehind(String tableName, String pkColumn, Serializable pkValue, String column, long delta);
+
+	/**
+	 * 延迟累加一个计数字段，同一行的多次累加在内存中合并，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的计数.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param tableName
+	 *            表名
+	 * @param pkColumn
+	 *            主键列名
+	 * @param pkValue
+	 *            主键值
+	 * @param column
+	 *            计数列名
+	 * @param delta
+	 *            增量
+	 */
+	public abstract void incrementBehind(String connName, String tableName, String pkColumn, Serializable pkValue, String column,
+			long delta);
+
 	/**
 	 * 根据指定的映射类型，返回一个DataList列表.
 	 *
@@ -497,6 +801,58 @@ public abstract class DaoFactory {
 	public abstract <T> DataList<T> list(String connName, Class<T> cls, String selectsql, Object[] paramList,
 			int startIndex, int resultNum, boolean autoCount) throws TransactionException;
 
+	/**
+	 * 按日期范围并行查询全部分表，结果按分表的日期顺序拼接.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param selectsql
+	 *            查询的SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param <T>
+	 *            映射的类型
+	 * @return DataList列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> DataList<T> listSharded(Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+			Object[] paramList) throws TransactionException;
+
+	/**
+	 * 按日期范围并行查询全部分表，有comparator时对各分表已排序的结果做多路归并，实现全局的order by + limit.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param selectsql
+	 *            查询的SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param comparator
+	 *            全局排序，各分表的sql需要按相同顺序order by，为null时按分表日期顺序拼接
+	 * @param resultNum
+	 *            结果集大小，每个分表最多查询resultNum条，0表示获取全部数据
+	 * @param <T>
+	 *            映射的类型
+	 * @return DataList列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> DataList<T> listSharded(Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+			Object[] paramList, Comparator<? super T> comparator, int resultNum) throws TransactionException;
+
 	/**
 	 * 根据指定的主键ID载入一个Entity实例.
 	 *
@@ -510,61 +866,269 @@ public abstract class DaoFactory {
 	 * @throws TransactionException
 	 *             事务异常
 	 */
-	public abstract <T> Optional<T> load(Class<T> cls, Serializable id) throws TransactionException;
+	public abstract <T> Optional<T> load(Class<T> cls, Serializable id) throws TransactionException;
+
+	/**
+	 * 根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param <T>
+	 *            映射的类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @return DataList对象
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> Optional<T> load(Class<T> cls, String tableName, Serializable id) throws TransactionException;
+
+	/**
+	 * 根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param <T>
+	 *            映射的类型
+	 * @param id
+	 *            主键数值
+	 * @return DataList对象
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> Optional<T> load(String connName, Class<T> cls, Serializable id) throws TransactionException;
+
+	/**
+	 * 根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param <T>
+	 *            映射的类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @return DataList对象
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> Optional<T> load(String connName, Class<T> cls, String tableName, Serializable id)
+			throws TransactionException;
+
+	/**
+	 * 根据主键集合批量载入Entity实例，in列表按固定的分档拆分并复用sql，结果按主键顺序返回，不存在的主键没有对应的项.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T, K extends Serializable> Map<K, T> loadAll(Class<T> cls, Collection<K> ids) throws TransactionException;
+
+	/**
+	 * 根据主键集合批量载入Entity实例，in列表按固定的分档拆分并复用sql，结果按主键顺序返回，不存在的主键没有对应的项.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T, K extends Serializable> Map<K, T> loadAll(Class<T> cls, String tableName, Collection<K> ids) throws TransactionException;
+
+	/**
+	 * 根据主键集合批量载入Entity实例，in列表按固定的分档拆分并复用sql，结果按主键顺序返回，不存在的主键没有对应的项.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T, K extends Serializable> Map<K, T> loadAll(String connName, Class<T> cls, Collection<K> ids) throws TransactionException;
+
+	/**
+	 * 根据主键集合批量载入Entity实例，in列表按固定的分档拆分并复用sql，结果按主键顺序返回，不存在的主键没有对应的项.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T, K extends Serializable> Map<K, T> loadAll(String connName, Class<T> cls, String tableName, Collection<K> ids) throws TransactionException;
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例，很短的时间窗口内的请求按实体类合并为where pk in (...)查询.
+	 * 使用非事务的连接.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	public abstract <T> CompletableFuture<Optional<T>> loadAsync(Class<T> cls, Serializable id);
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例，很短的时间窗口内的请求按实体类合并为where pk in (...)查询.
+	 * 使用非事务的连接.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	public abstract <T> CompletableFuture<Optional<T>> loadAsync(Class<T> cls, String tableName, Serializable id);
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例，很短的时间窗口内的请求按实体类合并为where pk in (...)查询.
+	 * 使用非事务的连接.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	public abstract <T> CompletableFuture<Optional<T>> loadAsync(String connName, Class<T> cls, Serializable id);
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例，很短的时间窗口内的请求按实体类合并为where pk in (...)查询.
+	 * 使用非事务的连接.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	public abstract <T> CompletableFuture<Optional<T>> loadAsync(String connName, Class<T> cls, String tableName, Serializable id);
 
 	/**
-	 * 根据指定的主键ID载入一个Entity实例.
+	 * 根据主键和分片日期载入一个按日期分表的Entity实例，只查询该日期的分表.
 	 *
 	 * @param cls
 	 *            要映射的对象类型
-	 * @param <T>
-	 *            映射的类型
-	 * @param tableName
-	 *            指定表名
 	 * @param id
 	 *            主键数值
-	 * @return DataList对象
+	 * @param shardDate
+	 *            分片日期
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
 	 * @throws TransactionException
 	 *             事务异常
 	 */
-	public abstract <T> Optional<T> load(Class<T> cls, String tableName, Serializable id) throws TransactionException;
+	public abstract <T> Optional<T> loadByDate(Class<T> cls, Serializable id, Date shardDate) throws TransactionException;
 
 	/**
-	 * 根据指定的主键ID载入一个Entity实例.
+	 * 根据主键和日期范围载入一个按日期分表的Entity实例，从最新的分表开始查找，找到即返回.
 	 *
-	 * @param connName
-	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
 	 * @param cls
 	 *            要映射的对象类型
-	 * @param <T>
-	 *            映射的类型
 	 * @param id
 	 *            主键数值
-	 * @return DataList对象
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
 	 * @throws TransactionException
 	 *             事务异常
 	 */
-	public abstract <T> Optional<T> load(String connName, Class<T> cls, Serializable id) throws TransactionException;
+	public abstract <T> Optional<T> loadByDate(Class<T> cls, Serializable id, Date startDate, Date endDate) throws TransactionException;
 
 	/**
-	 * 根据指定的主键ID载入一个Entity实例.
+	 * 根据主键和日期范围载入一个按日期分表的Entity实例，从最新的分表开始查找，找到即返回.
 	 *
 	 * @param connName
-	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 *            连接名，如设置为null，则根据表名动态路由确定
 	 * @param cls
 	 *            要映射的对象类型
-	 * @param <T>
-	 *            映射的类型
 	 * @param tableName
-	 *            指定表名
+	 *            基础表名
 	 * @param id
 	 *            主键数值
-	 * @return DataList对象
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
 	 * @throws TransactionException
 	 *             事务异常
 	 */
-	public abstract <T> Optional<T> load(String connName, Class<T> cls, String tableName, Serializable id)
-			throws TransactionException;
+	public abstract <T> Optional<T> loadByDate(String connName, Class<T> cls, String tableName, Serializable id, Date startDate,
+			Date endDate) throws TransactionException;
+
+	/**
+	 * 开启一个连接会话，会话期间非事务的操作在每个连接池上复用同一个连接，会话结束时归还连接.
+	 * 用法：try (DaoSession session = dao.openSession()) { ... }
+	 *
+	 * @return DaoSession对象
+	 */
+	public abstract DaoSession openSession();
 
 	/**
 	 * 返回一个DataSet数据列表。 相比较DataList列表，这不是一个强类型列表，但是更加灵活.
@@ -982,6 +1546,32 @@ public abstract class DaoFactory {
 	public abstract <T> Optional<T> queryForSingleValue(String connName, Class<T> cls, String sql, Object[] paramList)
 			throws TransactionException;
 
+	/**
+	 * 按日期范围并行查询全部分表的聚合值，并合并各分表的结果，count/sum相加，min/max取最小/最大值.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param sql
+	 *            返回单个聚合值的查询SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param aggregate
+	 *            聚合方式，支持count/sum/min/max
+	 * @param <T>
+	 *            映射的类型
+	 * @return 合并后的聚合值
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> Optional<T> queryShardedForSingleValue(Class<T> cls, String tableName, Date startDate, Date endDate, String sql,
+			Object[] paramList, String aggregate) throws TransactionException;
+
 	/**
 	 * 保存一个Entity实例，等效于insert.
 	 *
@@ -1043,6 +1633,112 @@ public abstract class DaoFactory {
 	 */
 	public abstract <T extends DataEntity> T save(T entity, String tableName) throws TransactionException;
 
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int saveAll(String connName, List<T> list) throws TransactionException;
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int saveAll(String connName, List<T> list, String tableName) throws TransactionException;
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int saveAll(List<T> list) throws TransactionException;
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int saveAll(List<T> list, String tableName) throws TransactionException;
+
+	/**
+	 * 按主键范围并行扫描整表，每个范围在连接池中独立的连接上按主键顺序流式读取.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param parallelism
+	 *            同时扫描的范围数
+	 * @param handler
+	 *            行处理器，不同范围会并发调用
+	 * @param <T>
+	 *            映射的类型
+	 * @return 扫描的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> long scan(Class<T> cls, int parallelism, ScanHandler<T> handler) throws TransactionException;
+
+	/**
+	 * 按主键范围并行扫描整表，跳过已完成的范围，未完成的范围从断点继续.
+	 * 每个范围使用连接池中独立的连接，不参与当前的事务和连接会话.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            表名，为null时使用实体类的表名
+	 * @param whereSql
+	 *            附加的过滤条件，不带where，可以为null
+	 * @param paramList
+	 *            过滤条件的参数
+	 * @param ranges
+	 *            扫描范围，通过getScanRanges获得或从保存的断点恢复，为null时按parallelism * 4个范围等分
+	 * @param parallelism
+	 *            同时扫描的范围数，不超过连接池的最大连接数
+	 * @param handler
+	 *            行处理器，不同范围会并发调用
+	 * @param <T>
+	 *            映射的类型
+	 * @return 本次扫描的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T> long scan(String connName, Class<T> cls, String tableName, String whereSql, Object[] paramList, List<ScanRange> ranges,
+			int parallelism, ScanHandler<T> handler) throws TransactionException;
+
 	/**
 	 * 根据主键更新一个Entity实例，等效于update.
 	 *
@@ -1104,4 +1800,184 @@ public abstract class DaoFactory {
 	 */
 	public abstract <T extends DataEntity> int update(T entity, String tableName) throws TransactionException;
 
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int updateAll(String connName, List<T> list) throws TransactionException;
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int updateAll(String connName, List<T> list, String tableName) throws TransactionException;
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int updateAll(List<T> list) throws TransactionException;
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int updateAll(List<T> list, String tableName) throws TransactionException;
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段，同一行的多次更新在内存中合并(后写覆盖先写)，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的状态.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void updateBehind(String connName, T entity) throws TransactionException;
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段，同一行的多次更新在内存中合并(后写覆盖先写)，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的状态.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void updateBehind(String connName, T entity, String tableName) throws TransactionException;
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段，同一行的多次更新在内存中合并(后写覆盖先写)，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的状态.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void updateBehind(T entity) throws TransactionException;
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段，同一行的多次更新在内存中合并(后写覆盖先写)，定时批量写入.
+	 * 写入前数据只在内存中，只适用于可以容忍少量丢失的状态.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> void updateBehind(T entity, String tableName) throws TransactionException;
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int upsert(String connName, T entity) throws TransactionException;
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int upsert(String connName, T entity, String tableName) throws TransactionException;
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int upsert(T entity) throws TransactionException;
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	public abstract <T extends DataEntity> int upsert(T entity, String tableName) throws TransactionException;
+
 }
@@ -0,0 +1,25 @@
+package uw.dao;
+
+/**
+ * 连接会话，会话期间非事务的操作在每个连接池上复用同一个连接，会话结束时归还连接.
+ * 适合一个请求内连续执行多条sql的场景，减少连接池借还的开销，需要在try-with-resources中使用.
+ * 会话中的DaoFactory对象不能跨线程使用.
+ *
+ * @author axeon
+ */
+public interface DaoSession extends AutoCloseable {
+
+    /**
+     * 是否已经结束.
+     *
+     * @return boolean
+     */
+    boolean isClosed();
+
+    /**
+     * 结束会话，归还会话中持有的连接.
+     */
+    @Override
+    void close();
+
+}
@@ -0,0 +1,41 @@
+package uw.dao;
+
+import uw.dao.vo.ScanRange;
+
+/**
+ * 并行扫描的行处理器.
+ * 不同范围在不同线程中并发调用，同一个范围内按主键顺序调用，可以按range.getIndex()把数据写入分区的输出.
+ *
+ * @param <T> 映射的类型
+ * @author axeon
+ */
+@FunctionalInterface
+public interface ScanHandler<T> {
+
+    /**
+     * 处理一行数据.
+     *
+     * @param range  所在的范围
+     * @param entity 映射的对象
+     * @throws Exception 异常，抛出后扫描终止
+     */
+    void handle(ScanRange range, T entity) throws Exception;
+
+    /**
+     * 范围的断点，每处理getCheckpointInterval行和范围完成时调用，可以保存range用于断点续扫.
+     *
+     * @param range 范围，完成时range.isFinished()为true
+     * @throws Exception 异常，抛出后扫描终止
+     */
+    default void onCheckpoint(ScanRange range) throws Exception {
+    }
+
+    /**
+     * 断点的间隔行数.
+     *
+     * @return 行数
+     */
+    default int getCheckpointInterval() {
+        return 10000;
+    }
+}
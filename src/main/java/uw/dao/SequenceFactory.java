@@ -3,6 +3,7 @@ package uw.dao;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -174,6 +175,11 @@ public class SequenceFactory {
         boolean success = false;
         try {
             String connName = DaoConfigManager.getRouteMapping("sys_seq", "all");
+            // 方言支持时一条语句完成分配，不需要乐观重试。
+            String allocateSql = ConnectionManager.getDialect(connName).getSequenceAllocateSQL("sys_seq");
+            if (allocateSql != null) {
+                return allocateNextBlock(connName, allocateSql, value);
+            }
             // 从数据库中获取当前值。
             DataSet ds = dao.queryForDataSet(connName, LOAD_SEQ, new Object[]{seqName});
             if (ds.next()) {
@@ -216,6 +222,30 @@ public class SequenceFactory {
         return success;
     }
 
+    /**
+     * 使用方言提供的sql一次分配下一组sequenceId，序列不存在时先初始化。
+     *
+     * @param connName    连接名
+     * @param allocateSql 分配sql
+     * @param value       递增累加值
+     * @return boolean
+     * @throws TransactionException 事务异常
+     */
+    private boolean allocateNextBlock(String connName, String allocateSql, int value) throws TransactionException {
+        for (int i = 0; i < 2; i++) {
+            DataSet ds = dao.queryForDataSet(connName, allocateSql, new Object[]{value, seqName});
+            if (ds.next()) {
+                long nid = ds.getLong(1);
+                incrementNum = ds.getInt(2);
+                this.currentId = nid - Math.max(incrementNum, value);
+                this.maxId = nid;
+                return true;
+            }
+            initSeq();
+        }
+        return false;
+    }
+
     /**
      * 初始化序列.
      */
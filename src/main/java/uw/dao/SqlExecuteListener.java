@@ -0,0 +1,71 @@
+package uw.dao;
+
+/**
+ * sql执行监听器，包裹SQLCommandImpl/EntityCommandImpl的每一次执行，用于接入链路追踪、熔断和监控.
+ * 通过uw.dao.execute-listeners配置类名，或者声明为spring bean来注册.
+ * <p>
+ * beforeAcquire/beforeExecute抛出TransactionException可以拒绝本次执行，调用方收到SqlExecuteRejectedException，
+ * 拒绝不调用onError和afterExecute，也不计入sql执行统计；其余回调的异常只记录日志.
+ * 实体操作没有参数数组，params为null。时间单位为微秒.
+ *
+ * @author axeon
+ */
+public interface SqlExecuteListener {
+
+    /**
+     * 获取连接之前.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @throws TransactionException 拒绝本次执行
+     */
+    default void beforeAcquire(String connName, String sql) throws TransactionException {
+    }
+
+    /**
+     * 获取连接之后.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param connId   连接ID
+     */
+    default void afterAcquire(String connName, String sql, int connId) {
+    }
+
+    /**
+     * 参数绑定完成，执行之前.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @throws TransactionException 拒绝本次执行
+     */
+    default void beforeExecute(String connName, String sql, Object[] params) throws TransactionException {
+    }
+
+    /**
+     * 执行结束之后，无论成功失败都会调用，失败时会先调用onError.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @param rowNum   返回/影响的行数
+     * @param connTime 获得连接和绑定参数的时间
+     * @param dbTime   数据库执行时间
+     * @param allTime  全部时间
+     */
+    default void afterExecute(String connName, String sql, Object[] params, int rowNum, long connTime, long dbTime, long allTime) {
+    }
+
+    /**
+     * 执行出错.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @param e        异常
+     */
+    default void onError(String connName, String sql, Object[] params, Throwable e) {
+    }
+
+}
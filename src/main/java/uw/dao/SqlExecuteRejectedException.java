@@ -0,0 +1,37 @@
+package uw.dao;
+
+/**
+ * sql执行被监听器拒绝的异常，没有访问数据库，不计入sql执行统计和出错回调.
+ * 
+ * @version 1.0
+ */
+public class SqlExecuteRejectedException extends TransactionException {
+
+	/**
+	 * <code>serialVersionUID</code> 的注释.
+	 */
+	private static final long serialVersionUID = -2742136619480557631L;
+
+	/**
+	 * 构造函数.
+	 * 
+	 * @param msg
+	 *            异常信息
+	 */
+	public SqlExecuteRejectedException(String msg) {
+		super(msg);
+	}
+
+	/**
+	 * 构造函数.
+	 * 
+	 * @param msg
+	 *            异常信息
+	 * @param nestedThrowable
+	 *            Throwable对象
+	 */
+	public SqlExecuteRejectedException(String msg, Throwable nestedThrowable) {
+		super(msg, nestedThrowable);
+	}
+
+}
@@ -2,7 +2,9 @@ package uw.dao.conf;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -33,6 +35,46 @@ public class DaoConfig {
      */
     private SqlStatsConfig sqlStats = new SqlStatsConfig();
 
+    /**
+     * sql执行监听器的类名列表，需实现uw.dao.SqlExecuteListener.
+     */
+    private List<String> executeListeners = new ArrayList<String>();
+
+    /**
+     * 追加写入队列配置.
+     */
+    private AppendQueueConfig appendQueue = new AppendQueueConfig();
+
+    /**
+     * 延迟合并更新配置.
+     */
+    private WriteBehindConfig writeBehind = new WriteBehindConfig();
+
+    /**
+     * 是否合并并发的相同读取(load/queryForSingleObject/queryForSingleValue)，默认是false.
+     */
+    private boolean singleFlight = false;
+
+    /**
+     * loadAsync合并请求的时间窗口毫秒数，默认是2ms.
+     */
+    private int batchLoadWindow = 2;
+
+    /**
+     * loadAll拆分的多条in查询的并行数，默认是1，即在当前线程顺序执行，事务中始终顺序执行.
+     */
+    private int loadAllParallelism = 1;
+
+    /**
+     * 分页起始位置达到此值时，简单单表查询改写为按主键延迟关联的分页，默认是0，即不改写.
+     */
+    private int deferredJoinOffset = 0;
+
+    /**
+     * 跨分表查询配置.
+     */
+    private ShardQueryConfig shardQuery = new ShardQueryConfig();
+
     /**
      * @return the connPool
      */
@@ -89,6 +131,118 @@ public class DaoConfig {
         this.sqlStats = sqlStats;
     }
 
+    /**
+     * @return the executeListeners
+     */
+    public List<String> getExecuteListeners() {
+        return executeListeners;
+    }
+
+    /**
+     * @param executeListeners the executeListeners to set
+     */
+    public void setExecuteListeners(List<String> executeListeners) {
+        this.executeListeners = executeListeners;
+    }
+
+    /**
+     * @return the appendQueue
+     */
+    public AppendQueueConfig getAppendQueue() {
+        return appendQueue;
+    }
+
+    /**
+     * @param appendQueue the appendQueue to set
+     */
+    public void setAppendQueue(AppendQueueConfig appendQueue) {
+        this.appendQueue = appendQueue;
+    }
+
+    /**
+     * @return the writeBehind
+     */
+    public WriteBehindConfig getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * @param writeBehind the writeBehind to set
+     */
+    public void setWriteBehind(WriteBehindConfig writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @return the singleFlight
+     */
+    public boolean isSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * @param singleFlight the singleFlight to set
+     */
+    public void setSingleFlight(boolean singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+
+    /**
+     * @return the batchLoadWindow
+     */
+    public int getBatchLoadWindow() {
+        return batchLoadWindow;
+    }
+
+    /**
+     * @param batchLoadWindow the batchLoadWindow to set
+     */
+    public void setBatchLoadWindow(int batchLoadWindow) {
+        this.batchLoadWindow = batchLoadWindow;
+    }
+
+    /**
+     * @return the loadAllParallelism
+     */
+    public int getLoadAllParallelism() {
+        return loadAllParallelism;
+    }
+
+    /**
+     * @param loadAllParallelism the loadAllParallelism to set
+     */
+    public void setLoadAllParallelism(int loadAllParallelism) {
+        this.loadAllParallelism = loadAllParallelism;
+    }
+
+    /**
+     * @return the deferredJoinOffset
+     */
+    public int getDeferredJoinOffset() {
+        return deferredJoinOffset;
+    }
+
+    /**
+     * @param deferredJoinOffset the deferredJoinOffset to set
+     */
+    public void setDeferredJoinOffset(int deferredJoinOffset) {
+        this.deferredJoinOffset = deferredJoinOffset;
+    }
+
+    /**
+     * @return the shardQuery
+     */
+    public ShardQueryConfig getShardQuery() {
+        return shardQuery;
+    }
+
+    /**
+     * @param shardQuery the shardQuery to set
+     */
+    public void setShardQuery(ShardQueryConfig shardQuery) {
+        this.shardQuery = shardQuery;
+    }
+
     /**
      * 连接池配置.
      */
@@ -234,6 +388,11 @@ public class DaoConfig {
          */
         private int connMaxAge;
 
+        /**
+         * 每个物理连接缓存的PreparedStatement数量，0表示不缓存，适合驱动本身没有statement缓存的场景.
+         */
+        private int statementCacheSize;
+
         /**
          * @return the driver
          */
@@ -374,6 +533,20 @@ public class DaoConfig {
             this.connMaxAge = connMaxAge;
         }
 
+        /**
+         * @return the statementCacheSize
+         */
+        public int getStatementCacheSize() {
+            return statementCacheSize;
+        }
+
+        /**
+         * @param statementCacheSize the statementCacheSize to set
+         */
+        public void setStatementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+        }
+
     }
 
     /**
@@ -449,12 +622,12 @@ public class DaoConfig {
      */
     public static class TableShardConfig {
         /**
-         * 分片类型。 当前仅支持date类型.
+         * 分片类型。支持date/hash/range类型.
          */
         private String shardType;
 
         /**
-         * 分片规则。当前仅支持day,month,year类型.
+         * 分片规则。date类型支持day,month,year.
          */
         private String shardRule;
 
@@ -463,6 +636,41 @@ public class DaoConfig {
          */
         private boolean autoGen;
 
+        /**
+         * hash/range类型的分片字段名，实体操作时按此字段的值确定分表.
+         */
+        private String shardColumn;
+
+        /**
+         * hash类型的分表数量，分表名为表名_0到表名_(shardCount-1).
+         */
+        private int shardCount;
+
+        /**
+         * range类型的分段上界（不包含），从小到大排列，值小于第i个上界的在表名_i，大于等于最后一个上界的在最后一个分表.
+         */
+        private List<Long> shardRanges = new ArrayList<Long>();
+
+        /**
+         * hash/range类型分表所在的连接池列表，表名_i使用第(i % 列表大小)个连接池，为空时按表名路由.
+         */
+        private List<String> connNames = new ArrayList<String>();
+
+        /**
+         * date类型自动建表时，除当前分表外提前创建的未来分表数量.
+         */
+        private int preCreateCount = 2;
+
+        /**
+         * date类型保留的历史分表数量，不包括当前分表，早于此的分表按expireAction处理，0为不处理.
+         */
+        private int keepCount = 0;
+
+        /**
+         * 过期分表的处理方式，drop为删除，archive为改名为archive_开头的表.
+         */
+        private String expireAction = "drop";
+
         /**
          * @return the shardingType
          */
@@ -505,6 +713,104 @@ public class DaoConfig {
             this.autoGen = autoGen;
         }
 
+        /**
+         * @return the shardColumn
+         */
+        public String getShardColumn() {
+            return shardColumn;
+        }
+
+        /**
+         * @param shardColumn the shardColumn to set
+         */
+        public void setShardColumn(String shardColumn) {
+            this.shardColumn = shardColumn;
+        }
+
+        /**
+         * @return the shardCount
+         */
+        public int getShardCount() {
+            return shardCount;
+        }
+
+        /**
+         * @param shardCount the shardCount to set
+         */
+        public void setShardCount(int shardCount) {
+            this.shardCount = shardCount;
+        }
+
+        /**
+         * @return the shardRanges
+         */
+        public List<Long> getShardRanges() {
+            return shardRanges;
+        }
+
+        /**
+         * @param shardRanges the shardRanges to set
+         */
+        public void setShardRanges(List<Long> shardRanges) {
+            this.shardRanges = shardRanges;
+        }
+
+        /**
+         * @return the connNames
+         */
+        public List<String> getConnNames() {
+            return connNames;
+        }
+
+        /**
+         * @param connNames the connNames to set
+         */
+        public void setConnNames(List<String> connNames) {
+            this.connNames = connNames;
+        }
+
+        /**
+         * @return the preCreateCount
+         */
+        public int getPreCreateCount() {
+            return preCreateCount;
+        }
+
+        /**
+         * @param preCreateCount the preCreateCount to set
+         */
+        public void setPreCreateCount(int preCreateCount) {
+            this.preCreateCount = preCreateCount;
+        }
+
+        /**
+         * @return the keepCount
+         */
+        public int getKeepCount() {
+            return keepCount;
+        }
+
+        /**
+         * @param keepCount the keepCount to set
+         */
+        public void setKeepCount(int keepCount) {
+            this.keepCount = keepCount;
+        }
+
+        /**
+         * @return the expireAction
+         */
+        public String getExpireAction() {
+            return expireAction;
+        }
+
+        /**
+         * @param expireAction the expireAction to set
+         */
+        public void setExpireAction(String expireAction) {
+            this.expireAction = expireAction;
+        }
+
     }
 
     /**
@@ -529,6 +835,56 @@ public class DaoConfig {
          */
         private int dataKeepDays = 100;
 
+        /**
+         * 非慢sql的按比率采样概率，取值0~1，默认是0不采样.
+         */
+        private double sampleRate = 0;
+
+        /**
+         * 非慢sql按sql指纹蓄水池采样时，每个指纹每个写入周期的采样数，默认是0不采样，优先于sampleRate.
+         */
+        private int sampleReservoirSize = 0;
+
+        /**
+         * 每个写入周期(10s)最多写入的采样明细数，默认是1000.
+         */
+        private int sampleMaxRows = 1000;
+
+        /**
+         * 是否按sql指纹聚合统计，默认是true.
+         */
+        private boolean aggrEnable = true;
+
+        /**
+         * 聚合统计的写入周期秒数，默认是60s.
+         */
+        private int aggrInterval = 60;
+
+        /**
+         * 聚合的sql指纹数量上限，超出的sql统一归入__other__，默认是2000.
+         */
+        private int aggrMaxSize = 2000;
+
+        /**
+         * 统计数据专用的写入连接池，默认为空，按表名路由.
+         */
+        private String writeConnName;
+
+        /**
+         * 写入失败时本地溢出文件的目录，默认是java.io.tmpdir/uw-dao.
+         */
+        private String spillPath;
+
+        /**
+         * 本地溢出文件的最大MB数，默认是64MB.
+         */
+        private int spillMaxSize = 64;
+
+        /**
+         * 是否按连接池和表名统计进程内的耗时直方图，需要同时开启enable，默认是true.
+         */
+        private boolean latencyEnable = true;
+
         /**
          * @return the enable
          */
@@ -564,6 +920,398 @@ public class DaoConfig {
         public void setSqlCostMin(int sqlCostMin) {
             this.sqlCostMin = sqlCostMin;
         }
+
+        /**
+         * @return the sampleRate
+         */
+        public double getSampleRate() {
+            return sampleRate;
+        }
+
+        /**
+         * @param sampleRate the sampleRate to set
+         */
+        public void setSampleRate(double sampleRate) {
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * @return the sampleReservoirSize
+         */
+        public int getSampleReservoirSize() {
+            return sampleReservoirSize;
+        }
+
+        /**
+         * @param sampleReservoirSize the sampleReservoirSize to set
+         */
+        public void setSampleReservoirSize(int sampleReservoirSize) {
+            this.sampleReservoirSize = sampleReservoirSize;
+        }
+
+        /**
+         * @return the sampleMaxRows
+         */
+        public int getSampleMaxRows() {
+            return sampleMaxRows;
+        }
+
+        /**
+         * @param sampleMaxRows the sampleMaxRows to set
+         */
+        public void setSampleMaxRows(int sampleMaxRows) {
+            this.sampleMaxRows = sampleMaxRows;
+        }
+
+        /**
+         * @return the aggrEnable
+         */
+        public boolean isAggrEnable() {
+            return aggrEnable;
+        }
+
+        /**
+         * @param aggrEnable the aggrEnable to set
+         */
+        public void setAggrEnable(boolean aggrEnable) {
+            this.aggrEnable = aggrEnable;
+        }
+
+        /**
+         * @return the aggrInterval
+         */
+        public int getAggrInterval() {
+            return aggrInterval;
+        }
+
+        /**
+         * @param aggrInterval the aggrInterval to set
+         */
+        public void setAggrInterval(int aggrInterval) {
+            this.aggrInterval = aggrInterval;
+        }
+
+        /**
+         * @return the aggrMaxSize
+         */
+        public int getAggrMaxSize() {
+            return aggrMaxSize;
+        }
+
+        /**
+         * @param aggrMaxSize the aggrMaxSize to set
+         */
+        public void setAggrMaxSize(int aggrMaxSize) {
+            this.aggrMaxSize = aggrMaxSize;
+        }
+
+        /**
+         * @return the writeConnName
+         */
+        public String getWriteConnName() {
+            return writeConnName;
+        }
+
+        /**
+         * @param writeConnName the writeConnName to set
+         */
+        public void setWriteConnName(String writeConnName) {
+            this.writeConnName = writeConnName;
+        }
+
+        /**
+         * @return the spillPath
+         */
+        public String getSpillPath() {
+            return spillPath;
+        }
+
+        /**
+         * @param spillPath the spillPath to set
+         */
+        public void setSpillPath(String spillPath) {
+            this.spillPath = spillPath;
+        }
+
+        /**
+         * @return the spillMaxSize
+         */
+        public int getSpillMaxSize() {
+            return spillMaxSize;
+        }
+
+        /**
+         * @param spillMaxSize the spillMaxSize to set
+         */
+        public void setSpillMaxSize(int spillMaxSize) {
+            this.spillMaxSize = spillMaxSize;
+        }
+
+        /**
+         * @return the latencyEnable
+         */
+        public boolean isLatencyEnable() {
+            return latencyEnable;
+        }
+
+        /**
+         * @param latencyEnable the latencyEnable to set
+         */
+        public void setLatencyEnable(boolean latencyEnable) {
+            this.latencyEnable = latencyEnable;
+        }
+    }
+
+    /**
+     * 追加写入队列配置，多线程的单行insert按表合并为多行insert，由少量写入线程提交.
+     *
+     * @author axeon
+     */
+    public static class AppendQueueConfig {
+
+        /**
+         * 写入线程数，也是占用的最大连接数，默认是2.
+         */
+        private int writerThreads = 2;
+
+        /**
+         * 每次提交的最大行数，默认是500.
+         */
+        private int maxBatchRows = 500;
+
+        /**
+         * 数据在队列中的最大等待毫秒数，默认是10ms.
+         */
+        private int maxDelay = 10;
+
+        /**
+         * 每个表的队列容量，默认是10000.
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * 队列满时入队的最大等待毫秒数，超时后写入失败，默认是1000ms.
+         */
+        private int offerTimeout = 1000;
+
+        /**
+         * @return the writerThreads
+         */
+        public int getWriterThreads() {
+            return writerThreads;
+        }
+
+        /**
+         * @param writerThreads the writerThreads to set
+         */
+        public void setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+        }
+
+        /**
+         * @return the maxBatchRows
+         */
+        public int getMaxBatchRows() {
+            return maxBatchRows;
+        }
+
+        /**
+         * @param maxBatchRows the maxBatchRows to set
+         */
+        public void setMaxBatchRows(int maxBatchRows) {
+            this.maxBatchRows = maxBatchRows;
+        }
+
+        /**
+         * @return the maxDelay
+         */
+        public int getMaxDelay() {
+            return maxDelay;
+        }
+
+        /**
+         * @param maxDelay the maxDelay to set
+         */
+        public void setMaxDelay(int maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+
+        /**
+         * @return the queueCapacity
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * @param queueCapacity the queueCapacity to set
+         */
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * @return the offerTimeout
+         */
+        public int getOfferTimeout() {
+            return offerTimeout;
+        }
+
+        /**
+         * @param offerTimeout the offerTimeout to set
+         */
+        public void setOfferTimeout(int offerTimeout) {
+            this.offerTimeout = offerTimeout;
+        }
+    }
+
+    /**
+     * 延迟合并更新配置，同一行的计数累加和字段更新在内存中合并，定时批量写入.
+     *
+     * @author axeon
+     */
+    public static class WriteBehindConfig {
+
+        /**
+         * 写入周期毫秒数，默认是1000ms.
+         */
+        private int flushInterval = 1000;
+
+        /**
+         * 待写入的行数达到此值时立即写入，默认是10000.
+         */
+        private int maxPendingRows = 10000;
+
+        /**
+         * 每个批次的最大行数，默认是500.
+         */
+        private int batchSize = 500;
+
+        /**
+         * 写入失败的最大重试次数，超过后丢弃并记录日志，默认是3.
+         */
+        private int maxRetryTimes = 3;
+
+        /**
+         * @return the flushInterval
+         */
+        public int getFlushInterval() {
+            return flushInterval;
+        }
+
+        /**
+         * @param flushInterval the flushInterval to set
+         */
+        public void setFlushInterval(int flushInterval) {
+            this.flushInterval = flushInterval;
+        }
+
+        /**
+         * @return the maxPendingRows
+         */
+        public int getMaxPendingRows() {
+            return maxPendingRows;
+        }
+
+        /**
+         * @param maxPendingRows the maxPendingRows to set
+         */
+        public void setMaxPendingRows(int maxPendingRows) {
+            this.maxPendingRows = maxPendingRows;
+        }
+
+        /**
+         * @return the batchSize
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * @param batchSize the batchSize to set
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @return the maxRetryTimes
+         */
+        public int getMaxRetryTimes() {
+            return maxRetryTimes;
+        }
+
+        /**
+         * @param maxRetryTimes the maxRetryTimes to set
+         */
+        public void setMaxRetryTimes(int maxRetryTimes) {
+            this.maxRetryTimes = maxRetryTimes;
+        }
+    }
+
+    /**
+     * 跨分表查询配置，各分表的查询并行执行.
+     *
+     * @author axeon
+     */
+    public static class ShardQueryConfig {
+
+        /**
+         * 执行线程数，默认是8.
+         */
+        private int threads = 8;
+
+        /**
+         * 每个连接池同时执行的最大查询数，不超过连接池的最大连接数，默认是4.
+         */
+        private int maxConnPerPool = 4;
+
+        /**
+         * 一次查询按日期范围最多覆盖的分表数，超出时拒绝执行，默认是400.
+         */
+        private int maxShards = 400;
+
+        /**
+         * @return the threads
+         */
+        public int getThreads() {
+            return threads;
+        }
+
+        /**
+         * @param threads the threads to set
+         */
+        public void setThreads(int threads) {
+            this.threads = threads;
+        }
+
+        /**
+         * @return the maxConnPerPool
+         */
+        public int getMaxConnPerPool() {
+            return maxConnPerPool;
+        }
+
+        /**
+         * @param maxConnPerPool the maxConnPerPool to set
+         */
+        public void setMaxConnPerPool(int maxConnPerPool) {
+            this.maxConnPerPool = maxConnPerPool;
+        }
+
+        /**
+         * @return the maxShards
+         */
+        public int getMaxShards() {
+            return maxShards;
+        }
+
+        /**
+         * @param maxShards the maxShards to set
+         */
+        public void setMaxShards(int maxShards) {
+            this.maxShards = maxShards;
+        }
     }
 
 }
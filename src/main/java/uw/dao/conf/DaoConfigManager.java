@@ -4,6 +4,7 @@ import uw.dao.conf.DaoConfig.ConnPoolConfig;
 import uw.dao.conf.DaoConfig.ConnRoute;
 import uw.dao.conf.DaoConfig.ConnRouteConfig;
 import uw.dao.conf.DaoConfig.TableShardConfig;
+import uw.dao.util.TableShardingUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -37,9 +38,32 @@ public final class DaoConfigManager {
 
     /**
      * @param config the config to set
+     * @throws IllegalArgumentException 分表配置错误
      */
     public static void setConfig(DaoConfig config) {
+        checkTableShardConfig(config);
         DaoConfigManager.config = config;
+        routeMap.clear();
+        TableShardingUtils.clearCache();
+    }
+
+    /**
+     * 检查分表配置，hash分表必须配置大于0的shard-count，否则不会建表也无法路由.
+     *
+     * @param config DAO配置
+     * @throws IllegalArgumentException 分表配置错误
+     */
+    private static void checkTableShardConfig(DaoConfig config) {
+        if (config == null || config.getTableShard() == null) {
+            return;
+        }
+        for (Entry<String, TableShardConfig> entry : config.getTableShard().entrySet()) {
+            TableShardConfig shardConfig = entry.getValue();
+            if ("hash".equalsIgnoreCase(shardConfig.getShardType()) && shardConfig.getShardCount() <= 0) {
+                throw new IllegalArgumentException("uw.dao.table-shard." + entry.getKey() + ": hash sharding requires shard-count > 0, but it is "
+                        + shardConfig.getShardCount() + "!");
+            }
+        }
     }
 
     /**
@@ -95,8 +119,10 @@ public final class DaoConfigManager {
         String key = table + "^" + access;
         String poolName = routeMap.get(key);
         if (poolName == null) {
+            // hash/range分表指定了连接池的，直接使用分表的连接池.
+            poolName = getShardPoolName(table);
             ConnRoute connRoute = config.getConnRoute();
-            if (connRoute != null) {
+            if (poolName == null && connRoute != null) {
                 Map<String, ConnRouteConfig> map = connRoute.getList();
                 // 先尝试匹配列表.
                 if (map != null) {
@@ -124,6 +150,36 @@ public final class DaoConfigManager {
         return poolName;
     }
 
+    /**
+     * 获得hash/range分表配置的连接池，分表名为表名_序号，使用第(序号 % 连接池数量)个连接池.
+     *
+     * @param table 分表名
+     * @return poolName，没有配置时返回null
+     */
+    private static String getShardPoolName(String table) {
+        if (config.getTableShard() == null || config.getTableShard().isEmpty()) {
+            return null;
+        }
+        int pos = table.lastIndexOf('_');
+        if (pos < 1 || pos == table.length() - 1) {
+            return null;
+        }
+        TableShardConfig shardConfig = config.getTableShard().get(table.substring(0, pos));
+        if (shardConfig == null || shardConfig.getConnNames() == null || shardConfig.getConnNames().isEmpty()
+                || !("hash".equalsIgnoreCase(shardConfig.getShardType()) || "range".equalsIgnoreCase(shardConfig.getShardType()))) {
+            return null;
+        }
+        int index = 0;
+        for (int i = pos + 1; i < table.length(); i++) {
+            char c = table.charAt(i);
+            if (c < '0' || c > '9' || index > 100000000) {
+                return null;
+            }
+            index = index * 10 + (c - '0');
+        }
+        return shardConfig.getConnNames().get(index % shardConfig.getConnNames().size());
+    }
+
     /**
      * 通过route和access获取连接池名称.
      *
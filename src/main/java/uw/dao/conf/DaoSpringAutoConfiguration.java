@@ -5,13 +5,19 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import uw.dao.SqlExecuteListener;
 import uw.dao.conf.DaoConfig.ConnPoolConfig;
 import uw.dao.conf.DaoConfig.TableShardConfig;
 import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.impl.AppendQueueManager;
+import uw.dao.impl.SingleFlight;
+import uw.dao.impl.SqlExecuteListenerManager;
+import uw.dao.impl.WriteBehindManager;
 import uw.dao.service.MainService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -35,6 +41,12 @@ public class DaoSpringAutoConfiguration {
     @Autowired
     private DaoConfig daoConfig;
 
+    /**
+     * 声明为spring bean的sql执行监听器.
+     */
+    @Autowired(required = false)
+    private List<SqlExecuteListener> executeListeners;
+
     /**
      * 配置初始化.
      */
@@ -89,12 +101,41 @@ public class DaoSpringAutoConfiguration {
                         config.setShardType("date");
                         config.setShardRule("day");
                         config.setAutoGen(true);
+                        config.setKeepCount(daoConfig.getSqlStats().getDataKeepDays());
                         daoConfig.getTableShard().put(MainService.STATS_BASE_TABLE, config);
+                        if (daoConfig.getSqlStats().isAggrEnable()) {
+                            daoConfig.getTableShard().put(MainService.STATS_AGGR_BASE_TABLE, config);
+                        }
                     }
                 }
                 MainService.start();
             }
         }
+        SingleFlight.setEnable(daoConfig.isSingleFlight());
+        registerExecuteListeners();
+    }
+
+    /**
+     * 注册sql执行监听器，包括配置的类名和spring bean.
+     */
+    private void registerExecuteListeners() {
+        if (daoConfig.getExecuteListeners() != null) {
+            for (String className : daoConfig.getExecuteListeners()) {
+                try {
+                    SqlExecuteListener listener = (SqlExecuteListener) Class.forName(className).newInstance();
+                    SqlExecuteListenerManager.addListener(listener);
+                    log.info("uw-dao register execute listener: {}", className);
+                } catch (Exception e) {
+                    log.error("uw-dao register execute listener [{}] failed: {}", className, e.getMessage(), e);
+                }
+            }
+        }
+        if (executeListeners != null) {
+            for (SqlExecuteListener listener : executeListeners) {
+                SqlExecuteListenerManager.addListener(listener);
+                log.info("uw-dao register execute listener: {}", listener.getClass().getName());
+            }
+        }
     }
 
     /**
@@ -103,7 +144,10 @@ public class DaoSpringAutoConfiguration {
     @PreDestroy
     public void destroy() {
         log.info("uw-dao destroy configuration...");
+        AppendQueueManager.stop();
+        WriteBehindManager.stop();
         MainService.stop();
+        SqlExecuteListenerManager.clear();
         ConnectionManager.stop();
     }
 
@@ -2,6 +2,7 @@ package uw.dao.connectionpool;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.util.DriverDataSource;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +16,7 @@ import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -197,6 +199,11 @@ public final class ConnectionManager {
             hikariConfig.setConnectionTimeout(connBusyTimeout);
             // 连接寿命(秒钟)
             hikariConfig.setMaxLifetime(connMaxAge);
+            // 按物理连接缓存statement
+            if (config.getStatementCacheSize() > 0) {
+                hikariConfig.setDataSource(new StatementCacheDataSource(key, new DriverDataSource(config.getUrl(), config.getDriver(),
+                        new Properties(), config.getUsername(), config.getPassword()), config.getStatementCacheSize()));
+            }
             // 数据库方言
             HikariDataSource hikariDataSource = new HikariDataSource(hikariConfig);
             // 注册成功,初始化方言
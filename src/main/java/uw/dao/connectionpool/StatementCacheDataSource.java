@@ -0,0 +1,501 @@
+package uw.dao.connectionpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.vo.StatementCacheStats;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按物理连接缓存PreparedStatement的DataSource.
+ * 作为hikari的DataSource包装物理连接，prepareStatement(sql)、prepareStatement(sql, autoGeneratedKeys)和prepareStatement(sql, columnNames)
+ * 优先从连接的LRU缓存取出，
+ * statement关闭时放回缓存，物理连接关闭时关闭全部缓存的statement，所以缓存不受连接池借还的影响.
+ *
+ * @author axeon
+ */
+public class StatementCacheDataSource implements DataSource {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StatementCacheDataSource.class);
+
+    /**
+     * 修改后不能放回缓存的statement属性.
+     */
+    private static final Set<String> DIRTY_METHODS = new HashSet<>(Arrays.asList("setMaxRows", "setLargeMaxRows", "setFetchSize",
+            "setFetchDirection", "setQueryTimeout", "setMaxFieldSize", "setCursorName", "setEscapeProcessing", "setPoolable", "closeOnCompletion"));
+
+    /**
+     * 按连接池统计的缓存命中情况.
+     */
+    private static final Map<String, CacheStats> STATS_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 被包装的DataSource.
+     */
+    private final DataSource dataSource;
+
+    /**
+     * 每个物理连接缓存的statement数量.
+     */
+    private final int cacheSize;
+
+    /**
+     * 本连接池的统计.
+     */
+    private final CacheStats stats;
+
+    /**
+     * 构造器.
+     *
+     * @param poolName   连接池名
+     * @param dataSource 被包装的DataSource
+     * @param cacheSize  每个物理连接缓存的statement数量
+     */
+    public StatementCacheDataSource(String poolName, DataSource dataSource, int cacheSize) {
+        this.dataSource = dataSource;
+        this.cacheSize = cacheSize;
+        this.stats = STATS_MAP.computeIfAbsent(poolName, k -> new CacheStats());
+    }
+
+    /**
+     * 获得连接池的缓存命中次数.
+     *
+     * @param poolName 连接池名
+     * @return 命中次数
+     */
+    public static long getHitCount(String poolName) {
+        CacheStats stats = STATS_MAP.get(poolName);
+        return stats == null ? 0 : stats.hit.sum();
+    }
+
+    /**
+     * 获得连接池的缓存未命中次数.
+     *
+     * @param poolName 连接池名
+     * @return 未命中次数
+     */
+    public static long getMissCount(String poolName) {
+        CacheStats stats = STATS_MAP.get(poolName);
+        return stats == null ? 0 : stats.miss.sum();
+    }
+
+    /**
+     * 获得连接池因超出缓存数量而关闭的statement数.
+     *
+     * @param poolName 连接池名
+     * @return 淘汰次数
+     */
+    public static long getEvictCount(String poolName) {
+        CacheStats stats = STATS_MAP.get(poolName);
+        return stats == null ? 0 : stats.evict.sum();
+    }
+
+    /**
+     * 获得全部启用了statement缓存的连接池的统计.
+     *
+     * @return 统计列表
+     */
+    public static List<StatementCacheStats> getStatsList() {
+        List<StatementCacheStats> list = new ArrayList<>(STATS_MAP.size());
+        for (Map.Entry<String, CacheStats> entry : STATS_MAP.entrySet()) {
+            CacheStats stats = entry.getValue();
+            list.add(new StatementCacheStats(entry.getKey(), stats.hit.sum(), stats.miss.sum(), stats.evict.sum()));
+        }
+        return list;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(dataSource.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(dataSource.getConnection(username, password));
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return dataSource.isWrapperFor(iface);
+    }
+
+    /**
+     * 包装物理连接.
+     *
+     * @param conn 物理连接
+     * @return 带statement缓存的连接
+     */
+    private Connection wrap(Connection conn) {
+        ConnectionHandler handler = new ConnectionHandler(conn);
+        handler.proxy = (Connection) Proxy.newProxyInstance(StatementCacheDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                handler);
+        return handler.proxy;
+    }
+
+    /**
+     * 执行被代理对象的方法，抛出原始异常.
+     *
+     * @param target 被代理对象
+     * @param method 方法
+     * @param args   参数
+     * @return 返回值
+     * @throws Throwable 原始异常
+     */
+    private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 缓存的key，sql+autoGeneratedKeys+columnNames.
+     */
+    private static class StatementKey {
+
+        /**
+         * sql.
+         */
+        private final String sql;
+
+        /**
+         * autoGeneratedKeys，没有指定时为-1.
+         */
+        private final int autoGeneratedKeys;
+
+        /**
+         * 返回的生成列名，没有指定时为null.
+         */
+        private final String[] columnNames;
+
+        StatementKey(String sql, int autoGeneratedKeys, String[] columnNames) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.columnNames = columnNames;
+        }
+
+        @Override
+        public int hashCode() {
+            return (sql.hashCode() * 31 + autoGeneratedKeys) * 31 + Arrays.hashCode(columnNames);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StatementKey)) {
+                return false;
+            }
+            StatementKey other = (StatementKey) obj;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql) && Arrays.equals(columnNames, other.columnNames);
+        }
+    }
+
+    /**
+     * 缓存命中统计.
+     */
+    private static class CacheStats {
+
+        /**
+         * 命中次数.
+         */
+        private final LongAdder hit = new LongAdder();
+
+        /**
+         * 未命中次数.
+         */
+        private final LongAdder miss = new LongAdder();
+
+        /**
+         * 淘汰次数.
+         */
+        private final LongAdder evict = new LongAdder();
+    }
+
+    /**
+     * 物理连接的代理，持有这个连接的statement缓存.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+
+        /**
+         * 物理连接.
+         */
+        private final Connection conn;
+
+        /**
+         * 空闲的statement，按访问顺序排列.
+         */
+        private final LinkedHashMap<StatementKey, PreparedStatement> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * 连接的代理对象.
+         */
+        private Connection proxy;
+
+        /**
+         * 物理连接是否已关闭.
+         */
+        private volatile boolean closed = false;
+
+        ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("prepareStatement".equals(name) && args[0] instanceof String) {
+                if (args.length == 1) {
+                    return prepareStatement((String) args[0], -1, null);
+                }
+                if (args.length == 2 && method.getParameterTypes()[1] == int.class) {
+                    return prepareStatement((String) args[0], (Integer) args[1], null);
+                }
+                if (args.length == 2 && method.getParameterTypes()[1] == String[].class && args[1] != null) {
+                    // 复制一份，调用者之后修改数组不会影响缓存key
+                    return prepareStatement((String) args[0], -1, ((String[]) args[1]).clone());
+                }
+            }
+            if ("close".equals(name)) {
+                closed = true;
+                closeAll();
+            }
+            return invokeTarget(conn, method, args);
+        }
+
+        /**
+         * 从缓存取出或新建statement.
+         *
+         * @param sql               sql
+         * @param autoGeneratedKeys autoGeneratedKeys，没有指定时为-1
+         * @param columnNames       返回的生成列名，没有指定时为null
+         * @return statement的代理对象
+         * @throws SQLException SQL异常
+         */
+        private PreparedStatement prepareStatement(String sql, int autoGeneratedKeys, String[] columnNames) throws SQLException {
+            StatementKey key = new StatementKey(sql, autoGeneratedKeys, columnNames);
+            PreparedStatement pstmt;
+            synchronized (this) {
+                pstmt = cache.remove(key);
+            }
+            if (pstmt != null && !pstmt.isClosed()) {
+                stats.hit.increment();
+            } else {
+                stats.miss.increment();
+                if (columnNames != null) {
+                    pstmt = conn.prepareStatement(sql, columnNames);
+                } else if (autoGeneratedKeys != -1) {
+                    pstmt = conn.prepareStatement(sql, autoGeneratedKeys);
+                } else {
+                    pstmt = conn.prepareStatement(sql);
+                }
+            }
+            return (PreparedStatement) Proxy.newProxyInstance(StatementCacheDataSource.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class}, new StatementHandler(this, key, pstmt));
+        }
+
+        /**
+         * 把关闭的statement放回缓存，超出数量时关闭最久未用的statement.
+         *
+         * @param key   缓存key
+         * @param pstmt statement
+         */
+        private void release(StatementKey key, PreparedStatement pstmt) {
+            PreparedStatement evicted = null;
+            synchronized (this) {
+                if (!closed) {
+                    PreparedStatement old = cache.put(key, pstmt);
+                    pstmt = null;
+                    if (old != null) {
+                        evicted = old;
+                    } else if (cache.size() > cacheSize) {
+                        Iterator<PreparedStatement> it = cache.values().iterator();
+                        evicted = it.next();
+                        it.remove();
+                    }
+                }
+            }
+            if (evicted != null) {
+                stats.evict.increment();
+                closeQuietly(evicted);
+            }
+            if (pstmt != null) {
+                closeQuietly(pstmt);
+            }
+        }
+
+        /**
+         * 关闭全部缓存的statement.
+         */
+        private void closeAll() {
+            PreparedStatement[] list;
+            synchronized (this) {
+                list = cache.values().toArray(new PreparedStatement[0]);
+                cache.clear();
+            }
+            for (PreparedStatement pstmt : list) {
+                closeQuietly(pstmt);
+            }
+        }
+
+        /**
+         * 关闭statement.
+         *
+         * @param pstmt statement
+         */
+        private void closeQuietly(PreparedStatement pstmt) {
+            try {
+                pstmt.close();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * statement的代理，close时放回缓存.
+     */
+    private static class StatementHandler implements InvocationHandler {
+
+        /**
+         * 所属的连接.
+         */
+        private final ConnectionHandler connHandler;
+
+        /**
+         * 缓存key.
+         */
+        private final StatementKey key;
+
+        /**
+         * 实际的statement.
+         */
+        private final PreparedStatement pstmt;
+
+        /**
+         * 是否已关闭.
+         */
+        private boolean closed = false;
+
+        /**
+         * 是否修改过属性，修改过的不放回缓存.
+         */
+        private boolean dirty = false;
+
+        StatementHandler(ConnectionHandler connHandler, StatementKey key, PreparedStatement pstmt) {
+            this.connHandler = connHandler;
+            this.key = key;
+            this.pstmt = pstmt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        recycle();
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pstmt.isClosed();
+                case "getConnection":
+                    return connHandler.proxy;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return pstmt.toString();
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("PreparedStatement is closed: " + key.sql);
+            }
+            if (DIRTY_METHODS.contains(name)) {
+                dirty = true;
+            }
+            return invokeTarget(pstmt, method, args);
+        }
+
+        /**
+         * 清理状态后放回缓存，清理失败或修改过属性时直接关闭.
+         */
+        private void recycle() {
+            boolean reusable = !dirty;
+            if (reusable) {
+                try {
+                    ResultSet rs = pstmt.getResultSet();
+                    if (rs != null) {
+                        rs.close();
+                    }
+                    pstmt.clearParameters();
+                    pstmt.clearBatch();
+                    pstmt.clearWarnings();
+                } catch (Exception e) {
+                    reusable = false;
+                }
+            }
+            if (reusable) {
+                connHandler.release(key, pstmt);
+            } else {
+                connHandler.closeQuietly(pstmt);
+            }
+        }
+    }
+
+}
@@ -1,12 +1,48 @@
 package uw.dao.dialect;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * 方言基类,对于当前的情况，可能只有分页需要处理.
+ * 自定义方言可以继承此类并覆盖isSupported，在META-INF/services/uw.dao.dialect.Dialect中登记后由DialectManager加载.
  *
  * @author axeon
  */
 public class Dialect {
 
+    /**
+     * 简单单表查询的解析：select 列 from 表 [别名] [where 条件] [order by 排序].
+     */
+    private static final Pattern SIMPLE_SELECT_PATTERN = Pattern.compile(
+            "^\\s*select\\s+(.+?)\\s+from\\s+([\\w.$]+)"
+                    + "(?:\\s+(?:as\\s+)?(?!(?:where|order|limit|offset|fetch|group|having|join|inner|left|right|cross|natural|union|for)\\b)(\\w+))?"
+                    + "(?:\\s+where\\s+(.+?))?(?:\\s+order\\s+by\\s+(.+?))?\\s*$",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    /**
+     * 出现这些关键字时不是简单单表查询.
+     */
+    private static final Pattern COMPLEX_KEYWORD_PATTERN = Pattern.compile(
+            "\\b(?:join|group\\s+by|having|union|limit|offset|fetch|for\\s+update|distinct)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 是否适用于指定的数据库驱动.
+     *
+     * @param driverClassName 小写的数据库驱动名称
+     * @return boolean
+     */
+    public boolean isSupported(String driverClassName) {
+        return false;
+    }
+
     /**
      * 获得分页sql.
      *
@@ -19,4 +55,263 @@ public class Dialect {
         return null;
     }
 
+    /**
+     * 获得延迟关联的分页sql，先在子查询中只按主键分页，再关联回原表取整行，避免深分页时读取所有跳过的整行.
+     * 只支持简单的单表查询，不支持时返回null，由调用方退回getPagedSQL.
+     *
+     * @param sql       执行sql
+     * @param pkColumn  主键列名
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return null
+     */
+    public Object[] getDeferredJoinPagedSQL(String sql, String pkColumn, int startPos, int resultNum) {
+        return null;
+    }
+
+    /**
+     * 解析简单的单表查询.
+     *
+     * @param sql 执行sql
+     * @return {列, 表, 别名, 条件, 排序}，别名、条件和排序可能为null；不是简单单表查询时返回null
+     */
+    protected static String[] parseSimpleSelect(String sql) {
+        if (sql == null || COMPLEX_KEYWORD_PATTERN.matcher(sql).find()) {
+            return null;
+        }
+        // 不支持子查询
+        if (sql.toLowerCase(Locale.ROOT).split("\\bselect\\b", -1).length > 2) {
+            return null;
+        }
+        Matcher matcher = SIMPLE_SELECT_PATTERN.matcher(sql);
+        if (!matcher.matches()) {
+            return null;
+        }
+        String cols = matcher.group(1);
+        String where = matcher.group(4);
+        String orderBy = matcher.group(5);
+        // 列中的函数和参数无法在外层查询中保持原样
+        if (cols.indexOf('(') > -1 || cols.indexOf('?') > -1) {
+            return null;
+        }
+        if (orderBy != null && (orderBy.indexOf('(') > -1 || orderBy.indexOf('?') > -1)) {
+            return null;
+        }
+        if (where != null && !isBalanced(where)) {
+            return null;
+        }
+        return new String[]{cols.trim(), matcher.group(2), matcher.group(3), where, orderBy};
+    }
+
+    /**
+     * 根据解析结果拼装延迟关联的sql，子查询中的参数顺序与原sql一致，分页参数在最后.
+     *
+     * @param parts         parseSimpleSelect的解析结果
+     * @param pkColumn      主键列名
+     * @param pagingClause  子查询的分页子句
+     * @return sql
+     */
+    protected static String buildDeferredJoinSQL(String[] parts, String pkColumn, String pagingClause) {
+        return buildDeferredJoinSQL(parts, pkColumn, "", pagingClause);
+    }
+
+    /**
+     * 根据解析结果拼装延迟关联的sql，主键子查询包在pagingPrefix和pagingSuffix之间，用于不支持limit/offset子句的数据库.
+     * 包装后的子查询需要只返回uw_dj_pk列.
+     *
+     * @param parts         parseSimpleSelect的解析结果
+     * @param pkColumn      主键列名
+     * @param pagingPrefix  主键子查询之前的分页包装
+     * @param pagingSuffix  主键子查询之后的分页子句或包装
+     * @return sql
+     */
+    protected static String buildDeferredJoinSQL(String[] parts, String pkColumn, String pagingPrefix, String pagingSuffix) {
+        String table = parts[1];
+        String alias = parts[2] == null ? table : parts[2];
+        String from = parts[2] == null ? table : table + " " + alias;
+        String cols = "*".equals(parts[0]) ? alias + ".*" : parts[0];
+        StringBuilder sb = new StringBuilder(128 + parts[0].length() * 2);
+        sb.append("select ").append(cols).append(" from ").append(from);
+        sb.append(" inner join (").append(pagingPrefix).append("select ").append(alias).append('.').append(pkColumn).append(" uw_dj_pk from ").append(from);
+        if (parts[3] != null) {
+            sb.append(" where ").append(parts[3]);
+        }
+        if (parts[4] != null) {
+            sb.append(" order by ").append(parts[4]);
+        }
+        sb.append(pagingSuffix).append(") uw_dj on ").append(alias).append('.').append(pkColumn).append(" = uw_dj.uw_dj_pk");
+        if (parts[4] != null) {
+            sb.append(" order by ").append(parts[4]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 括号是否配对.
+     *
+     * @param s 字符串
+     * @return boolean
+     */
+    private static boolean isBalanced(String s) {
+        int depth = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth < 0) {
+                return false;
+            }
+        }
+        return depth == 0;
+    }
+
+    /**
+     * 获得按主键插入或更新的sql，参数按columns的顺序绑定.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return 不支持时返回null
+     */
+    public String getUpsertSQL(String tableName, String[] columns, String[] pkColumns) {
+        return null;
+    }
+
+    /**
+     * 获得一条语句完成序列号段分配的sql，参数为(申请的数量, 序列名)，返回(分配后的seq_id, increment_num).
+     * 不支持时返回null，由SequenceFactory使用查询加乐观更新的方式分配.
+     *
+     * @param tableName 序列表名
+     * @return 不支持时返回null
+     */
+    public String getSequenceAllocateSQL(String tableName) {
+        return null;
+    }
+
+    /**
+     * 创建需要返回自增主键的insert语句.
+     *
+     * @param con        连接
+     * @param sql        insert sql
+     * @param keyColumns 自增主键列名
+     * @return PreparedStatement
+     * @throws SQLException SQL异常
+     */
+    public PreparedStatement prepareInsertStatement(Connection con, String sql, String[] keyColumns) throws SQLException {
+        return con.prepareStatement(sql, keyColumns);
+    }
+
+    /**
+     * 拼装insert的列名和占位符部分，如(a,b) values (?,?).
+     *
+     * @param columns 列名
+     * @return sql片段
+     */
+    protected static String buildInsertValues(String[] columns) {
+        StringBuilder sb = new StringBuilder(16 + columns.length * 16);
+        sb.append('(').append(String.join(",", columns)).append(") values (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * 获得非主键的列.
+     *
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return 非主键的列
+     */
+    protected static String[] getNonPkColumns(String[] columns, String[] pkColumns) {
+        List<String> list = new ArrayList<>(columns.length);
+        for (String column : columns) {
+            boolean pk = false;
+            for (String pkColumn : pkColumns) {
+                if (pkColumn.equalsIgnoreCase(column)) {
+                    pk = true;
+                    break;
+                }
+            }
+            if (!pk) {
+                list.add(column);
+            }
+        }
+        return list.toArray(new String[0]);
+    }
+
+    /**
+     * 获得多行插入sql，如insert into t (a,b) values (?,?),(?,?).
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param rowNum    行数
+     * @return 多行插入sql
+     */
+    public String getBatchInsertSQL(String tableName, String[] columns, int rowNum) {
+        StringBuilder sb = new StringBuilder(32 + tableName.length() + columns.length * (16 + rowNum * 2));
+        sb.append("insert into ").append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(columns[i]);
+        }
+        sb.append(") values ");
+        for (int r = 0; r < rowNum; r++) {
+            if (r > 0) {
+                sb.append(',');
+            }
+            sb.append('(');
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append('?');
+            }
+            sb.append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 多行插入时单条sql的最大参数个数.
+     *
+     * @return 最大参数个数
+     */
+    public int getBatchInsertMaxParams() {
+        return 65535;
+    }
+
+    /**
+     * in列表的最大元素个数，超出时需拆分为多条sql.
+     *
+     * @return 最大元素个数
+     */
+    public int getMaxInListSize() {
+        return 1000;
+    }
+
+    /**
+     * 按主键批量加载时in列表的长度分档，不足一档的用最后一个主键补齐，使sql的种类固定，便于服务端缓存执行计划.
+     *
+     * @return 从小到大排列的分档
+     */
+    public int[] getInListBuckets() {
+        return new int[]{1, 4, 16, 64, 256};
+    }
+
+    /**
+     * 流式读取大结果集时的fetchSize.
+     *
+     * @return fetchSize
+     */
+    public int getStreamFetchSize() {
+        return 1000;
+    }
+
 }
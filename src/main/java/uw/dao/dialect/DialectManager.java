@@ -1,36 +1,75 @@
 package uw.dao.dialect;
 
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * 方言基类,对于当前的情况，可能只有分页需要处理.
+ * 方言管理器，按数据库驱动名称匹配方言.
+ * 通过ServiceLoader登记的方言和register注册的方言优先于内置方言匹配.
  *
  * @author axeon
  */
 public class DialectManager {
 
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(DialectManager.class);
+
     /**
      * Mysql数据库方言
      */
     private static final Dialect MYSQL_DIALECT = new MySQLDialect();
 
     /**
-     * Oracle数据库方言
+     * 已注册的方言，按顺序匹配.
      */
-    private static final Dialect ORACLE_DIALECT = new OracleDialect();
+    private static final List<Dialect> DIALECT_LIST = new CopyOnWriteArrayList<>();
+
+    static {
+        try {
+            for (Dialect dialect : ServiceLoader.load(Dialect.class)) {
+                DIALECT_LIST.add(dialect);
+                logger.info("Dialect[{}] loaded.", dialect.getClass().getName());
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.error(e.getMessage(), e);
+        }
+        DIALECT_LIST.add(MYSQL_DIALECT);
+        DIALECT_LIST.add(new OracleDialect());
+        DIALECT_LIST.add(new H2Dialect());
+        DIALECT_LIST.add(new PostgreSQLDialect());
+    }
+
+    /**
+     * 注册方言，优先于已注册的方言匹配，需要在连接池初始化之前调用.
+     *
+     * @param dialect 方言
+     */
+    public static void register(Dialect dialect) {
+        DIALECT_LIST.add(0, dialect);
+    }
 
     /**
-     * 得到Dialect对象.
+     * 得到Dialect对象，没有匹配的方言时使用mysql方言.
      *
      * @param driverClassName 数据库驱动名称
      * @return Dialect对象
      */
     public static Dialect getDialectByDriverClassName(String driverClassName) {
         if (StringUtils.isNotBlank(driverClassName)) {
-            if (driverClassName.contains("mysql")) {
-                return MYSQL_DIALECT;
-            } else if (driverClassName.contains("oracle")) {
-                return ORACLE_DIALECT;
+            String driver = driverClassName.toLowerCase(Locale.ROOT);
+            for (Dialect dialect : DIALECT_LIST) {
+                if (dialect.isSupported(driver)) {
+                    return dialect;
+                }
             }
         }
         return MYSQL_DIALECT;
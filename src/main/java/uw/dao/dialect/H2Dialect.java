@@ -0,0 +1,84 @@
+package uw.dao.dialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * h2方言，可以作为内嵌数据库用于本地开发和基准测试.
+ *
+ * @author axeon
+ */
+public class H2Dialect extends Dialect {
+
+    /**
+     * 适用于h2的驱动.
+     *
+     * @param driverClassName 小写的数据库驱动名称
+     * @return boolean
+     */
+    @Override
+    public boolean isSupported(String driverClassName) {
+        return driverClassName.startsWith("org.h2.");
+    }
+
+    /**
+     * 获得分页sql.
+     *
+     * @param sql       执行sql
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return
+     */
+    @Override
+    public Object[] getPagedSQL(String sql, int startPos, int resultNum) {
+        return new Object[]{sql + " limit ? offset ?", resultNum, startPos};
+    }
+
+    /**
+     * 获得延迟关联的分页sql.
+     *
+     * @param sql       执行sql
+     * @param pkColumn  主键列名
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return 不支持时返回null
+     */
+    @Override
+    public Object[] getDeferredJoinPagedSQL(String sql, String pkColumn, int startPos, int resultNum) {
+        String[] parts = parseSimpleSelect(sql);
+        if (parts == null) {
+            return null;
+        }
+        return new Object[]{buildDeferredJoinSQL(parts, pkColumn, " limit ? offset ?"), resultNum, startPos};
+    }
+
+    /**
+     * 获得按主键插入或更新的sql，使用merge into ... key.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return sql
+     */
+    @Override
+    public String getUpsertSQL(String tableName, String[] columns, String[] pkColumns) {
+        return "merge into " + tableName + " " + buildInsertValues(columns).replace(") values (", ") key (" + String.join(",", pkColumns) + ") values (");
+    }
+
+    /**
+     * 创建需要返回自增主键的insert语句，h2按列名返回时区分大小写，使用RETURN_GENERATED_KEYS.
+     *
+     * @param con        连接
+     * @param sql        insert sql
+     * @param keyColumns 自增主键列名
+     * @return PreparedStatement
+     * @throws SQLException SQL异常
+     */
+    @Override
+    public PreparedStatement prepareInsertStatement(Connection con, String sql, String[] keyColumns) throws SQLException {
+        return con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+}
@@ -7,6 +7,17 @@ package uw.dao.dialect;
  */
 public class MySQLDialect extends Dialect {
 
+    /**
+     * 适用于mysql和mariadb的驱动.
+     *
+     * @param driverClassName 小写的数据库驱动名称
+     * @return boolean
+     */
+    @Override
+    public boolean isSupported(String driverClassName) {
+        return driverClassName.contains("mysql") || driverClassName.contains("mariadb");
+    }
+
     /**
      * 获得分页sql.
      *
@@ -20,4 +31,57 @@ public class MySQLDialect extends Dialect {
         return new Object[]{sql + " limit ?,?", startPos, resultNum};
     }
 
+    /**
+     * 获得延迟关联的分页sql，子查询只通过主键索引跳过前startPos行.
+     *
+     * @param sql       执行sql
+     * @param pkColumn  主键列名
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return 不支持时返回null
+     */
+    @Override
+    public Object[] getDeferredJoinPagedSQL(String sql, String pkColumn, int startPos, int resultNum) {
+        String[] parts = parseSimpleSelect(sql);
+        if (parts == null) {
+            return null;
+        }
+        return new Object[]{buildDeferredJoinSQL(parts, pkColumn, " limit ?,?"), startPos, resultNum};
+    }
+
+    /**
+     * 获得按主键插入或更新的sql，使用on duplicate key update.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return sql
+     */
+    @Override
+    public String getUpsertSQL(String tableName, String[] columns, String[] pkColumns) {
+        String[] updateColumns = getNonPkColumns(columns, pkColumns);
+        if (updateColumns.length == 0) {
+            updateColumns = pkColumns;
+        }
+        StringBuilder sb = new StringBuilder(64 + columns.length * 40);
+        sb.append("insert into ").append(tableName).append(' ').append(buildInsertValues(columns)).append(" on duplicate key update ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(updateColumns[i]).append("=values(").append(updateColumns[i]).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 流式读取大结果集时的fetchSize，mysql驱动需要Integer.MIN_VALUE才会逐行读取.
+     *
+     * @return fetchSize
+     */
+    @Override
+    public int getStreamFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
 }
@@ -7,6 +7,17 @@ package uw.dao.dialect;
  */
 public class OracleDialect extends Dialect {
 
+    /**
+     * 适用于oracle的驱动.
+     *
+     * @param driverClassName 小写的数据库驱动名称
+     * @return boolean
+     */
+    @Override
+    public boolean isSupported(String driverClassName) {
+        return driverClassName.contains("oracle");
+    }
+
     /**
      * 获得分页sql.
      *
@@ -22,4 +33,115 @@ public class OracleDialect extends Dialect {
                 startPos + resultNum, startPos};
     }
 
+    /**
+     * 获得延迟关联的分页sql，主键子查询和getPagedSQL一样使用rownum分页，oracle 11g也可以使用.
+     *
+     * @param sql       执行sql
+     * @param pkColumn  主键列名
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return 不支持时返回null
+     */
+    @Override
+    public Object[] getDeferredJoinPagedSQL(String sql, String pkColumn, int startPos, int resultNum) {
+        String[] parts = parseSimpleSelect(sql);
+        if (parts == null) {
+            return null;
+        }
+        return new Object[]{buildDeferredJoinSQL(parts, pkColumn, "select uw_dj_pk from (select sub.uw_dj_pk, rownum rnum from (",
+                ") sub where rownum <= ?) where rnum > ?"), startPos + resultNum, startPos};
+    }
+
+    /**
+     * 获得按主键插入或更新的sql，使用merge into.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return sql
+     */
+    @Override
+    public String getUpsertSQL(String tableName, String[] columns, String[] pkColumns) {
+        StringBuilder sb = new StringBuilder(128 + columns.length * 48);
+        sb.append("merge into ").append(tableName).append(" t using (select ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("? ").append(columns[i]);
+        }
+        sb.append(" from dual) s on (");
+        for (int i = 0; i < pkColumns.length; i++) {
+            if (i > 0) {
+                sb.append(" and ");
+            }
+            sb.append("t.").append(pkColumns[i]).append("=s.").append(pkColumns[i]);
+        }
+        sb.append(')');
+        String[] updateColumns = getNonPkColumns(columns, pkColumns);
+        if (updateColumns.length > 0) {
+            sb.append(" when matched then update set ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append("t.").append(updateColumns[i]).append("=s.").append(updateColumns[i]);
+            }
+        }
+        sb.append(" when not matched then insert (").append(String.join(",", columns)).append(") values (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("s.").append(columns[i]);
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    /**
+     * 获得多行插入sql，oracle不支持values多行，使用insert all.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param rowNum    行数
+     * @return 多行插入sql
+     */
+    @Override
+    public String getBatchInsertSQL(String tableName, String[] columns, int rowNum) {
+        StringBuilder into = new StringBuilder(32 + tableName.length() + columns.length * 20);
+        into.append(" into ").append(tableName).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                into.append(',');
+            }
+            into.append(columns[i]);
+        }
+        into.append(") values (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                into.append(',');
+            }
+            into.append('?');
+        }
+        into.append(')');
+        StringBuilder sb = new StringBuilder(16 + into.length() * rowNum);
+        sb.append("insert all");
+        for (int r = 0; r < rowNum; r++) {
+            sb.append(into);
+        }
+        sb.append(" select 1 from dual");
+        return sb.toString();
+    }
+
+    /**
+     * 多行插入时单条sql的最大参数个数，insert all过长时解析很慢，限制得小一些.
+     *
+     * @return 最大参数个数
+     */
+    @Override
+    public int getBatchInsertMaxParams() {
+        return 4096;
+    }
+
 }
@@ -0,0 +1,124 @@
+package uw.dao.dialect;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * postgresql方言.
+ *
+ * @author axeon
+ */
+public class PostgreSQLDialect extends Dialect {
+
+    /**
+     * 适用于postgresql的驱动.
+     *
+     * @param driverClassName 小写的数据库驱动名称
+     * @return boolean
+     */
+    @Override
+    public boolean isSupported(String driverClassName) {
+        return driverClassName.contains("postgresql");
+    }
+
+    /**
+     * 获得分页sql.
+     *
+     * @param sql       执行sql
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return
+     */
+    @Override
+    public Object[] getPagedSQL(String sql, int startPos, int resultNum) {
+        return new Object[]{sql + " limit ? offset ?", resultNum, startPos};
+    }
+
+    /**
+     * 获得延迟关联的分页sql.
+     *
+     * @param sql       执行sql
+     * @param pkColumn  主键列名
+     * @param startPos  起始位置
+     * @param resultNum 结果集大小
+     * @return 不支持时返回null
+     */
+    @Override
+    public Object[] getDeferredJoinPagedSQL(String sql, String pkColumn, int startPos, int resultNum) {
+        String[] parts = parseSimpleSelect(sql);
+        if (parts == null) {
+            return null;
+        }
+        return new Object[]{buildDeferredJoinSQL(parts, pkColumn, " limit ? offset ?"), resultNum, startPos};
+    }
+
+    /**
+     * 获得按主键插入或更新的sql，使用on conflict do update.
+     *
+     * @param tableName 表名
+     * @param columns   列名
+     * @param pkColumns 主键列名
+     * @return sql
+     */
+    @Override
+    public String getUpsertSQL(String tableName, String[] columns, String[] pkColumns) {
+        String[] updateColumns = getNonPkColumns(columns, pkColumns);
+        StringBuilder sb = new StringBuilder(64 + columns.length * 40);
+        sb.append("insert into ").append(tableName).append(' ').append(buildInsertValues(columns));
+        sb.append(" on conflict (").append(String.join(",", pkColumns)).append(')');
+        if (updateColumns.length == 0) {
+            sb.append(" do nothing");
+        } else {
+            sb.append(" do update set ");
+            for (int i = 0; i < updateColumns.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(updateColumns[i]).append("=excluded.").append(updateColumns[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 获得一条语句完成序列号段分配的sql，使用update ... returning.
+     *
+     * @param tableName 序列表名
+     * @return sql
+     */
+    @Override
+    public String getSequenceAllocateSQL(String tableName) {
+        return "update " + tableName + " set seq_id=seq_id+greatest(increment_num,?),last_update=now() where seq_name=? returning seq_id,increment_num";
+    }
+
+    /**
+     * 创建需要返回自增主键的insert语句，驱动会给列名加引号，需要转为小写才能匹配未加引号建表的列.
+     *
+     * @param con        连接
+     * @param sql        insert sql
+     * @param keyColumns 自增主键列名
+     * @return PreparedStatement
+     * @throws SQLException SQL异常
+     */
+    @Override
+    public PreparedStatement prepareInsertStatement(Connection con, String sql, String[] keyColumns) throws SQLException {
+        String[] columns = new String[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+            columns[i] = keyColumns[i].toLowerCase(Locale.ROOT);
+        }
+        return con.prepareStatement(sql, columns);
+    }
+
+    /**
+     * 多行插入时单条sql的最大参数个数，协议中参数个数占2个字节，pgjdbc按有符号数发送，超过32767会报错.
+     *
+     * @return 最大参数个数
+     */
+    @Override
+    public int getBatchInsertMaxParams() {
+        return 32767;
+    }
+
+}
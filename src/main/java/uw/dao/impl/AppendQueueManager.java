@@ -0,0 +1,499 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.DataEntity;
+import uw.dao.SqlExecuteRejectedException;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfig.AppendQueueConfig;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.dialect.Dialect;
+import uw.dao.util.DaoReflectUtils;
+import uw.dao.util.TableShardingUtils;
+import uw.dao.vo.FieldMetaInfo;
+import uw.dao.vo.TableMetaInfo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 追加写入队列管理.
+ * 多个线程append的单行数据按连接名+表名进入同一个有界队列，由少量写入线程合并为多行insert，一次提交一批.
+ * 队列达到maxBatchRows或等待超过maxDelay时写入，队列满时调用线程最多等待offerTimeout.
+ * 追加写入不回填自增主键.
+ *
+ * @author axeon
+ */
+public class AppendQueueManager {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(AppendQueueManager.class);
+
+    /**
+     * 空闲队列的回收时间.
+     */
+    private static final long QUEUE_IDLE_TIMEOUT = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * 停止时等待写入线程的秒数.
+     */
+    private static final int STOP_WAIT_SECONDS = 10;
+
+    /**
+     * 用于记录统计信息的DAOFactoryImpl对象.
+     */
+    private static final DAOFactoryImpl dao = new DAOFactoryImpl();
+
+    /**
+     * 队列表，key为连接名#表名.
+     */
+    private static final Map<String, AppendQueue> queueMap = new ConcurrentHashMap<>();
+
+    /**
+     * 写入线程池.
+     */
+    private static volatile ExecutorService writerService = null;
+
+    /**
+     * 定时检查超时数据的线程.
+     */
+    private static ScheduledExecutorService timerService = null;
+
+    /**
+     * 每次提交的最大行数.
+     */
+    private static int maxBatchRows = 500;
+
+    /**
+     * 每个表的队列容量.
+     */
+    private static int queueCapacity = 10000;
+
+    /**
+     * 队列满时入队的最大等待毫秒数.
+     */
+    private static int offerTimeout = 1000;
+
+    /**
+     * 构造函数.
+     */
+    private AppendQueueManager() {
+    }
+
+    /**
+     * 追加写入一个实体.
+     *
+     * @param connName  连接名，为空则按表名路由
+     * @param entity    实体
+     * @param tableName 表名，为空则使用实体的表名，配置了分片字段的分表按字段值写入对应的分表，没有配置分片字段的date分表写入当前日期的分表
+     * @return 提交后完成的future，写入失败时以TransactionException结束
+     */
+    static CompletableFuture<Void> append(String connName, DataEntity entity, String tableName) {
+        TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(entity.getClass());
+        if (emi == null) {
+            return failed(new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! "));
+        }
+        if (tableName == null || tableName.equals("")) {
+            tableName = emi.getTableName();
+        }
+        try {
+            tableName = EntityCommandImpl.getShardTableName(emi, tableName, entity);
+        } catch (TransactionException e) {
+            return failed(e);
+        }
+        if (DaoConfigManager.getConfig() != null) {
+            // 没有配置分片字段的date分表写入当前日期的分表
+            tableName = TableShardingUtils.getTableNameByTime(tableName, System.currentTimeMillis());
+        }
+        if (connName == null || connName.equals("")) {
+            connName = DaoConfigManager.getRouteMapping(tableName, "write");
+        }
+        ensureStarted();
+        AppendQueue queue = getQueue(connName, tableName, emi);
+        Object[] values = new Object[queue.fields.length];
+        try {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = queue.fields[i].getField().get(entity);
+            }
+        } catch (Exception e) {
+            return failed(new TransactionException(connName + ": " + e.getMessage(), e));
+        }
+        AppendItem item = new AppendItem(values);
+        try {
+            if (!queue.queue.offer(item, offerTimeout, TimeUnit.MILLISECONDS)) {
+                return failed(new TransactionException(connName + ": append queue of " + tableName + " is full!"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed(new TransactionException(connName + ": append to " + tableName + " interrupted!", e));
+        }
+        queue.lastAppendTime = System.nanoTime();
+        if (queue.removed || queue.queue.size() >= maxBatchRows) {
+            schedule(queue);
+        }
+        return item.future;
+    }
+
+    /**
+     * 停止写入线程，并写入队列中剩余的数据.
+     */
+    public static synchronized void stop() {
+        if (writerService == null) {
+            return;
+        }
+        timerService.shutdownNow();
+        writerService.shutdown();
+        try {
+            writerService.awaitTermination(STOP_WAIT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (AppendQueue queue : queueMap.values()) {
+            drain(queue);
+        }
+        queueMap.clear();
+        timerService = null;
+        writerService = null;
+    }
+
+    /**
+     * 按配置启动写入线程.
+     */
+    private static void ensureStarted() {
+        if (writerService != null) {
+            return;
+        }
+        synchronized (AppendQueueManager.class) {
+            if (writerService != null) {
+                return;
+            }
+            AppendQueueConfig config = DaoConfigManager.getConfig() == null ? null : DaoConfigManager.getConfig().getAppendQueue();
+            if (config == null) {
+                config = new AppendQueueConfig();
+            }
+            maxBatchRows = Math.max(1, config.getMaxBatchRows());
+            queueCapacity = Math.max(maxBatchRows, config.getQueueCapacity());
+            offerTimeout = Math.max(0, config.getOfferTimeout());
+            AtomicInteger seq = new AtomicInteger();
+            ExecutorService writers = Executors.newFixedThreadPool(Math.max(1, config.getWriterThreads()), r -> {
+                Thread t = new Thread(r);
+                t.setName("uw-dao.append-writer-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            timerService = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r);
+                t.setName("uw-dao.append-timer");
+                t.setDaemon(true);
+                return t;
+            });
+            int maxDelay = Math.max(1, config.getMaxDelay());
+            timerService.scheduleWithFixedDelay(AppendQueueManager::checkQueues, maxDelay, maxDelay, TimeUnit.MILLISECONDS);
+            writerService = writers;
+        }
+    }
+
+    /**
+     * 获得或创建队列.
+     *
+     * @param connName  连接名
+     * @param tableName 表名
+     * @param emi       TableMetaInfo对象
+     * @return 队列
+     */
+    private static AppendQueue getQueue(String connName, String tableName, TableMetaInfo emi) {
+        String key = connName + "#" + tableName;
+        AppendQueue queue = queueMap.get(key);
+        if (queue == null) {
+            queue = queueMap.computeIfAbsent(key, k -> new AppendQueue(connName, tableName, emi));
+        }
+        return queue;
+    }
+
+    /**
+     * 定时把有数据的队列交给写入线程，回收长时间空闲的队列(如过期的日期分表).
+     */
+    private static void checkQueues() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, AppendQueue> kv : queueMap.entrySet()) {
+            AppendQueue queue = kv.getValue();
+            if (!queue.queue.isEmpty()) {
+                schedule(queue);
+            } else if (now - queue.lastAppendTime > QUEUE_IDLE_TIMEOUT) {
+                // 先标记再移除，移除后才入队的数据由append线程负责调度
+                queue.removed = true;
+                queueMap.remove(kv.getKey(), queue);
+                if (!queue.queue.isEmpty()) {
+                    schedule(queue);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调度写入，同一个队列同时只有一个写入线程，保证写入顺序.
+     *
+     * @param queue 队列
+     */
+    private static void schedule(AppendQueue queue) {
+        ExecutorService service = writerService;
+        if (service != null && queue.scheduled.compareAndSet(false, true)) {
+            try {
+                service.execute(() -> {
+                    try {
+                        drain(queue);
+                    } finally {
+                        queue.scheduled.set(false);
+                    }
+                    if (queue.queue.size() >= maxBatchRows) {
+                        schedule(queue);
+                    }
+                });
+            } catch (Exception e) {
+                queue.scheduled.set(false);
+                logger.error("AppendQueueManager schedule {} failed: {}", queue.tableName, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 写入队列中的全部数据，写入期间新进入的数据合并到下一批.
+     *
+     * @param queue 队列
+     */
+    private static void drain(AppendQueue queue) {
+        ArrayList<AppendItem> batch = new ArrayList<>(Math.min(maxBatchRows, queueCapacity));
+        while (queue.queue.drainTo(batch, maxBatchRows) > 0) {
+            write(queue, batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 在一个事务中写入一批数据，成功后通知等待的调用者.
+     *
+     * @param queue 队列
+     * @param batch 数据
+     */
+    private static void write(AppendQueue queue, List<AppendItem> batch) {
+        long start = System.nanoTime();
+        long connTime = 0, dbTime = 0;
+        int connId = 0;
+        String exception = null;
+        boolean rejected = false;
+        String connName = queue.connName;
+        String sql = queue.sql;
+        Connection con = null;
+        int effect = 0;
+        try {
+            SqlExecuteListenerManager.beforeAcquire(connName, sql);
+            con = ConnectionManager.getConnection(connName);
+            connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+            con.setAutoCommit(false);
+            Dialect dialect = ConnectionManager.getDialect(connName);
+            if (dialect == null) {
+                dialect = new Dialect();
+            }
+            int maxRows = Math.max(1, dialect.getBatchInsertMaxParams() / queue.fields.length);
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+            long dbStart = System.nanoTime();
+            for (int from = 0; from < batch.size(); from += maxRows) {
+                effect += executeInsert(con, dialect, queue, batch, from, Math.min(batch.size(), from + maxRows));
+            }
+            con.commit();
+            dbTime = (System.nanoTime() - dbStart) / 1000;
+            for (AppendItem item : batch) {
+                item.future.complete(null);
+            }
+        } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+            } else {
+                exception = e.toString();
+                SqlExecuteListenerManager.onError(connName, sql, null, e);
+            }
+            logger.error("AppendQueueManager write {} rows to {} failed: {}", batch.size(), queue.tableName, e.getMessage());
+            if (con != null) {
+                try {
+                    con.rollback();
+                } catch (Exception re) {
+                    logger.error(re.getMessage(), re);
+                }
+            }
+            TransactionException te = new TransactionException(connName + ": " + e.getMessage(), e);
+            for (AppendItem item : batch) {
+                item.future.completeExceptionally(te);
+            }
+        } finally {
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                    con.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, "append: " + batch.size(), effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+            }
+        }
+    }
+
+    /**
+     * 执行一段多行insert.
+     *
+     * @param con     Connection对象
+     * @param dialect 方言
+     * @param queue   队列
+     * @param batch   数据
+     * @param from    开始行
+     * @param to      结束行(不含)
+     * @return 影响的行数
+     * @throws Exception 异常
+     */
+    private static int executeInsert(Connection con, Dialect dialect, AppendQueue queue, List<AppendItem> batch, int from, int to)
+            throws Exception {
+        int rowNum = to - from;
+        String sql = rowNum == 1 ? queue.sql : queue.sqlCache.get(rowNum);
+        if (sql == null) {
+            sql = dialect.getBatchInsertSQL(queue.tableName, queue.columns, rowNum);
+            queue.sqlCache.put(rowNum, sql);
+        }
+        PreparedStatement pstmt = null;
+        try {
+            pstmt = con.prepareStatement(sql);
+            int seq = 0;
+            for (int i = from; i < to; i++) {
+                for (Object value : batch.get(i).values) {
+                    DaoReflectUtils.CommandUpdateReflect(pstmt, ++seq, value);
+                }
+            }
+            return pstmt.executeUpdate();
+        } finally {
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (SQLException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 返回一个失败的future.
+     *
+     * @param e 异常
+     * @return future
+     */
+    private static CompletableFuture<Void> failed(TransactionException e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * 一个连接名+表名的追加写入队列.
+     */
+    private static class AppendQueue {
+
+        /**
+         * 连接名.
+         */
+        private final String connName;
+
+        /**
+         * 表名.
+         */
+        private final String tableName;
+
+        /**
+         * 列名.
+         */
+        private final String[] columns;
+
+        /**
+         * 字段信息，与列名顺序一致.
+         */
+        private final FieldMetaInfo[] fields;
+
+        /**
+         * 单行insert sql.
+         */
+        private final String sql;
+
+        /**
+         * 多行insert sql缓存，key为行数；stop()时调用线程也会执行写入，所以使用并发map.
+         */
+        private final Map<Integer, String> sqlCache = new ConcurrentHashMap<>();
+
+        /**
+         * 数据队列.
+         */
+        private final ArrayBlockingQueue<AppendItem> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        /**
+         * 是否已交给写入线程.
+         */
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        /**
+         * 最后一次append的时间.
+         */
+        private volatile long lastAppendTime = System.nanoTime();
+
+        /**
+         * 是否已从队列表中移除.
+         */
+        private volatile boolean removed = false;
+
+        AppendQueue(String connName, String tableName, TableMetaInfo emi) {
+            this.connName = connName;
+            this.tableName = tableName;
+            this.columns = emi.getColumnMap().keySet().toArray(new String[0]);
+            this.fields = emi.getColumnMap().values().toArray(new FieldMetaInfo[0]);
+            this.sql = EntityCommandImpl.getInsertSql(emi, tableName);
+        }
+    }
+
+    /**
+     * 一行待写入的数据.
+     */
+    private static class AppendItem {
+
+        /**
+         * 一行的值.
+         */
+        private final Object[] values;
+
+        /**
+         * 提交后完成的future.
+         */
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        AppendItem(Object[] values) {
+            this.values = values;
+        }
+    }
+
+}
@@ -0,0 +1,277 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.BatchLoader;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.vo.TableMetaInfo;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量加载器实现.
+ * 请求按连接名+实体类+表名分组，相同主键只查询一次，第一个请求拿到原始实体，其它请求拿到复制的实体.
+ *
+ * @author axeon
+ */
+public class BatchLoaderImpl implements BatchLoader {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(BatchLoaderImpl.class);
+
+    /**
+     * 时间窗口加载器的执行线程.
+     */
+    private static volatile ScheduledExecutorService windowService = null;
+
+    /**
+     * 全局的时间窗口加载器.
+     */
+    private static volatile BatchLoaderImpl windowLoader = null;
+
+    /**
+     * DAOFactoryImpl对象.
+     */
+    private final DAOFactoryImpl dao;
+
+    /**
+     * 自动执行的时间窗口毫秒数，0表示需要手动dispatch.
+     */
+    private final int window;
+
+    /**
+     * 等待执行的请求.
+     */
+    private Map<LoadGroup, LinkedHashMap<String, PendingLoad>> pendingMap = new LinkedHashMap<>();
+
+    /**
+     * 等待执行的请求数.
+     */
+    private int pendingSize = 0;
+
+    /**
+     * 构造器.
+     *
+     * @param dao    DAOFactoryImpl对象
+     * @param window 自动执行的时间窗口毫秒数，0表示需要手动dispatch
+     */
+    BatchLoaderImpl(DAOFactoryImpl dao, int window) {
+        this.dao = dao;
+        this.window = window;
+    }
+
+    /**
+     * 获得全局的时间窗口加载器，使用非事务的连接.
+     *
+     * @return 时间窗口加载器
+     */
+    static BatchLoaderImpl getWindowLoader() {
+        BatchLoaderImpl loader = windowLoader;
+        if (loader == null) {
+            synchronized (BatchLoaderImpl.class) {
+                loader = windowLoader;
+                if (loader == null) {
+                    int window = DaoConfigManager.getConfig() == null ? 2 : DaoConfigManager.getConfig().getBatchLoadWindow();
+                    windowService = Executors.newScheduledThreadPool(2, r -> {
+                        Thread t = new Thread(r);
+                        t.setName("uw-dao.batch-loader");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    loader = windowLoader = new BatchLoaderImpl(new DAOFactoryImpl(), Math.max(1, window));
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * 加入一个按主键加载的请求.
+     *
+     * @param cls 要映射的对象类型
+     * @param id  主键
+     * @param <T> 映射的类型
+     * @return 加载完成的future
+     */
+    @Override
+    public <T> CompletableFuture<Optional<T>> load(Class<T> cls, Serializable id) {
+        return load(null, cls, null, id);
+    }
+
+    /**
+     * 加入一个按主键加载的请求.
+     *
+     * @param connName  连接名，如设置为null，则根据表名动态路由确定
+     * @param cls       要映射的对象类型
+     * @param tableName 指定表名
+     * @param id        主键
+     * @param <T>       映射的类型
+     * @return 加载完成的future
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<Optional<T>> load(String connName, Class<T> cls, String tableName, Serializable id) {
+        CompletableFuture<Optional<T>> future = new CompletableFuture<>();
+        if (id == null) {
+            future.complete(Optional.empty());
+            return future;
+        }
+        boolean schedule;
+        synchronized (this) {
+            schedule = window > 0 && pendingSize == 0;
+            pendingMap.computeIfAbsent(new LoadGroup(connName, cls, tableName), k -> new LinkedHashMap<>())
+                    .computeIfAbsent(id.toString(), k -> new PendingLoad(id)).futures.add((CompletableFuture<Optional<?>>) (Object) future);
+            pendingSize++;
+        }
+        if (schedule) {
+            windowService.schedule(this::dispatch, window, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * 获得等待执行的请求数.
+     *
+     * @return 请求数
+     */
+    @Override
+    public synchronized int getPendingSize() {
+        return pendingSize;
+    }
+
+    /**
+     * 执行全部等待的请求.
+     */
+    @Override
+    public void dispatch() {
+        Map<LoadGroup, LinkedHashMap<String, PendingLoad>> map;
+        synchronized (this) {
+            if (pendingSize == 0) {
+                return;
+            }
+            map = pendingMap;
+            pendingMap = new LinkedHashMap<>();
+            pendingSize = 0;
+        }
+        for (Map.Entry<LoadGroup, LinkedHashMap<String, PendingLoad>> kv : map.entrySet()) {
+            dispatchGroup(kv.getKey(), kv.getValue());
+        }
+    }
+
+    /**
+     * 执行一组请求，并把结果分发给每个请求.
+     *
+     * @param group 分组
+     * @param loads 请求，key为主键字符串
+     */
+    private void dispatchGroup(LoadGroup group, LinkedHashMap<String, PendingLoad> loads) {
+        List<Serializable> ids = new ArrayList<>(loads.size());
+        for (PendingLoad load : loads.values()) {
+            ids.add(load.id);
+        }
+        try {
+            TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(group.cls);
+            ArrayList<?> list = EntityCommandImpl.loadByIds(dao, group.connName, group.cls, group.tableName, ids, 1);
+            Map<String, Object> entityMap = new HashMap<>(list.size() * 2);
+            for (Object entity : list) {
+                entityMap.put(String.valueOf(emi.getPklist().get(0).getField().get(entity)), entity);
+            }
+            for (Map.Entry<String, PendingLoad> kv : loads.entrySet()) {
+                Object entity = entityMap.get(kv.getKey());
+                List<CompletableFuture<Optional<?>>> futures = kv.getValue().futures;
+                // 先复制全部结果再完成，完成时会执行调用者的后续操作，可能修改第一个实体
+                List<Optional<?>> results = new ArrayList<>(futures.size());
+                for (int i = 0; i < futures.size(); i++) {
+                    results.add(Optional.ofNullable(i == 0 ? entity : SingleFlight.copyEntity(entity)));
+                }
+                for (int i = 0; i < futures.size(); i++) {
+                    futures.get(i).complete(results.get(i));
+                }
+            }
+        } catch (Throwable e) {
+            logger.error("BatchLoader load {} failed: {}", group.cls.getName(), e.getMessage());
+            TransactionException te = e instanceof TransactionException ? (TransactionException) e : new TransactionException(e.getMessage(), e);
+            for (PendingLoad load : loads.values()) {
+                for (CompletableFuture<Optional<?>> future : load.futures) {
+                    future.completeExceptionally(te);
+                }
+            }
+        }
+    }
+
+    /**
+     * 请求分组.
+     */
+    private static class LoadGroup {
+
+        /**
+         * 连接名.
+         */
+        private final String connName;
+
+        /**
+         * 实体类.
+         */
+        private final Class<?> cls;
+
+        /**
+         * 表名.
+         */
+        private final String tableName;
+
+        LoadGroup(String connName, Class<?> cls, String tableName) {
+            this.connName = connName;
+            this.cls = cls;
+            this.tableName = tableName;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(connName, cls, tableName);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof LoadGroup)) {
+                return false;
+            }
+            LoadGroup other = (LoadGroup) obj;
+            return cls == other.cls && Objects.equals(connName, other.connName) && Objects.equals(tableName, other.tableName);
+        }
+    }
+
+    /**
+     * 一个主键的请求.
+     */
+    private static class PendingLoad {
+
+        /**
+         * 主键.
+         */
+        private final Serializable id;
+
+        /**
+         * 请求的future.
+         */
+        private final List<CompletableFuture<Optional<?>>> futures = new ArrayList<>(1);
+
+        PendingLoad(Serializable id) {
+            this.id = id;
+        }
+    }
+
+}
@@ -3,13 +3,18 @@ package uw.dao.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.dao.BatchupdateManager;
+import uw.dao.SqlExecuteRejectedException;
 import uw.dao.TransactionException;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.dialect.Dialect;
+import uw.dao.util.DaoReflectUtils;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -26,9 +31,19 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
     private static final Logger logger = LoggerFactory.getLogger(BatchupdateManagerImpl.class);
 
     /**
-     * pstmt集合.
+     * 默认的批量更新大小.
      */
-    private LinkedHashMap<String, PreparedStatement> map = null;
+    private static final int DEFAULT_BATCH_SIZE = 50;
+
+    /**
+     * DAOFactoryImpl对象，用于记录多行insert的执行统计.
+     */
+    private final DAOFactoryImpl dao;
+
+    /**
+     * 批量语句集合，key为sql.
+     */
+    private LinkedHashMap<String, BatchStatement> map = null;
 
     /**
      * 是否批量模式.
@@ -38,22 +53,35 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
     /**
      * 批量更新大小.
      */
-    private int batchSize = 50;
+    private int batchSize = DEFAULT_BATCH_SIZE;
 
     /**
-     * 批量更新的sizeMap.
+     * 批量更新的结果，key为sql.
      */
-    private LinkedHashMap<String, Integer> sizeMap = null;
+    private LinkedHashMap<String, List<Integer>> resultMap = null;
 
     /**
-     * 批量更新的resultMap.
+     * 多行insert的最大字节数估算值，避免超过数据库的max_allowed_packet.
      */
-    private LinkedHashMap<String, ArrayList<Integer>> resultMap = null;
+    private static final int MAX_INSERT_BYTES = 1 << 20;
+
+    /**
+     * 待合并的单行insert，key为单行insert sql.
+     */
+    private LinkedHashMap<String, InsertBuffer> insertMap = null;
+
+    /**
+     * 最近一次缓存insert的InsertBuffer，只有连续的同表insert才合并.
+     */
+    private InsertBuffer lastInsert = null;
 
     /**
      * 默认构造器,只能在本包内调用.
+     *
+     * @param dao DAOFactoryImpl对象
      */
-    protected BatchupdateManagerImpl() {
+    protected BatchupdateManagerImpl(DAOFactoryImpl dao) {
+        this.dao = dao;
     }
 
     /**
@@ -65,38 +93,26 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
      * @throws SQLException SQL异常
      */
     public PreparedStatement prepareStatement(Connection conn, String sql) throws SQLException {
-        // pstmt对象
-        PreparedStatement pstmt = null;
-
         if (!this.isBatch) { // 非batchupdate
-            pstmt = conn.prepareStatement(sql);
-        } else { // 进入update状态
-            int bsize = 0; // 该pstmt已经addBatch的次数
-            if (map.containsKey(sql)) {
-                pstmt = map.get(sql);
-                // 判断连接是否有效，是否打开事务处理
-                if (pstmt.getConnection().isClosed() || pstmt.getConnection().getAutoCommit()) {
-                    throw new SQLException("TransactionException in BatchUpdateManagerImpl.java:prepareStatement()");
-                }
-                bsize = sizeMap.get(sql).intValue() + 1;
-            } else {
-                pstmt = conn.prepareStatement(sql);
-                map.put(sql, pstmt);
-                bsize = 1;
-                // 初始化返回值
-                resultMap.put(sql, new ArrayList<Integer>());
-            }
-            // 把当前bsize更新
-            sizeMap.put(sql, new Integer(bsize));
-            try {
-                checkToBatchUpdate();
-            } catch (Exception ex) {
-                logger.error(ex.getMessage(), ex);
+            return conn.prepareStatement(sql);
+        }
+        // 先写入之前缓存的insert，保证执行顺序
+        flushInserts();
+        BatchStatement stmt = map.get(sql);
+        if (stmt == null) {
+            // 判断是否打开事务处理
+            if (conn.getAutoCommit()) {
+                throw new SQLException("TransactionException in BatchUpdateManagerImpl.java:prepareStatement()");
             }
+            stmt = new BatchStatement(conn.prepareStatement(sql));
+            map.put(sql, stmt);
+            resultMap.put(sql, stmt.results);
+        } else if (stmt.size >= this.batchSize) {
+            // 只执行达到批次大小的语句
+            flushStatement(stmt);
         }
-
-        // 返回该pstmt
-        return pstmt;
+        stmt.size++;
+        return stmt.pstmt;
     }
 
     /**
@@ -107,9 +123,225 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
     public void startBatchUpdate() {
         this.isBatch = true;
         // 初始化map
-        map = new LinkedHashMap<String, PreparedStatement>();
-        sizeMap = new LinkedHashMap<String, Integer>();
-        resultMap = new LinkedHashMap<String, ArrayList<Integer>>();
+        map = new LinkedHashMap<String, BatchStatement>();
+        resultMap = new LinkedHashMap<String, List<Integer>>();
+        insertMap = new LinkedHashMap<String, InsertBuffer>();
+    }
+
+    /**
+     * 执行一个语句当前的批次.
+     *
+     * @param stmt 批量语句
+     * @throws SQLException SQL异常
+     */
+    private void flushStatement(BatchStatement stmt) throws SQLException {
+        if (stmt.size == 0) {
+            return;
+        }
+        stmt.size = 0;
+        addResults(stmt.results, stmt.pstmt.executeBatch());
+    }
+
+    /**
+     * 加入执行结果.
+     *
+     * @param results 结果列表
+     * @param effects executeBatch的返回值
+     */
+    private static void addResults(List<Integer> results, int[] effects) {
+        for (int effect : effects) {
+            results.add(effect);
+        }
+    }
+
+    /**
+     * 批量模式下缓存一条单行insert，连续的同表insert会被合并为多行insert执行.
+     * 开始缓存前先执行等待中的update/delete，保证按加入顺序执行.
+     *
+     * @param conn      Connection对象
+     * @param connName  连接名
+     * @param tableName 表名
+     * @param columns   列名
+     * @param sql       单行insert sql
+     * @param values    一行的值
+     * @throws SQLException SQL异常
+     */
+    public void addInsert(Connection conn, String connName, String tableName, String[] columns, String sql, Object[] values)
+            throws SQLException {
+        if (conn.getAutoCommit()) {
+            throw new SQLException("TransactionException in BatchUpdateManagerImpl.java:addInsert()");
+        }
+        InsertBuffer buffer = insertMap.get(sql);
+        if (buffer == null) {
+            buffer = new InsertBuffer(conn, connName, tableName, columns, sql);
+            insertMap.put(sql, buffer);
+            resultMap.put(sql, buffer.results);
+        }
+        if (buffer != lastInsert) {
+            // 有其它表的insert或者update/delete在等待时，先执行它们，保证执行顺序
+            flushInserts();
+            flushStatements();
+            lastInsert = buffer;
+        }
+        buffer.rows.add(values);
+        if (buffer.rows.size() >= this.batchSize) {
+            flushInsert(buffer);
+        }
+    }
+
+    /**
+     * 执行全部批量语句当前的批次.
+     *
+     * @throws SQLException SQL异常
+     */
+    private void flushStatements() throws SQLException {
+        for (BatchStatement stmt : map.values()) {
+            flushStatement(stmt);
+        }
+    }
+
+    /**
+     * 执行全部缓存的insert.
+     *
+     * @throws SQLException SQL异常
+     */
+    private void flushInserts() throws SQLException {
+        // 只有连续的同表insert才会缓存，所以只有lastInsert可能有数据
+        if (lastInsert != null) {
+            flushInsert(lastInsert);
+            lastInsert = null;
+        }
+    }
+
+    /**
+     * 执行缓存的insert，按参数个数和字节数分段，每段一条多行insert.
+     *
+     * @param buffer insert缓存
+     * @throws SQLException SQL异常
+     */
+    private void flushInsert(InsertBuffer buffer) throws SQLException {
+        List<Object[]> rows = buffer.rows;
+        if (rows.isEmpty()) {
+            return;
+        }
+        Dialect dialect = ConnectionManager.getDialect(buffer.connName);
+        if (dialect == null) {
+            dialect = new Dialect();
+        }
+        int maxRows = Math.max(1, dialect.getBatchInsertMaxParams() / buffer.columns.length);
+        List<Integer> results = buffer.results;
+        int start = 0;
+        while (start < rows.size()) {
+            int end = start;
+            long bytes = 0;
+            while (end < rows.size() && end - start < maxRows) {
+                bytes += estimateBytes(rows.get(end));
+                if (end > start && bytes > MAX_INSERT_BYTES) {
+                    break;
+                }
+                end++;
+            }
+            int effect = executeInsert(dialect, buffer, start, end);
+            // 按行返回结果，和executeBatch一致
+            int rowResult = effect == end - start ? 1 : Statement.SUCCESS_NO_INFO;
+            for (int i = start; i < end; i++) {
+                results.add(rowResult);
+            }
+            start = end;
+        }
+        rows.clear();
+    }
+
+    /**
+     * 执行一段多行insert，按实际执行的sql和行数记录执行统计.
+     *
+     * @param dialect 方言
+     * @param buffer  insert缓存
+     * @param start   开始行
+     * @param end     结束行(不含)
+     * @return 影响的行数
+     * @throws SQLException SQL异常
+     */
+    private int executeInsert(Dialect dialect, InsertBuffer buffer, int start, int end) throws SQLException {
+        long startTime = System.nanoTime();
+        long connTime = 0, dbTime = 0;
+        int connId = 0;
+        String exception = null;
+        boolean rejected = false;
+        int rowNum = end - start;
+        String sql = rowNum == 1 ? buffer.sql : buffer.sqlCache.get(rowNum);
+        if (sql == null) {
+            sql = dialect.getBatchInsertSQL(buffer.tableName, buffer.columns, rowNum);
+            buffer.sqlCache.put(rowNum, sql);
+        }
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        int effect = 0;
+        try {
+            SqlExecuteListenerManager.beforeAcquire(buffer.connName, sql);
+            // 事务中取回的是缓存时的同一个连接.
+            conn = dao.getTransactionController().getConnection(buffer.connName);
+            connId = conn.hashCode();
+            SqlExecuteListenerManager.afterAcquire(buffer.connName, sql, connId);
+            pstmt = conn.prepareStatement(sql);
+            int seq = 0;
+            for (int i = start; i < end; i++) {
+                for (Object value : buffer.rows.get(i)) {
+                    DaoReflectUtils.CommandUpdateReflect(pstmt, ++seq, value);
+                }
+            }
+            connTime = (System.nanoTime() - startTime) / 1000;
+            SqlExecuteListenerManager.beforeExecute(buffer.connName, sql, null);
+            long dbStart = System.nanoTime();
+            effect = pstmt.executeUpdate();
+            dbTime = (System.nanoTime() - dbStart) / 1000;
+            return effect;
+        } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+            } else {
+                exception = e.toString();
+                SqlExecuteListenerManager.onError(buffer.connName, sql, null, e);
+            }
+            if (e instanceof SQLException) {
+                throw (SQLException) e;
+            }
+            throw new SQLException(e.getMessage(), e);
+        } finally {
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            dao.getTransactionController().releaseConnection(conn);
+            long allTime = (System.nanoTime() - startTime) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(buffer.connName, connId, sql, "insert: " + rowNum, effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(buffer.connName, sql, null, effect, connTime, dbTime, allTime);
+            }
+        }
+    }
+
+    /**
+     * 估算一行数据的字节数.
+     *
+     * @param row 一行的值
+     * @return 字节数
+     */
+    private static long estimateBytes(Object[] row) {
+        long bytes = 0;
+        for (Object value : row) {
+            if (value instanceof String) {
+                bytes += ((String) value).length() * 3 + 4;
+            } else if (value instanceof byte[]) {
+                bytes += ((byte[]) value).length * 2 + 4;
+            } else {
+                bytes += 16;
+            }
+        }
+        return bytes;
     }
 
     /**
@@ -142,37 +374,6 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
         return this.isBatch;
     }
 
-    /**
-     * 检查哪些pstmt需要更新.
-     *
-     * @throws Exception 异常
-     */
-    private void checkToBatchUpdate() throws Exception {
-        PreparedStatement pstmt = null;
-        String key = null;
-        Iterator<String> it = sizeMap.keySet().iterator();
-        while (it.hasNext()) {
-            // 获得相关sql
-            key = it.next();
-            // 检查size是否越界,如果不越界直接进入下一个循环
-            if (sizeMap.get(key).intValue() < this.batchSize) {
-                continue;
-            }
-            // 开始做批量更新
-            pstmt = map.get(key);
-            // 先执行未完成执行的batchupdate
-            int[] effects = pstmt.executeBatch();
-            // 加入结果map
-            List<Integer> list = resultMap.get(key);
-            for (int i = 0; i < effects.length; i++) {
-                list.add(effects[i]);
-            }
-            // 更新batch次数，安全起见，先删除原有value
-            sizeMap.remove(key);
-            sizeMap.put(key, new Integer(0));
-        }
-    }
-
     /**
      * 完成需要清空map，并关闭全部pstmt.
      *
@@ -181,45 +382,24 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
      */
     @Override
     public List<List<Integer>> submit() throws TransactionException {
-        PreparedStatement pstmt = null;
-        Object key = null;
-        Iterator<String> it = map.keySet().iterator();
-        ArrayList<List<Integer>> resultlist = new ArrayList<List<Integer>>(map.size());
-        while (it.hasNext()) {
-            // 获得相关sql和pstmt
-            key = it.next();
-            pstmt = map.get(key);
-            try {
-                // 先执行未完成执行的batchupdate
-                int[] effects = pstmt.executeBatch();
-                // 加入结果map
-                List<Integer> list = resultMap.get(key);
-                for (int i = 0; i < effects.length; i++) {
-                    list.add(effects[i]);
-                }
-                resultlist.add(list);
-            } catch (Exception e) {
-                logger.error(e.getMessage(), e);
-                throw new TransactionException("TransactionException in DbTransactionManager.java:commit()", e);
-            } finally {
-                try {
-                    // 最后关闭该pstmt
-                    pstmt.close();
-                    // 从map中remove该条
-                    it.remove();
-                    map.remove(key);
-                    // 从sizeMap中remove该条
-                    sizeMap.remove(key);
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
+        ArrayList<List<Integer>> resultlist = new ArrayList<List<Integer>>(resultMap.values());
+        try {
+            // insert和update/delete开始缓存前都会先执行另一方，所以这里最多只有一方在等待
+            flushInserts();
+            flushStatements();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            throw new TransactionException("TransactionException in DbTransactionManager.java:commit()", e);
+        } finally {
+            for (BatchStatement stmt : map.values()) {
+                stmt.close();
             }
+            this.isBatch = false;
+            map = null;
+            resultMap = null;
+            insertMap = null;
+            lastInsert = null;
         }
-        this.isBatch = false;
-        map = null;
-        sizeMap = null;
-        resultMap = null;
-        batchSize = 50;
         return resultlist;
     }
 
@@ -230,13 +410,97 @@ public class BatchupdateManagerImpl implements BatchupdateManager {
      */
     @Override
     public List<String> getBatchList() {
-        ArrayList<String> sqllist = new ArrayList<String>(sizeMap.size());
-        Iterator<String> it = sizeMap.keySet().iterator();
-        while (it.hasNext()) {
-            // 获得相关sql和pstmt
-            sqllist.add(it.next());
+        return new ArrayList<String>(resultMap.keySet());
+    }
+
+    /**
+     * 批量语句.
+     */
+    private static class BatchStatement {
+
+        /**
+         * pstmt.
+         */
+        private final PreparedStatement pstmt;
+
+        /**
+         * 当前批次已经绑定的次数.
+         */
+        private int size;
+
+        /**
+         * 执行结果.
+         */
+        private final List<Integer> results = new ArrayList<Integer>();
+
+        BatchStatement(PreparedStatement pstmt) {
+            this.pstmt = pstmt;
+        }
+
+        /**
+         * 关闭pstmt.
+         */
+        void close() {
+            try {
+                pstmt.close();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 待合并的单行insert缓存.
+     */
+    private static class InsertBuffer {
+
+        /**
+         * Connection对象.
+         */
+        private final Connection conn;
+
+        /**
+         * 连接名.
+         */
+        private final String connName;
+
+        /**
+         * 表名.
+         */
+        private final String tableName;
+
+        /**
+         * 列名.
+         */
+        private final String[] columns;
+
+        /**
+         * 单行insert sql.
+         */
+        private final String sql;
+
+        /**
+         * 缓存的行.
+         */
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+
+        /**
+         * 执行结果.
+         */
+        private final List<Integer> results = new ArrayList<Integer>();
+
+        /**
+         * 多行insert sql缓存，key为行数.
+         */
+        private final HashMap<Integer, String> sqlCache = new HashMap<Integer, String>();
+
+        InsertBuffer(Connection conn, String connName, String tableName, String[] columns, String sql) {
+            this.conn = conn;
+            this.connName = connName;
+            this.tableName = tableName;
+            this.columns = columns;
+            this.sql = sql;
         }
-        return sqllist;
     }
 
 }
@@ -2,14 +2,23 @@ package uw.dao.impl;
 
 import uw.dao.*;
 import uw.dao.service.MainService;
+import uw.dao.service.SqlLatencyStats;
+import uw.dao.vo.CopyProgress;
+import uw.dao.vo.ScanRange;
 import uw.dao.vo.SqlExecuteStats;
 
 import java.io.Serializable;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * DAOFactory实现类.
@@ -38,7 +47,7 @@ public class DAOFactoryImpl extends DaoFactory {
 	 */
 	public DAOFactoryImpl() {
 		transaction = new TransactionManagerImpl();
-		batchupdate = new BatchupdateManagerImpl();
+		batchupdate = new BatchupdateManagerImpl(this);
 	}
 
 	/**
@@ -48,7 +57,7 @@ public class DAOFactoryImpl extends DaoFactory {
 	 */
 	public DAOFactoryImpl(String connname) {
 		transaction = new TransactionManagerImpl(connname);
-		batchupdate = new BatchupdateManagerImpl();
+		batchupdate = new BatchupdateManagerImpl(this);
 	}
 
 	/**
@@ -62,21 +71,179 @@ public class DAOFactoryImpl extends DaoFactory {
 	 *            sql参数
 	 * @param rowNum
 	 *            返回/影响的行数
+	 * @param connTime
+	 *            获得连接和准备语句的时间，微秒
 	 * @param dbTime
-	 *            数据库层操作数据库消耗的时间
+	 *            数据库层操作数据库消耗的时间，微秒
 	 * @param allTime
-	 *            数据库层消耗的时间
+	 *            数据库层消耗的时间，微秒
 	 * @param exception
 	 *            异常信息
 	 */
     void addSqlExecuteStats(String connName, int connId, String sql, String param, int rowNum, long connTime, long dbTime, long allTime,
                             String exception) {
-		if (statsList != null) {
-            statsList.add(new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, exception));
+		ArrayList<SqlExecuteStats> list = statsList;
+		if (list != null) {
+			// loadAll并行查询时会在多个线程中记录
+			synchronized (list) {
+				list.add(new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, exception));
+			}
+		}
+        if (SqlLatencyStats.isEnable()) {
+            SqlLatencyStats.record(connName, sql, allTime);
         }
         MainService.logStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, exception);
 	}
 
+	/**
+	 * 追加写入一个Entity实例，等待数据提交后返回.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void append(String connName, T entity) throws TransactionException {
+		append(connName, entity, null);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，等待数据提交后返回.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void append(String connName, T entity, String tableName) throws TransactionException {
+		try {
+			AppendQueueManager.append(connName, entity, tableName).join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof TransactionException) {
+				throw (TransactionException) e.getCause();
+			}
+			throw new TransactionException(e.getMessage(), e.getCause());
+		}
+	}
+
+	/**
+	 * 追加写入一个Entity实例，等待数据提交后返回.
+	 *
+	 * @param entity
+	 *            要写入的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void append(T entity) throws TransactionException {
+		append(null, entity, null);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，等待数据提交后返回.
+	 *
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void append(T entity, String tableName) throws TransactionException {
+		append(null, entity, tableName);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，入队后立即返回.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 提交后完成的future
+	 */
+	@Override
+	public <T extends DataEntity> CompletableFuture<Void> appendAsync(String connName, T entity) {
+		return appendAsync(connName, entity, null);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，入队后立即返回.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 提交后完成的future
+	 */
+	@Override
+	public <T extends DataEntity> CompletableFuture<Void> appendAsync(String connName, T entity, String tableName) {
+		return AppendQueueManager.append(connName, entity, tableName);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，入队后立即返回.
+	 *
+	 * @param entity
+	 *            要写入的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 提交后完成的future
+	 */
+	@Override
+	public <T extends DataEntity> CompletableFuture<Void> appendAsync(T entity) {
+		return appendAsync(null, entity, null);
+	}
+
+	/**
+	 * 追加写入一个Entity实例，入队后立即返回.
+	 *
+	 * @param entity
+	 *            要写入的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 提交后完成的future
+	 */
+	@Override
+	public <T extends DataEntity> CompletableFuture<Void> appendAsync(T entity, String tableName) {
+		return appendAsync(null, entity, tableName);
+	}
+
+	/**
+	 * 开始一个批量加载.
+	 *
+	 * @return BatchLoader对象
+	 */
+	@Override
+	public BatchLoader beginBatchLoad() {
+		return new BatchLoaderImpl(this, 0);
+	}
+
 	/**
 	 * 开始批量更新.
 	 *
@@ -99,6 +266,59 @@ public class DAOFactoryImpl extends DaoFactory {
 		return this.transaction;
 	}
 
+	/**
+	 * 把源连接上查询的结果复制到目标连接的表中，使用默认的写入线程数和批次行数.
+	 *
+	 * @param srcConnName
+	 *            源连接名
+	 * @param selectSql
+	 *            源查询sql
+	 * @param paramList
+	 *            源查询的参数
+	 * @param targetConnName
+	 *            目标连接名
+	 * @param targetTable
+	 *            目标表名
+	 * @return 写入的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public long copyTable(String srcConnName, String selectSql, Object[] paramList, String targetConnName, String targetTable)
+			throws TransactionException {
+		return TableCopyImpl.copy(this, srcConnName, selectSql, paramList, targetConnName, targetTable, TableCopyImpl.DEFAULT_WRITER_THREADS,
+				TableCopyImpl.DEFAULT_BATCH_SIZE, null);
+	}
+
+	/**
+	 * 把源连接上查询的结果复制到目标连接的表中.
+	 *
+	 * @param srcConnName
+	 *            源连接名
+	 * @param selectSql
+	 *            源查询sql
+	 * @param paramList
+	 *            源查询的参数
+	 * @param targetConnName
+	 *            目标连接名
+	 * @param targetTable
+	 *            目标表名
+	 * @param writerThreads
+	 *            写入线程数
+	 * @param batchSize
+	 *            每批次的行数
+	 * @param progress
+	 *            进度，可以为null
+	 * @return 写入的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public long copyTable(String srcConnName, String selectSql, Object[] paramList, String targetConnName, String targetTable,
+			int writerThreads, int batchSize, CopyProgress progress) throws TransactionException {
+		return TableCopyImpl.copy(this, srcConnName, selectSql, paramList, targetConnName, targetTable, writerThreads, batchSize, progress);
+	}
+
 	/**
 	 * 根据主键删除一个Entity实例，等效于delete.
 	 *
@@ -171,6 +391,78 @@ public class DAOFactoryImpl extends DaoFactory {
 		return delete(null, entity, tableName);
 	}
 
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int deleteAll(String connName, List<T> list) throws TransactionException {
+		return deleteAll(connName, list, null);
+	}
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int deleteAll(String connName, List<T> list, String tableName) throws TransactionException {
+		return EntityCommandImpl.deleteAll(this, connName, list, tableName);
+	}
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int deleteAll(List<T> list) throws TransactionException {
+		return deleteAll(null, list, null);
+	}
+
+	/**
+	 * 根据主键批量删除Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int deleteAll(List<T> list, String tableName) throws TransactionException {
+		return deleteAll(null, list, tableName);
+	}
+
 	/**
 	 * 关闭sql执行统计，将会影响getSqlExecuteStatsList的数据.
 	 */
@@ -318,6 +610,29 @@ public class DAOFactoryImpl extends DaoFactory {
 		return transaction.getInvokeCount();
 	}
 
+	/**
+	 * 按主键拆分整表扫描的范围，第一个范围没有下界，最后一个范围没有上界.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            表名，为null时使用实体类的表名
+	 * @param rangeCount
+	 *            范围数量
+	 * @param sampled
+	 *            是否按主键的分位点拆分
+	 * @return 范围列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public List<ScanRange> getScanRanges(String connName, Class<?> cls, String tableName, int rangeCount, boolean sampled)
+			throws TransactionException {
+		return TableScanImpl.getScanRanges(this, connName, cls, tableName, rangeCount, sampled);
+	}
+
 	/**
 	 * 根据Entity来获得seq序列。 此序列通过一个系统数据库来维护，可以保证在分布式下的可用性.
 	 *
@@ -357,6 +672,47 @@ public class DAOFactoryImpl extends DaoFactory {
 		return statsList;
 	}
 
+	/**
+	 * 延迟累加一个计数字段.
+	 *
+	 * @param tableName
+	 *            表名
+	 * @param pkColumn
+	 *            主键列名
+	 * @param pkValue
+	 *            主键值
+	 * @param column
+	 *            计数列名
+	 * @param delta
+	 *            增量
+	 */
+	@Override
+	public void incrementBehind(String tableName, String pkColumn, Serializable pkValue, String column, long delta) {
+		WriteBehindManager.increment(null, tableName, pkColumn, pkValue, column, delta);
+	}
+
+	/**
+	 * 延迟累加一个计数字段.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param tableName
+	 *            表名
+	 * @param pkColumn
+	 *            主键列名
+	 * @param pkValue
+	 *            主键值
+	 * @param column
+	 *            计数列名
+	 * @param delta
+	 *            增量
+	 */
+	@Override
+	public void incrementBehind(String connName, String tableName, String pkColumn, Serializable pkValue, String column,
+			long delta) {
+		WriteBehindManager.increment(connName, tableName, pkColumn, pkValue, column, delta);
+	}
+
 	/**
 	 * 获得事务控制器.
 	 *
@@ -655,6 +1011,64 @@ public class DAOFactoryImpl extends DaoFactory {
 		return EntityCommandImpl.list(this, connName, cls, selectsql, paramList, startIndex, resultNum, autoCount);
 	}
 
+	/**
+	 * 按日期范围并行查询全部分表.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param selectsql
+	 *            查询的SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param <T>
+	 *            映射的类型
+	 * @return DataList列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> DataList<T> listSharded(Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+			Object[] paramList) throws TransactionException {
+		return listSharded(cls, tableName, startDate, endDate, selectsql, paramList, null, 0);
+	}
+
+	/**
+	 * 按日期范围并行查询全部分表.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param selectsql
+	 *            查询的SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param comparator
+	 *            全局排序，各分表的sql需要按相同顺序order by，为null时按分表日期顺序拼接
+	 * @param resultNum
+	 *            结果集大小，每个分表最多查询resultNum条，0表示获取全部数据
+	 * @param <T>
+	 *            映射的类型
+	 * @return DataList列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> DataList<T> listSharded(Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+			Object[] paramList, Comparator<? super T> comparator, int resultNum) throws TransactionException {
+		return ShardQueryImpl.list(this, cls, tableName, startDate, endDate, selectsql, paramList, comparator, resultNum);
+	}
+
 	/**
 	 * 根据指定的主键ID载入一个Entity实例.
 	 *
@@ -736,31 +1150,270 @@ public class DAOFactoryImpl extends DaoFactory {
 	}
 
 	/**
-	 * 返回一个DataSet数据列表。 相比较DataList列表，这不是一个强类型列表，但是更加灵活.
+	 * 根据主键集合批量载入Entity实例.
 	 *
-	 * @param selectsql
-	 *            查询的SQL
-	 * @return DataSet数据列表
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
 	 * @throws TransactionException
 	 *             事务异常
 	 */
 	@Override
-	public DataSet queryForDataSet(String selectsql) throws TransactionException {
-		return SQLCommandImpl.selectForDataSet(this, null, selectsql, null, 0, 0, false);
+	public <T, K extends Serializable> Map<K, T> loadAll(Class<T> cls, Collection<K> ids) throws TransactionException {
+		return loadAll(null, cls, null, ids);
 	}
 
 	/**
-	 * 返回一个DataSet数据列表。 相比较DataList列表，这不是一个强类型列表，但是更加灵活.
+	 * 根据主键集合批量载入Entity实例.
 	 *
-	 * @param selectsql
-	 *            查询的SQL
-	 * @param startIndex
-	 *            开始位置，默认为0
-	 * @param resultNum
-	 *            结果集大小，默认为0，获取全部数据
-	 * @return DataSet数据列表
-	 * @throws TransactionException
-	 *             事务异常
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T, K extends Serializable> Map<K, T> loadAll(Class<T> cls, String tableName, Collection<K> ids) throws TransactionException {
+		return loadAll(null, cls, tableName, ids);
+	}
+
+	/**
+	 * 根据主键集合批量载入Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T, K extends Serializable> Map<K, T> loadAll(String connName, Class<T> cls, Collection<K> ids) throws TransactionException {
+		return loadAll(connName, cls, null, ids);
+	}
+
+	/**
+	 * 根据主键集合批量载入Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param ids
+	 *            主键集合
+	 * @param <T>
+	 *            映射的类型
+	 * @param <K>
+	 *            主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T, K extends Serializable> Map<K, T> loadAll(String connName, Class<T> cls, String tableName, Collection<K> ids) throws TransactionException {
+		return EntityCommandImpl.loadAll(this, connName, cls, tableName, ids);
+	}
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	@Override
+	public <T> CompletableFuture<Optional<T>> loadAsync(Class<T> cls, Serializable id) {
+		return loadAsync(null, cls, null, id);
+	}
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	@Override
+	public <T> CompletableFuture<Optional<T>> loadAsync(Class<T> cls, String tableName, Serializable id) {
+		return loadAsync(null, cls, tableName, id);
+	}
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	@Override
+	public <T> CompletableFuture<Optional<T>> loadAsync(String connName, Class<T> cls, Serializable id) {
+		return loadAsync(connName, cls, null, id);
+	}
+
+	/**
+	 * 异步根据指定的主键ID载入一个Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            指定表名
+	 * @param id
+	 *            主键数值
+	 * @param <T>
+	 *            映射的类型
+	 * @return 加载完成的future
+	 */
+	@Override
+	public <T> CompletableFuture<Optional<T>> loadAsync(String connName, Class<T> cls, String tableName, Serializable id) {
+		return BatchLoaderImpl.getWindowLoader().load(connName, cls, tableName, id);
+	}
+
+	/**
+	 * 根据主键和日期范围载入一个按日期分表的Entity实例.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param shardDate
+	 *            分片日期
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> Optional<T> loadByDate(Class<T> cls, Serializable id, Date shardDate) throws TransactionException {
+		return loadByDate(null, cls, null, id, shardDate, shardDate);
+	}
+
+	/**
+	 * 根据主键和日期范围载入一个按日期分表的Entity实例.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param id
+	 *            主键数值
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> Optional<T> loadByDate(Class<T> cls, Serializable id, Date startDate, Date endDate) throws TransactionException {
+		return loadByDate(null, cls, null, id, startDate, endDate);
+	}
+
+	/**
+	 * 根据主键和日期范围载入一个按日期分表的Entity实例.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param id
+	 *            主键数值
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param <T>
+	 *            映射的类型
+	 * @return Entity实例
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> Optional<T> loadByDate(String connName, Class<T> cls, String tableName, Serializable id, Date startDate,
+			Date endDate) throws TransactionException {
+		return EntityCommandImpl.loadByDate(this, connName, cls, tableName, id, startDate, endDate);
+	}
+
+	/**
+	 * 开启一个连接会话.
+	 *
+	 * @return DaoSession对象
+	 */
+	@Override
+	public DaoSession openSession() {
+		return this.transaction.openSession();
+	}
+
+	/**
+	 * 返回一个DataSet数据列表。 相比较DataList列表，这不是一个强类型列表，但是更加灵活.
+	 *
+	 * @param selectsql
+	 *            查询的SQL
+	 * @return DataSet数据列表
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public DataSet queryForDataSet(String selectsql) throws TransactionException {
+		return SQLCommandImpl.selectForDataSet(this, null, selectsql, null, 0, 0, false);
+	}
+
+	/**
+	 * 返回一个DataSet数据列表。 相比较DataList列表，这不是一个强类型列表，但是更加灵活.
+	 *
+	 * @param selectsql
+	 *            查询的SQL
+	 * @param startIndex
+	 *            开始位置，默认为0
+	 * @param resultNum
+	 *            结果集大小，默认为0，获取全部数据
+	 * @return DataSet数据列表
+	 * @throws TransactionException
+	 *             事务异常
 	 */
 	@Override
 	public DataSet queryForDataSet(String selectsql, int startIndex, int resultNum) throws TransactionException {
@@ -1219,6 +1872,35 @@ public class DAOFactoryImpl extends DaoFactory {
 		return SQLCommandImpl.selectForSingleValue(this, connName, cls, sql, paramList);
 	}
 
+	/**
+	 * 按日期范围并行查询全部分表的聚合值.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            基础表名
+	 * @param startDate
+	 *            开始日期，包含
+	 * @param endDate
+	 *            结束日期，包含
+	 * @param sql
+	 *            返回单个聚合值的查询SQL，用{table}表示分表名
+	 * @param paramList
+	 *            查询SQL的绑定参数
+	 * @param aggregate
+	 *            聚合方式，支持count/sum/min/max
+	 * @param <T>
+	 *            映射的类型
+	 * @return 合并后的聚合值
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> Optional<T> queryShardedForSingleValue(Class<T> cls, String tableName, Date startDate, Date endDate, String sql,
+			Object[] paramList, String aggregate) throws TransactionException {
+		return ShardQueryImpl.aggregate(this, cls, tableName, startDate, endDate, sql, paramList, aggregate);
+	}
+
 	/**
 	 * 保存一个Entity实例，等效于insert.
 	 *
@@ -1291,6 +1973,129 @@ public class DAOFactoryImpl extends DaoFactory {
 		return EntityCommandImpl.save(this, null, entity, tableName);
 	}
 
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int saveAll(String connName, List<T> list) throws TransactionException {
+		return saveAll(connName, list, null);
+	}
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int saveAll(String connName, List<T> list, String tableName) throws TransactionException {
+		return EntityCommandImpl.saveAll(this, connName, list, tableName);
+	}
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int saveAll(List<T> list) throws TransactionException {
+		return saveAll(null, list, null);
+	}
+
+	/**
+	 * 批量保存Entity实例，在同一个连接上分批执行，并回填自增主键.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int saveAll(List<T> list, String tableName) throws TransactionException {
+		return saveAll(null, list, tableName);
+	}
+
+	/**
+	 * 按主键范围并行扫描整表.
+	 *
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param parallelism
+	 *            同时扫描的范围数
+	 * @param handler
+	 *            行处理器
+	 * @param <T>
+	 *            映射的类型
+	 * @return 扫描的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> long scan(Class<T> cls, int parallelism, ScanHandler<T> handler) throws TransactionException {
+		return TableScanImpl.scan(this, null, cls, null, null, null, null, parallelism, handler);
+	}
+
+	/**
+	 * 按主键范围并行扫描整表，跳过已完成的范围，未完成的范围从断点继续.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param cls
+	 *            要映射的对象类型
+	 * @param tableName
+	 *            表名，为null时使用实体类的表名
+	 * @param whereSql
+	 *            附加的过滤条件，不带where，可以为null
+	 * @param paramList
+	 *            过滤条件的参数
+	 * @param ranges
+	 *            扫描范围，为null时按parallelism * 4个范围等分
+	 * @param parallelism
+	 *            同时扫描的范围数
+	 * @param handler
+	 *            行处理器
+	 * @param <T>
+	 *            映射的类型
+	 * @return 本次扫描的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T> long scan(String connName, Class<T> cls, String tableName, String whereSql, Object[] paramList, List<ScanRange> ranges,
+			int parallelism, ScanHandler<T> handler) throws TransactionException {
+		return TableScanImpl.scan(this, connName, cls, tableName, whereSql, paramList, ranges, parallelism, handler);
+	}
+
 	/**
 	 * 根据主键更新一个Entity实例，等效于update.
 	 *
@@ -1364,4 +2169,216 @@ public class DAOFactoryImpl extends DaoFactory {
 
 	}
 
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int updateAll(String connName, List<T> list) throws TransactionException {
+		return updateAll(connName, list, null);
+	}
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据sql语句或表名动态路由确定
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int updateAll(String connName, List<T> list, String tableName) throws TransactionException {
+		return EntityCommandImpl.updateAll(this, connName, list, tableName);
+	}
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int updateAll(List<T> list) throws TransactionException {
+		return updateAll(null, list, null);
+	}
+
+	/**
+	 * 根据主键批量更新Entity实例，在同一个连接上分批执行.
+	 *
+	 * @param list
+	 *            要操作的对象列表
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int updateAll(List<T> list, String tableName) throws TransactionException {
+		return updateAll(null, list, tableName);
+	}
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void updateBehind(String connName, T entity) throws TransactionException {
+		WriteBehindManager.update(connName, entity, null);
+	}
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void updateBehind(String connName, T entity, String tableName) throws TransactionException {
+		WriteBehindManager.update(connName, entity, tableName);
+	}
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void updateBehind(T entity) throws TransactionException {
+		WriteBehindManager.update(null, entity, null);
+	}
+
+	/**
+	 * 延迟根据主键更新Entity实例中修改过的字段.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> void updateBehind(T entity, String tableName) throws TransactionException {
+		WriteBehindManager.update(null, entity, tableName);
+	}
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int upsert(String connName, T entity) throws TransactionException {
+		return EntityCommandImpl.upsert(this, connName, entity, null);
+	}
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param connName
+	 *            连接名，如设置为null，则根据表名动态路由确定
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int upsert(String connName, T entity, String tableName) throws TransactionException {
+		return EntityCommandImpl.upsert(this, connName, entity, tableName);
+	}
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int upsert(T entity) throws TransactionException {
+		return EntityCommandImpl.upsert(this, null, entity, null);
+	}
+
+	/**
+	 * 根据主键插入或更新一个Entity实例，存在时更新所有非主键列，需要方言支持.
+	 *
+	 * @param entity
+	 *            要更新的对象
+	 * @param tableName
+	 *            指定表名
+	 * @param <T>
+	 *            映射的类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException
+	 *             事务异常
+	 */
+	@Override
+	public <T extends DataEntity> int upsert(T entity, String tableName) throws TransactionException {
+		return EntityCommandImpl.upsert(this, null, entity, tableName);
+	}
+
 }
@@ -4,13 +4,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.dao.DataEntity;
 import uw.dao.DataList;
+import uw.dao.SqlExecuteRejectedException;
 import uw.dao.TransactionException;
 import uw.dao.annotation.ColumnMeta;
 import uw.dao.annotation.TableMeta;
+import uw.dao.conf.DaoConfig.TableShardConfig;
 import uw.dao.conf.DaoConfigManager;
 import uw.dao.connectionpool.ConnectionManager;
 import uw.dao.dialect.Dialect;
 import uw.dao.util.DaoReflectUtils;
+import uw.dao.util.TableShardingUtils;
 import uw.dao.vo.FieldMetaInfo;
 import uw.dao.vo.TableMetaInfo;
 
@@ -20,7 +23,13 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 实体类命令实现.
@@ -36,12 +45,23 @@ public class EntityCommandImpl {
 	/**
 	 * 实体信息缓存.
 	 */
-	private static final HashMap<String, TableMetaInfo> entityMetaCache = new HashMap<String, TableMetaInfo>();
+	private static final Map<String, TableMetaInfo> entityMetaCache = new ConcurrentHashMap<String, TableMetaInfo>();
 
     /**
      * 实体类支持的最大继承层级
      */
 	private static final int MAX_ENTITY_CLASS_EXTEND_LEVEL = 10;
+
+	/**
+	 * saveAll/updateAll/deleteAll每次executeBatch的行数.
+	 */
+	private static final int BULK_BATCH_SIZE = 500;
+
+	/**
+	 * loadAll并行查询的线程池.
+	 */
+	private static volatile ExecutorService loadAllService = null;
+
 	/**
 	 * 保存一个实体.
 	 * @param dao DAOFactoryImpl对象
@@ -54,10 +74,11 @@ public class EntityCommandImpl {
 	 */
 	@SuppressWarnings("resource")
 	public static <T extends DataEntity> T save(DAOFactoryImpl dao, String connName, T entity, String tableName) throws TransactionException {
-			long start = System.currentTimeMillis();
+			long start = System.nanoTime();
 		long connTime = 0, dbTime = 0;
         int connId = 0;
 		String exception = null;
+		boolean rejected = false;
 		TableMetaInfo emi = loadEntityMetaInfo(entity.getClass());
 		if (emi == null) {
 			throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! ");
@@ -65,38 +86,57 @@ public class EntityCommandImpl {
 		if (tableName == null || tableName.equals("")) {
 			tableName = emi.getTableName();
 		}
+		tableName = getShardTableName(emi, tableName, entity);
 
 		if (connName == null || connName.equals("")) {
 			connName = DaoConfigManager.getRouteMapping(tableName, "write");
 		}
-		StringBuilder sb = new StringBuilder();
 		// 写入所有的列
 		ArrayList<String> cols = new ArrayList<String>(emi.getColumnMap().keySet());
-		if (cols.size() > 0) {
-			sb.append("insert into ").append(tableName).append(" (");
-			for (String col : cols) {
-				sb.append(col).append(",");
-			}
-			sb.deleteCharAt(sb.length() - 1);
-			sb.append(") values (");
-			for (int i = 0; i < cols.size(); i++) {
-				sb.append("?,");
-			}
-			sb.deleteCharAt(sb.length() - 1);
-			sb.append(")");
-		}
 		List<FieldMetaInfo> pks = emi.getPklist();
 		String[] pkcols = new String[pks.size()];
 		for (int i = 0; i < pks.size(); i++) {
 			pkcols[i] = pks.get(i).getColumnName();
 		}
+		String sql = getInsertSql(emi, tableName);
 		Connection con = null;
+		if (dao.getBatchUpdateController().getBatchStatus()) {
+			// 批量模式下只缓存数据，连续的同表insert会被合并成多行insert执行，执行时再记录统计
+			// 自动提交的连接无法缓存，仍然立即执行
+			boolean buffered = false;
+			try {
+				con = dao.getTransactionController().getConnection(connName);
+				if (!con.getAutoCommit()) {
+					Object[] values = new Object[cols.size()];
+					int seq = 0;
+					for (String col : cols) {
+						FieldMetaInfo fmi = emi.getFieldMetaInfo(col);
+						if (fmi == null) {
+							throw new TransactionException("FieldMetaInfo[" + col + "@" + entity.getClass() + "] not found! ");
+						}
+						values[seq++] = fmi.getField().get(entity);
+					}
+					dao.getBatchUpdateController().addInsert(con, connName, tableName, cols.toArray(new String[0]), sql, values);
+					buffered = true;
+				}
+			} catch (Exception e) {
+				throw new TransactionException(connName + ": " + e.getMessage(), e);
+			} finally {
+				dao.getTransactionController().releaseConnection(con);
+				con = null;
+			}
+			if (buffered) {
+				return entity;
+			}
+		}
 		PreparedStatement pstmt = null;
 		int effect = 0;
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
-			pstmt = con.prepareStatement(sb.toString(), pkcols);
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = ConnectionManager.getDialect(connName).prepareInsertStatement(con, sql, pkcols);
             int seq = 0;
 			for (String col : cols) {
 				FieldMetaInfo fmi = emi.getFieldMetaInfo(col);
@@ -105,12 +145,27 @@ public class EntityCommandImpl {
 				}
 				DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
 			}
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
 			effect = pstmt.executeUpdate();
-			dbTime = System.currentTimeMillis() - dbStart;
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+			// 回填自增主键
+			FieldMetaInfo autoField = emi.getAutoIncrementField();
+			if (autoField != null) {
+				ResultSet rs = pstmt.getGeneratedKeys();
+				if (rs.next()) {
+					DaoReflectUtils.DAOLiteGeneratedKeyReflect(rs, entity, autoField);
+				}
+				rs.close();
+			}
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (pstmt != null) {
@@ -120,18 +175,111 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (dao.getTransactionController().isAutoCommit() && con != null) {
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, entity.GET_UPDATED_INFO(), effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+            }
+		}
+		return entity;
+	}
+
+	/**
+	 * 按主键插入或更新一个实体，存在时更新所有非主键列.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名字
+	 * @param entity 实体类
+	 * @param tableName 表名
+	 * @param <T> 实体类类型
+	 * @return 影响的行数，不同数据库对更新的计数不同
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T extends DataEntity> int upsert(DAOFactoryImpl dao, String connName, T entity, String tableName) throws TransactionException {
+		long start = System.nanoTime();
+		long connTime = 0, dbTime = 0;
+		int connId = 0;
+		String exception = null;
+		boolean rejected = false;
+		TableMetaInfo emi = loadEntityMetaInfo(entity.getClass());
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! ");
+		}
+		if (emi.getPklist().isEmpty()) {
+			throw new TransactionException("Table[" + emi.getTableName() + "] has no primary key! ");
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		tableName = getShardTableName(emi, tableName, entity);
+
+		if (connName == null || connName.equals("")) {
+			connName = DaoConfigManager.getRouteMapping(tableName, "write");
+		}
+		Dialect dialect = ConnectionManager.getDialect(connName);
+		String key = tableName + "#upsert@" + dialect.getClass().getName();
+		String sql = emi.getCachedSql(key);
+		ArrayList<String> cols = new ArrayList<String>(emi.getColumnMap().keySet());
+		if (sql == null) {
+			List<FieldMetaInfo> pks = emi.getPklist();
+			String[] pkcols = new String[pks.size()];
+			for (int i = 0; i < pks.size(); i++) {
+				pkcols[i] = pks.get(i).getColumnName();
+			}
+			sql = dialect.getUpsertSQL(tableName, cols.toArray(new String[0]), pkcols);
+			if (sql == null) {
+				throw new TransactionException(connName + ": upsert is not supported by " + dialect.getClass().getSimpleName());
+			}
+			emi.putCachedSql(key, sql);
+		}
+		Connection con = null;
+		PreparedStatement pstmt = null;
+		int effect = 0;
+		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
+			con = dao.getTransactionController().getConnection(connName);
+			connId = con.hashCode();
+			SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = con.prepareStatement(sql);
+			int seq = 0;
+			for (String col : cols) {
+				FieldMetaInfo fmi = emi.getFieldMetaInfo(col);
+				if (fmi == null) {
+					throw new TransactionException("FieldMetaInfo[" + col + "@" + entity.getClass() + "] not found! ");
+				}
+				DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
+			}
+			connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			effect = pstmt.executeUpdate();
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
+			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
+			throw new TransactionException(connName + ": " + e.getMessage(), e);
+		} finally {
+			if (pstmt != null) {
 				try {
-					con.close();
+					pstmt.close();
 				} catch (Exception e) {
 					logger.error(e.getMessage(), e);
 				}
 			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, sb.toString(), entity.GET_UPDATED_INFO(), effect, connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+			long allTime = (System.nanoTime() - start) / 1000;
+			if (!rejected) {
+				dao.addSqlExecuteStats(connName, connId, sql, entity.GET_UPDATED_INFO(), effect, connTime, dbTime, allTime, exception);
+				SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+			}
 		}
-		return entity;
+		return effect;
 	}
+
 	/**
 	 * 加载一个实体.
 	 * @param dao DAOFactoryImpl对象
@@ -144,10 +292,62 @@ public class EntityCommandImpl {
 	 * @throws TransactionException 事务异常
 	 */
 	public static <T> Optional<T> load(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName, Serializable id) throws TransactionException {
-		long start = System.currentTimeMillis();
+		if (SingleFlight.isApplicable(dao)) {
+			return SingleFlight.execute(new Object[]{"load", connName, cls, tableName, id},
+					() -> doLoad(dao, connName, cls, tableName, id), v -> v.isPresent() ? Optional.of(SingleFlight.copyEntity(v.get())) : v);
+		}
+		return doLoad(dao, connName, cls, tableName, id);
+	}
+
+	/**
+	 * 按日期范围加载一个按日期分表的实体，从最新的分表开始查找，找到即返回.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param tableName 基础表名
+	 * @param id 主键
+	 * @param startDate 开始日期，包含
+	 * @param endDate 结束日期，包含
+	 * @param <T> 要映射的对象类型
+	 * @return 实体类
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T> Optional<T> loadByDate(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName, Serializable id, Date startDate,
+			Date endDate) throws TransactionException {
+		TableMetaInfo emi = loadEntityMetaInfo(cls);
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + cls + "] not found! ");
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		List<String> shards = TableShardingUtils.getTableNamesByDateRange(tableName, startDate, endDate);
+		for (int i = shards.size() - 1; i >= 0; i--) {
+			Optional<T> entity = load(dao, connName, cls, shards.get(i), id);
+			if (entity.isPresent()) {
+				return entity;
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * 执行加载一个实体.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param tableName 表名
+	 * @param id 主键
+	 * @param <T> 要映射的对象类型
+	 * @return 实体类
+	 * @throws TransactionException 事务异常
+	 */
+	private static <T> Optional<T> doLoad(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName, Serializable id) throws TransactionException {
+		long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0, rowNum = 0;
 		String exception = null;
+		boolean rejected = false;
 		TableMetaInfo emi = loadEntityMetaInfo(cls);
 		if (emi == null) {
 			throw new TransactionException("TableMetaInfo[" + cls + "] not found! ");
@@ -155,6 +355,7 @@ public class EntityCommandImpl {
 		if (tableName == null || tableName.equals("")) {
 			tableName = emi.getTableName();
 		}
+		tableName = getShardTableNameById(emi, tableName, id);
 
 		if (connName == null || connName.equals("")) {
 			connName = DaoConfigManager.getRouteMapping(tableName, "write");
@@ -169,18 +370,22 @@ public class EntityCommandImpl {
 
 		T entity = null;
 
+		String sql = sb.toString();
 		Connection con = null;
 		PreparedStatement pstmt = null;
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
-			pstmt = con.prepareStatement(sb.toString());
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = con.prepareStatement(sql);
 			int i = 0;
 			DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, id);
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
 			ResultSet rs = pstmt.executeQuery();
-			dbTime = System.currentTimeMillis() - dbStart;
+			dbTime = (System.nanoTime() - dbStart) / 1000;
 
 			// 获得字段列表
 			ResultSetMetaData rsm = rs.getMetaData();
@@ -202,7 +407,12 @@ public class EntityCommandImpl {
 			}
             rs.close();
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (pstmt != null) {
@@ -212,15 +422,12 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (con != null) {
-				try {
-					con.close();
-				} catch (Exception e) {
-					logger.error(e.getMessage(), e);
-				}
-			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, sb.toString(), id.toString(), rowNum, connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, id.toString(), rowNum, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, rowNum, connTime, dbTime, allTime);
+            }
         }
 		return Optional.ofNullable(entity);
 	}
@@ -237,10 +444,30 @@ public class EntityCommandImpl {
 	 * @throws TransactionException 事务异常
 	 */
 	public static <T> Optional<T> listSingle(DAOFactoryImpl dao, String connName, Class<T> cls, String selectsql, Object[] paramList) throws TransactionException {
-		long start = System.currentTimeMillis();
+		if (SingleFlight.isApplicable(dao)) {
+			return SingleFlight.execute(new Object[]{"listSingle", connName, cls, selectsql, paramList},
+					() -> doListSingle(dao, connName, cls, selectsql, paramList), v -> v.isPresent() ? Optional.of(SingleFlight.copyEntity(v.get())) : v);
+		}
+		return doListSingle(dao, connName, cls, selectsql, paramList);
+	}
+
+	/**
+	 * 执行加载一个实体.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param selectsql 查询的SQL语句
+	 * @param paramList 参数的Object数组
+	 * @param <T> 要映射的对象类型
+	 * @return 实体类
+	 * @throws TransactionException 事务异常
+	 */
+	private static <T> Optional<T> doListSingle(DAOFactoryImpl dao, String connName, Class<T> cls, String selectsql, Object[] paramList) throws TransactionException {
+		long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0, rowNum = 0;
 		String exception = null;
+		boolean rejected = false;
 		if (connName == null) {
 			connName = SQLUtils.getConnNameFromSQL(selectsql);
 		}
@@ -253,8 +480,10 @@ public class EntityCommandImpl {
 		T entity = null;
 
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, selectsql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, selectsql, connId);
 			pstmt = con.prepareStatement(selectsql);
 			int i = 0;
 			if (paramList != null && paramList.length > 0) {
@@ -262,10 +491,11 @@ public class EntityCommandImpl {
 					DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, paramList[i]);
 				}
 			}
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, selectsql, paramList);
+			long dbStart = System.nanoTime();
 			ResultSet rs = pstmt.executeQuery();
-			dbTime = System.currentTimeMillis() - dbStart;
+			dbTime = (System.nanoTime() - dbStart) / 1000;
 
 			// 获得字段列表
 			ResultSetMetaData rsm = rs.getMetaData();
@@ -287,7 +517,12 @@ public class EntityCommandImpl {
 			}
             rs.close();
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, selectsql, paramList, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (pstmt != null) {
@@ -297,15 +532,12 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (con != null) {
-				try {
-					con.close();
-				} catch (Exception e) {
-					logger.error(e.getMessage(), e);
-				}
-			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, selectsql, Arrays.toString(paramList), rowNum, connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, selectsql, Arrays.toString(paramList), rowNum, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, selectsql, paramList, rowNum, connTime, dbTime, allTime);
+            }
         }
 		return Optional.ofNullable(entity);
 	}
@@ -323,10 +555,11 @@ public class EntityCommandImpl {
 		if (entity.GET_UPDATED_COLUMN() == null) {
 			return -1;
 		}
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
 		String exception = null;
+		boolean rejected = false;
 		TableMetaInfo emi = loadEntityMetaInfo(entity.getClass());
 		if (emi == null) {
 			throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! ");
@@ -334,6 +567,7 @@ public class EntityCommandImpl {
 		if (tableName == null || tableName.equals("")) {
 			tableName = emi.getTableName();
 		}
+		tableName = getShardTableName(emi, tableName, entity);
 
 		if (connName == null || connName.equals("")) {
 			connName = DaoConfigManager.getRouteMapping(tableName, "write");
@@ -355,13 +589,16 @@ public class EntityCommandImpl {
             sb.append(fmi.getColumnName()).append("=? ");
 		}
 
+		String sql = sb.toString();
 		Connection con = null;
 		PreparedStatement pstmt = null;
 		int effect = 0;
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
-			pstmt = dao.getBatchUpdateController().prepareStatement(con, sb.toString());
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = dao.getBatchUpdateController().prepareStatement(con, sql);
 			int seq = 0;
 			for (String col : cols) {
 				FieldMetaInfo fmi = emi.getFieldMetaInfo(col);
@@ -374,12 +611,22 @@ public class EntityCommandImpl {
 			for (FieldMetaInfo fmi : pks) {
 				DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
 			}
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
-			effect = pstmt.executeUpdate();
-			dbTime = System.currentTimeMillis() - dbStart;
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			if (dao.getBatchUpdateController().getBatchStatus()) {
+				pstmt.addBatch();
+			} else {
+				effect = pstmt.executeUpdate();
+			}
+			dbTime = (System.nanoTime() - dbStart) / 1000;
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (!dao.getBatchUpdateController().getBatchStatus() && con != null) {
@@ -389,15 +636,12 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (dao.getTransactionController().isAutoCommit() && con != null) {
-				try {
-					con.close();
-				} catch (Exception e) {
-					logger.error(e.getMessage(), e);
-				}
-			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, sb.toString(), entity.GET_UPDATED_INFO(), effect, connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, entity.GET_UPDATED_INFO(), effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+            }
 		}
 		return effect;
 	}
@@ -412,10 +656,11 @@ public class EntityCommandImpl {
 	 * @throws TransactionException 事务异常
 	 */
 	public static int delete(DAOFactoryImpl dao, String connName, DataEntity entity, String tableName) throws TransactionException {
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
 		String exception = null;
+		boolean rejected = false;
 		TableMetaInfo emi = loadEntityMetaInfo(entity.getClass());
 		if (emi == null) {
 			throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! ");
@@ -423,6 +668,7 @@ public class EntityCommandImpl {
 		if (tableName == null || tableName.equals("")) {
 			tableName = emi.getTableName();
 		}
+		tableName = getShardTableName(emi, tableName, entity);
 
 		if (connName == null || connName.equals("")) {
 			connName = DaoConfigManager.getRouteMapping(tableName, "write");
@@ -440,24 +686,37 @@ public class EntityCommandImpl {
 			sb.append(fmi.getColumnName()).append("=? ");
 		}
 
+		String sql = sb.toString();
 		Connection con = null;
 		PreparedStatement pstmt = null;
 		int effect = 0;
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
-			pstmt = dao.getBatchUpdateController().prepareStatement(con, sb.toString());
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = dao.getBatchUpdateController().prepareStatement(con, sql);
 			int seq = 0;
 			// 开始where主键。
 			for (FieldMetaInfo fmi : pks) {
 				DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
 			}
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
-			effect = pstmt.executeUpdate();
-			dbTime = System.currentTimeMillis() - dbStart;
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			if (dao.getBatchUpdateController().getBatchStatus()) {
+				pstmt.addBatch();
+			} else {
+				effect = pstmt.executeUpdate();
+			}
+			dbTime = (System.nanoTime() - dbStart) / 1000;
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (!dao.getBatchUpdateController().getBatchStatus() && con != null) {
@@ -467,15 +726,12 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (dao.getTransactionController().isAutoCommit() && con != null) {
-				try {
-					con.close();
-				} catch (Exception e) {
-					logger.error(e.getMessage(), e);
-				}
-			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, sb.toString(), "", effect, connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, "", effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+            }
 		}
 		return effect;
 	}
@@ -495,10 +751,11 @@ public class EntityCommandImpl {
 	 * @throws TransactionException 事务异常
 	 */
 	public static <T> DataList<T> list(DAOFactoryImpl dao, String connName, Class<T> cls, String selectsql, Object[] paramList, int startIndex, int resultNum, boolean autoCount) throws TransactionException {
-		long start = System.currentTimeMillis();
+		long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
 		String exception = null;
+		boolean rejected = false;
 		if (connName == null) {
 			connName = SQLUtils.getConnNameFromSQL(selectsql);
 		}
@@ -523,12 +780,20 @@ public class EntityCommandImpl {
 		ArrayList<T> list = new ArrayList<T>();
 
 		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, selectsql);
 			con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, selectsql, connId);
             boolean needPagination = resultNum > 0 && startIndex >= 0;
 			if (needPagination) {
 				Dialect dialect = ConnectionManager.getDialect(connName);
-				po = dialect.getPagedSQL(selectsql, startIndex, resultNum);
+				int deferredJoinOffset = DaoConfigManager.getConfig() == null ? 0 : DaoConfigManager.getConfig().getDeferredJoinOffset();
+				if (deferredJoinOffset > 0 && startIndex >= deferredJoinOffset && emi.getPklist().size() == 1) {
+					po = dialect.getDeferredJoinPagedSQL(selectsql, emi.getPklist().get(0).getColumnName(), startIndex, resultNum);
+				}
+				if (po == null) {
+					po = dialect.getPagedSQL(selectsql, startIndex, resultNum);
+				}
 				selectsql = po[0].toString();
 			}
 			pstmt = con.prepareStatement(selectsql);
@@ -543,10 +808,11 @@ public class EntityCommandImpl {
 				pstmt.setInt(i + 1, (Integer) po[1]);
 				pstmt.setInt(i + 2, (Integer) po[2]);
 			}
-            connTime = System.currentTimeMillis() - start;
-			long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, selectsql, paramList);
+			long dbStart = System.nanoTime();
 			ResultSet rs = pstmt.executeQuery();
-			dbTime = System.currentTimeMillis() - dbStart;
+			dbTime = (System.nanoTime() - dbStart) / 1000;
 
 			// 获得字段列表
 			ResultSetMetaData rsm = rs.getMetaData();
@@ -568,7 +834,12 @@ public class EntityCommandImpl {
 			}
             rs.close();
 		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
 			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, selectsql, paramList, e);
 			throw new TransactionException(connName + ": " + e.getMessage(), e);
 		} finally {
 			if (pstmt != null) {
@@ -578,17 +849,825 @@ public class EntityCommandImpl {
 					logger.error(e.getMessage(), e);
 				}
 			}
-			if (con != null) {
+			dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, selectsql, Arrays.toString(paramList), list.size(), connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, selectsql, paramList, list.size(), connTime, dbTime, allTime);
+            }
+		}
+		return new DataList<T>(list, startIndex, resultNum, allsize);
+	}
+
+	/**
+	 * 批量保存实体，在同一个连接上分批执行，并回填自增主键.
+	 * 批量更新模式下逐个调用save，由BatchupdateManager合并执行.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名字
+	 * @param list 实体类列表
+	 * @param tableName 表名
+	 * @param <T> 实体类类型
+	 * @return 影响的行数
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T extends DataEntity> int saveAll(DAOFactoryImpl dao, String connName, List<T> list, String tableName) throws TransactionException {
+		if (list == null || list.isEmpty()) {
+			return 0;
+		}
+		if (dao.getBatchUpdateController().getBatchStatus()) {
+			for (T entity : list) {
+				save(dao, connName, entity, tableName);
+			}
+			return 0;
+		}
+		long start = System.nanoTime();
+		long connTime = 0, dbTime = 0;
+		int connId = 0;
+		String exception = null;
+		boolean rejected = false;
+		TableMetaInfo emi = loadEntityMetaInfo(list.get(0).getClass());
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + list.get(0).getClass() + "] not found! ");
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		if (TableShardingUtils.getValueShardingConfig(tableName) != null) {
+			int effect = 0;
+			for (Map.Entry<String, List<T>> kv : groupByShard(emi, tableName, list).entrySet()) {
+				effect += saveAll(dao, connName, kv.getValue(), kv.getKey());
+			}
+			return effect;
+		}
+		if (connName == null || connName.equals("")) {
+			connName = DaoConfigManager.getRouteMapping(tableName, "write");
+		}
+		String sql = getInsertSql(emi, tableName);
+		List<FieldMetaInfo> fields = new ArrayList<FieldMetaInfo>(emi.getColumnMap().values());
+		FieldMetaInfo autoField = emi.getAutoIncrementField();
+		Connection con = null;
+		int effect = 0;
+		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
+			con = dao.getTransactionController().getConnection(connName);
+			connId = con.hashCode();
+			SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			effect = executeEntityBatch(ConnectionManager.getDialect(connName), con, sql, list, 0, list.size(), fields, null, autoField);
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
+			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
+			throw new TransactionException(connName + ": " + e.getMessage(), e);
+		} finally {
+			dao.getTransactionController().releaseConnection(con);
+			long allTime = (System.nanoTime() - start) / 1000;
+			if (!rejected) {
+				dao.addSqlExecuteStats(connName, connId, sql, "saveAll: " + list.size(), effect, connTime, dbTime, allTime, exception);
+				SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+			}
+		}
+		return effect;
+	}
+
+	/**
+	 * 批量根据主键更新实体，更新列相同的连续实体在同一个批次中执行.
+	 * 没有更新列的实体会被跳过.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名字
+	 * @param list 实体类列表
+	 * @param tableName 表名
+	 * @param <T> 实体类类型
+	 * @return 影响的行数
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T extends DataEntity> int updateAll(DAOFactoryImpl dao, String connName, List<T> list, String tableName) throws TransactionException {
+		if (list == null || list.isEmpty()) {
+			return 0;
+		}
+		if (dao.getBatchUpdateController().getBatchStatus()) {
+			for (T entity : list) {
+				update(dao, connName, entity, tableName);
+			}
+			return 0;
+		}
+		long start = System.nanoTime();
+		long connTime = 0, dbTime = 0;
+		int connId = 0;
+		String exception = null;
+		boolean rejected = false;
+		TableMetaInfo emi = loadEntityMetaInfo(list.get(0).getClass());
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + list.get(0).getClass() + "] not found! ");
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		if (TableShardingUtils.getValueShardingConfig(tableName) != null) {
+			int effect = 0;
+			for (Map.Entry<String, List<T>> kv : groupByShard(emi, tableName, list).entrySet()) {
+				effect += updateAll(dao, connName, kv.getValue(), kv.getKey());
+			}
+			return effect;
+		}
+		if (connName == null || connName.equals("")) {
+			connName = DaoConfigManager.getRouteMapping(tableName, "write");
+		}
+		// 跳过没有变化的实体
+		List<T> updateList = new ArrayList<T>(list.size());
+		for (T entity : list) {
+			if (entity.GET_UPDATED_COLUMN() != null && !entity.GET_UPDATED_COLUMN().isEmpty()) {
+				updateList.add(entity);
+			}
+		}
+		if (updateList.isEmpty()) {
+			return 0;
+		}
+		String sql = getUpdateSql(emi, tableName, updateList.get(0).GET_UPDATED_COLUMN());
+		Connection con = null;
+		int effect = 0;
+		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
+			con = dao.getTransactionController().getConnection(connName);
+			connId = con.hashCode();
+			SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			int from = 0;
+			while (from < updateList.size()) {
+				Set<String> updatedCols = updateList.get(from).GET_UPDATED_COLUMN();
+				int to = from + 1;
+				while (to < updateList.size() && updatedCols.equals(updateList.get(to).GET_UPDATED_COLUMN())) {
+					to++;
+				}
+				String groupSql = getUpdateSql(emi, tableName, updatedCols);
+				List<FieldMetaInfo> fields = new ArrayList<FieldMetaInfo>(updatedCols.size());
+				for (String col : updatedCols) {
+					FieldMetaInfo fmi = emi.getFieldMetaInfo(col);
+					if (fmi == null) {
+						throw new TransactionException("FieldMetaInfo[" + col + "@" + updateList.get(from).getClass() + "] not found! ");
+					}
+					fields.add(fmi);
+				}
+				effect += executeEntityBatch(ConnectionManager.getDialect(connName), con, groupSql, updateList, from, to, fields, emi.getPklist(), null);
+				from = to;
+			}
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
+			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
+			throw new TransactionException(connName + ": " + e.getMessage(), e);
+		} finally {
+			dao.getTransactionController().releaseConnection(con);
+			long allTime = (System.nanoTime() - start) / 1000;
+			if (!rejected) {
+				dao.addSqlExecuteStats(connName, connId, sql, "updateAll: " + updateList.size(), effect, connTime, dbTime, allTime, exception);
+				SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+			}
+		}
+		return effect;
+	}
+
+	/**
+	 * 批量根据主键删除实体.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名字
+	 * @param list 实体类列表
+	 * @param tableName 表名
+	 * @param <T> 实体类类型
+	 * @return 影响的行数
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T extends DataEntity> int deleteAll(DAOFactoryImpl dao, String connName, List<T> list, String tableName) throws TransactionException {
+		if (list == null || list.isEmpty()) {
+			return 0;
+		}
+		if (dao.getBatchUpdateController().getBatchStatus()) {
+			for (T entity : list) {
+				delete(dao, connName, entity, tableName);
+			}
+			return 0;
+		}
+		long start = System.nanoTime();
+		long connTime = 0, dbTime = 0;
+		int connId = 0;
+		String exception = null;
+		boolean rejected = false;
+		TableMetaInfo emi = loadEntityMetaInfo(list.get(0).getClass());
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + list.get(0).getClass() + "] not found! ");
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		if (TableShardingUtils.getValueShardingConfig(tableName) != null) {
+			int effect = 0;
+			for (Map.Entry<String, List<T>> kv : groupByShard(emi, tableName, list).entrySet()) {
+				effect += deleteAll(dao, connName, kv.getValue(), kv.getKey());
+			}
+			return effect;
+		}
+		if (connName == null || connName.equals("")) {
+			connName = DaoConfigManager.getRouteMapping(tableName, "write");
+		}
+		String sql = getDeleteSql(emi, tableName);
+		Connection con = null;
+		int effect = 0;
+		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
+			con = dao.getTransactionController().getConnection(connName);
+			connId = con.hashCode();
+			SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+			long dbStart = System.nanoTime();
+			effect = executeEntityBatch(ConnectionManager.getDialect(connName), con, sql, list, 0, list.size(), Collections.<FieldMetaInfo>emptyList(), emi.getPklist(), null);
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
+			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, null, e);
+			throw new TransactionException(connName + ": " + e.getMessage(), e);
+		} finally {
+			dao.getTransactionController().releaseConnection(con);
+			long allTime = (System.nanoTime() - start) / 1000;
+			if (!rejected) {
+				dao.addSqlExecuteStats(connName, connId, sql, "deleteAll: " + list.size(), effect, connTime, dbTime, allTime, exception);
+				SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+			}
+		}
+		return effect;
+	}
+
+	/**
+	 * 按主键批量加载实体，结果按传入主键的顺序放入Map，不存在的主键没有对应的项.
+	 * 非事务且不在连接会话中时，按配置的并行数并行执行拆分后的查询.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param tableName 表名
+	 * @param ids 主键集合
+	 * @param <T> 要映射的对象类型
+	 * @param <K> 主键类型
+	 * @return 主键到实体的Map
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T, K extends Serializable> LinkedHashMap<K, T> loadAll(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName,
+			Collection<K> ids) throws TransactionException {
+		LinkedHashMap<String, K> idMap = new LinkedHashMap<String, K>(ids.size() * 2);
+		for (K id : ids) {
+			if (id != null) {
+				idMap.putIfAbsent(id.toString(), id);
+			}
+		}
+		LinkedHashMap<K, T> resultMap = new LinkedHashMap<K, T>(idMap.size() * 2);
+		if (idMap.isEmpty()) {
+			return resultMap;
+		}
+		int parallelism = DaoConfigManager.getConfig() == null ? 1 : DaoConfigManager.getConfig().getLoadAllParallelism();
+		ArrayList<T> list = loadByIds(dao, connName, cls, tableName, new ArrayList<K>(idMap.values()), parallelism);
+		FieldMetaInfo pk = loadEntityMetaInfo(cls).getPklist().get(0);
+		HashMap<String, T> entityMap = new HashMap<String, T>(list.size() * 2);
+		try {
+			for (T entity : list) {
+				entityMap.put(String.valueOf(pk.getField().get(entity)), entity);
+			}
+		} catch (IllegalAccessException e) {
+			throw new TransactionException(e.getMessage(), e);
+		}
+		for (Map.Entry<String, K> kv : idMap.entrySet()) {
+			T entity = entityMap.get(kv.getKey());
+			if (entity != null) {
+				resultMap.put(kv.getValue(), entity);
+			}
+		}
+		return resultMap;
+	}
+
+	/**
+	 * 按主键列表加载实体，按方言的in列表分档拆分为多条where pk in (...)查询.
+	 * 只支持单主键，返回的实体顺序和主键列表无关，不存在的主键没有对应的实体.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param tableName 表名
+	 * @param ids 主键列表
+	 * @param parallelism 并行数，只在非事务且不在连接会话中时生效
+	 * @param <T> 要映射的对象类型
+	 * @return 实体列表
+	 * @throws TransactionException 事务异常
+	 */
+	public static <T> ArrayList<T> loadByIds(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName, List<?> ids, int parallelism)
+			throws TransactionException {
+		TableMetaInfo emi = loadEntityMetaInfo(cls);
+		if (emi == null) {
+			throw new TransactionException("TableMetaInfo[" + cls + "] not found! ");
+		}
+		if (emi.getPklist().size() != 1) {
+			throw new TransactionException("loadByIds requires a single primary key: " + cls.getName());
+		}
+		if (tableName == null || tableName.equals("")) {
+			tableName = emi.getTableName();
+		}
+		if (TableShardingUtils.getValueShardingConfig(tableName) != null) {
+			LinkedHashMap<String, List<Object>> groups = new LinkedHashMap<String, List<Object>>();
+			for (Object id : ids) {
+				String shardTableName = getShardTableNameById(emi, tableName, id);
+				List<Object> group = groups.get(shardTableName);
+				if (group == null) {
+					group = new ArrayList<Object>();
+					groups.put(shardTableName, group);
+				}
+				group.add(id);
+			}
+			ArrayList<T> list = new ArrayList<T>(ids.size());
+			for (Map.Entry<String, List<Object>> kv : groups.entrySet()) {
+				list.addAll(loadByIds(dao, connName, cls, kv.getKey(), kv.getValue(), parallelism));
+			}
+			return list;
+		}
+		if (connName == null || connName.equals("")) {
+			connName = DaoConfigManager.getRouteMapping(tableName, "write");
+		}
+		ArrayList<T> list = new ArrayList<T>(ids.size());
+		if (ids.isEmpty()) {
+			return list;
+		}
+		Dialect dialect = ConnectionManager.getDialect(connName);
+		if (dialect == null) {
+			dialect = new Dialect();
+		}
+		List<Object[]> chunks = splitInList(ids, dialect.getInListBuckets(), dialect.getMaxInListSize());
+		if (parallelism < 2 || chunks.size() < 2 || !dao.getTransactionController().isAutoCommit()
+				|| dao.getTransactionController().isSessionOpen()) {
+			for (Object[] chunk : chunks) {
+				loadByIdChunk(dao, connName, cls, emi, getLoadByIdsSql(emi, tableName, chunk.length), chunk, list);
+			}
+			return list;
+		}
+		final String fConnName = connName;
+		final String fTableName = tableName;
+		ExecutorService service = getLoadAllService(parallelism);
+		List<CompletableFuture<ArrayList<T>>> futures = new ArrayList<CompletableFuture<ArrayList<T>>>(chunks.size());
+		for (Object[] chunk : chunks) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				ArrayList<T> part = new ArrayList<T>(chunk.length);
+				try {
+					loadByIdChunk(dao, fConnName, cls, emi, getLoadByIdsSql(emi, fTableName, chunk.length), chunk, part);
+				} catch (TransactionException e) {
+					throw new CompletionException(e);
+				}
+				return part;
+			}, service));
+		}
+		TransactionException error = null;
+		for (CompletableFuture<ArrayList<T>> future : futures) {
+			try {
+				list.addAll(future.join());
+			} catch (CompletionException e) {
+				if (error == null) {
+					error = e.getCause() instanceof TransactionException ? (TransactionException) e.getCause()
+							: new TransactionException(e.getCause().getMessage(), e.getCause());
+				}
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+		return list;
+	}
+
+	/**
+	 * 把主键列表按分档拆分，不足一档的用最后一个主键补齐.
+	 * 剩余主键数超过最大分档时按最大分档拆分，分档不能超过in列表的最大元素个数.
+	 * @param ids 主键列表
+	 * @param buckets 从小到大排列的分档
+	 * @param maxSize in列表的最大元素个数
+	 * @return 拆分后的参数列表
+	 */
+	static List<Object[]> splitInList(List<?> ids, int[] buckets, int maxSize) {
+		maxSize = Math.max(1, maxSize);
+		int usable = 0;
+		while (usable < buckets.length && buckets[usable] <= maxSize) {
+			usable++;
+		}
+		if (usable == 0) {
+			buckets = new int[] { maxSize };
+			usable = 1;
+		}
+		int largest = buckets[usable - 1];
+		List<Object[]> chunks = new ArrayList<Object[]>(ids.size() / largest + 1);
+		int from = 0;
+		while (from < ids.size()) {
+			int remaining = ids.size() - from;
+			int size = largest;
+			if (remaining < largest) {
+				for (int i = 0; i < usable; i++) {
+					if (buckets[i] >= remaining) {
+						size = buckets[i];
+						break;
+					}
+				}
+			}
+			int count = Math.min(size, remaining);
+			Object[] chunk = new Object[size];
+			for (int i = 0; i < size; i++) {
+				chunk[i] = ids.get(from + Math.min(i, count - 1));
+			}
+			chunks.add(chunk);
+			from += count;
+		}
+		return chunks;
+	}
+
+	/**
+	 * 获得loadAll并行查询的线程池.
+	 * @param parallelism 并行数，只在首次创建时生效
+	 * @return 线程池
+	 */
+	private static ExecutorService getLoadAllService(int parallelism) {
+		ExecutorService service = loadAllService;
+		if (service == null) {
+			synchronized (EntityCommandImpl.class) {
+				service = loadAllService;
+				if (service == null) {
+					service = loadAllService = Executors.newFixedThreadPool(parallelism, r -> {
+						Thread t = new Thread(r);
+						t.setName("uw-dao.load-all");
+						t.setDaemon(true);
+						return t;
+					});
+				}
+			}
+		}
+		return service;
+	}
+
+	/**
+	 * 按分表配置，根据实体分片字段的值确定分表名，不是按字段值分表时返回表名本身.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @param entity 实体
+	 * @return 分表名
+	 * @throws TransactionException 分片字段不存在或为空
+	 */
+	static String getShardTableName(TableMetaInfo emi, String tableName, Object entity) throws TransactionException {
+		TableShardConfig config = TableShardingUtils.getValueShardingConfig(tableName);
+		if (config == null) {
+			return tableName;
+		}
+		FieldMetaInfo fmi = config.getShardColumn() == null ? null : emi.getFieldMetaInfo(config.getShardColumn().toLowerCase());
+		if (fmi == null) {
+			throw new TransactionException("TableShardConfig[" + tableName + "] shard column [" + config.getShardColumn() + "] not found! ");
+		}
+		Object value;
+		try {
+			value = fmi.getField().get(entity);
+		} catch (IllegalAccessException e) {
+			throw new TransactionException(e.getMessage(), e);
+		}
+		if (value == null) {
+			throw new TransactionException("TableShardConfig[" + tableName + "] shard column [" + config.getShardColumn() + "] is null! ");
+		}
+		try {
+			return TableShardingUtils.getTableNameByValue(tableName, value);
+		} catch (IllegalArgumentException e) {
+			throw new TransactionException("TableShardConfig[" + tableName + "] " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 按分表配置，根据主键确定分表名，只支持按单主键分片的表，不是按字段值分表时返回表名本身.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @param id 主键
+	 * @return 分表名
+	 * @throws TransactionException 不是按主键分片
+	 */
+	static String getShardTableNameById(TableMetaInfo emi, String tableName, Object id) throws TransactionException {
+		TableShardConfig config = TableShardingUtils.getValueShardingConfig(tableName);
+		if (config == null) {
+			return tableName;
+		}
+		List<FieldMetaInfo> pks = emi.getPklist();
+		if (pks.size() != 1 || !pks.get(0).getColumnName().equalsIgnoreCase(config.getShardColumn())) {
+			throw new TransactionException("TableShardConfig[" + tableName + "] is not sharded by primary key, shard tableName or date is required! ");
+		}
+		try {
+			return TableShardingUtils.getTableNameByValue(tableName, id);
+		} catch (IllegalArgumentException e) {
+			throw new TransactionException("TableShardConfig[" + tableName + "] " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 按分表名对实体分组，保持原有顺序.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @param list 实体列表
+	 * @param <T> 实体类型
+	 * @return 分表名到实体列表的Map
+	 * @throws TransactionException 分片字段不存在或为空
+	 */
+	private static <T> LinkedHashMap<String, List<T>> groupByShard(TableMetaInfo emi, String tableName, List<T> list) throws TransactionException {
+		LinkedHashMap<String, List<T>> groups = new LinkedHashMap<String, List<T>>();
+		for (T entity : list) {
+			String shardTableName = getShardTableName(emi, tableName, entity);
+			List<T> group = groups.get(shardTableName);
+			if (group == null) {
+				group = new ArrayList<T>();
+				groups.put(shardTableName, group);
+			}
+			group.add(entity);
+		}
+		return groups;
+	}
+
+	/**
+	 * 执行一条where pk in (...)查询.
+	 * @param dao DAOFactoryImpl对象
+	 * @param connName 连接名
+	 * @param cls 要映射的对象类型
+	 * @param emi TableMetaInfo对象
+	 * @param sql 查询sql
+	 * @param params 主键参数
+	 * @param list 输出的实体列表
+	 * @param <T> 要映射的对象类型
+	 * @throws TransactionException 事务异常
+	 */
+	private static <T> void loadByIdChunk(DAOFactoryImpl dao, String connName, Class<T> cls, TableMetaInfo emi, String sql, Object[] params,
+			List<T> list) throws TransactionException {
+		long start = System.nanoTime();
+		long connTime = 0, dbTime = 0;
+		int connId = 0, rowNum = 0;
+		String exception = null;
+		boolean rejected = false;
+		Connection con = null;
+		PreparedStatement pstmt = null;
+		try {
+			SqlExecuteListenerManager.beforeAcquire(connName, sql);
+			con = dao.getTransactionController().getConnection(connName);
+			connId = con.hashCode();
+			SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+			pstmt = con.prepareStatement(sql);
+			for (int i = 0; i < params.length; i++) {
+				DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, params[i]);
+			}
+			connTime = (System.nanoTime() - start) / 1000;
+			SqlExecuteListenerManager.beforeExecute(connName, sql, params);
+			long dbStart = System.nanoTime();
+			ResultSet rs = pstmt.executeQuery();
+			dbTime = (System.nanoTime() - dbStart) / 1000;
+			// 获得字段列表
+			ResultSetMetaData rsm = rs.getMetaData();
+			int colsCount = rsm.getColumnCount();
+			FieldMetaInfo[] fields = new FieldMetaInfo[colsCount];
+			for (int k = 0; k < colsCount; k++) {
+				fields[k] = emi.getFieldMetaInfo(rsm.getColumnLabel(k + 1).toLowerCase());
+			}
+			while (rs.next()) {
+				rowNum++;
+				T entity = cls.newInstance();
+				for (FieldMetaInfo fmi : fields) {
+					if (fmi != null) {
+						DaoReflectUtils.DAOLiteLoadReflect(rs, entity, fmi);
+					}
+				}
+				list.add(entity);
+			}
+			rs.close();
+		} catch (Exception e) {
+			if (e instanceof SqlExecuteRejectedException) {
+				rejected = true;
+				throw (SqlExecuteRejectedException) e;
+			}
+			exception = e.toString();
+			SqlExecuteListenerManager.onError(connName, sql, params, e);
+			throw new TransactionException(connName + ": " + e.getMessage(), e);
+		} finally {
+			if (pstmt != null) {
 				try {
-					con.close();
+					pstmt.close();
 				} catch (Exception e) {
 					logger.error(e.getMessage(), e);
 				}
 			}
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, selectsql, Arrays.toString(paramList), list.size(), connTime, dbTime, allTime, exception);
+			dao.getTransactionController().releaseConnection(con);
+			long allTime = (System.nanoTime() - start) / 1000;
+			if (!rejected) {
+				dao.addSqlExecuteStats(connName, connId, sql, "loadByIds: " + params.length, rowNum, connTime, dbTime, allTime, exception);
+				SqlExecuteListenerManager.afterExecute(connName, sql, params, rowNum, connTime, dbTime, allTime);
+			}
 		}
-		return new DataList<T>(list, startIndex, resultNum, allsize);
+	}
+
+	/**
+	 * 在一个连接上按BULK_BATCH_SIZE分批执行实体的JDBC批量操作.
+	 * @param dialect 方言
+	 * @param con 连接
+	 * @param sql 执行的sql
+	 * @param list 实体类列表
+	 * @param from 开始位置
+	 * @param to 结束位置(不含)
+	 * @param fields 绑定的列
+	 * @param pks 绑定在最后的主键列，可以为null
+	 * @param autoField 需要回填的自增列，可以为null
+	 * @param <T> 实体类类型
+	 * @return 影响的行数
+	 * @throws Exception 异常
+	 */
+	private static <T extends DataEntity> int executeEntityBatch(Dialect dialect, Connection con, String sql, List<T> list, int from, int to,
+																 List<FieldMetaInfo> fields, List<FieldMetaInfo> pks,
+																 FieldMetaInfo autoField) throws Exception {
+		int effect = 0;
+		PreparedStatement pstmt = null;
+		try {
+			if (autoField != null) {
+				pstmt = dialect.prepareInsertStatement(con, sql, new String[]{autoField.getColumnName()});
+			} else {
+				pstmt = con.prepareStatement(sql);
+			}
+			int batchStart = from;
+			for (int pos = from; pos < to; pos++) {
+				T entity = list.get(pos);
+				int seq = 0;
+				for (FieldMetaInfo fmi : fields) {
+					DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
+				}
+				if (pks != null) {
+					for (FieldMetaInfo fmi : pks) {
+						DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
+					}
+				}
+				pstmt.addBatch();
+				if (pos + 1 - batchStart >= BULK_BATCH_SIZE || pos + 1 == to) {
+					effect += sumEffects(pstmt.executeBatch());
+					if (autoField != null) {
+						// 按顺序回填自增主键
+						ResultSet rs = pstmt.getGeneratedKeys();
+						for (int i = batchStart; i <= pos && rs.next(); i++) {
+							DaoReflectUtils.DAOLiteGeneratedKeyReflect(rs, list.get(i), autoField);
+						}
+						rs.close();
+					}
+					batchStart = pos + 1;
+				}
+			}
+		} finally {
+			if (pstmt != null) {
+				try {
+					pstmt.close();
+				} catch (Exception e) {
+					logger.error(e.getMessage(), e);
+				}
+			}
+		}
+		return effect;
+	}
+
+	/**
+	 * 累加executeBatch的返回值，SUCCESS_NO_INFO按1行计算.
+	 * @param effects executeBatch的返回值
+	 * @return 影响的行数
+	 */
+	private static int sumEffects(int[] effects) {
+		int sum = 0;
+		for (int effect : effects) {
+			if (effect > 0) {
+				sum += effect;
+			} else if (effect == Statement.SUCCESS_NO_INFO) {
+				sum++;
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * 获得缓存的insert sql.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @return insert sql
+	 */
+	static String getInsertSql(TableMetaInfo emi, String tableName) {
+		String key = tableName + "#insert";
+		String sql = emi.getCachedSql(key);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder();
+			Set<String> cols = emi.getColumnMap().keySet();
+			if (cols.size() > 0) {
+				sb.append("insert into ").append(tableName).append(" (");
+				for (String col : cols) {
+					sb.append(col).append(",");
+				}
+				sb.deleteCharAt(sb.length() - 1);
+				sb.append(") values (");
+				for (int i = 0; i < cols.size(); i++) {
+					sb.append("?,");
+				}
+				sb.deleteCharAt(sb.length() - 1);
+				sb.append(")");
+			}
+			sql = sb.toString();
+			emi.putCachedSql(key, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * 获得缓存的update sql.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @param cols 更新的列
+	 * @return update sql
+	 */
+	static String getUpdateSql(TableMetaInfo emi, String tableName, Set<String> cols) {
+		String key = tableName + "#update#" + String.join(",", cols);
+		String sql = emi.getCachedSql(key);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder();
+			List<FieldMetaInfo> pks = emi.getPklist();
+			sb.append("update ").append(tableName).append(" set ");
+			for (String col : cols) {
+				sb.append(col).append("=?,");
+			}
+			sb.deleteCharAt(sb.length() - 1);
+			sb.append(" where ");
+			for (int i = 0; i < pks.size(); i++) {
+				if (i > 0) {
+					sb.append("and ");
+				}
+				sb.append(pks.get(i).getColumnName()).append("=? ");
+			}
+			sql = sb.toString();
+			emi.putCachedSql(key, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * 获得缓存的delete sql.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @return delete sql
+	 */
+	static String getDeleteSql(TableMetaInfo emi, String tableName) {
+		String key = tableName + "#delete";
+		String sql = emi.getCachedSql(key);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder();
+			List<FieldMetaInfo> pks = emi.getPklist();
+			sb.append("delete from ").append(tableName).append(" where ");
+			for (int i = 0; i < pks.size(); i++) {
+				if (i > 0) {
+					sb.append("and ");
+				}
+				sb.append(pks.get(i).getColumnName()).append("=? ");
+			}
+			sql = sb.toString();
+			emi.putCachedSql(key, sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * 获得缓存的按主键列表查询的sql.
+	 * @param emi TableMetaInfo对象
+	 * @param tableName 表名
+	 * @param size 主键个数
+	 * @return 查询sql
+	 * @throws TransactionException 不是单主键
+	 */
+	static String getLoadByIdsSql(TableMetaInfo emi, String tableName, int size) throws TransactionException {
+		if (emi.getPklist().size() != 1) {
+			throw new TransactionException("loadByIds requires a single primary key: " + emi.getTableName());
+		}
+		String key = tableName + "#loadIn#" + size;
+		String sql = emi.getCachedSql(key);
+		if (sql == null) {
+			StringBuilder sb = new StringBuilder(64 + size * 2);
+			sb.append("select * from ").append(tableName).append(" where ").append(emi.getPklist().get(0).getColumnName()).append(" in (");
+			for (int i = 0; i < size; i++) {
+				sb.append("?,");
+			}
+			sb.setCharAt(sb.length() - 1, ')');
+			sql = sb.toString();
+			emi.putCachedSql(key, sql);
+		}
+		return sql;
 	}
 
 	/**
@@ -3,6 +3,7 @@ package uw.dao.impl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.dao.DataSet;
+import uw.dao.SqlExecuteRejectedException;
 import uw.dao.TransactionException;
 import uw.dao.connectionpool.ConnectionManager;
 import uw.dao.dialect.Dialect;
@@ -38,10 +39,33 @@ public class SQLCommandImpl {
     @SuppressWarnings("unchecked")
     public static final <T> Optional<T> selectForSingleValue(DAOFactoryImpl dao, String connName, Class<T> cls, String selectSql,
                                                              Object[] paramList) throws TransactionException {
-        long start = System.currentTimeMillis();
+        if (SingleFlight.isApplicable(dao)) {
+            return SingleFlight.execute(new Object[]{"selectForSingleValue", connName, cls, selectSql, paramList},
+                    () -> doSelectForSingleValue(dao, connName, cls, selectSql, paramList), v -> v.map(SingleFlight::copyValue));
+        }
+        return doSelectForSingleValue(dao, connName, cls, selectSql, paramList);
+    }
+
+    /**
+     * 执行获得单个数值.
+     *
+     * @param dao       DAOFactoryImpl对象
+     * @param connName  连接名，如设置为null，则根据sql语句或表名动态路由确定
+     * @param selectSql 查询的SQL
+     * @param cls       要映射的对象类型
+     * @param paramList 查询SQL的绑定参数
+     * @param <T>       要映射的对象类型
+     * @return 单个数值
+     * @throws TransactionException 事务异常
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Optional<T> doSelectForSingleValue(DAOFactoryImpl dao, String connName, Class<T> cls, String selectSql,
+                                                          Object[] paramList) throws TransactionException {
+        long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
         String exception = null;
+        boolean rejected = false;
         if (connName == null) {
             connName = SQLUtils.getConnNameFromSQL(selectSql);
         }
@@ -49,18 +73,21 @@ public class SQLCommandImpl {
         PreparedStatement pstmt = null;
         Object value = null;
         try {
+            SqlExecuteListenerManager.beforeAcquire(connName, selectSql);
             con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, selectSql, connId);
             pstmt = con.prepareStatement(selectSql);
             if (paramList != null && paramList.length > 0) {
                 for (int i = 0; i < paramList.length; i++) {
                     DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, paramList[i]);
                 }
             }
-            connTime = System.currentTimeMillis() - start;
-            long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, selectSql, paramList);
+            long dbStart = System.nanoTime();
             ResultSet rs = pstmt.executeQuery();
-            dbTime = System.currentTimeMillis() - dbStart;
+            dbTime = (System.nanoTime() - dbStart) / 1000;
             if (rs.next()) {
                 if (cls == int.class || cls == Integer.class) {
                     value = rs.getInt(1);
@@ -86,7 +113,12 @@ public class SQLCommandImpl {
             }
             rs.close();
         } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+                throw (SqlExecuteRejectedException) e;
+            }
             exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, selectSql, paramList, e);
             throw new TransactionException(connName + ": " + e.getMessage(), e);
         } finally {
             if (pstmt != null) {
@@ -96,16 +128,13 @@ public class SQLCommandImpl {
                     logger.error(e.getMessage(), e);
                 }
             }
-            if (con != null) {
-                try {
-                    con.close();
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
+            dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), value == null ? 0 : 1, connTime, dbTime, allTime,
+                        exception);
+                SqlExecuteListenerManager.afterExecute(connName, selectSql, paramList, value == null ? 0 : 1, connTime, dbTime, allTime);
             }
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), value == null ? 0 : 1, connTime, dbTime, allTime,
-                    exception);
         }
         return Optional.ofNullable((T) value);
     }
@@ -125,10 +154,11 @@ public class SQLCommandImpl {
     @SuppressWarnings("unchecked")
     public static final <T> ArrayList<T> selectForSingleList(DAOFactoryImpl dao, String connName, Class<T> cls,
                                                         String selectSql, Object[] paramList) throws TransactionException {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
         String exception = null;
+        boolean rejected = false;
         if (connName == null) {
             connName = SQLUtils.getConnNameFromSQL(selectSql);
         }
@@ -136,8 +166,10 @@ public class SQLCommandImpl {
         PreparedStatement pstmt = null;
         ArrayList<Object> list = new ArrayList<Object>(128);
         try {
+            SqlExecuteListenerManager.beforeAcquire(connName, selectSql);
             con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, selectSql, connId);
             pstmt = con.prepareStatement(selectSql);
             int i = 0;
             if (paramList != null && paramList.length > 0) {
@@ -145,10 +177,11 @@ public class SQLCommandImpl {
                     DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, paramList[i]);
                 }
             }
-            connTime = System.currentTimeMillis() - start;
-            long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, selectSql, paramList);
+            long dbStart = System.nanoTime();
             ResultSet rs = pstmt.executeQuery();
-            dbTime = System.currentTimeMillis() - dbStart;
+            dbTime = (System.nanoTime() - dbStart) / 1000;
 
             if (cls == int.class || cls == Integer.class) {
                 while (rs.next()) {
@@ -193,7 +226,12 @@ public class SQLCommandImpl {
             }
             rs.close();
         } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+                throw (SqlExecuteRejectedException) e;
+            }
             exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, selectSql, paramList, e);
             throw new TransactionException(connName + ": " + e.getMessage(), e);
         } finally {
             if (pstmt != null) {
@@ -203,16 +241,13 @@ public class SQLCommandImpl {
                     logger.error(e.getMessage(), e);
                 }
             }
-            if (con != null) {
-                try {
-                    con.close();
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
+            dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), list.size(), connTime, dbTime, allTime,
+                        exception);
+                SqlExecuteListenerManager.afterExecute(connName, selectSql, paramList, list.size(), connTime, dbTime, allTime);
             }
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), list.size(), connTime, dbTime, allTime,
-                    exception);
         }
         return (ArrayList<T>) list;
     }
@@ -232,10 +267,11 @@ public class SQLCommandImpl {
      */
     public static final DataSet selectForDataSet(DAOFactoryImpl dao, String connName, String selectSql,
                                                  Object[] paramList, int startIndex, int resultNum, boolean autoCount) throws TransactionException {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0, dsSize = 0;
         String exception = null;
+        boolean rejected = false;
         if (connName == null) {
             connName = SQLUtils.getConnNameFromSQL(selectSql);
         }
@@ -253,8 +289,10 @@ public class SQLCommandImpl {
         PreparedStatement pstmt = null;
         Object[] po = null;
         try {
+            SqlExecuteListenerManager.beforeAcquire(connName, selectSql);
             con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, selectSql, connId);
             if (resultNum > 0 && startIndex >= 0) {
                 Dialect dialect = ConnectionManager.getDialect(connName);
                 po = dialect.getPagedSQL(selectSql, startIndex, resultNum);
@@ -272,15 +310,21 @@ public class SQLCommandImpl {
                 pstmt.setInt(i + 1, (Integer) po[1]);
                 pstmt.setInt(i + 2, (Integer) po[2]);
             }
-            connTime = System.currentTimeMillis() - start;
-            long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, selectSql, paramList);
+            long dbStart = System.nanoTime();
             ResultSet rs = pstmt.executeQuery();
-            dbTime = System.currentTimeMillis() - dbStart;
+            dbTime = (System.nanoTime() - dbStart) / 1000;
             ds = new DataSet(rs, startIndex, resultNum, allsize);
             rs.close();
             dsSize = ds.size();
         } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+                throw (SqlExecuteRejectedException) e;
+            }
             exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, selectSql, paramList, e);
             throw new TransactionException(connName + ": " + e.getMessage(), e);
         } finally {
             if (pstmt != null) {
@@ -290,15 +334,12 @@ public class SQLCommandImpl {
                     logger.error(e.getMessage(), e);
                 }
             }
-            if (con != null) {
-                try {
-                    con.close();
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
+            dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), dsSize, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, selectSql, paramList, dsSize, connTime, dbTime, allTime);
             }
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, selectSql, Arrays.toString(paramList), dsSize, connTime, dbTime, allTime, exception);
         }
         return ds;
     }
@@ -315,10 +356,11 @@ public class SQLCommandImpl {
      */
     public static final int executeSQL(DAOFactoryImpl dao, String connName, String executesql, Object[] paramList)
             throws TransactionException {
-        long start = System.currentTimeMillis();
+        long start = System.nanoTime();
         long connTime = 0, dbTime = 0;
         int connId = 0;
         String exception = null;
+        boolean rejected = false;
 
         if (connName == null) {
             connName = SQLUtils.getConnNameFromSQL(executesql);
@@ -328,24 +370,32 @@ public class SQLCommandImpl {
         PreparedStatement pstmt = null;
         int effect = 0;
         try {
+            SqlExecuteListenerManager.beforeAcquire(connName, executesql);
             con = dao.getTransactionController().getConnection(connName);
             connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, executesql, connId);
             pstmt = dao.getBatchUpdateController().prepareStatement(con, executesql);
             if (paramList != null && paramList.length > 0) {
                 for (int i = 0; i < paramList.length; i++) {
                     DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, paramList[i]);
                 }
             }
-            connTime = System.currentTimeMillis() - start;
-            long dbStart = System.currentTimeMillis();
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, executesql, paramList);
+            long dbStart = System.nanoTime();
             if (dao.getBatchUpdateController().getBatchStatus()) {
                 pstmt.addBatch();
             } else {
                 effect = pstmt.executeUpdate();
             }
-            dbTime = System.currentTimeMillis() - dbStart;
+            dbTime = (System.nanoTime() - dbStart) / 1000;
         } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+                throw (SqlExecuteRejectedException) e;
+            }
             exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, executesql, paramList, e);
             throw new TransactionException(connName + ": " + e.getMessage(), e);
         } finally {
             if (!dao.getBatchUpdateController().getBatchStatus() && con != null) {
@@ -355,15 +405,12 @@ public class SQLCommandImpl {
                     logger.error(e.getMessage(), e);
                 }
             }
-            if (dao.getTransactionController().isAutoCommit() && con != null) {
-                try {
-                    con.close();
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
-                }
+            dao.getTransactionController().releaseConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, executesql, Arrays.toString(paramList), effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, executesql, paramList, effect, connTime, dbTime, allTime);
             }
-            long allTime = System.currentTimeMillis() - start;
-            dao.addSqlExecuteStats(connName, connId, executesql, Arrays.toString(paramList), effect, connTime, dbTime, allTime, exception);
         }
         return effect;
     }
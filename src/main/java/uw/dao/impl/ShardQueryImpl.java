@@ -0,0 +1,490 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.DataList;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfig;
+import uw.dao.conf.DaoConfig.ConnPoolConfig;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.util.TableShardingUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 跨分表查询.
+ * 按日期范围确定全部分表，跳过不存在的分表，把sql中的{table}替换为分表名后并行查询各分表，再合并结果.
+ * 非事务且不在连接会话中时并行执行，每个连接池同时执行的查询数受限，否则在当前连接上顺序执行.
+ *
+ * @author axeon
+ */
+public class ShardQueryImpl {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ShardQueryImpl.class);
+
+    /**
+     * sql中分表名的占位符.
+     */
+    public static final String TABLE_PLACEHOLDER = "{table}";
+
+    /**
+     * 连接池表名缓存的有效期，毫秒.
+     */
+    private static final long TABLE_SET_TTL = 60_000L;
+
+    /**
+     * 执行查询的线程池.
+     */
+    private static volatile ExecutorService shardService = null;
+
+    /**
+     * 每个连接池的并发限制.
+     */
+    private static final Map<String, Semaphore> poolSemaphoreMap = new ConcurrentHashMap<>();
+
+    /**
+     * 每个连接池已存在的表名，统一小写，key为连接名.
+     */
+    private static final Map<String, TableSet> tableSetMap = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数.
+     */
+    private ShardQueryImpl() {
+    }
+
+    /**
+     * 查询日期范围内的全部分表，合并为一个列表.
+     * 有comparator时各分表的结果需要已经按相同的顺序排序(sql中带order by)，合并时做多路归并，否则按分表的日期顺序拼接.
+     *
+     * @param dao        DAOFactoryImpl对象
+     * @param cls        要映射的对象类型
+     * @param tableName  基础表名
+     * @param startDate  开始日期，包含
+     * @param endDate    结束日期，包含
+     * @param selectsql  查询SQL语句，用{table}表示分表名
+     * @param paramList  参数的Object数组
+     * @param comparator 排序，可以为null
+     * @param resultNum  结果集大小，每个分表最多查询resultNum条，0表示不限制
+     * @param <T>        要映射的对象类型
+     * @return 列表
+     * @throws TransactionException 事务异常
+     */
+    public static <T> DataList<T> list(DAOFactoryImpl dao, Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+                                       Object[] paramList, Comparator<? super T> comparator, int resultNum) throws TransactionException {
+        List<String> shards = getShards(tableName, startDate, endDate, selectsql);
+        List<DataList<T>> parts = execute(dao, shards, selectsql,
+                (connName, sql) -> EntityCommandImpl.list(dao, connName, cls, sql, paramList, 0, resultNum, false));
+        ArrayList<T> results = comparator == null ? concat(parts, resultNum) : merge(parts, comparator, resultNum);
+        return new DataList<T>(results, 0, resultNum, results.size());
+    }
+
+    /**
+     * 查询日期范围内的全部分表的聚合值，并合并各分表的结果.
+     *
+     * @param dao       DAOFactoryImpl对象
+     * @param cls       要映射的对象类型
+     * @param tableName 基础表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @param selectsql 返回单个聚合值的查询SQL语句，用{table}表示分表名
+     * @param paramList 参数的Object数组
+     * @param aggregate 聚合方式，支持count/sum/min/max
+     * @param <T>       要映射的对象类型
+     * @return 合并后的聚合值
+     * @throws TransactionException 事务异常
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static <T> Optional<T> aggregate(DAOFactoryImpl dao, Class<T> cls, String tableName, Date startDate, Date endDate, String selectsql,
+                                            Object[] paramList, String aggregate) throws TransactionException {
+        String type = aggregate == null ? "" : aggregate.toLowerCase();
+        if (!"count".equals(type) && !"sum".equals(type) && !"min".equals(type) && !"max".equals(type)) {
+            throw new TransactionException("ShardQuery unsupported aggregate: " + aggregate);
+        }
+        List<String> shards = getShards(tableName, startDate, endDate, selectsql);
+        List<Optional<T>> parts = execute(dao, shards, selectsql,
+                (connName, sql) -> SQLCommandImpl.selectForSingleValue(dao, connName, cls, sql, paramList));
+        if ("count".equals(type) || "sum".equals(type)) {
+            BigDecimal total = null;
+            for (Optional<T> part : parts) {
+                if (part.isPresent()) {
+                    BigDecimal value = new BigDecimal(part.get().toString());
+                    total = total == null ? value : total.add(value);
+                }
+            }
+            if (total == null && "count".equals(type)) {
+                // 没有任何分表时count为0
+                total = BigDecimal.ZERO;
+            }
+            return total == null ? Optional.empty() : Optional.of(convertNumber(total, cls));
+        }
+        T result = null;
+        for (Optional<T> part : parts) {
+            if (part.isPresent()) {
+                T value = part.get();
+                if (result == null) {
+                    result = value;
+                } else {
+                    int cmp = ((Comparable) value).compareTo(result);
+                    if ("min".equals(type) ? cmp < 0 : cmp > 0) {
+                        result = value;
+                    }
+                }
+            }
+        }
+        return Optional.ofNullable(result);
+    }
+
+    /**
+     * 获得日期范围内已存在的分表，按日期升序排列.
+     * 不是按日期分表时只返回表名本身；日期范围覆盖的分表数超过maxShards时拒绝执行.
+     *
+     * @param tableName 基础表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @param selectsql 查询SQL语句
+     * @return 分表列表
+     * @throws TransactionException 参数错误
+     */
+    private static List<String> getShards(String tableName, Date startDate, Date endDate, String selectsql) throws TransactionException {
+        if (startDate == null || endDate == null) {
+            throw new TransactionException("ShardQuery requires both startDate and endDate: " + tableName);
+        }
+        if (selectsql == null || !selectsql.contains(TABLE_PLACEHOLDER)) {
+            throw new TransactionException("ShardQuery sql must use " + TABLE_PLACEHOLDER + " as the table name: " + selectsql);
+        }
+        DaoConfig config = DaoConfigManager.getConfig();
+        int maxShards = config == null ? 400 : Math.max(1, config.getShardQuery().getMaxShards());
+        List<String> names = TableShardingUtils.getTableNamesByDateRange(tableName, startDate, endDate, maxShards);
+        if (names.size() > maxShards) {
+            throw new TransactionException("ShardQuery date range of " + tableName + " covers more than " + maxShards + " shards!");
+        }
+        if (names.size() == 1 && names.get(0).equals(tableName)) {
+            return names;
+        }
+        List<String> shards = new ArrayList<>(names.size());
+        for (String name : names) {
+            Set<String> tableSet = getTableSet(DaoConfigManager.getRouteMapping(name, "read"));
+            // 无法获得表名时不过滤
+            if (tableSet == null || tableSet.contains(name.toLowerCase())) {
+                shards.add(name);
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * 获得连接池已存在的表名，缓存TABLE_SET_TTL毫秒.
+     *
+     * @param connName 连接名
+     * @return 表名集合，统一小写，载入失败返回null
+     */
+    private static Set<String> getTableSet(String connName) {
+        String key = connName == null ? "" : connName;
+        TableSet tableSet = tableSetMap.get(key);
+        long now = System.currentTimeMillis();
+        if (tableSet != null && now - tableSet.loadTime < TABLE_SET_TTL) {
+            return tableSet.names;
+        }
+        Set<String> names = new HashSet<>();
+        Connection conn = null;
+        try {
+            conn = ConnectionManager.getConnection(connName);
+            DatabaseMetaData metaData = conn.getMetaData();
+            try (ResultSet rs = metaData.getTables(conn.getCatalog(), null, null, new String[]{"TABLE"})) {
+                while (rs.next()) {
+                    names.add(rs.getString("TABLE_NAME").toLowerCase());
+                }
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return null;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+        tableSetMap.put(key, new TableSet(now, names));
+        return names;
+    }
+
+    /**
+     * 执行各分表的查询，结果按分表顺序返回.
+     *
+     * @param dao       DAOFactoryImpl对象
+     * @param shards    分表列表
+     * @param selectsql 查询SQL语句，用{table}表示分表名
+     * @param query     单个分表的查询
+     * @param <R>       结果类型
+     * @return 各分表的结果
+     * @throws TransactionException 事务异常
+     */
+    private static <R> List<R> execute(DAOFactoryImpl dao, List<String> shards, String selectsql, ShardQuery<R> query)
+            throws TransactionException {
+        List<R> results = new ArrayList<>(shards.size());
+        if (shards.size() < 2 || !dao.getTransactionController().isAutoCommit() || dao.getTransactionController().isSessionOpen()) {
+            for (String shard : shards) {
+                results.add(query.query(DaoConfigManager.getRouteMapping(shard, "read"), selectsql.replace(TABLE_PLACEHOLDER, shard)));
+            }
+            return results;
+        }
+        ExecutorService service = getShardService();
+        List<CompletableFuture<R>> futures = new ArrayList<>(shards.size());
+        for (String shard : shards) {
+            String connName = DaoConfigManager.getRouteMapping(shard, "read");
+            String sql = selectsql.replace(TABLE_PLACEHOLDER, shard);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                Semaphore semaphore = getPoolSemaphore(connName);
+                semaphore.acquireUninterruptibly();
+                try {
+                    return query.query(connName, sql);
+                } catch (TransactionException e) {
+                    throw new CompletionException(e);
+                } finally {
+                    semaphore.release();
+                }
+            }, service));
+        }
+        TransactionException error = null;
+        for (CompletableFuture<R> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof TransactionException ? (TransactionException) e.getCause()
+                            : new TransactionException(e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
+    /**
+     * 按分表顺序拼接结果.
+     *
+     * @param parts     各分表的结果
+     * @param resultNum 结果集大小，0表示不限制
+     * @param <T>       要映射的对象类型
+     * @return 拼接后的结果
+     */
+    private static <T> ArrayList<T> concat(List<DataList<T>> parts, int resultNum) {
+        ArrayList<T> results = new ArrayList<>();
+        for (DataList<T> part : parts) {
+            for (T t : part.results()) {
+                if (resultNum > 0 && results.size() >= resultNum) {
+                    return results;
+                }
+                results.add(t);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 多路归并各分表已排序的结果，相等时分表靠前的在前.
+     *
+     * @param parts      各分表的结果
+     * @param comparator 排序
+     * @param resultNum  结果集大小，0表示不限制
+     * @param <T>        要映射的对象类型
+     * @return 归并后的结果
+     */
+    private static <T> ArrayList<T> merge(List<DataList<T>> parts, Comparator<? super T> comparator, int resultNum) {
+        PriorityQueue<MergeCursor<T>> queue = new PriorityQueue<>(Math.max(1, parts.size()), (a, b) -> {
+            int cmp = comparator.compare(a.current(), b.current());
+            return cmp != 0 ? cmp : Integer.compare(a.shardIndex, b.shardIndex);
+        });
+        for (int i = 0; i < parts.size(); i++) {
+            List<T> list = parts.get(i).results();
+            if (!list.isEmpty()) {
+                queue.add(new MergeCursor<>(list, i));
+            }
+        }
+        ArrayList<T> results = new ArrayList<>();
+        while (!queue.isEmpty() && (resultNum <= 0 || results.size() < resultNum)) {
+            MergeCursor<T> cursor = queue.poll();
+            results.add(cursor.current());
+            if (++cursor.pos < cursor.list.size()) {
+                queue.add(cursor);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 把合计值转换为要映射的数值类型.
+     *
+     * @param value 合计值
+     * @param cls   要映射的对象类型
+     * @param <T>   要映射的对象类型
+     * @return 转换后的值
+     * @throws TransactionException 不支持的类型
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T convertNumber(BigDecimal value, Class<T> cls) throws TransactionException {
+        if (cls == BigDecimal.class || cls == Number.class || cls == Object.class) {
+            return (T) value;
+        } else if (cls == Long.class || cls == long.class) {
+            return (T) Long.valueOf(value.longValue());
+        } else if (cls == Integer.class || cls == int.class) {
+            return (T) Integer.valueOf(value.intValue());
+        } else if (cls == Double.class || cls == double.class) {
+            return (T) Double.valueOf(value.doubleValue());
+        } else if (cls == Float.class || cls == float.class) {
+            return (T) Float.valueOf(value.floatValue());
+        } else if (cls == Short.class || cls == short.class) {
+            return (T) Short.valueOf(value.shortValue());
+        } else if (cls == BigInteger.class) {
+            return (T) value.toBigInteger();
+        } else if (cls == String.class) {
+            return (T) value.toPlainString();
+        }
+        throw new TransactionException("ShardQuery unsupported aggregate type: " + cls.getName());
+    }
+
+    /**
+     * 获得执行查询的线程池.
+     *
+     * @return 线程池
+     */
+    private static ExecutorService getShardService() {
+        ExecutorService service = shardService;
+        if (service == null) {
+            synchronized (ShardQueryImpl.class) {
+                service = shardService;
+                if (service == null) {
+                    DaoConfig config = DaoConfigManager.getConfig();
+                    int threads = config == null ? 8 : Math.max(1, config.getShardQuery().getThreads());
+                    service = shardService = Executors.newFixedThreadPool(threads, r -> {
+                        Thread t = new Thread(r);
+                        t.setName("uw-dao.shard-query");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * 获得连接池的并发限制，不超过连接池的最大连接数.
+     *
+     * @param connName 连接名
+     * @return Semaphore
+     */
+    private static Semaphore getPoolSemaphore(String connName) {
+        return poolSemaphoreMap.computeIfAbsent(connName == null ? "" : connName, key -> {
+            DaoConfig config = DaoConfigManager.getConfig();
+            int permits = config == null ? 4 : config.getShardQuery().getMaxConnPerPool();
+            ConnPoolConfig poolConfig = config == null ? null : DaoConfigManager.getConnPoolConfig(key);
+            if (poolConfig != null && poolConfig.getMaxConn() > 0) {
+                permits = Math.min(permits, poolConfig.getMaxConn());
+            }
+            return new Semaphore(Math.max(1, permits));
+        });
+    }
+
+    /**
+     * 单个分表的查询.
+     *
+     * @param <R> 结果类型
+     */
+    @FunctionalInterface
+    private interface ShardQuery<R> {
+
+        /**
+         * 执行查询.
+         *
+         * @param connName 连接名
+         * @param sql      替换为分表名后的sql
+         * @return 查询结果
+         * @throws TransactionException 事务异常
+         */
+        R query(String connName, String sql) throws TransactionException;
+    }
+
+    /**
+     * 连接池已存在的表名.
+     */
+    private static class TableSet {
+
+        /**
+         * 载入时间.
+         */
+        private final long loadTime;
+
+        /**
+         * 表名，统一小写.
+         */
+        private final Set<String> names;
+
+        TableSet(long loadTime, Set<String> names) {
+            this.loadTime = loadTime;
+            this.names = names;
+        }
+    }
+
+    /**
+     * 多路归并中一个分表的位置.
+     *
+     * @param <T> 要映射的对象类型
+     */
+    private static class MergeCursor<T> {
+
+        /**
+         * 分表的结果.
+         */
+        private final List<T> list;
+
+        /**
+         * 分表序号.
+         */
+        private final int shardIndex;
+
+        /**
+         * 当前位置.
+         */
+        private int pos = 0;
+
+        MergeCursor(List<T> list, int shardIndex) {
+            this.list = list;
+            this.shardIndex = shardIndex;
+        }
+
+        T current() {
+            return list.get(pos);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package uw.dao.impl;
+
+import uw.dao.TransactionException;
+import uw.dao.vo.FieldMetaInfo;
+import uw.dao.vo.TableMetaInfo;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 相同读取的合并执行.
+ * 同一时刻相同的(连接名,sql,参数)只执行一次查询，并发的调用者等待并共享结果.
+ * 执行查询的调用者在拿到结果前先复制一份私有快照发布出去，其它调用者各自从快照复制，避免互相修改.
+ * 只在非事务、非批量模式下生效，事务中的读取需要看到自己的写入.
+ *
+ * @author axeon
+ */
+public class SingleFlight {
+
+    /**
+     * 是否开启.
+     */
+    private static volatile boolean enable = false;
+
+    /**
+     * 执行中的查询.
+     */
+    private static final Map<FlightKey, CompletableFuture<Object>> flightMap = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数.
+     */
+    private SingleFlight() {
+    }
+
+    /**
+     * 是否开启.
+     *
+     * @return boolean
+     */
+    public static boolean isEnable() {
+        return enable;
+    }
+
+    /**
+     * 设置是否开启.
+     *
+     * @param enable 是否开启
+     */
+    public static void setEnable(boolean enable) {
+        SingleFlight.enable = enable;
+    }
+
+    /**
+     * 当前dao是否可以合并读取.
+     *
+     * @param dao DAOFactoryImpl对象
+     * @return boolean
+     */
+    static boolean isApplicable(DAOFactoryImpl dao) {
+        return enable && dao.getTransactionController().isAutoCommit() && !dao.getBatchUpdateController().getBatchStatus();
+    }
+
+    /**
+     * 执行查询，相同key的并发查询只执行一次.
+     *
+     * @param key    查询的key，包括连接名、sql和参数等
+     * @param loader 查询
+     * @param copier 共享结果时的复制方法
+     * @param <T>    结果类型
+     * @return 查询结果，执行查询的调用者拿到原始结果，其它调用者拿到从快照复制的结果
+     * @throws TransactionException 事务异常
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T execute(Object[] key, Loader<T> loader, Copier<T> copier) throws TransactionException {
+        FlightKey flightKey = new FlightKey(key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = flightMap.putIfAbsent(flightKey, flight);
+        if (running == null) {
+            try {
+                T value = loader.load();
+                // 原始结果返回给调用者之前先复制快照，调用者之后的修改不会影响其它调用者
+                flight.complete(copier.copy(value));
+                return value;
+            } catch (TransactionException e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } catch (Exception e) {
+                flight.completeExceptionally(e);
+                throw new TransactionException(e.getMessage(), e);
+            } catch (Throwable e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                flightMap.remove(flightKey, flight);
+            }
+        }
+        T value;
+        try {
+            value = (T) running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw new TransactionException(cause.getMessage(), cause);
+        }
+        try {
+            return copier.copy(value);
+        } catch (Exception e) {
+            throw new TransactionException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 复制一个实体的全部映射字段.
+     *
+     * @param entity 实体
+     * @param <T>    实体类型
+     * @return 复制的实体
+     * @throws Exception 异常
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copyEntity(T entity) throws Exception {
+        if (entity == null) {
+            return null;
+        }
+        TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(entity.getClass());
+        T copy = (T) entity.getClass().newInstance();
+        for (FieldMetaInfo fmi : emi.getColumnMap().values()) {
+            fmi.getField().set(copy, copyValue(fmi.getField().get(entity)));
+        }
+        return copy;
+    }
+
+    /**
+     * 复制可变的值.
+     *
+     * @param value 值
+     * @param <T>   值类型
+     * @return 复制的值
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copyValue(T value) {
+        if (value instanceof Date) {
+            return (T) ((Date) value).clone();
+        }
+        if (value instanceof byte[]) {
+            return (T) ((byte[]) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * 查询.
+     *
+     * @param <T> 结果类型
+     */
+    @FunctionalInterface
+    interface Loader<T> {
+
+        /**
+         * 执行查询.
+         *
+         * @return 查询结果
+         * @throws TransactionException 事务异常
+         */
+        T load() throws TransactionException;
+    }
+
+    /**
+     * 结果复制.
+     *
+     * @param <T> 结果类型
+     */
+    @FunctionalInterface
+    interface Copier<T> {
+
+        /**
+         * 复制结果.
+         *
+         * @param value 结果
+         * @return 复制的结果
+         * @throws Exception 异常
+         */
+        T copy(T value) throws Exception;
+    }
+
+    /**
+     * 查询的key，按数组内容比较.
+     */
+    private static class FlightKey {
+
+        /**
+         * key的内容.
+         */
+        private final Object[] key;
+
+        /**
+         * hash值.
+         */
+        private final int hash;
+
+        FlightKey(Object[] key) {
+            this.key = key;
+            this.hash = Arrays.deepHashCode(key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof FlightKey && hash == ((FlightKey) obj).hash && Arrays.deepEquals(key, ((FlightKey) obj).key);
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.SqlExecuteListener;
+import uw.dao.SqlExecuteRejectedException;
+import uw.dao.TransactionException;
+
+import java.util.Arrays;
+
+/**
+ * sql执行监听器管理.
+ * 监听器保存在copy-on-write数组中，没有监听器时每个回调只是一次volatile读和长度判断，不产生任何对象.
+ *
+ * @author axeon
+ */
+public class SqlExecuteListenerManager {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SqlExecuteListenerManager.class);
+
+    /**
+     * 空数组.
+     */
+    private static final SqlExecuteListener[] EMPTY = new SqlExecuteListener[0];
+
+    /**
+     * 监听器数组.
+     */
+    private static volatile SqlExecuteListener[] listeners = EMPTY;
+
+    /**
+     * 构造函数.
+     */
+    private SqlExecuteListenerManager() {
+    }
+
+    /**
+     * 注册监听器.
+     *
+     * @param listener 监听器
+     */
+    public static synchronized void addListener(SqlExecuteListener listener) {
+        if (listener == null) {
+            return;
+        }
+        for (SqlExecuteListener l : listeners) {
+            if (l == listener) {
+                return;
+            }
+        }
+        SqlExecuteListener[] array = Arrays.copyOf(listeners, listeners.length + 1);
+        array[array.length - 1] = listener;
+        listeners = array;
+    }
+
+    /**
+     * 注销监听器.
+     *
+     * @param listener 监听器
+     */
+    public static synchronized void removeListener(SqlExecuteListener listener) {
+        SqlExecuteListener[] array = listeners;
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == listener) {
+                SqlExecuteListener[] newArray = new SqlExecuteListener[array.length - 1];
+                System.arraycopy(array, 0, newArray, 0, i);
+                System.arraycopy(array, i + 1, newArray, i, array.length - i - 1);
+                listeners = newArray;
+                return;
+            }
+        }
+    }
+
+    /**
+     * 注销全部监听器.
+     */
+    public static synchronized void clear() {
+        listeners = EMPTY;
+    }
+
+    /**
+     * 获得已注册的监听器.
+     *
+     * @return 监听器数组的拷贝
+     */
+    public static SqlExecuteListener[] getListeners() {
+        return listeners.clone();
+    }
+
+    /**
+     * 获取连接之前.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @throws SqlExecuteRejectedException 监听器拒绝执行
+     */
+    static void beforeAcquire(String connName, String sql) throws SqlExecuteRejectedException {
+        SqlExecuteListener[] array = listeners;
+        if (array.length == 0) {
+            return;
+        }
+        for (SqlExecuteListener listener : array) {
+            try {
+                listener.beforeAcquire(connName, sql);
+            } catch (SqlExecuteRejectedException e) {
+                throw e;
+            } catch (TransactionException e) {
+                throw new SqlExecuteRejectedException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 获取连接之后.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param connId   连接ID
+     */
+    static void afterAcquire(String connName, String sql, int connId) {
+        SqlExecuteListener[] array = listeners;
+        if (array.length == 0) {
+            return;
+        }
+        for (SqlExecuteListener listener : array) {
+            try {
+                listener.afterAcquire(connName, sql, connId);
+            } catch (Throwable e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 执行之前.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @throws SqlExecuteRejectedException 监听器拒绝执行
+     */
+    static void beforeExecute(String connName, String sql, Object[] params) throws SqlExecuteRejectedException {
+        SqlExecuteListener[] array = listeners;
+        if (array.length == 0) {
+            return;
+        }
+        for (SqlExecuteListener listener : array) {
+            try {
+                listener.beforeExecute(connName, sql, params);
+            } catch (SqlExecuteRejectedException e) {
+                throw e;
+            } catch (TransactionException e) {
+                throw new SqlExecuteRejectedException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 执行之后.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @param rowNum   返回/影响的行数
+     * @param connTime Conn时间
+     * @param dbTime   数据库执行时间
+     * @param allTime  全部时间
+     */
+    static void afterExecute(String connName, String sql, Object[] params, int rowNum, long connTime, long dbTime, long allTime) {
+        SqlExecuteListener[] array = listeners;
+        if (array.length == 0) {
+            return;
+        }
+        for (SqlExecuteListener listener : array) {
+            try {
+                listener.afterExecute(connName, sql, params, rowNum, connTime, dbTime, allTime);
+            } catch (Throwable e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 执行出错.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param params   绑定参数
+     * @param e        异常
+     */
+    static void onError(String connName, String sql, Object[] params, Throwable e) {
+        SqlExecuteListener[] array = listeners;
+        if (array.length == 0) {
+            return;
+        }
+        for (SqlExecuteListener listener : array) {
+            try {
+                listener.onError(connName, sql, params, e);
+            } catch (Throwable t) {
+                logger.error(t.getMessage(), t);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,495 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.SqlExecuteRejectedException;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.dialect.Dialect;
+import uw.dao.util.DaoReflectUtils;
+import uw.dao.vo.CopyProgress;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 跨连接池的表复制.
+ * 当前线程在源连接上流式读取，按批次放入有界队列，多个写入线程在目标连接池的独立连接上按目标列的类型转换后多行插入，
+ * 读取和写入同时进行，队列满时读取等待写入.
+ * 每个批次单独提交，出错时已写入的批次不会回滚.
+ *
+ * @author axeon
+ */
+public class TableCopyImpl {
+
+    /**
+     * 默认写入线程数.
+     */
+    public static final int DEFAULT_WRITER_THREADS = 2;
+
+    /**
+     * 默认批次行数.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TableCopyImpl.class);
+
+    /**
+     * 读取结束的标记.
+     */
+    private static final List<Object[]> END = new ArrayList<>(0);
+
+    /**
+     * 构造函数.
+     */
+    private TableCopyImpl() {
+    }
+
+    /**
+     * 把源连接上查询的结果复制到目标连接的表中，查询的列名需要和目标表的列名一致.
+     *
+     * @param dao            DAOFactoryImpl对象
+     * @param srcConnName    源连接名，如设置为null，则根据sql语句动态路由确定
+     * @param selectSql      源查询sql
+     * @param paramList      源查询的参数
+     * @param targetConnName 目标连接名，如设置为null，则根据目标表名动态路由确定
+     * @param targetTable    目标表名
+     * @param writerThreads  写入线程数
+     * @param batchSize      每批次的行数
+     * @param progress       进度，可以为null
+     * @return 写入的行数
+     * @throws TransactionException 事务异常
+     */
+    public static long copy(DAOFactoryImpl dao, String srcConnName, String selectSql, Object[] paramList, String targetConnName, String targetTable,
+                            int writerThreads, int batchSize, CopyProgress progress) throws TransactionException {
+        if (srcConnName == null) {
+            srcConnName = SQLUtils.getConnNameFromSQL(selectSql);
+        }
+        if (targetConnName == null) {
+            targetConnName = DaoConfigManager.getRouteMapping(targetTable, "write");
+        }
+        writerThreads = Math.max(1, writerThreads);
+        batchSize = Math.max(1, batchSize);
+        CopyProgress stat = progress == null ? new CopyProgress() : progress;
+        stat.start();
+        Map<String, Integer> targetTypes = loadColumnTypes(targetConnName, targetTable);
+        BlockingQueue<List<Object[]>> queue = new ArrayBlockingQueue<>(writerThreads * 2);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        List<CompletableFuture<Void>> writers = new ArrayList<>(writerThreads);
+        ExecutorService service = null;
+        long start = System.nanoTime();
+        long connTime = 0, dbTime = 0;
+        int connId = 0, rowNum = 0;
+        String exception = null;
+        boolean rejected = false;
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            SqlExecuteListenerManager.beforeAcquire(srcConnName, selectSql);
+            con = ConnectionManager.getConnection(srcConnName);
+            connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(srcConnName, selectSql, connId);
+            pstmt = TableScanImpl.prepareStreamStatement(con, selectSql, ConnectionManager.getDialect(srcConnName));
+            if (paramList != null) {
+                for (int i = 0; i < paramList.length; i++) {
+                    DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, paramList[i]);
+                }
+            }
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(srcConnName, selectSql, paramList);
+            long dbStart = System.nanoTime();
+            ResultSet rs = pstmt.executeQuery();
+            dbTime = (System.nanoTime() - dbStart) / 1000;
+            ResultSetMetaData rsm = rs.getMetaData();
+            int colsCount = rsm.getColumnCount();
+            String[] cols = new String[colsCount];
+            int[] srcTypes = new int[colsCount];
+            int[] types = new int[colsCount];
+            for (int k = 0; k < colsCount; k++) {
+                cols[k] = rsm.getColumnLabel(k + 1).toLowerCase();
+                srcTypes[k] = rsm.getColumnType(k + 1);
+                Integer type = targetTypes.get(cols[k]);
+                if (type == null) {
+                    throw new TransactionException("column[" + cols[k] + "] not found in " + targetConnName + "." + targetTable);
+                }
+                types[k] = type;
+            }
+            service = Executors.newFixedThreadPool(writerThreads, r -> {
+                Thread t = new Thread(r);
+                t.setName("uw-dao.table-copy");
+                t.setDaemon(true);
+                return t;
+            });
+            String writeConnName = targetConnName;
+            int maxRows = batchSize;
+            for (int i = 0; i < writerThreads; i++) {
+                writers.add(CompletableFuture.runAsync(() -> write(dao, writeConnName, targetTable, cols, types, maxRows, queue, error, stat), service));
+            }
+            List<Object[]> batch = new ArrayList<>(batchSize);
+            while (error.get() == null && rs.next()) {
+                Object[] row = new Object[colsCount];
+                for (int k = 0; k < colsCount; k++) {
+                    row[k] = readValue(rs, k + 1, srcTypes[k]);
+                }
+                batch.add(row);
+                rowNum++;
+                if (batch.size() >= batchSize) {
+                    stat.addRead(batch.size());
+                    queue.put(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty() && error.get() == null) {
+                stat.addRead(batch.size());
+                queue.put(batch);
+            }
+            rs.close();
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            error.compareAndSet(null, e);
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+            } else {
+                exception = e.toString();
+                SqlExecuteListenerManager.onError(srcConnName, selectSql, paramList, e);
+            }
+        } finally {
+            // 写入线程会一直取到结束标记，出错后取出的批次直接丢弃。
+            for (int i = 0; i < writers.size(); i++) {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    error.compareAndSet(null, e);
+                    break;
+                }
+            }
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            TableScanImpl.closeStreamConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(srcConnName, connId, selectSql, Arrays.toString(paramList), rowNum, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(srcConnName, selectSql, paramList, rowNum, connTime, dbTime, allTime);
+            }
+        }
+        for (CompletableFuture<Void> writer : writers) {
+            writer.join();
+        }
+        if (service != null) {
+            service.shutdown();
+        }
+        Throwable e = error.get();
+        stat.finish(e == null ? null : e.toString());
+        if (e != null) {
+            if (e instanceof TransactionException) {
+                throw (TransactionException) e;
+            }
+            throw new TransactionException(srcConnName + " -> " + targetConnName + ": " + e.getMessage(), e);
+        }
+        return stat.getWrittenRows();
+    }
+
+    /**
+     * 写入线程，从队列取出批次写入目标表，直到取到结束标记.
+     *
+     * @param dao         DAOFactoryImpl对象
+     * @param connName    目标连接名
+     * @param tableName   目标表名
+     * @param cols        列名
+     * @param types       目标列的类型
+     * @param batchSize   每批次的行数
+     * @param queue       批次队列
+     * @param error       出错信息
+     * @param stat        进度
+     */
+    private static void write(DAOFactoryImpl dao, String connName, String tableName, String[] cols, int[] types, int batchSize,
+                              BlockingQueue<List<Object[]>> queue, AtomicReference<Throwable> error, CopyProgress stat) {
+        Connection con = null;
+        PreparedStatement fullStmt = null;
+        try {
+            con = ConnectionManager.getConnection(connName);
+            Dialect dialect = ConnectionManager.getDialect(connName);
+            int maxRows = Math.max(1, Math.min(batchSize, dialect.getBatchInsertMaxParams() / cols.length));
+            String fullSql = dialect.getBatchInsertSQL(tableName, cols, maxRows);
+            while (true) {
+                List<Object[]> batch = queue.take();
+                if (batch == END) {
+                    break;
+                }
+                stat.takeQueued();
+                if (error.get() != null) {
+                    continue;
+                }
+                try {
+                    for (int from = 0; from < batch.size(); from += maxRows) {
+                        int rows = Math.min(maxRows, batch.size() - from);
+                        if (rows == maxRows) {
+                            if (fullStmt == null) {
+                                fullStmt = con.prepareStatement(fullSql);
+                            }
+                            insertRows(dao, con, connName, fullStmt, fullSql, batch, from, rows, types);
+                        } else {
+                            String sql = dialect.getBatchInsertSQL(tableName, cols, rows);
+                            try (PreparedStatement pstmt = con.prepareStatement(sql)) {
+                                insertRows(dao, con, connName, pstmt, sql, batch, from, rows, types);
+                            }
+                        }
+                    }
+                    stat.addWritten(batch.size());
+                } catch (Exception e) {
+                    logger.error("copy to {}.{} failed: {}", connName, tableName, e.getMessage());
+                    error.compareAndSet(null, new TransactionException(connName + ": " + e.getMessage(), e));
+                }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            error.compareAndSet(null, new TransactionException(connName + ": " + e.getMessage(), e));
+            // 取完剩余的批次，避免读取线程阻塞。
+            try {
+                while (queue.take() != END) {
+                    stat.takeQueued();
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            if (fullStmt != null) {
+                try {
+                    fullStmt.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            if (con != null) {
+                try {
+                    con.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 执行一次多行插入.
+     *
+     * @param dao      DAOFactoryImpl对象
+     * @param con      目标连接
+     * @param connName 目标连接名
+     * @param pstmt    多行插入的statement
+     * @param sql      多行插入sql
+     * @param batch    批次
+     * @param from     开始位置
+     * @param rows     行数
+     * @param types    目标列的类型
+     * @throws Exception 异常
+     */
+    private static void insertRows(DAOFactoryImpl dao, Connection con, String connName, PreparedStatement pstmt, String sql, List<Object[]> batch,
+                                   int from, int rows, int[] types) throws Exception {
+        long start = System.nanoTime();
+        String exception = null;
+        int idx = 1;
+        for (int r = from; r < from + rows; r++) {
+            Object[] row = batch.get(r);
+            for (int k = 0; k < row.length; k++) {
+                Object value = convertValue(row[k], types[k]);
+                if (value == null) {
+                    pstmt.setNull(idx++, types[k]);
+                } else {
+                    pstmt.setObject(idx++, value);
+                }
+            }
+        }
+        SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+        try {
+            pstmt.executeUpdate();
+        } catch (Exception e) {
+            exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, sql, null, e);
+            throw e;
+        } finally {
+            long allTime = (System.nanoTime() - start) / 1000;
+            dao.addSqlExecuteStats(connName, con.hashCode(), sql, "copy: " + rows, rows, 0, allTime, allTime, exception);
+            SqlExecuteListenerManager.afterExecute(connName, sql, null, rows, 0, allTime, allTime);
+        }
+    }
+
+    /**
+     * 按源列的类型读取值，LOB在读取时转为String/byte[].
+     *
+     * @param rs      结果集
+     * @param index   列序号
+     * @param srcType 源列的类型
+     * @return 值
+     * @throws SQLException SQL异常
+     */
+    private static Object readValue(ResultSet rs, int index, int srcType) throws SQLException {
+        switch (srcType) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+                return rs.getTimestamp(index);
+            case Types.TIME:
+                return rs.getTime(index);
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return rs.getBigDecimal(index);
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+                return rs.getString(index);
+            case Types.BLOB:
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return rs.getBytes(index);
+            default:
+                return rs.getObject(index);
+        }
+    }
+
+    /**
+     * 把值转换为目标列的类型.
+     *
+     * @param value 值
+     * @param type  目标列的类型
+     * @return 转换后的值
+     */
+    static Object convertValue(Object value, int type) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case Types.BIGINT:
+                if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                } else if (value instanceof Boolean) {
+                    return (Boolean) value ? 1L : 0L;
+                } else if (value instanceof String) {
+                    return Long.valueOf(((String) value).trim());
+                }
+                return value;
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                if (value instanceof Number) {
+                    return ((Number) value).intValue();
+                } else if (value instanceof Boolean) {
+                    return (Boolean) value ? 1 : 0;
+                } else if (value instanceof String) {
+                    return Integer.valueOf(((String) value).trim());
+                }
+                return value;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                if (value instanceof BigDecimal) {
+                    return value;
+                } else if (value instanceof Number || value instanceof String) {
+                    return new BigDecimal(value.toString().trim());
+                }
+                return value;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                if (value instanceof Number) {
+                    return ((Number) value).doubleValue();
+                } else if (value instanceof String) {
+                    return Double.valueOf(((String) value).trim());
+                }
+                return value;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                if (value instanceof Number) {
+                    return ((Number) value).intValue() != 0;
+                } else if (value instanceof String) {
+                    return "1".equals(value) || "true".equalsIgnoreCase((String) value);
+                }
+                return value;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                if (value instanceof String) {
+                    return value;
+                } else if (value instanceof byte[]) {
+                    return new String((byte[]) value, StandardCharsets.UTF_8);
+                } else if (value instanceof BigDecimal) {
+                    return ((BigDecimal) value).toPlainString();
+                }
+                return value.toString();
+            case Types.DATE:
+                if (value instanceof java.util.Date && !(value instanceof java.sql.Date)) {
+                    return new java.sql.Date(((java.util.Date) value).getTime());
+                }
+                return value;
+            case Types.TIMESTAMP:
+                if (value instanceof java.util.Date && !(value instanceof Timestamp)) {
+                    return new Timestamp(((java.util.Date) value).getTime());
+                }
+                return value;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * 载入目标表的列类型.
+     *
+     * @param connName  目标连接名
+     * @param tableName 目标表名
+     * @return key=小写列名，value=java.sql.Types
+     * @throws TransactionException 事务异常
+     */
+    private static Map<String, Integer> loadColumnTypes(String connName, String tableName) throws TransactionException {
+        Map<String, Integer> map = new HashMap<>();
+        try (Connection con = ConnectionManager.getConnection(connName);
+             PreparedStatement pstmt = con.prepareStatement("select * from " + tableName + " where 1=0");
+             ResultSet rs = pstmt.executeQuery()) {
+            ResultSetMetaData rsm = rs.getMetaData();
+            for (int k = 1; k <= rsm.getColumnCount(); k++) {
+                map.put(rsm.getColumnLabel(k).toLowerCase(), rsm.getColumnType(k));
+            }
+        } catch (SQLException e) {
+            throw new TransactionException(connName + ": " + e.getMessage(), e);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,380 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.ScanHandler;
+import uw.dao.SqlExecuteRejectedException;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfig.ConnPoolConfig;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.dialect.Dialect;
+import uw.dao.util.DaoReflectUtils;
+import uw.dao.vo.FieldMetaInfo;
+import uw.dao.vo.ScanRange;
+import uw.dao.vo.TableMetaInfo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 按主键范围并行扫描整表.
+ * 按主键的最小最大值或采样的分位点把表拆分为多个范围，每个范围在独立的连接上按主键顺序流式读取，
+ * 扫描进度记录在ScanRange中，可以从断点继续.
+ *
+ * @author axeon
+ */
+public class TableScanImpl {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TableScanImpl.class);
+
+    /**
+     * 构造函数.
+     */
+    private TableScanImpl() {
+    }
+
+    /**
+     * 按主键拆分扫描范围，第一个范围没有下界，最后一个范围没有上界.
+     *
+     * @param dao        DAOFactoryImpl对象
+     * @param connName   连接名，如设置为null，则根据表名动态路由确定
+     * @param cls        要映射的对象类型
+     * @param tableName  表名，为null时使用实体类的表名
+     * @param rangeCount 范围数量
+     * @param sampled    是否按主键的分位点拆分，适用于主键分布不均匀的表，否则按最小最大值等分
+     * @return 范围列表
+     * @throws TransactionException 事务异常
+     */
+    public static List<ScanRange> getScanRanges(DAOFactoryImpl dao, String connName, Class<?> cls, String tableName, int rangeCount,
+                                                boolean sampled) throws TransactionException {
+        TableMetaInfo emi = loadScanMetaInfo(cls);
+        if (tableName == null || tableName.length() == 0) {
+            tableName = emi.getTableName();
+        }
+        if (connName == null || connName.length() == 0) {
+            connName = DaoConfigManager.getRouteMapping(tableName, "read");
+        }
+        String pk = emi.getPklist().get(0).getColumnName();
+        List<Long> bounds = new ArrayList<>();
+        Dialect dialect = ConnectionManager.getDialect(connName);
+        String pkSql = "select " + pk + " from " + tableName + " order by " + pk;
+        if (rangeCount > 1 && sampled && dialect.getPagedSQL(pkSql, 0, 1) != null) {
+            long count = SQLCommandImpl.selectForSingleValue(dao, connName, Long.class, "select count(1) from " + tableName, null).orElse(0L);
+            for (int i = 1; i < rangeCount && count > 0; i++) {
+                Object[] po = dialect.getPagedSQL(pkSql, (int) (count * i / rangeCount), 1);
+                Optional<Long> bound = SQLCommandImpl.selectForSingleValue(dao, connName, Long.class, po[0].toString(),
+                        new Object[]{po[1], po[2]});
+                if (bound.isPresent() && (bounds.isEmpty() || bound.get() > bounds.get(bounds.size() - 1))) {
+                    bounds.add(bound.get());
+                }
+            }
+        } else if (rangeCount > 1) {
+            long min = SQLCommandImpl.selectForSingleValue(dao, connName, Long.class, "select min(" + pk + ") from " + tableName, null).orElse(0L);
+            long max = SQLCommandImpl.selectForSingleValue(dao, connName, Long.class, "select max(" + pk + ") from " + tableName, null).orElse(0L);
+            long step = (max - min) / rangeCount + 1;
+            for (long bound = min + step; bound <= max && bounds.size() < rangeCount - 1; bound += step) {
+                bounds.add(bound);
+            }
+        }
+        List<ScanRange> ranges = new ArrayList<>(bounds.size() + 1);
+        Long start = null;
+        for (Long bound : bounds) {
+            ranges.add(new ScanRange(ranges.size(), start, bound - 1));
+            start = bound;
+        }
+        ranges.add(new ScanRange(ranges.size(), start, null));
+        return ranges;
+    }
+
+    /**
+     * 并行扫描各范围，跳过已完成的范围，未完成的范围从lastKey之后继续.
+     * 每个范围使用连接池中独立的连接，不参与当前的事务和连接会话.
+     *
+     * @param dao         DAOFactoryImpl对象
+     * @param connName    连接名，如设置为null，则根据表名动态路由确定
+     * @param cls         要映射的对象类型
+     * @param tableName   表名，为null时使用实体类的表名
+     * @param whereSql    附加的过滤条件，不带where，可以为null
+     * @param paramList   过滤条件的参数
+     * @param ranges      扫描范围，为null时按parallelism * 4个范围等分
+     * @param parallelism 同时扫描的范围数，不超过连接池的最大连接数
+     * @param handler     行处理器
+     * @param <T>         要映射的对象类型
+     * @return 本次扫描的行数
+     * @throws TransactionException 事务异常
+     */
+    public static <T> long scan(DAOFactoryImpl dao, String connName, Class<T> cls, String tableName, String whereSql, Object[] paramList,
+                                List<ScanRange> ranges, int parallelism, ScanHandler<T> handler) throws TransactionException {
+        TableMetaInfo emi = loadScanMetaInfo(cls);
+        if (tableName == null || tableName.length() == 0) {
+            tableName = emi.getTableName();
+        }
+        if (connName == null || connName.length() == 0) {
+            connName = DaoConfigManager.getRouteMapping(tableName, "read");
+        }
+        parallelism = Math.max(1, parallelism);
+        if (ranges == null) {
+            ranges = getScanRanges(dao, connName, cls, tableName, parallelism * 4, false);
+        }
+        List<ScanRange> pending = new ArrayList<>();
+        for (ScanRange range : ranges) {
+            if (!range.isFinished()) {
+                pending.add(range);
+            }
+        }
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        ConnPoolConfig poolConfig = DaoConfigManager.getConfig() == null ? null : DaoConfigManager.getConnPoolConfig(connName);
+        if (poolConfig != null && poolConfig.getMaxConn() > 0) {
+            parallelism = Math.min(parallelism, poolConfig.getMaxConn());
+        }
+        ExecutorService service = Executors.newFixedThreadPool(Math.min(parallelism, pending.size()), r -> {
+            Thread t = new Thread(r);
+            t.setName("uw-dao.table-scan");
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicBoolean stop = new AtomicBoolean(false);
+        String scanConnName = connName;
+        String scanTableName = tableName;
+        List<CompletableFuture<Long>> futures = new ArrayList<>(pending.size());
+        try {
+            for (ScanRange range : pending) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    if (stop.get()) {
+                        return 0L;
+                    }
+                    try {
+                        return scanRange(dao, scanConnName, cls, emi, scanTableName, whereSql, paramList, range, handler, stop);
+                    } catch (TransactionException e) {
+                        stop.set(true);
+                        throw new CompletionException(e);
+                    }
+                }, service));
+            }
+            long total = 0;
+            TransactionException error = null;
+            for (CompletableFuture<Long> future : futures) {
+                try {
+                    total += future.join();
+                } catch (CompletionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof TransactionException ? (TransactionException) e.getCause()
+                                : new TransactionException(e.getCause().getMessage(), e.getCause());
+                    }
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            return total;
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * 在独立的连接上流式扫描一个范围.
+     *
+     * @param dao       DAOFactoryImpl对象
+     * @param connName  连接名
+     * @param cls       要映射的对象类型
+     * @param emi       实体信息
+     * @param tableName 表名
+     * @param whereSql  附加的过滤条件
+     * @param paramList 过滤条件的参数
+     * @param range     范围
+     * @param handler   行处理器
+     * @param stop      其它范围出错时的终止标志
+     * @param <T>       要映射的对象类型
+     * @return 本次扫描的行数
+     * @throws TransactionException 事务异常
+     */
+    private static <T> long scanRange(DAOFactoryImpl dao, String connName, Class<T> cls, TableMetaInfo emi, String tableName, String whereSql,
+                                      Object[] paramList, ScanRange range, ScanHandler<T> handler, AtomicBoolean stop) throws TransactionException {
+        long start = System.nanoTime();
+        long connTime = 0, dbTime = 0;
+        int connId = 0;
+        long rowNum = 0;
+        String exception = null;
+        boolean rejected = false;
+        FieldMetaInfo pkField = emi.getPklist().get(0);
+        String pk = pkField.getColumnName();
+        StringBuilder sb = new StringBuilder(128).append("select * from ").append(tableName).append(" where 1=1");
+        List<Object> params = new ArrayList<>();
+        if (range.getLastKey() != null) {
+            sb.append(" and ").append(pk).append(">?");
+            params.add(range.getLastKey());
+        } else if (range.getStartKey() != null) {
+            sb.append(" and ").append(pk).append(">=?");
+            params.add(range.getStartKey());
+        }
+        if (range.getEndKey() != null) {
+            sb.append(" and ").append(pk).append("<=?");
+            params.add(range.getEndKey());
+        }
+        if (whereSql != null && whereSql.trim().length() > 0) {
+            sb.append(" and (").append(whereSql).append(')');
+        }
+        sb.append(" order by ").append(pk);
+        if (paramList != null) {
+            for (Object param : paramList) {
+                params.add(param);
+            }
+        }
+        String sql = sb.toString();
+        Object[] po = params.toArray();
+        int interval = Math.max(1, handler.getCheckpointInterval());
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        try {
+            SqlExecuteListenerManager.beforeAcquire(connName, sql);
+            con = ConnectionManager.getConnection(connName);
+            connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+            pstmt = prepareStreamStatement(con, sql, ConnectionManager.getDialect(connName));
+            for (int i = 0; i < po.length; i++) {
+                DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, po[i]);
+            }
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, sql, po);
+            long dbStart = System.nanoTime();
+            ResultSet rs = pstmt.executeQuery();
+            dbTime = (System.nanoTime() - dbStart) / 1000;
+            // 获得字段列表
+            ResultSetMetaData rsm = rs.getMetaData();
+            int colsCount = rsm.getColumnCount();
+            FieldMetaInfo[] fields = new FieldMetaInfo[colsCount];
+            for (int k = 0; k < colsCount; k++) {
+                fields[k] = emi.getFieldMetaInfo(rsm.getColumnLabel(k + 1).toLowerCase());
+            }
+            while (!stop.get() && rs.next()) {
+                T entity = cls.newInstance();
+                for (FieldMetaInfo fmi : fields) {
+                    if (fmi != null) {
+                        DaoReflectUtils.DAOLiteLoadReflect(rs, entity, fmi);
+                    }
+                }
+                handler.handle(range, entity);
+                rowNum++;
+                range.setLastKey(((Number) pkField.getField().get(entity)).longValue());
+                range.setRowCount(range.getRowCount() + 1);
+                if (rowNum % interval == 0) {
+                    handler.onCheckpoint(range);
+                }
+            }
+            if (!stop.get()) {
+                range.setFinished(true);
+                handler.onCheckpoint(range);
+            }
+            rs.close();
+        } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+                throw (SqlExecuteRejectedException) e;
+            }
+            exception = e.toString();
+            SqlExecuteListenerManager.onError(connName, sql, po, e);
+            throw new TransactionException(connName + ": " + range + " " + e.getMessage(), e);
+        } finally {
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            closeStreamConnection(con);
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, "scan: " + range, (int) rowNum, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, po, (int) rowNum, connTime, dbTime, allTime);
+            }
+        }
+        return rowNum;
+    }
+
+    /**
+     * 准备流式读取的statement，fetchSize只是提示，驱动不支持时忽略.
+     * PostgreSQL等驱动只在非自动提交时才按fetchSize分批读取，所以先关闭自动提交，用完后由closeStreamConnection恢复.
+     *
+     * @param con     Connection对象
+     * @param sql     查询sql
+     * @param dialect 方言
+     * @return PreparedStatement
+     * @throws SQLException SQL异常
+     */
+    static PreparedStatement prepareStreamStatement(Connection con, String sql, Dialect dialect) throws SQLException {
+        con.setAutoCommit(false);
+        PreparedStatement pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        try {
+            pstmt.setFetchSize(dialect.getStreamFetchSize());
+        } catch (SQLException e) {
+            logger.debug("setFetchSize({}) not supported: {}", dialect.getStreamFetchSize(), e.getMessage());
+        }
+        return pstmt;
+    }
+
+    /**
+     * 结束只读事务，恢复自动提交后归还流式读取的连接.
+     *
+     * @param con Connection对象，可以为null
+     */
+    static void closeStreamConnection(Connection con) {
+        if (con == null) {
+            return;
+        }
+        try {
+            if (!con.getAutoCommit()) {
+                con.rollback();
+                con.setAutoCommit(true);
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+        try {
+            con.close();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 加载实体信息，并检查是否为单个数值主键.
+     *
+     * @param cls 要映射的对象类型
+     * @return 实体信息
+     * @throws TransactionException 不支持扫描的实体
+     */
+    private static TableMetaInfo loadScanMetaInfo(Class<?> cls) throws TransactionException {
+        TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(cls);
+        if (emi == null) {
+            throw new TransactionException("TableMetaInfo[" + cls.getName() + "] not found! ");
+        }
+        if (emi.getPklist().size() != 1) {
+            throw new TransactionException("TableScan requires a single primary key: " + cls.getName());
+        }
+        Class<?> type = emi.getPklist().get(0).getField().getType();
+        if (type != long.class && type != Long.class && type != int.class && type != Integer.class && type != short.class && type != Short.class) {
+            throw new TransactionException("TableScan requires a numeric primary key: " + cls.getName());
+        }
+        return emi;
+    }
+
+}
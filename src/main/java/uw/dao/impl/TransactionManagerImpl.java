@@ -2,6 +2,7 @@ package uw.dao.impl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uw.dao.DaoSession;
 import uw.dao.TransactionException;
 import uw.dao.TransactionManager;
 import uw.dao.conf.DaoConfigManager;
@@ -36,6 +37,16 @@ public class TransactionManagerImpl implements TransactionManager {
      */
     private HashMap<String, Connection> connmap = null;
 
+    /**
+     * 会话中非事务操作复用的连接map表，为null时表示没有开启会话.
+     */
+    private HashMap<String, Connection> sessionConnMap = null;
+
+    /**
+     * 会话的嵌套层数.
+     */
+    private int sessionDepth = 0;
+
     /**
      * 指定的数据库联接，一旦使用，dao.config将无效.
      */
@@ -99,6 +110,61 @@ public class TransactionManagerImpl implements TransactionManager {
         connmap = null;
     }
 
+    /**
+     * 操作结束时归还连接，事务和会话中的连接由事务和会话统一归还.
+     *
+     * @param conn Connection对象
+     */
+    public void releaseConnection(Connection conn) {
+        if (conn == null || !autoCommit || sessionConnMap != null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 开启一个连接会话，支持嵌套，最外层的会话结束时归还连接.
+     *
+     * @return DaoSession对象
+     */
+    protected DaoSession openSession() {
+        if (sessionDepth++ == 0) {
+            sessionConnMap = new HashMap<String, Connection>();
+        }
+        return new SessionImpl();
+    }
+
+    /**
+     * 当前是否在连接会话中.
+     *
+     * @return boolean
+     */
+    public boolean isSessionOpen() {
+        return sessionConnMap != null;
+    }
+
+    /**
+     * 结束一层会话，最外层结束时归还全部连接.
+     */
+    private void closeSession() {
+        if (sessionDepth == 0 || --sessionDepth > 0) {
+            return;
+        }
+        HashMap<String, Connection> map = sessionConnMap;
+        sessionConnMap = null;
+        for (Connection conn : map.values()) {
+            try {
+                conn.close();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
     /**
      * 根据连接名获得配置名称.
      *
@@ -113,7 +179,15 @@ public class TransactionManagerImpl implements TransactionManager {
         }
         Connection conn = null;
         if (autoCommit) {
-            conn = ConnectionManager.getConnection(configName);
+            if (sessionConnMap != null) {
+                conn = sessionConnMap.get(configName);
+                if (conn == null) {
+                    conn = ConnectionManager.getConnection(configName);
+                    sessionConnMap.put(configName, conn);
+                }
+            } else {
+                conn = ConnectionManager.getConnection(configName);
+            }
         } else {
             if (connmap.containsKey(configName)) {
                 conn = (Connection) connmap.get(configName);
@@ -238,4 +312,28 @@ public class TransactionManagerImpl implements TransactionManager {
         return invokeCount;
     }
 
+    /**
+     * DaoSession实现类.
+     */
+    private class SessionImpl implements DaoSession {
+
+        /**
+         * 是否已经结束.
+         */
+        private boolean closed = false;
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                closeSession();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,566 @@
+package uw.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.DataEntity;
+import uw.dao.SqlExecuteRejectedException;
+import uw.dao.TransactionException;
+import uw.dao.conf.DaoConfig.TableShardConfig;
+import uw.dao.conf.DaoConfig.WriteBehindConfig;
+import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.util.DaoReflectUtils;
+import uw.dao.util.TableShardingUtils;
+import uw.dao.vo.FieldMetaInfo;
+import uw.dao.vo.TableMetaInfo;
+
+import java.io.Serializable;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * 延迟合并更新管理.
+ * 同一行(连接名+表名+主键)的计数累加和字段更新先在内存中合并，计数累加求和，字段更新后写覆盖先写，
+ * 再按相同的update语句分组批量写入，热点行的写入次数可以降低几个数量级.
+ * 数据在写入前只保存在内存中，进程异常退出时会丢失，只适用于可以容忍少量丢失的计数和状态.
+ *
+ * @author axeon
+ */
+public class WriteBehindManager {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindManager.class);
+
+    /**
+     * 用于记录统计信息的DAOFactoryImpl对象.
+     */
+    private static final DAOFactoryImpl dao = new DAOFactoryImpl();
+
+    /**
+     * 待写入的更新，key为连接名#表名#主键.
+     */
+    private static final Map<String, PendingUpdate> pendingMap = new ConcurrentHashMap<>();
+
+    /**
+     * 是否已提交了立即写入的任务.
+     */
+    private static final AtomicBoolean flushRequested = new AtomicBoolean(false);
+
+    /**
+     * 定时写入的线程.
+     */
+    private static volatile ScheduledExecutorService flushService = null;
+
+    /**
+     * 待写入的行数达到此值时立即写入.
+     */
+    private static int maxPendingRows = 10000;
+
+    /**
+     * 每个批次的最大行数.
+     */
+    private static int batchSize = 500;
+
+    /**
+     * 写入失败的最大重试次数.
+     */
+    private static int maxRetryTimes = 3;
+
+    /**
+     * 构造函数.
+     */
+    private WriteBehindManager() {
+    }
+
+    /**
+     * 延迟更新实体中修改过的字段，同一行的多次更新合并为一次.
+     *
+     * @param connName  连接名，为空则按表名路由
+     * @param entity    实体
+     * @param tableName 表名，为空则使用实体的表名
+     * @throws TransactionException 事务异常
+     */
+    static void update(String connName, DataEntity entity, String tableName) throws TransactionException {
+        if (entity.GET_UPDATED_COLUMN() == null || entity.GET_UPDATED_COLUMN().isEmpty()) {
+            return;
+        }
+        TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(entity.getClass());
+        if (emi == null) {
+            throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] not found! ");
+        }
+        if (tableName == null || tableName.equals("")) {
+            tableName = emi.getTableName();
+        }
+        tableName = EntityCommandImpl.getShardTableName(emi, tableName, entity);
+        if (connName == null || connName.equals("")) {
+            connName = DaoConfigManager.getRouteMapping(tableName, "write");
+        }
+        List<FieldMetaInfo> pks = emi.getPklist();
+        if (pks.isEmpty()) {
+            throw new TransactionException("TableMetaInfo[" + entity.getClass() + "] has no primary key! ");
+        }
+        String[] pkColumns = new String[pks.size()];
+        Object[] pkValues = new Object[pks.size()];
+        ArrayList<String> cols = new ArrayList<>(entity.GET_UPDATED_COLUMN());
+        Object[] values = new Object[cols.size()];
+        try {
+            for (int i = 0; i < pks.size(); i++) {
+                pkColumns[i] = pks.get(i).getColumnName();
+                pkValues[i] = pks.get(i).getField().get(entity);
+            }
+            for (int i = 0; i < cols.size(); i++) {
+                FieldMetaInfo fmi = emi.getFieldMetaInfo(cols.get(i));
+                if (fmi == null) {
+                    throw new TransactionException("FieldMetaInfo[" + cols.get(i) + "@" + entity.getClass() + "] not found! ");
+                }
+                values[i] = fmi.getField().get(entity);
+            }
+        } catch (IllegalAccessException e) {
+            throw new TransactionException(connName + ": " + e.getMessage(), e);
+        }
+        record(connName, tableName, pkColumns, pkValues, p -> {
+            for (int i = 0; i < values.length; i++) {
+                p.set(cols.get(i), values[i]);
+            }
+        });
+    }
+
+    /**
+     * 延迟累加一个计数字段，同一行的多次累加合并为一次.
+     *
+     * @param connName  连接名，为空则按表名路由
+     * @param tableName 表名，按主键hash/range分表的表会自动确定分表
+     * @param pkColumn  主键列名
+     * @param pkValue   主键值
+     * @param column    计数列名
+     * @param delta     增量
+     */
+    static void increment(String connName, String tableName, String pkColumn, Serializable pkValue, String column, long delta) {
+        TableShardConfig shardConfig = TableShardingUtils.getValueShardingConfig(tableName);
+        if (shardConfig != null && pkColumn.equalsIgnoreCase(shardConfig.getShardColumn())) {
+            tableName = TableShardingUtils.getTableNameByValue(tableName, pkValue);
+        }
+        if (connName == null || connName.equals("")) {
+            connName = DaoConfigManager.getRouteMapping(tableName, "write");
+        }
+        record(connName, tableName, new String[]{pkColumn}, new Object[]{pkValue}, p -> p.increment(column, delta));
+    }
+
+    /**
+     * 立即写入全部待写入的更新.
+     */
+    public static synchronized void flush() {
+        flushRequested.set(false);
+        if (pendingMap.isEmpty()) {
+            return;
+        }
+        // 按连接名和update语句分组
+        Map<String, Map<String, List<PendingUpdate>>> groups = new LinkedHashMap<>();
+        for (String key : pendingMap.keySet()) {
+            PendingUpdate pending = pendingMap.remove(key);
+            if (pending != null) {
+                groups.computeIfAbsent(pending.connName, k -> new LinkedHashMap<>())
+                        .computeIfAbsent(pending.getSql(), k -> new ArrayList<>()).add(pending);
+            }
+        }
+        for (Map<String, List<PendingUpdate>> sqlMap : groups.values()) {
+            // 连接或超时等非数据错误时，该连接剩余的更新放回，等下次定时写入再试
+            boolean available = true;
+            for (List<PendingUpdate> list : sqlMap.values()) {
+                for (int from = 0; from < list.size(); from += batchSize) {
+                    List<PendingUpdate> batch = list.subList(from, Math.min(list.size(), from + batchSize));
+                    if (available) {
+                        available = write(batch);
+                    } else {
+                        for (PendingUpdate pending : batch) {
+                            requeue(pending, false);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 停止定时写入，并写入全部待写入的更新.
+     */
+    public static synchronized void stop() {
+        if (flushService != null) {
+            flushService.shutdownNow();
+            flushService = null;
+        }
+        flush();
+    }
+
+    /**
+     * 合并一次更新.
+     *
+     * @param connName  连接名
+     * @param tableName 表名
+     * @param pkColumns 主键列名
+     * @param pkValues  主键值
+     * @param op        更新操作
+     */
+    private static void record(String connName, String tableName, String[] pkColumns, Object[] pkValues, Consumer<PendingUpdate> op) {
+        ensureStarted();
+        StringBuilder sb = new StringBuilder(64).append(connName).append('#').append(tableName);
+        for (int i = 0; i < pkColumns.length; i++) {
+            sb.append('#').append(pkColumns[i]).append('=').append(pkValues[i]);
+        }
+        String key = sb.toString();
+        // compute中修改，和flush的remove互斥
+        pendingMap.compute(key, (k, pending) -> {
+            if (pending == null) {
+                pending = new PendingUpdate(k, connName, tableName, pkColumns, pkValues);
+            }
+            op.accept(pending);
+            return pending;
+        });
+        if (pendingMap.size() >= maxPendingRows && flushRequested.compareAndSet(false, true)) {
+            ScheduledExecutorService service = flushService;
+            if (service != null) {
+                service.execute(WriteBehindManager::flushQuietly);
+            }
+        }
+    }
+
+    /**
+     * 按配置启动定时写入.
+     */
+    private static void ensureStarted() {
+        if (flushService != null) {
+            return;
+        }
+        synchronized (WriteBehindManager.class) {
+            if (flushService != null) {
+                return;
+            }
+            WriteBehindConfig config = DaoConfigManager.getConfig() == null ? null : DaoConfigManager.getConfig().getWriteBehind();
+            if (config == null) {
+                config = new WriteBehindConfig();
+            }
+            maxPendingRows = Math.max(1, config.getMaxPendingRows());
+            batchSize = Math.max(1, config.getBatchSize());
+            maxRetryTimes = Math.max(0, config.getMaxRetryTimes());
+            ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r);
+                t.setName("uw-dao.write-behind");
+                t.setDaemon(true);
+                return t;
+            });
+            int interval = Math.max(1, config.getFlushInterval());
+            service.scheduleWithFixedDelay(WriteBehindManager::flushQuietly, interval, interval, TimeUnit.MILLISECONDS);
+            flushService = service;
+        }
+    }
+
+    /**
+     * 定时任务中写入，异常不能抛出，否则定时任务会停止.
+     */
+    private static void flushQuietly() {
+        try {
+            flush();
+        } catch (Throwable e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 在一个事务中批量写入相同语句的更新.
+     * 数据或约束错误时把批次一分为二分别重试，找出出错的行，只有单行写入失败才放回待写入表并计入重试次数；
+     * 获取连接失败、连接中断、超时或被拒绝时整批放回.
+     *
+     * @param list 更新列表
+     * @return 是否可以继续写入该连接，非数据错误时返回false
+     */
+    private static boolean write(List<PendingUpdate> list) {
+        long start = System.nanoTime();
+        long connTime = 0, dbTime = 0;
+        int connId = 0;
+        String exception = null;
+        boolean rejected = false;
+        String connName = list.get(0).connName;
+        String sql = list.get(0).getSql();
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        int effect = 0;
+        boolean split = false;
+        boolean available = true;
+        try {
+            SqlExecuteListenerManager.beforeAcquire(connName, sql);
+            con = ConnectionManager.getConnection(connName);
+            connId = con.hashCode();
+            SqlExecuteListenerManager.afterAcquire(connName, sql, connId);
+            con.setAutoCommit(false);
+            pstmt = con.prepareStatement(sql);
+            for (PendingUpdate pending : list) {
+                int seq = 0;
+                for (Object value : pending.sets.values()) {
+                    DaoReflectUtils.CommandUpdateReflect(pstmt, ++seq, value);
+                }
+                for (Long delta : pending.increments.values()) {
+                    pstmt.setLong(++seq, delta);
+                }
+                for (Object value : pending.pkValues) {
+                    DaoReflectUtils.CommandUpdateReflect(pstmt, ++seq, value);
+                }
+                pstmt.addBatch();
+            }
+            connTime = (System.nanoTime() - start) / 1000;
+            SqlExecuteListenerManager.beforeExecute(connName, sql, null);
+            long dbStart = System.nanoTime();
+            for (int num : pstmt.executeBatch()) {
+                effect += num > 0 ? num : 0;
+            }
+            con.commit();
+            dbTime = (System.nanoTime() - dbStart) / 1000;
+        } catch (Exception e) {
+            if (e instanceof SqlExecuteRejectedException) {
+                rejected = true;
+            } else {
+                exception = e.toString();
+                SqlExecuteListenerManager.onError(connName, sql, null, e);
+            }
+            logger.error("WriteBehindManager write {} rows failed: {}", list.size(), e.getMessage());
+            if (con != null) {
+                try {
+                    con.rollback();
+                } catch (Exception re) {
+                    logger.error(re.getMessage(), re);
+                }
+            }
+            boolean dataError = con != null && !rejected && isDataError(e);
+            if (dataError && list.size() > 1) {
+                split = true;
+            } else {
+                available = dataError;
+                for (PendingUpdate pending : list) {
+                    requeue(pending, true);
+                }
+            }
+        } finally {
+            if (pstmt != null) {
+                try {
+                    pstmt.close();
+                } catch (SQLException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            if (con != null) {
+                try {
+                    con.setAutoCommit(true);
+                    con.close();
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+            long allTime = (System.nanoTime() - start) / 1000;
+            if (!rejected) {
+                dao.addSqlExecuteStats(connName, connId, sql, "writeBehind: " + list.size(), effect, connTime, dbTime, allTime, exception);
+                SqlExecuteListenerManager.afterExecute(connName, sql, null, effect, connTime, dbTime, allTime);
+            }
+        }
+        if (split) {
+            int mid = list.size() / 2;
+            List<PendingUpdate> tail = list.subList(mid, list.size());
+            if (write(list.subList(0, mid))) {
+                return write(tail);
+            }
+            for (PendingUpdate pending : tail) {
+                requeue(pending, false);
+            }
+            return false;
+        }
+        return available;
+    }
+
+    /**
+     * 是否数据或约束错误，只有这类错误拆分批次才能找出出错的行.
+     *
+     * @param e 异常
+     * @return 是否数据错误
+     */
+    private static boolean isDataError(Exception e) {
+        if (e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException) {
+            return true;
+        }
+        if (!(e instanceof SQLException) || e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || e instanceof SQLNonTransientConnectionException) {
+            return false;
+        }
+        // SQLState 22为数据错误，23为约束错误，08为连接错误
+        String state = ((SQLException) e).getSQLState();
+        if (state != null && (state.startsWith("22") || state.startsWith("23"))) {
+            return true;
+        }
+        if (e instanceof BatchUpdateException) {
+            SQLException next = ((BatchUpdateException) e).getNextException();
+            if (next != null && next != e) {
+                return isDataError(next);
+            }
+            return state == null || !state.startsWith("08");
+        }
+        return false;
+    }
+
+    /**
+     * 未写入的更新放回待写入表，期间新的更新合并在它之后.
+     *
+     * @param failed  未写入的更新
+     * @param failure 是否计入重试次数
+     */
+    private static void requeue(PendingUpdate failed, boolean failure) {
+        if (failure) {
+            failed.failTimes++;
+        }
+        if (failed.failTimes > maxRetryTimes) {
+            logger.error("WriteBehindManager dropped update [{}] after {} failures: {}", failed.key, failed.failTimes, failed.getSql());
+            return;
+        }
+        pendingMap.merge(failed.key, failed, (newer, older) -> {
+            older.apply(newer);
+            return older;
+        });
+    }
+
+    /**
+     * 一行待写入的更新.
+     */
+    private static class PendingUpdate {
+
+        /**
+         * 连接名#表名#主键.
+         */
+        private final String key;
+
+        /**
+         * 连接名.
+         */
+        private final String connName;
+
+        /**
+         * 表名.
+         */
+        private final String tableName;
+
+        /**
+         * 主键列名.
+         */
+        private final String[] pkColumns;
+
+        /**
+         * 主键值.
+         */
+        private final Object[] pkValues;
+
+        /**
+         * 字段更新，按列名排序，相同列的行使用相同的sql.
+         */
+        private final TreeMap<String, Object> sets = new TreeMap<>();
+
+        /**
+         * 计数累加，按列名排序.
+         */
+        private final TreeMap<String, Long> increments = new TreeMap<>();
+
+        /**
+         * 写入失败次数.
+         */
+        private int failTimes;
+
+        PendingUpdate(String key, String connName, String tableName, String[] pkColumns, Object[] pkValues) {
+            this.key = key;
+            this.connName = connName;
+            this.tableName = tableName;
+            this.pkColumns = pkColumns;
+            this.pkValues = pkValues;
+        }
+
+        /**
+         * 更新字段，覆盖之前的累加.
+         *
+         * @param column 列名
+         * @param value  值
+         */
+        void set(String column, Object value) {
+            increments.remove(column);
+            sets.put(column, value);
+        }
+
+        /**
+         * 累加计数，如果之前更新过该字段则直接加到更新值上，更新值为null时按0累加.
+         *
+         * @param column 列名
+         * @param delta  增量
+         */
+        void increment(String column, long delta) {
+            if (sets.containsKey(column)) {
+                Object value = sets.get(column);
+                sets.put(column, value instanceof Number ? ((Number) value).longValue() + delta : delta);
+                return;
+            }
+            increments.merge(column, delta, Long::sum);
+        }
+
+        /**
+         * 合并一个更新的更新.
+         *
+         * @param newer 之后的更新
+         */
+        void apply(PendingUpdate newer) {
+            for (Map.Entry<String, Object> kv : newer.sets.entrySet()) {
+                set(kv.getKey(), kv.getValue());
+            }
+            for (Map.Entry<String, Long> kv : newer.increments.entrySet()) {
+                increment(kv.getKey(), kv.getValue());
+            }
+            failTimes = Math.max(failTimes, newer.failTimes);
+        }
+
+        /**
+         * 获得update sql.
+         *
+         * @return update sql
+         */
+        String getSql() {
+            StringBuilder sb = new StringBuilder(128);
+            sb.append("update ").append(tableName).append(" set ");
+            for (String col : sets.keySet()) {
+                sb.append(col).append("=?,");
+            }
+            for (String col : increments.keySet()) {
+                sb.append(col).append('=').append(col).append("+?,");
+            }
+            sb.deleteCharAt(sb.length() - 1);
+            sb.append(" where ");
+            for (int i = 0; i < pkColumns.length; i++) {
+                if (i > 0) {
+                    sb.append("and ");
+                }
+                sb.append(pkColumns[i]).append("=? ");
+            }
+            return sb.toString();
+        }
+    }
+
+}
@@ -5,15 +5,29 @@ import org.slf4j.LoggerFactory;
 import uw.dao.DaoFactory;
 import uw.dao.TransactionException;
 import uw.dao.conf.DaoConfig;
+import uw.dao.conf.DaoConfig.SqlStatsConfig;
 import uw.dao.conf.DaoConfigManager;
+import uw.dao.connectionpool.StatementCacheDataSource;
+import uw.dao.util.SqlFingerprintUtils;
+import uw.dao.util.TableShardingUtils;
+import uw.dao.vo.SqlAggrStats;
 import uw.dao.vo.SqlExecuteStats;
+import uw.dao.vo.StatementCacheStats;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
@@ -27,6 +41,21 @@ public class MainService {
      */
     public static final String STATS_BASE_TABLE = "dao_sql_stats";
 
+    /**
+     * 聚合统计存储的表名.
+     */
+    public static final String STATS_AGGR_BASE_TABLE = "dao_sql_aggr_stats";
+
+    /**
+     * 超出聚合数量上限时，新sql归入的指纹.
+     */
+    static final String STATS_AGGR_OTHER_SQL = "__other__";
+
+    /**
+     * 聚合计数器回收前允许的连续空闲周期数.
+     */
+    private static final int STATS_AGGR_MAX_IDLE_TIMES = 3;
+
     /**
      * 日志.
      */
@@ -62,6 +91,11 @@ public class MainService {
      */
     private static int sqlCostMin = 30;
 
+    /**
+     * 慢sql的微秒数，执行时间统一按微秒记录.
+     */
+    private static long sqlCostMinMicros = 30_000L;
+
     /**
      * 是否开启sql统计。
      */
@@ -72,6 +106,61 @@ public class MainService {
      */
     private static boolean enableTableShard = false;
 
+    /**
+     * 是否开启sql聚合统计。
+     */
+    private static boolean enableSqlAggr = false;
+
+    /**
+     * 聚合的sql指纹数量上限。
+     */
+    private static int sqlAggrMaxSize = 2000;
+
+    /**
+     * 聚合计数器。key=连接名，value=(key=sql指纹)。
+     */
+    private static final Map<String, Map<String, SqlStatsCounter>> aggrMap = new ConcurrentHashMap<>();
+
+    /**
+     * 聚合计数器数量。
+     */
+    private static final AtomicInteger aggrSize = new AtomicInteger();
+
+    /**
+     * 当前聚合周期的开始时间。
+     */
+    private static volatile long aggrStartTime = System.currentTimeMillis();
+
+    /**
+     * 非慢sql按比率采样的概率。
+     */
+    private static double sampleRate = 0;
+
+    /**
+     * 非慢sql按sql指纹采样的蓄水池容量。
+     */
+    private static int sampleReservoirSize = 0;
+
+    /**
+     * 每个写入周期最多写入的采样明细数。
+     */
+    private static int sampleMaxRows = 1000;
+
+    /**
+     * 按比率采样的全局蓄水池，保证采样明细不超过sampleMaxRows。
+     */
+    private static StatsReservoir rateReservoir = null;
+
+    /**
+     * 性能日志的批量写入器.
+     */
+    private static StatsBatchWriter statsWriter = null;
+
+    /**
+     * 聚合统计的批量写入器.
+     */
+    private static StatsBatchWriter aggrWriter = null;
+
     /**
      * 开始任务.
      */
@@ -79,11 +168,13 @@ public class MainService {
         if (isStarted.compareAndSet(false, true)) {
             //获得配置。
             DaoConfig config = DaoConfigManager.getConfig();
-            boolean enableSqlStats = config.getSqlStats().isEnable();
-            boolean enableTableShard = config.getTableShard().size() > 0;
+            enableSqlStats = config.getSqlStats().isEnable();
+            enableTableShard = config.getTableShard().size() > 0;
+            enableSqlAggr = enableSqlStats && config.getSqlStats().isAggrEnable();
+            SqlLatencyStats.setEnable(enableSqlStats && config.getSqlStats().isLatencyEnable());
             //检测是否需要启动后台服务。
             if (enableSqlStats || enableTableShard) {
-                executorService = Executors.newScheduledThreadPool(3, new ThreadFactory() {
+                executorService = Executors.newScheduledThreadPool(4, new ThreadFactory() {
                     @Override
                     public Thread newThread(Runnable r) {
                         Thread t = new Thread(r);
@@ -92,18 +183,44 @@ public class MainService {
                         return t;
                     }
                 });
+                SqlStatsConfig statsConfig = config.getSqlStats();
+                String spillPath = statsConfig.getSpillPath();
+                if (spillPath == null || spillPath.length() == 0) {
+                    spillPath = System.getProperty("java.io.tmpdir") + File.separator + "uw-dao";
+                }
+                // 按long计算字节数，内存映射文件单个不能超过2G.
+                long spillMaxBytes = (long) Math.max(statsConfig.getSpillMaxSize(), 1) << 20;
+                int spillMaxSize = (int) Math.min(spillMaxBytes, Integer.MAX_VALUE);
                 if (enableSqlStats) {
-                    executorService.scheduleAtFixedRate(new StatsLogWriteTask(), 1, 10, TimeUnit.SECONDS);
-                    executorService.scheduleAtFixedRate(new StatsCleanDataTask(), 3600, 86400, TimeUnit.SECONDS);
+                    statsWriter = new StatsBatchWriter(STATS_BASE_TABLE, StatsLogWriteTask.COLUMNS,
+                            statsConfig.getWriteConnName(), spillPath, spillMaxSize);
+                    executorService.scheduleAtFixedRate(new StatsLogWriteTask(statsWriter), 1, 10, TimeUnit.SECONDS);
+                }
+                if (enableSqlAggr) {
+                    int aggrInterval = Math.max(config.getSqlStats().getAggrInterval(), 10);
+                    sqlAggrMaxSize = config.getSqlStats().getAggrMaxSize();
+                    aggrStartTime = System.currentTimeMillis();
+                    aggrWriter = new StatsBatchWriter(STATS_AGGR_BASE_TABLE, StatsAggrWriteTask.COLUMNS,
+                            statsConfig.getWriteConnName(), spillPath, spillMaxSize);
+                    executorService.scheduleAtFixedRate(new StatsAggrWriteTask(aggrWriter), aggrInterval, aggrInterval, TimeUnit.SECONDS);
                 }
+                // 统计表和聚合统计表在不分表时也要存在，否则写入失败。
+                checkForCreatesStatsTable();
                 if (enableTableShard) {
-                    checkForCreatesStatsTable();
-                    executorService.scheduleAtFixedRate(new TableShardingTask(), 5, 3600, TimeUnit.SECONDS);
+                    // 提前创建未来的分表，写入时不需要等待建表。
+                    executorService.scheduleWithFixedDelay(new TableShardingTask(), 0, 3600, TimeUnit.SECONDS);
                 }
                 try {
                     sqlCostMin = DaoConfigManager.getConfig().getSqlStats().getSqlCostMin();
+                    sqlCostMinMicros = sqlCostMin * 1000L;
                 } catch (Throwable e) {
                 }
+                sampleMaxRows = Math.max(config.getSqlStats().getSampleMaxRows(), 1);
+                sampleRate = Math.min(config.getSqlStats().getSampleRate(), 1d);
+                sampleReservoirSize = config.getSqlStats().getSampleReservoirSize();
+                if (sampleRate > 0) {
+                    rateReservoir = new StatsReservoir(sampleMaxRows);
+                }
             }
 
         }
@@ -116,6 +233,22 @@ public class MainService {
         if (isStarted.compareAndSet(true, false)) {
             if (executorService != null) {
                 executorService.shutdown();
+                try {
+                    executorService.awaitTermination(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            // 写入剩余的数据，写不进去的会溢出到本地文件。
+            if (statsWriter != null) {
+                new StatsLogWriteTask(statsWriter).run();
+                statsWriter.close();
+                statsWriter = null;
+            }
+            if (aggrWriter != null) {
+                new StatsAggrWriteTask(aggrWriter).run();
+                aggrWriter.close();
+                aggrWriter = null;
             }
         }
     }
@@ -129,45 +262,126 @@ public class MainService {
         return isStarted.get();
     }
 
+    /**
+     * 获得各连接池的PreparedStatement缓存统计，没有开启statement缓存的连接池不在其中.
+     *
+     * @return 统计列表
+     */
+    public static List<StatementCacheStats> getStatementCacheStatsList() {
+        return StatementCacheDataSource.getStatsList();
+    }
+
     /**
      * 记录性能参数.
      *
      * @param ses 用于统计sql执行的性能数据
      */
     public static void logStats(SqlExecuteStats ses) {
-        if (enableSqlStats && ses.getAllTime() >= sqlCostMin) {
-            locker.lock();
-            try {
-                dataList.add(ses);
-            } finally {
-                locker.unlock();
-            }
-        }
+        logStats(ses.getConnName(), ses.getConnId(), ses.getSql(), ses.getParam(), ses.getRowNum(), ses.getConnTime(), ses.getDbTime(),
+                ses.getAllTime(), ses.getException());
     }
 
     /**
      * 记录性能参数.
+     * 所有执行都会按sql指纹聚合，明细全量记录超过sqlCostMin的慢sql和异常sql，其余的执行按配置采样记录.
      *
      * @param connName  连接名
      * @param sql       执行的具体sql
      * @param param     附加的参数
      * @param rowNum    返回/影响的行数
-     * @param dbTime    数据库层操作数据库消耗的时间
-     * @param allTime   数据库层消耗的时间
+     * @param connTime  Conn时间，微秒
+     * @param dbTime    数据库层操作数据库消耗的时间，微秒
+     * @param allTime   数据库层消耗的时间，微秒
      * @param exception 异常类
      */
     public static void logStats(String connName, int connId, String sql, String param, int rowNum, long connTime, long dbTime, long allTime,
                                 String exception) {
-        if (allTime >= sqlCostMin) {
-            if (isStarted.get()) {
-                locker.lock();
-                try {
-                    dataList.add(new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, exception));
-                } finally {
-                    locker.unlock();
+        if (!enableSqlStats || !isStarted.get()) {
+            return;
+        }
+        SqlStatsCounter counter = null;
+        if (enableSqlAggr || sampleReservoirSize > 0) {
+            counter = getStatsCounter(connName, sql);
+            if (enableSqlAggr) {
+                counter.record(rowNum, connTime, dbTime, allTime, exception != null);
+            }
+        }
+        if (allTime >= sqlCostMinMicros || exception != null) {
+            locker.lock();
+            try {
+                dataList.add(new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, exception));
+            } finally {
+                locker.unlock();
+            }
+        } else if (sampleReservoirSize > 0) {
+            StatsReservoir reservoir = counter.getReservoir(sampleReservoirSize);
+            long ticket = reservoir.acquireSlot();
+            if (ticket >= 0) {
+                reservoir.set(ticket, new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, null));
+            }
+        } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            long ticket = rateReservoir.acquireSlot();
+            if (ticket >= 0) {
+                rateReservoir.set(ticket, new SqlExecuteStats(connName, connId, sql, param, rowNum, connTime, dbTime, allTime, null));
+            }
+        }
+    }
+
+    /**
+     * 获得sql对应的聚合计数器.
+     *
+     * @param connName 连接名
+     * @param sql      执行的具体sql
+     * @return 聚合计数器
+     */
+    private static SqlStatsCounter getStatsCounter(String connName, String sql) {
+        if (connName == null) {
+            connName = "";
+        }
+        Map<String, SqlStatsCounter> map = aggrMap.get(connName);
+        if (map == null) {
+            map = aggrMap.computeIfAbsent(connName, key -> new ConcurrentHashMap<>());
+        }
+        String fingerprint = SqlFingerprintUtils.getFingerprint(sql);
+        SqlStatsCounter counter = map.get(fingerprint);
+        if (counter == null) {
+            if (aggrSize.get() >= sqlAggrMaxSize) {
+                fingerprint = STATS_AGGR_OTHER_SQL;
+            }
+            final String cn = connName;
+            counter = map.computeIfAbsent(fingerprint, key -> {
+                aggrSize.incrementAndGet();
+                return new SqlStatsCounter(cn, key);
+            });
+        }
+        return counter;
+    }
+
+    /**
+     * 取出当前周期的聚合数据并开始新周期，长期空闲的计数器会被回收.
+     *
+     * @return 聚合数据列表
+     */
+    static ArrayList<SqlAggrStats> drainAggrStatsList() {
+        long now = System.currentTimeMillis();
+        Date startDate = new Date(aggrStartTime);
+        Date endDate = new Date(now);
+        aggrStartTime = now;
+        ArrayList<SqlAggrStats> list = new ArrayList<>();
+        for (Map<String, SqlStatsCounter> map : aggrMap.values()) {
+            Iterator<SqlStatsCounter> it = map.values().iterator();
+            while (it.hasNext()) {
+                SqlStatsCounter counter = it.next();
+                SqlAggrStats stats = counter.drain(startDate, endDate);
+                if (stats != null) {
+                    list.add(stats);
+                } else if (counter.getIdleTimes() >= STATS_AGGR_MAX_IDLE_TIMES) {
+                    it.remove();
+                    aggrSize.decrementAndGet();
                 }
             }
         }
+        return list;
     }
 
     /**
@@ -184,9 +398,73 @@ public class MainService {
         } finally {
             locker.unlock();
         }
+        drainSamplesTo(list);
         return list;
     }
 
+    /**
+     * 取出本周期的采样明细，超过sampleMaxRows时再做一次均匀抽样，并相应放大权重.
+     *
+     * @param list 输出列表
+     */
+    private static void drainSamplesTo(ArrayList<SqlExecuteStats> list) {
+        int start = list.size();
+        if (sampleReservoirSize > 0) {
+            for (Map<String, SqlStatsCounter> map : aggrMap.values()) {
+                for (SqlStatsCounter counter : map.values()) {
+                    counter.drainSamplesTo(list);
+                }
+            }
+        } else if (rateReservoir != null) {
+            rateReservoir.drainTo(list, 1d / sampleRate);
+        }
+        int total = list.size() - start;
+        if (total <= sampleMaxRows) {
+            return;
+        }
+        // 部分Fisher-Yates洗牌，把入选的放到前面。
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < sampleMaxRows; i++) {
+            int j = i + random.nextInt(total - i);
+            SqlExecuteStats tmp = list.get(start + i);
+            list.set(start + i, list.get(start + j));
+            list.set(start + j, tmp);
+        }
+        double ratio = (double) total / sampleMaxRows;
+        for (int i = 0; i < sampleMaxRows; i++) {
+            SqlExecuteStats stats = list.get(start + i);
+            stats.setSampleWeight(stats.getSampleWeight() * ratio);
+        }
+        list.subList(start + sampleMaxRows, list.size()).clear();
+    }
+
+    /**
+     * 检查统计表是否有sample_weight列，没有则补上.
+     *
+     * @param tableName 表名
+     */
+    private static void checkForStatsSampleColumn(String tableName) {
+        String connName = dao.getConnectionName(tableName, "all");
+        String[] cols;
+        try {
+            cols = dao.queryForDataSet(connName, "select * from " + tableName + " where 1=0").getColumnNames();
+        } catch (TransactionException e) {
+            // 表还不存在。
+            return;
+        }
+        for (String col : cols) {
+            if ("sample_weight".equalsIgnoreCase(col)) {
+                return;
+            }
+        }
+        try {
+            dao.executeCommand(connName, "alter table " + tableName + " add column sample_weight double DEFAULT 1");
+            logger.info("alter table: {} add column sample_weight", tableName);
+        } catch (TransactionException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
     /**
      * 检查是否应该新建表.
      */
@@ -196,13 +474,40 @@ public class MainService {
                 + "sql_info varchar(1000) DEFAULT NULL,\n" + "sql_param varchar(1000) DEFAULT NULL,\n"
                 + "row_num int(11) DEFAULT NULL,\n" + "conn_time int(11) DEFAULT NULL,\n" + "db_time int(11) DEFAULT NULL,\n"
                 + "all_time int(11) DEFAULT NULL,\n" + "exception varchar(500) DEFAULT NULL,\n"
-                + "exe_date datetime DEFAULT NULL,\n" + "PRIMARY KEY (id)\n" + ") ENGINE=INNODB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED";
+                + "exe_date datetime DEFAULT NULL,\n" + "sample_weight double DEFAULT 1,\n" + "PRIMARY KEY (id)\n"
+                + ") ENGINE=INNODB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED";
         try {
             dao.executeCommand(dao.getConnectionName(STATS_BASE_TABLE, "all"), sql);
             logger.info("init table: {}", STATS_BASE_TABLE);
         } catch (TransactionException e) {
             logger.error(e.getMessage(), e);
         }
+        // 老版本建的表缺少sample_weight列，当前和次日的分片表也要一起补上。
+        Date now = new Date();
+        checkForStatsSampleColumn(STATS_BASE_TABLE);
+        checkForStatsSampleColumn(TableShardingUtils.getTableNameByDate(STATS_BASE_TABLE, now));
+        checkForStatsSampleColumn(TableShardingUtils.getTableNameByDate(STATS_BASE_TABLE, new Date(now.getTime() + 86400_000L)));
+        if (enableSqlAggr) {
+            String aggrSql = "create table if not exists " + STATS_AGGR_BASE_TABLE + " (\n"
+                    + "id bigint(20) NOT NULL AUTO_INCREMENT,\n" + "conn_name varchar(100) DEFAULT NULL,\n"
+                    + "sql_fingerprint varchar(1000) DEFAULT NULL,\n" + "exe_count bigint(20) DEFAULT NULL,\n"
+                    + "error_count bigint(20) DEFAULT NULL,\n" + "row_num bigint(20) DEFAULT NULL,\n"
+                    + "conn_time_sum bigint(20) DEFAULT NULL,\n" + "conn_time_max bigint(20) DEFAULT NULL,\n"
+                    + "conn_time_p99 bigint(20) DEFAULT NULL,\n" + "db_time_sum bigint(20) DEFAULT NULL,\n"
+                    + "db_time_max bigint(20) DEFAULT NULL,\n" + "db_time_p50 bigint(20) DEFAULT NULL,\n"
+                    + "db_time_p99 bigint(20) DEFAULT NULL,\n" + "all_time_sum bigint(20) DEFAULT NULL,\n"
+                    + "all_time_max bigint(20) DEFAULT NULL,\n" + "all_time_p50 bigint(20) DEFAULT NULL,\n"
+                    + "all_time_p90 bigint(20) DEFAULT NULL,\n" + "all_time_p99 bigint(20) DEFAULT NULL,\n"
+                    + "all_time_p999 bigint(20) DEFAULT NULL,\n" + "start_date datetime DEFAULT NULL,\n"
+                    + "end_date datetime DEFAULT NULL,\n" + "PRIMARY KEY (id)\n"
+                    + ") ENGINE=INNODB DEFAULT CHARSET=utf8mb4 ROW_FORMAT=COMPRESSED";
+            try {
+                dao.executeCommand(dao.getConnectionName(STATS_AGGR_BASE_TABLE, "all"), aggrSql);
+                logger.info("init table: {}", STATS_AGGR_BASE_TABLE);
+            } catch (TransactionException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
     }
 
 }
@@ -0,0 +1,154 @@
+package uw.dao.service;
+
+import uw.dao.util.LatencyHistogram;
+import uw.dao.util.SqlFingerprintUtils;
+import uw.dao.util.TableShardingUtils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的sql执行耗时直方图，按连接池和表名分别统计，单位为微秒.
+ * 分表按配置的原始表名合并统计，表名数量超过上限后不再新增.
+ * 写入只是几次原子累加，读取时才生成快照并计算百分位，可随时查询p50/p99/p999.
+ *
+ * @author axeon
+ */
+public class SqlLatencyStats {
+
+    /**
+     * 按表名统计的最大表数量.
+     */
+    private static final int MAX_TABLE_SIZE = 1000;
+
+    /**
+     * 是否开启统计，由MainService按配置开启.
+     */
+    private static volatile boolean enable = false;
+
+    /**
+     * 按连接池统计的直方图.
+     */
+    private static final Map<String, LatencyHistogram> poolHistogramMap = new ConcurrentHashMap<>();
+
+    /**
+     * 按表名统计的直方图.
+     */
+    private static final Map<String, LatencyHistogram> tableHistogramMap = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数.
+     */
+    private SqlLatencyStats() {
+    }
+
+    /**
+     * 记录一次执行耗时.
+     *
+     * @param connName 连接名
+     * @param sql      执行的sql
+     * @param allTime  全部时间，微秒
+     */
+    public static void record(String connName, String sql, long allTime) {
+        if (!enable) {
+            return;
+        }
+        getHistogram(poolHistogramMap, connName == null ? "" : connName).record(allTime);
+        String tableName = SqlFingerprintUtils.getTableName(sql);
+        if (tableName.length() > 0) {
+            tableName = TableShardingUtils.getBaseTableName(tableName);
+            LatencyHistogram histogram = tableHistogramMap.get(tableName);
+            if (histogram == null) {
+                if (tableHistogramMap.size() >= MAX_TABLE_SIZE) {
+                    return;
+                }
+                histogram = getHistogram(tableHistogramMap, tableName);
+            }
+            histogram.record(allTime);
+        }
+    }
+
+    /**
+     * 获得连接池的耗时直方图快照.
+     *
+     * @param connName 连接名
+     * @return 直方图快照，没有数据时返回null
+     */
+    public static LatencyHistogram getPoolHistogram(String connName) {
+        LatencyHistogram histogram = poolHistogramMap.get(connName);
+        return histogram == null ? null : histogram.snapshot(false);
+    }
+
+    /**
+     * 获得表的耗时直方图快照.
+     *
+     * @param tableName 表名
+     * @return 直方图快照，没有数据时返回null
+     */
+    public static LatencyHistogram getTableHistogram(String tableName) {
+        LatencyHistogram histogram = tableHistogramMap.get(tableName);
+        return histogram == null ? null : histogram.snapshot(false);
+    }
+
+    /**
+     * 获得已统计的连接池名.
+     *
+     * @return 连接池名集合
+     */
+    public static Set<String> getPoolNames() {
+        return Collections.unmodifiableSet(poolHistogramMap.keySet());
+    }
+
+    /**
+     * 获得已统计的表名.
+     *
+     * @return 表名集合
+     */
+    public static Set<String> getTableNames() {
+        return Collections.unmodifiableSet(tableHistogramMap.keySet());
+    }
+
+    /**
+     * 清空全部统计数据.
+     */
+    public static void reset() {
+        poolHistogramMap.clear();
+        tableHistogramMap.clear();
+    }
+
+    /**
+     * 是否开启统计.
+     *
+     * @return boolean
+     */
+    public static boolean isEnable() {
+        return enable;
+    }
+
+    /**
+     * 设置是否开启统计.
+     *
+     * @param enable 是否开启
+     */
+    public static void setEnable(boolean enable) {
+        SqlLatencyStats.enable = enable;
+    }
+
+    /**
+     * 获得或创建直方图.
+     *
+     * @param map 直方图表
+     * @param key 名称
+     * @return 直方图
+     */
+    private static LatencyHistogram getHistogram(Map<String, LatencyHistogram> map, String key) {
+        LatencyHistogram histogram = map.get(key);
+        if (histogram == null) {
+            histogram = map.computeIfAbsent(key, k -> new LatencyHistogram());
+        }
+        return histogram;
+    }
+
+}
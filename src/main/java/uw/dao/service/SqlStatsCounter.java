@@ -0,0 +1,218 @@
+package uw.dao.service;
+
+import uw.dao.util.LatencyHistogram;
+import uw.dao.vo.SqlAggrStats;
+import uw.dao.vo.SqlExecuteStats;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个sql指纹+连接池的内存计数器，周期性的被StatsAggrWriteTask取出并清零.
+ *
+ * @author axeon
+ */
+class SqlStatsCounter {
+
+    /**
+     * 连接名.
+     */
+    private final String connName;
+
+    /**
+     * sql指纹.
+     */
+    private final String sqlFingerprint;
+
+    /**
+     * 当前记录的周期数据.
+     */
+    private volatile Period current = new Period();
+
+    /**
+     * 备用的周期数据，和current交替使用.
+     */
+    private Period spare = new Period();
+
+    /**
+     * 明细采样的蓄水池，开启按sql指纹采样时才会创建.
+     */
+    private volatile StatsReservoir reservoir;
+
+    /**
+     * 连续空闲的周期数，用于回收不再执行的sql.
+     */
+    private int idleTimes;
+
+    /**
+     * 构造器.
+     *
+     * @param connName       连接名
+     * @param sqlFingerprint sql指纹
+     */
+    SqlStatsCounter(String connName, String sqlFingerprint) {
+        this.connName = connName;
+        this.sqlFingerprint = sqlFingerprint;
+    }
+
+    /**
+     * 记录一次执行.
+     * 先登记为写入者再确认周期没有切换，drain切换周期后会等待旧周期的写入者全部完成.
+     *
+     * @param rowNum   返回/影响的行数
+     * @param connTime Conn时间
+     * @param dbTime   数据库操作时间
+     * @param allTime  全部时间
+     * @param isError  是否异常
+     */
+    void record(int rowNum, long connTime, long dbTime, long allTime, boolean isError) {
+        Period p;
+        while (true) {
+            p = current;
+            p.writers.incrementAndGet();
+            if (p == current) {
+                break;
+            }
+            p.writers.decrementAndGet();
+        }
+        try {
+            if (isError) {
+                p.errorCount.incrementAndGet();
+            }
+            if (rowNum > 0) {
+                p.rowNum.addAndGet(rowNum);
+            }
+            p.connTime.record(connTime);
+            p.dbTime.record(dbTime);
+            p.allTime.record(allTime);
+        } finally {
+            p.writers.decrementAndGet();
+        }
+    }
+
+    /**
+     * 取出当前周期的数据并清零.
+     * 全部计数作为一个整体切换，同一次执行不会只出现在部分直方图中.
+     *
+     * @param startDate 周期开始时间
+     * @param endDate   周期结束时间
+     * @return 周期数据，如果本周期没有执行则返回null
+     */
+    SqlAggrStats drain(Date startDate, Date endDate) {
+        Period p = current;
+        if (p.allTime.getTotalCount() == 0) {
+            idleTimes++;
+            return null;
+        }
+        idleTimes = 0;
+        current = spare;
+        while (p.writers.get() > 0) {
+            Thread.yield();
+        }
+        spare = p;
+        LatencyHistogram conn = p.connTime.snapshot(true);
+        LatencyHistogram db = p.dbTime.snapshot(true);
+        LatencyHistogram all = p.allTime.snapshot(true);
+        SqlAggrStats stats = new SqlAggrStats();
+        stats.setConnName(connName);
+        stats.setSqlFingerprint(sqlFingerprint);
+        stats.setExeCount(all.getTotalCount());
+        stats.setErrorCount(p.errorCount.getAndSet(0));
+        stats.setRowNum(p.rowNum.getAndSet(0));
+        stats.setConnTimeSum(conn.getSum());
+        stats.setConnTimeMax(conn.getMax());
+        stats.setConnTimeP99(conn.getValueAtPercentile(99));
+        stats.setDbTimeSum(db.getSum());
+        stats.setDbTimeMax(db.getMax());
+        stats.setDbTimeP50(db.getValueAtPercentile(50));
+        stats.setDbTimeP99(db.getValueAtPercentile(99));
+        stats.setAllTimeSum(all.getSum());
+        stats.setAllTimeMax(all.getMax());
+        stats.setAllTimeP50(all.getValueAtPercentile(50));
+        stats.setAllTimeP90(all.getValueAtPercentile(90));
+        stats.setAllTimeP99(all.getValueAtPercentile(99));
+        stats.setAllTimeP999(all.getValueAtPercentile(99.9));
+        stats.setStartDate(startDate);
+        stats.setEndDate(endDate);
+        return stats;
+    }
+
+    /**
+     * 获得明细采样的蓄水池.
+     *
+     * @param size 蓄水池容量
+     * @return 蓄水池
+     */
+    StatsReservoir getReservoir(int size) {
+        StatsReservoir r = reservoir;
+        if (r == null) {
+            synchronized (this) {
+                r = reservoir;
+                if (r == null) {
+                    r = reservoir = new StatsReservoir(size);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * 取出明细采样数据.
+     *
+     * @param list 输出列表
+     */
+    void drainSamplesTo(List<SqlExecuteStats> list) {
+        StatsReservoir r = reservoir;
+        if (r != null) {
+            r.drainTo(list, 1);
+        }
+    }
+
+    /**
+     * 获得连续空闲的周期数.
+     *
+     * @return 周期数
+     */
+    int getIdleTimes() {
+        return idleTimes;
+    }
+
+    /**
+     * 一个周期的计数.
+     */
+    private static class Period {
+
+        /**
+         * 正在写入的线程数.
+         */
+        private final AtomicInteger writers = new AtomicInteger();
+
+        /**
+         * 异常次数.
+         */
+        private final AtomicLong errorCount = new AtomicLong();
+
+        /**
+         * 返回/影响的总行数.
+         */
+        private final AtomicLong rowNum = new AtomicLong();
+
+        /**
+         * Conn时间直方图.
+         */
+        private final LatencyHistogram connTime = new LatencyHistogram();
+
+        /**
+         * 数据库操作时间直方图.
+         */
+        private final LatencyHistogram dbTime = new LatencyHistogram();
+
+        /**
+         * 全部时间直方图，记录次数即执行次数.
+         */
+        private final LatencyHistogram allTime = new LatencyHistogram();
+    }
+
+}
@@ -0,0 +1,84 @@
+package uw.dao.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.util.TableShardingUtils;
+import uw.dao.vo.SqlAggrStats;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聚合性能数据写入任务.
+ *
+ * @author axeon
+ */
+public class StatsAggrWriteTask implements Runnable {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StatsAggrWriteTask.class);
+
+    /**
+     * 写入的列.
+     */
+    static final String[] COLUMNS = {"conn_name", "sql_fingerprint", "exe_count", "error_count", "row_num",
+            "conn_time_sum", "conn_time_max", "conn_time_p99", "db_time_sum", "db_time_max", "db_time_p50",
+            "db_time_p99", "all_time_sum", "all_time_max", "all_time_p50", "all_time_p90", "all_time_p99",
+            "all_time_p999", "start_date", "end_date"};
+
+    /**
+     * 批量写入器.
+     */
+    private final StatsBatchWriter writer;
+
+    /**
+     * 构造器.
+     *
+     * @param writer 批量写入器
+     */
+    StatsAggrWriteTask(StatsBatchWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * 每个聚合周期写一次数据.
+     */
+    @Override
+    public void run() {
+        try {
+            ArrayList<SqlAggrStats> list = MainService.drainAggrStatsList();
+            if (list.size() == 0) {
+                writer.replay();
+                return;
+            }
+            writeAggrStatsList(list);
+        } catch (Throwable e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 执行数据库插入，同一批数据的周期相同，所以只会落在一个分片表.
+     *
+     * @param list SqlAggrStats集合
+     */
+    private void writeAggrStatsList(List<SqlAggrStats> list) {
+        String tableName = TableShardingUtils.getTableNameByDate(MainService.STATS_AGGR_BASE_TABLE,
+                list.get(0).getStartDate());
+        List<String> tables = new ArrayList<>(list.size());
+        List<Object[]> rows = new ArrayList<>(list.size());
+        for (SqlAggrStats ss : list) {
+            tables.add(tableName);
+            rows.add(new Object[]{StatsLogWriteTask.truncate(ss.getConnName(), 100),
+                    StatsLogWriteTask.truncate(ss.getSqlFingerprint(), 1000), ss.getExeCount(), ss.getErrorCount(),
+                    ss.getRowNum(), ss.getConnTimeSum(), ss.getConnTimeMax(), ss.getConnTimeP99(), ss.getDbTimeSum(),
+                    ss.getDbTimeMax(), ss.getDbTimeP50(), ss.getDbTimeP99(), ss.getAllTimeSum(), ss.getAllTimeMax(),
+                    ss.getAllTimeP50(), ss.getAllTimeP90(), ss.getAllTimeP99(), ss.getAllTimeP999(),
+                    ss.getStartDate(), ss.getEndDate()});
+        }
+        writer.write(tables, rows);
+    }
+
+}
@@ -0,0 +1,257 @@
+package uw.dao.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.dao.DaoFactory;
+import uw.dao.connectionpool.ConnectionManager;
+import uw.dao.dialect.Dialect;
+import uw.dao.util.DaoValueUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 统计数据的批量写入器.
+ * 按物理表分组后使用多行insert写入，写入失败的数据溢出到本地文件，数据库恢复后按顺序回放.
+ *
+ * @author axeon
+ */
+class StatsBatchWriter {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StatsBatchWriter.class);
+
+    /**
+     * 每条insert语句的最大行数.
+     */
+    private static final int MAX_ROWS_PER_STATEMENT = 200;
+
+    /**
+     * 每次回放的最大行数.
+     */
+    private static final int MAX_REPLAY_ROWS = 2000;
+
+    /**
+     * 写入超时秒数，防止数据库故障时长时间阻塞.
+     */
+    private static final int QUERY_TIMEOUT = 10;
+
+    /**
+     * DAOFactory对象.
+     */
+    private final DaoFactory dao = DaoFactory.getInstance();
+
+    /**
+     * 基础表名.
+     */
+    private final String baseTable;
+
+    /**
+     * 列名.
+     */
+    private final String[] columns;
+
+    /**
+     * 专用的写入连接池，为空则按表名路由.
+     */
+    private final String writeConnName;
+
+    /**
+     * 溢出文件.
+     */
+    private final StatsSpillFile spillFile;
+
+    /**
+     * 缓存的insert sql，key为表名+行数.
+     */
+    private final Map<String, String> sqlCache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > 32;
+        }
+    };
+
+    /**
+     * 构造器.
+     *
+     * @param baseTable     基础表名
+     * @param columns       列名
+     * @param writeConnName 专用的写入连接池
+     * @param spillPath     溢出文件目录
+     * @param spillMaxSize  溢出文件最大字节数
+     */
+    StatsBatchWriter(String baseTable, String[] columns, String writeConnName, String spillPath, int spillMaxSize) {
+        this.baseTable = baseTable;
+        this.columns = columns;
+        this.writeConnName = (writeConnName == null || writeConnName.length() == 0) ? null : writeConnName;
+        this.spillFile = new StatsSpillFile(spillPath, "uw-dao-" + baseTable, spillMaxSize);
+    }
+
+    /**
+     * 写入数据，先回放溢出文件中的数据以保证顺序.
+     *
+     * @param tables 每行对应的表名
+     * @param rows   数据行
+     */
+    void write(List<String> tables, List<Object[]> rows) {
+        boolean healthy = replay();
+        Map<String, List<Object[]>> tableRows = groupByTable(tables, rows);
+        for (Map.Entry<String, List<Object[]>> kv : tableRows.entrySet()) {
+            if (healthy) {
+                healthy = insertRows(kv.getKey(), kv.getValue());
+            } else {
+                spillFile.append(kv.getKey(), kv.getValue());
+            }
+        }
+    }
+
+    /**
+     * 回放溢出文件中的数据.
+     *
+     * @return 数据库是否正常
+     */
+    boolean replay() {
+        while (spillFile.hasData()) {
+            List<String> tables = new ArrayList<>();
+            List<Object[]> rows = new ArrayList<>();
+            int pos = spillFile.read(MAX_REPLAY_ROWS, tables, rows);
+            Map<String, List<Object[]>> tableRows = groupByTable(tables, rows);
+            for (Map.Entry<String, List<Object[]>> kv : tableRows.entrySet()) {
+                if (!insertRows(kv.getKey(), kv.getValue(), false)) {
+                    // 部分表已写入的数据可能会重复回放，统计数据可以接受.
+                    return false;
+                }
+            }
+            spillFile.commit(pos);
+            logger.info("StatsBatchWriter[{}] replayed {} rows from spill file.", baseTable, rows.size());
+        }
+        return true;
+    }
+
+    /**
+     * 关闭写入器.
+     */
+    void close() {
+        spillFile.close();
+    }
+
+    /**
+     * 写入一个物理表，失败时溢出到本地文件.
+     *
+     * @param tableName 表名
+     * @param rows      数据行
+     * @return 是否成功
+     */
+    private boolean insertRows(String tableName, List<Object[]> rows) {
+        return insertRows(tableName, rows, true);
+    }
+
+    /**
+     * 写入一个物理表.
+     *
+     * @param tableName 表名
+     * @param rows      数据行
+     * @param spill     失败时是否溢出到本地文件
+     * @return 是否成功
+     */
+    private boolean insertRows(String tableName, List<Object[]> rows, boolean spill) {
+        String connName = writeConnName != null ? writeConnName : dao.getConnectionName(tableName, "write");
+        Connection conn = null;
+        int pos = 0;
+        try {
+            conn = ConnectionManager.getConnection(connName);
+            Dialect dialect = ConnectionManager.getDialect(connName);
+            if (dialect == null) {
+                dialect = new Dialect();
+            }
+            while (pos < rows.size()) {
+                int rowNum = Math.min(MAX_ROWS_PER_STATEMENT, rows.size() - pos);
+                PreparedStatement pstmt = null;
+                try {
+                    pstmt = conn.prepareStatement(getInsertSQL(dialect, tableName, rowNum));
+                    pstmt.setQueryTimeout(QUERY_TIMEOUT);
+                    int seq = 1;
+                    for (int i = pos; i < pos + rowNum; i++) {
+                        for (Object value : rows.get(i)) {
+                            if (value == null) {
+                                pstmt.setNull(seq++, Types.VARCHAR);
+                            } else if (value instanceof Date) {
+                                pstmt.setTimestamp(seq++, DaoValueUtils.dateToTimestamp((Date) value));
+                            } else {
+                                pstmt.setObject(seq++, value);
+                            }
+                        }
+                    }
+                    pstmt.executeUpdate();
+                } finally {
+                    if (pstmt != null) {
+                        try {
+                            pstmt.close();
+                        } catch (SQLException e) {
+                            logger.error(e.getMessage(), e);
+                        }
+                    }
+                }
+                pos += rowNum;
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("StatsBatchWriter[{}] write {} failed: {}", baseTable, tableName, e.getMessage());
+            if (spill) {
+                spillFile.append(tableName, rows.subList(pos, rows.size()));
+            }
+            return false;
+        } finally {
+            if (conn != null) {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获得insert sql.
+     *
+     * @param dialect   方言
+     * @param tableName 表名
+     * @param rowNum    行数
+     * @return insert sql
+     */
+    private String getInsertSQL(Dialect dialect, String tableName, int rowNum) {
+        String key = tableName + "#" + rowNum;
+        String sql = sqlCache.get(key);
+        if (sql == null) {
+            sql = dialect.getBatchInsertSQL(tableName, columns, rowNum);
+            sqlCache.put(key, sql);
+        }
+        return sql;
+    }
+
+    /**
+     * 按表名分组，保持原有顺序.
+     *
+     * @param tables 每行对应的表名
+     * @param rows   数据行
+     * @return 分组后的数据
+     */
+    private static Map<String, List<Object[]>> groupByTable(List<String> tables, List<Object[]> rows) {
+        Map<String, List<Object[]>> map = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            map.computeIfAbsent(tables.get(i), k -> new ArrayList<>()).add(rows.get(i));
+        }
+        return map;
+    }
+
+}
@@ -2,15 +2,9 @@ package uw.dao.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.EnableScheduling;
-import uw.dao.DaoFactory;
-import uw.dao.util.DaoValueUtils;
 import uw.dao.util.TableShardingUtils;
 import uw.dao.vo.SqlExecuteStats;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,108 +18,88 @@ public class StatsLogWriteTask implements Runnable {
      * 日志.
      */
     private static final Logger logger = LoggerFactory.getLogger(StatsLogWriteTask.class);
+
+    /**
+     * 写入的列.
+     */
+    static final String[] COLUMNS = {"conn_name", "conn_id", "sql_info", "sql_param", "row_num", "conn_time", "db_time",
+            "all_time", "exception", "exe_date", "sample_weight"};
+
+    /**
+     * 批量写入器.
+     */
+    private final StatsBatchWriter writer;
+
     /**
-     * DAOFactory对象.
+     * 构造器.
+     *
+     * @param writer 批量写入器
      */
-    private final DaoFactory dao = DaoFactory.getInstance();
+    StatsLogWriteTask(StatsBatchWriter writer) {
+        this.writer = writer;
+    }
 
     /**
      * 10秒写一次数据.
      */
     @Override
     public void run() {
-        ArrayList<SqlExecuteStats> list = MainService.getStatsList();
-        if (list.size() == 0) {
-            return;
+        try {
+            ArrayList<SqlExecuteStats> list = MainService.getStatsList();
+            if (list.size() == 0) {
+                writer.replay();
+                return;
+            }
+            writeStatsList(list);
+        } catch (Throwable e) {
+            logger.error(e.getMessage(), e);
         }
-        writeStatsList(list);
     }
 
     /**
-     * 执行数据库插入.
+     * 执行数据库插入，每行按执行时间落到对应的日期分片表.
      *
      * @param list SqlExecuteStats集合
      */
     private void writeStatsList(List<SqlExecuteStats> list) {
-
-        String tableName = TableShardingUtils.getTableNameByDate(MainService.STATS_BASE_TABLE,
-                list.get(0).getActionDate());
-        Connection conn = null;
-        PreparedStatement pstmt = null;
-        String pdsql = "INSERT INTO " + tableName
-                + "(conn_name,conn_id,sql_info,sql_param,row_num,conn_time,db_time,all_time,exception,exe_date) values "
-                + "(?,?,?,?,?,?,?,?,?,?) ";
-        int pos = 0;
-        try {
-            conn = dao.getConnection(tableName, "write");
-            conn.setAutoCommit(false);
-            pstmt = conn.prepareStatement(pdsql);
-            for (pos = 0; pos < list.size(); pos++) {
-                SqlExecuteStats ss = list.get(pos);
-                // 发现已经跨时间分片了，此时要退出
-                if (pos > 0 && !tableName.equals(
-                        TableShardingUtils.getTableNameByDate(MainService.STATS_BASE_TABLE, ss.getActionDate()))) {
-                    break;
-                }
-                if (ss.getConnName() != null && ss.getConnName().length() > 100) {
-                    ss.setConnName(ss.getConnName().substring(0, 100));
-                }
-                pstmt.setString(1, ss.getConnName());
-                pstmt.setInt(2, ss.getConnId());
-                if (ss.getSql() != null && ss.getSql().length() > 1000) {
-                    ss.setSql(ss.getSql().substring(0, 1000));
-                }
-                pstmt.setString(3, ss.getSql());
-                if (ss.getParam() != null && ss.getParam().length() > 1000) {
-                    ss.setParam(ss.getParam().substring(0, 1000));
-                }
-                pstmt.setString(4, ss.getParam());
-                pstmt.setInt(5, ss.getRowNum());
-                pstmt.setInt(6, (int) ss.getConnTime());
-                pstmt.setInt(7, (int) ss.getDbTime());
-                pstmt.setInt(8, (int) ss.getAllTime());
-                if (ss.getException() != null && ss.getException().length() > 500) {
-                    ss.setException(ss.getException().substring(0, 100));
-                }
-                pstmt.setString(9, ss.getException());
-                pstmt.setTimestamp(10, DaoValueUtils.dateToTimestamp(ss.getActionDate()));
-                pstmt.addBatch();
-                if ((pos + 1) % 100 == 0 && pos > 0) {
-                    // 每隔100次自动提交
-                    pstmt.executeBatch();
-                }
-            }
-            // 剩余部分也要执行提交。
-            if (pos % 100 > 0) {
-                pstmt.executeBatch();
-            }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-        } finally {
-            if (pstmt != null) {
-                try {
-                    pstmt.close();
-                } catch (SQLException e) {
-                    logger.error(e.getMessage(), e);
-                }
-            }
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true);
-                } catch (SQLException e) {
-                    logger.error(e.getMessage(), e);
-                }
-                try {
-                    conn.close();
-                } catch (SQLException e) {
-                    logger.error(e.getMessage(), e);
-                }
+        List<String> tables = new ArrayList<>(list.size());
+        List<Object[]> rows = new ArrayList<>(list.size());
+        for (SqlExecuteStats ss : list) {
+            tables.add(TableShardingUtils.getTableNameByDate(MainService.STATS_BASE_TABLE, ss.getActionDate()));
+            String exception = ss.getException();
+            if (exception != null && exception.length() > 500) {
+                exception = exception.substring(0, 500);
             }
+            rows.add(new Object[]{truncate(ss.getConnName(), 100), ss.getConnId(), truncate(ss.getSql(), 1000),
+                    truncate(ss.getParam(), 1000), ss.getRowNum(), toMillis(ss.getConnTime()), toMillis(ss.getDbTime()),
+                    toMillis(ss.getAllTime()), exception, ss.getActionDate(), ss.getSampleWeight()});
         }
-        // 接着往这里写
-        if (list.size() - pos >= 1) {
-            writeStatsList(list.subList(pos, list.size()));
+        writer.write(tables, rows);
+    }
+
+    /**
+     * 微秒数转为毫秒数写入，和已有数据的单位保持一致，超出范围的按最大值记录.
+     *
+     * @param micros 微秒数
+     * @return 毫秒数
+     */
+    private static int toMillis(long micros) {
+        long millis = micros / 1000;
+        return millis > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) millis;
+    }
+
+    /**
+     * 截断字符串.
+     *
+     * @param value  字符串
+     * @param maxLen 最大长度
+     * @return 截断后的字符串
+     */
+    static String truncate(String value, int maxLen) {
+        if (value != null && value.length() > maxLen) {
+            return value.substring(0, maxLen);
         }
+        return value;
     }
 
 }
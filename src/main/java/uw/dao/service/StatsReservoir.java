@@ -0,0 +1,142 @@
+package uw.dao.service;
+
+import uw.dao.vo.SqlExecuteStats;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 固定容量的蓄水池采样器（Algorithm R）.
+ * 先通过acquireSlot决定是否入选，入选了才构造SqlExecuteStats，未入选的执行不产生任何对象.
+ * 周期号和参与数放在同一个原子变量中，槽位中的数据带有周期号，drainTo只取本周期的数据，迟到的写入不会混入下一个周期.
+ *
+ * @author axeon
+ */
+class StatsReservoir {
+
+    /**
+     * state中参与数所占的位数.
+     */
+    private static final int COUNT_BITS = 32;
+
+    /**
+     * state中参与数的掩码.
+     */
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    /**
+     * 采样槽位.
+     */
+    private final AtomicReferenceArray<Sample> slots;
+
+    /**
+     * 高位为周期号，低位为本周期参与采样的总数.
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    /**
+     * 构造器.
+     *
+     * @param size 容量
+     */
+    StatsReservoir(int size) {
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 申请一个采样槽位.
+     *
+     * @return 入选凭证，包含周期号和槽位，未入选返回-1
+     */
+    long acquireSlot() {
+        long s = state.incrementAndGet();
+        long n = s & COUNT_MASK;
+        int size = slots.length();
+        long slot;
+        if (n <= size) {
+            slot = n - 1;
+        } else {
+            long j = ThreadLocalRandom.current().nextLong(n);
+            if (j >= size) {
+                return -1;
+            }
+            slot = j;
+        }
+        return (s & ~COUNT_MASK) | slot;
+    }
+
+    /**
+     * 写入采样数据，槽位已被更新周期的数据占用时放弃写入.
+     *
+     * @param ticket acquireSlot返回的凭证
+     * @param stats  采样数据
+     */
+    void set(long ticket, SqlExecuteStats stats) {
+        int slot = (int) (ticket & COUNT_MASK);
+        Sample sample = new Sample(ticket >>> COUNT_BITS, stats);
+        for (; ; ) {
+            Sample current = slots.get(slot);
+            if (current != null && current.epoch > sample.epoch) {
+                return;
+            }
+            if (slots.compareAndSet(slot, current, sample)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 取出本周期的采样数据并清零，每条数据的权重乘以 参与数/入选数.
+     *
+     * @param list   输出列表
+     * @param weight 基础权重，如前置按比率采样的1/rate
+     */
+    void drainTo(List<SqlExecuteStats> list, double weight) {
+        long s;
+        do {
+            s = state.get();
+        } while (!state.compareAndSet(s, (s & ~COUNT_MASK) + (1L << COUNT_BITS)));
+        long epoch = s >>> COUNT_BITS;
+        long total = s & COUNT_MASK;
+        int start = list.size();
+        for (int i = 0; i < slots.length(); i++) {
+            Sample sample = slots.get(i);
+            // 下一个周期已写入的数据留在槽位中，之前周期迟到的数据丢弃
+            if (sample != null && sample.epoch <= epoch && slots.compareAndSet(i, sample, null) && sample.epoch == epoch) {
+                list.add(sample.stats);
+            }
+        }
+        int kept = list.size() - start;
+        if (total == 0 || kept == 0) {
+            return;
+        }
+        double sampleWeight = weight * total / kept;
+        for (int i = start; i < list.size(); i++) {
+            list.get(i).setSampleWeight(sampleWeight);
+        }
+    }
+
+    /**
+     * 带周期号的采样数据.
+     */
+    private static class Sample {
+
+        /**
+         * 周期号.
+         */
+        private final long epoch;
+
+        /**
+         * 采样数据.
+         */
+        private final SqlExecuteStats stats;
+
+        Sample(long epoch, SqlExecuteStats stats) {
+            this.epoch = epoch;
+            this.stats = stats;
+        }
+    }
+
+}
@@ -0,0 +1,383 @@
+package uw.dao.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 统计数据的本地溢出文件.
+ * 数据库写入失败时，把数据行追加到一个固定大小的内存映射文件中，数据库恢复后再按顺序回放.
+ * <p>
+ * 文件格式: header(magic,readPos,writePos) + record(len,tableName,colNum,values...)*
+ *
+ * @author axeon
+ */
+class StatsSpillFile {
+
+    /**
+     * 日志.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(StatsSpillFile.class);
+
+    /**
+     * 文件标识.
+     */
+    private static final int MAGIC = 0x55575350;
+
+    /**
+     * 文件头长度.
+     */
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * readPos在文件头中的位置.
+     */
+    private static final int READ_POS_OFFSET = 8;
+
+    /**
+     * writePos在文件头中的位置.
+     */
+    private static final int WRITE_POS_OFFSET = 16;
+
+    /**
+     * 同一个目录下尝试的文件数，用于同机多实例.
+     */
+    private static final int MAX_FILE_INDEX = 10;
+
+    /**
+     * 数值类型.
+     */
+    private static final byte TYPE_NULL = 0, TYPE_STRING = 1, TYPE_INT = 2, TYPE_LONG = 3, TYPE_DOUBLE = 4, TYPE_DATE = 5;
+
+    /**
+     * 文件名.
+     */
+    private final String fileName;
+
+    /**
+     * 文件.
+     */
+    private RandomAccessFile file;
+
+    /**
+     * 文件锁，防止同机多实例写同一个文件.
+     */
+    private FileLock lock;
+
+    /**
+     * 内存映射.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * 读取位置.
+     */
+    private int readPos;
+
+    /**
+     * 写入位置.
+     */
+    private int writePos;
+
+    /**
+     * 因文件已满丢弃的行数.
+     */
+    private long droppedRows;
+
+    /**
+     * 打开溢出文件.
+     *
+     * @param path     目录
+     * @param name     文件名前缀
+     * @param maxBytes 文件最大字节数
+     */
+    StatsSpillFile(String path, String name, int maxBytes) {
+        File dir = new File(path);
+        if (!dir.exists() && !dir.mkdirs()) {
+            logger.error("StatsSpillFile can't create dir: {}", path);
+        }
+        String openedName = null;
+        for (int i = 0; i < MAX_FILE_INDEX && openedName == null; i++) {
+            File f = new File(dir, i == 0 ? name + ".spill" : name + "-" + i + ".spill");
+            try {
+                RandomAccessFile raf = new RandomAccessFile(f, "rw");
+                FileLock fl = raf.getChannel().tryLock();
+                if (fl == null) {
+                    raf.close();
+                    continue;
+                }
+                this.file = raf;
+                this.lock = fl;
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(maxBytes, HEADER_SIZE * 2));
+                openedName = f.getAbsolutePath();
+            } catch (Exception e) {
+                logger.error("StatsSpillFile open [{}] failed: {}", f.getAbsolutePath(), e.getMessage());
+            }
+        }
+        this.fileName = openedName;
+        if (buffer != null) {
+            if (buffer.getInt(0) == MAGIC) {
+                readPos = (int) buffer.getLong(READ_POS_OFFSET);
+                writePos = (int) buffer.getLong(WRITE_POS_OFFSET);
+                if (readPos < HEADER_SIZE || writePos < readPos || writePos > buffer.capacity()) {
+                    logger.warn("StatsSpillFile [{}] header is broken, reset it!", fileName);
+                    reset();
+                } else if (writePos > readPos) {
+                    logger.info("StatsSpillFile [{}] has {} bytes to replay.", fileName, writePos - readPos);
+                }
+            } else {
+                buffer.putInt(0, MAGIC);
+                reset();
+            }
+        }
+    }
+
+    /**
+     * 是否可用.
+     *
+     * @return boolean
+     */
+    boolean isAvailable() {
+        return buffer != null;
+    }
+
+    /**
+     * 是否有待回放的数据.
+     *
+     * @return boolean
+     */
+    synchronized boolean hasData() {
+        return buffer != null && writePos > readPos;
+    }
+
+    /**
+     * 追加数据行，文件已满时丢弃并记录日志.
+     *
+     * @param tableName 表名
+     * @param rows      数据行
+     */
+    synchronized void append(String tableName, List<Object[]> rows) {
+        if (buffer == null) {
+            droppedRows += rows.size();
+            logger.error("StatsSpillFile is not available, dropped {} rows of {}!", rows.size(), tableName);
+            return;
+        }
+        byte[] table = tableName.getBytes(StandardCharsets.UTF_8);
+        int dropped = 0;
+        for (Object[] row : rows) {
+            byte[] data = encode(table, row);
+            if (writePos + data.length > buffer.capacity()) {
+                compact();
+            }
+            if (writePos + data.length > buffer.capacity()) {
+                dropped++;
+                continue;
+            }
+            buffer.position(writePos);
+            buffer.put(data);
+            writePos += data.length;
+        }
+        buffer.putLong(WRITE_POS_OFFSET, writePos);
+        buffer.force();
+        if (dropped > 0) {
+            droppedRows += dropped;
+            logger.error("StatsSpillFile [{}] is full, dropped {} rows of {}, total dropped: {}", fileName, dropped, tableName, droppedRows);
+        }
+    }
+
+    /**
+     * 读取待回放的数据，读取后需调用commit确认.
+     *
+     * @param maxRows 最多读取的行数
+     * @param tables  输出每行对应的表名
+     * @param rows    输出数据行
+     * @return 读取后的位置，用于commit
+     */
+    synchronized int read(int maxRows, List<String> tables, List<Object[]> rows) {
+        int pos = readPos;
+        while (pos < writePos && rows.size() < maxRows) {
+            int len = buffer.getInt(pos);
+            ByteBuffer record = buffer.duplicate();
+            record.position(pos + 4);
+            record.limit(pos + len);
+            tables.add(readString(record));
+            int colNum = record.getShort();
+            Object[] row = new Object[colNum];
+            for (int i = 0; i < colNum; i++) {
+                row[i] = readValue(record);
+            }
+            rows.add(row);
+            pos += len;
+        }
+        return pos;
+    }
+
+    /**
+     * 确认回放完成.
+     *
+     * @param pos read返回的位置
+     */
+    synchronized void commit(int pos) {
+        readPos = pos;
+        if (readPos >= writePos) {
+            reset();
+        } else {
+            buffer.putLong(READ_POS_OFFSET, readPos);
+        }
+        buffer.force();
+    }
+
+    /**
+     * 关闭文件.
+     */
+    synchronized void close() {
+        try {
+            if (buffer != null) {
+                buffer.force();
+            }
+            if (lock != null) {
+                lock.release();
+            }
+            if (file != null) {
+                file.close();
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 清空数据.
+     */
+    private void reset() {
+        readPos = HEADER_SIZE;
+        writePos = HEADER_SIZE;
+        buffer.putLong(READ_POS_OFFSET, readPos);
+        buffer.putLong(WRITE_POS_OFFSET, writePos);
+    }
+
+    /**
+     * 把未回放的数据移动到文件头部，腾出空间.
+     */
+    private void compact() {
+        if (readPos == HEADER_SIZE) {
+            return;
+        }
+        int len = writePos - readPos;
+        ByteBuffer src = buffer.duplicate();
+        src.position(readPos);
+        src.limit(writePos);
+        ByteBuffer dst = buffer.duplicate();
+        dst.position(HEADER_SIZE);
+        dst.put(src);
+        readPos = HEADER_SIZE;
+        writePos = HEADER_SIZE + len;
+        buffer.putLong(READ_POS_OFFSET, readPos);
+        buffer.putLong(WRITE_POS_OFFSET, writePos);
+    }
+
+    /**
+     * 编码一行数据.
+     *
+     * @param table 表名
+     * @param row   数据行
+     * @return 字节数组
+     */
+    private static byte[] encode(byte[] table, Object[] row) {
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int size = 4 + 2 + table.length + 2;
+        for (Object value : row) {
+            size += 1;
+            if (value instanceof String) {
+                byte[] data = ((String) value).getBytes(StandardCharsets.UTF_8);
+                strings.add(data);
+                size += 4 + data.length;
+            } else if (value instanceof Integer) {
+                size += 4;
+            } else if (value instanceof Number || value instanceof Date) {
+                size += 8;
+            }
+        }
+        ByteBuffer bb = ByteBuffer.allocate(size);
+        bb.putInt(size);
+        bb.putShort((short) table.length);
+        bb.put(table);
+        bb.putShort((short) row.length);
+        int s = 0;
+        for (Object value : row) {
+            if (value == null) {
+                bb.put(TYPE_NULL);
+            } else if (value instanceof String) {
+                byte[] data = strings.get(s++);
+                bb.put(TYPE_STRING);
+                bb.putInt(data.length);
+                bb.put(data);
+            } else if (value instanceof Integer) {
+                bb.put(TYPE_INT);
+                bb.putInt((Integer) value);
+            } else if (value instanceof Double || value instanceof Float) {
+                bb.put(TYPE_DOUBLE);
+                bb.putDouble(((Number) value).doubleValue());
+            } else if (value instanceof Number) {
+                bb.put(TYPE_LONG);
+                bb.putLong(((Number) value).longValue());
+            } else if (value instanceof Date) {
+                bb.put(TYPE_DATE);
+                bb.putLong(((Date) value).getTime());
+            } else {
+                bb.put(TYPE_NULL);
+            }
+        }
+        return bb.array();
+    }
+
+    /**
+     * 读取表名.
+     *
+     * @param bb 数据
+     * @return 表名
+     */
+    private static String readString(ByteBuffer bb) {
+        byte[] data = new byte[bb.getShort()];
+        bb.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 读取一个数值.
+     *
+     * @param bb 数据
+     * @return 数值
+     */
+    private static Object readValue(ByteBuffer bb) {
+        byte type = bb.get();
+        switch (type) {
+            case TYPE_STRING:
+                byte[] data = new byte[bb.getInt()];
+                bb.get(data);
+                return new String(data, StandardCharsets.UTF_8);
+            case TYPE_INT:
+                return bb.getInt();
+            case TYPE_LONG:
+                return bb.getLong();
+            case TYPE_DOUBLE:
+                return bb.getDouble();
+            case TYPE_DATE:
+                return new Date(bb.getLong());
+            default:
+                return null;
+        }
+    }
+
+}
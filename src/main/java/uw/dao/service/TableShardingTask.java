@@ -2,7 +2,6 @@ package uw.dao.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.EnableScheduling;
 import uw.dao.DaoFactory;
 import uw.dao.DataSet;
 import uw.dao.TransactionException;
@@ -15,125 +14,288 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDateTime;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * 按日期分表的工具.
+ * 分表生命周期管理.
+ * 提前创建配置数量的未来分表，删除或归档超出保留数量的过期分表.
+ * 每次执行时重新载入表列表，不同连接池的DDL并行执行，同一连接池内串行执行.
  *
  * @author axeon
  */
 public class TableShardingTask implements Runnable {
 
+    /**
+     * 归档分表的表名前缀.
+     */
+    public static final String ARCHIVE_PREFIX = "archive_";
+
     /**
      * 日志.
      */
     private static final Logger log = LoggerFactory.getLogger(TableShardingTask.class);
+
     /**
-     * DAOFactory对象.
+     * 建表语句的表名部分.
      */
-    private final DaoFactory dao = DaoFactory.getInstance();
+    private static final Pattern CREATE_TABLE_PATTERN = Pattern.compile("^\\s*CREATE\\s+TABLE\\s+(?:IF\\s+NOT\\s+EXISTS\\s+)?([`\"]?)([\\w$]+)\\1",
+            Pattern.CASE_INSENSITIVE);
 
     /**
-     * dao配置文件。
+     * DDL执行线程.
      */
-    private static final DaoConfig daoConfig = DaoConfigManager.getConfig();
+    private static volatile ExecutorService ddlService = null;
 
     /**
-     * 链接内表列表.
+     * DAOFactory对象.
      */
-    private final HashMap<String, List<String>> tableListMap = new HashMap<>();
+    private final DaoFactory dao = DaoFactory.getInstance();
+
+    /**
+     * 本次执行中各基础表的建表sql.
+     */
+    private final Map<String, String> scriptMap = new ConcurrentHashMap<>();
 
     /**
-     * 自动建表工具。 每小时检查当天表和第二天的表。 设定一个3秒的延时，是担心同步问题.
+     * 按连接池执行分表维护.
      */
     @Override
     public void run() {
-        LocalDateTime now = LocalDateTime.now();
-        Map<String, TableShardConfig> map = daoConfig.getTableShard();
-        for (Map.Entry<String, TableShardConfig> kv : map.entrySet()) {
+        DaoConfig daoConfig = DaoConfigManager.getConfig();
+        if (daoConfig == null || daoConfig.getTableShard() == null) {
+            return;
+        }
+        scriptMap.clear();
+        LocalDate today = LocalDate.now();
+        Map<String, PoolPlan> planMap = new LinkedHashMap<>();
+        for (Map.Entry<String, TableShardConfig> kv : daoConfig.getTableShard().entrySet()) {
             String tableName = kv.getKey();
             TableShardConfig tc = kv.getValue();
+            List<String> shardList = new ArrayList<>();
             if (tc.isAutoGen()) {
-                if ("date".equalsIgnoreCase(tc.getShardType())) {
-                    // 计算当前表和下一个表
-                    String current = "", next = "";
-                    switch (tc.getShardRule()) {
-                        case "day":
-                            current = now.format(TableShardingUtils.FORMATTER_DAY);
-                            next = now.plusDays(1).format(TableShardingUtils.FORMATTER_DAY);
-                            break;
-                        case "month":
-                            current = now.format(TableShardingUtils.FORMATTER_MONTH);
-                            next = now.plusMonths(1).format(TableShardingUtils.FORMATTER_MONTH);
-                            break;
-                        case "year":
-                            current = now.format(TableShardingUtils.FORMATTER_YEAR);
-                            next = now.plusYears(1).format(TableShardingUtils.FORMATTER_YEAR);
-                            break;
-                        default:
-                            current = now.format(TableShardingUtils.FORMATTER_DAY);
-                            next = now.plusDays(1).format(TableShardingUtils.FORMATTER_DAY);
-                            break;
-                    }
-                    current = tableName + "_" + current;
-                    next = tableName + "_" + next;
-                    String createScript = null;
-                    if (!checkTableExist(current)) {
-                        if (createScript == null) {
-                            createScript = getCreateScript(tableName);
-                        }
-                        exeCreateTable(current, createScript.replaceAll(tableName, current));
-                    }
-                    if (!checkTableExist(next)) {
-                        if (createScript == null) {
-                            createScript = getCreateScript(tableName);
-                        }
-                        exeCreateTable(next, createScript.replaceAll(tableName, next));
+                shardList.addAll(getCreateTableNames(tableName, tc, today));
+                for (String shardName : shardList) {
+                    getPoolPlan(planMap, dao.getConnectionName(shardName, "all")).createList.add(new String[]{tableName, shardName});
+                }
+            }
+            if (tc.getKeepCount() > 0 && "date".equalsIgnoreCase(tc.getShardType())) {
+                // 过期分表可能在基础表或当前分表的连接池里。
+                String expireName = getDateTableName(tableName, tc.getShardRule(), today, -tc.getKeepCount());
+                Set<String> connNames = new HashSet<>();
+                connNames.add(dao.getConnectionName(tableName, "all"));
+                connNames.add(dao.getConnectionName(getDateTableName(tableName, tc.getShardRule(), today, 0), "all"));
+                for (String connName : connNames) {
+                    getPoolPlan(planMap, connName).expireList.add(new Object[]{tableName, tc, expireName});
+                }
+            }
+        }
+        if (planMap.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(planMap.size());
+        for (Map.Entry<String, PoolPlan> kv : planMap.entrySet()) {
+            futures.add(CompletableFuture.runAsync(() -> runPoolPlan(kv.getKey(), kv.getValue()), getDdlService()));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (Throwable e) {
+                log.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * 获得建表sql，默认使用mysql的show create table，其它数据库可以覆盖此方法.
+     *
+     * @param tableName 表名
+     * @return 建表sql
+     */
+    protected String getCreateScript(String tableName) {
+        String script = null;
+        try {
+            DataSet ds = dao.queryForDataSet(dao.getConnectionName(tableName, "all"), "show create table " + tableName);
+            if (ds.next()) {
+                script = ds.getString(2);
+            }
+        } catch (TransactionException e) {
+            log.error(e.getMessage(), e);
+        }
+        return script;
+    }
+
+    /**
+     * 把基础表的建表sql改写为分表的建表sql，只替换CREATE TABLE后的表名，并加上IF NOT EXISTS.
+     *
+     * @param createScript 基础表的建表sql
+     * @param tableName    基础表名
+     * @param shardName    分表名
+     * @return 分表的建表sql，不能识别时返回null
+     */
+    static String rewriteCreateScript(String createScript, String tableName, String shardName) {
+        if (createScript == null) {
+            return null;
+        }
+        Matcher matcher = CREATE_TABLE_PATTERN.matcher(createScript);
+        if (!matcher.find() || !matcher.group(2).equalsIgnoreCase(tableName)) {
+            return null;
+        }
+        String quote = matcher.group(1);
+        return "CREATE TABLE IF NOT EXISTS " + quote + shardName + quote + createScript.substring(matcher.end());
+    }
+
+    /**
+     * 执行一个连接池的分表维护.
+     *
+     * @param connName 连接名
+     * @param plan     维护计划
+     */
+    private void runPoolPlan(String connName, PoolPlan plan) {
+        Set<String> tableSet = loadTableSet(connName);
+        if (tableSet == null) {
+            return;
+        }
+        for (String[] create : plan.createList) {
+            String shardName = create[1];
+            if (tableSet.contains(shardName.toLowerCase())) {
+                continue;
+            }
+            String script = rewriteCreateScript(scriptMap.computeIfAbsent(create[0], this::getCreateScript), create[0], shardName);
+            if (script == null) {
+                log.error("无法获得分表[{}]的建表语句!", shardName);
+                continue;
+            }
+            if (executeDdl(connName, script)) {
+                tableSet.add(shardName.toLowerCase());
+                log.info("创建分表: {}", shardName);
+            }
+        }
+        for (Object[] expire : plan.expireList) {
+            String tableName = (String) expire[0];
+            TableShardConfig tc = (TableShardConfig) expire[1];
+            String expireName = ((String) expire[2]).toLowerCase();
+            String prefix = tableName.toLowerCase() + "_";
+            List<String> expireList = new ArrayList<>();
+            for (String name : tableSet) {
+                // 只处理后缀符合分表日期格式的表，并且按路由属于此连接池。
+                if (name.startsWith(prefix) && name.length() == expireName.length() && name.compareTo(expireName) < 0
+                        && isDigits(name.substring(prefix.length())) && connName.equals(dao.getConnectionName(name, "all"))) {
+                    expireList.add(name);
+                }
+            }
+            expireList.sort(null);
+            for (String name : expireList) {
+                boolean archive = "archive".equalsIgnoreCase(tc.getExpireAction());
+                String sql = archive ? "ALTER TABLE " + name + " RENAME TO " + ARCHIVE_PREFIX + name : "DROP TABLE IF EXISTS " + name;
+                if (executeDdl(connName, sql)) {
+                    tableSet.remove(name);
+                    if (archive) {
+                        tableSet.add(ARCHIVE_PREFIX + name);
                     }
+                    log.info("{}过期分表: {}", archive ? "归档" : "删除", name);
                 }
             }
         }
     }
 
     /**
-     * 检查表是否存在.
+     * 获得需要存在的分表名.
+     * date分表为当前及之后preCreateCount个周期的分表，hash/range分表为全部分表.
+     *
+     * @param tableName 表名
+     * @param tc        分表配置
+     * @param today     当前日期
+     * @return 分表名列表
+     */
+    private List<String> getCreateTableNames(String tableName, TableShardConfig tc, LocalDate today) {
+        List<String> list = new ArrayList<>();
+        if ("date".equalsIgnoreCase(tc.getShardType())) {
+            for (int i = 0; i <= Math.max(tc.getPreCreateCount(), 1); i++) {
+                list.add(getDateTableName(tableName, tc.getShardRule(), today, i));
+            }
+        } else if ("hash".equalsIgnoreCase(tc.getShardType()) || "range".equalsIgnoreCase(tc.getShardType())) {
+            int count = "hash".equalsIgnoreCase(tc.getShardType()) ? tc.getShardCount() : tc.getShardRanges().size() + 1;
+            for (int i = 0; i < count; i++) {
+                list.add(tableName + "_" + i);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 获得相对当前日期偏移若干周期的日期分表名，未知的分表规则按天计算.
      *
      * @param tableName 表名
+     * @param shardRule 分表规则
+     * @param today     当前日期
+     * @param offset    偏移的周期数
+     * @return 分表名
+     */
+    private static String getDateTableName(String tableName, String shardRule, LocalDate today, long offset) {
+        LocalDate date;
+        DateTimeFormatter formatter;
+        if ("month".equals(shardRule)) {
+            date = today.plusMonths(offset);
+            formatter = TableShardingUtils.FORMATTER_MONTH;
+        } else if ("year".equals(shardRule)) {
+            date = today.plusYears(offset);
+            formatter = TableShardingUtils.FORMATTER_YEAR;
+        } else {
+            date = today.plusDays(offset);
+            formatter = TableShardingUtils.FORMATTER_DAY;
+        }
+        return tableName + "_" + date.format(formatter);
+    }
+
+    /**
+     * 是否全部为数字.
+     *
+     * @param str 字符串
      * @return boolean
      */
-    private boolean checkTableExist(String tableName) {
-        String connName = dao.getConnectionName(tableName, "all");
-        List<String> tablist = tableListMap.get(connName);
-        if (tablist == null) {
-            tablist = loadTableList(connName);
+    private static boolean isDigits(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            if (!Character.isDigit(str.charAt(i))) {
+                return false;
+            }
         }
-        return tablist.contains(tableName);
+        return str.length() > 0;
     }
 
     /**
-     * 载入当前连接列表.
+     * 载入连接池的表名，统一小写.
      *
      * @param connName 连接名
-     * @return 连接列列表
+     * @return 表名集合，载入失败返回null
      */
-    private List<String> loadTableList(String connName) {
+    private Set<String> loadTableSet(String connName) {
         Connection conn = null;
         ResultSet rs = null;
-        List<String> list = new ArrayList<String>();
+        Set<String> set = new HashSet<>();
         try {
             conn = dao.getConnection(connName);
             DatabaseMetaData metaData = conn.getMetaData();
-            rs = metaData.getTables(null, null, null, new String[]{"TABLE"});
+            rs = metaData.getTables(conn.getCatalog(), null, null, new String[]{"TABLE"});
             while (rs.next()) {
-                list.add(rs.getString("TABLE_NAME"));
+                set.add(rs.getString("TABLE_NAME").toLowerCase());
             }
             rs.close();
         } catch (SQLException e) {
             log.error(e.getMessage(), e);
+            set = null;
         } finally {
             if (conn != null) {
                 try {
@@ -143,43 +305,74 @@ public class TableShardingTask implements Runnable {
                 }
             }
         }
-        return list;
+        return set;
     }
 
     /**
-     * 获得建表sql.
+     * 执行DDL.
      *
-     * @param tableName 表名
-     * @return 建表sql
+     * @param connName 连接名
+     * @param sql      DDL
+     * @return 是否成功
      */
-    private String getCreateScript(String tableName) {
-        String script = null;
+    private boolean executeDdl(String connName, String sql) {
         try {
-            DataSet ds = dao.queryForDataSet(dao.getConnectionName(tableName, "all"), "show create table " + tableName);
-            if (ds.next()) {
-                script = ds.getString(2);
-            }
+            dao.executeCommand(connName, sql);
+            return true;
         } catch (TransactionException e) {
             log.error(e.getMessage(), e);
+            return false;
         }
-        return script;
     }
 
     /**
-     * 建表.
+     * 获得或创建连接池维护计划.
      *
-     * @param tableName    表名
-     * @param createScript 创建脚本
-     * @return int
+     * @param planMap  计划map
+     * @param connName 连接名
+     * @return 维护计划
      */
-    private int exeCreateTable(String tableName, String createScript) {
-        int effect = 0;
-        try {
-            effect = dao.executeCommand(dao.getConnectionName(tableName, "all"), createScript);
-        } catch (TransactionException e) {
-            log.error(e.getMessage(), e);
+    private static PoolPlan getPoolPlan(Map<String, PoolPlan> planMap, String connName) {
+        return planMap.computeIfAbsent(connName, k -> new PoolPlan());
+    }
+
+    /**
+     * 获得DDL执行线程.
+     *
+     * @return ExecutorService
+     */
+    private static ExecutorService getDdlService() {
+        ExecutorService service = ddlService;
+        if (service == null) {
+            synchronized (TableShardingTask.class) {
+                service = ddlService;
+                if (service == null) {
+                    service = ddlService = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r);
+                        t.setName("uw-dao.shard-ddl");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
         }
-        return effect;
+        return service;
+    }
+
+    /**
+     * 一个连接池的维护计划.
+     */
+    private static class PoolPlan {
+
+        /**
+         * 需要存在的分表，{基础表名,分表名}.
+         */
+        private final List<String[]> createList = new ArrayList<>();
+
+        /**
+         * 需要清理的分表，{基础表名,分表配置,最早保留的分表名}.
+         */
+        private final List<Object[]> expireList = new ArrayList<>();
     }
 
 }
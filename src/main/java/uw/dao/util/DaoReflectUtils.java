@@ -108,4 +108,30 @@ public class DaoReflectUtils {
 
     }
 
+    /**
+     * 把数据库生成的自增主键回填到实体中.
+     *
+     * @param rs     getGeneratedKeys返回的ResultSet，已定位到当前行
+     * @param entity 实体类
+     * @param fmi    自增列的FieldMetaInfo
+     * @throws Exception 异常
+     */
+    public static final void DAOLiteGeneratedKeyReflect(ResultSet rs, Object entity, FieldMetaInfo fmi) throws Exception {
+        Field fd = fmi.getField();
+        Class<?> cls = fd.getType();
+        if (cls == long.class) {
+            fd.setLong(entity, rs.getLong(1));
+        } else if (cls == int.class) {
+            fd.setInt(entity, rs.getInt(1));
+        } else if (cls == Long.class) {
+            fd.set(entity, rs.getLong(1));
+        } else if (cls == Integer.class) {
+            fd.set(entity, rs.getInt(1));
+        } else if (cls == String.class) {
+            fd.set(entity, rs.getString(1));
+        } else {
+            fd.set(entity, rs.getObject(1));
+        }
+    }
+
 }
@@ -0,0 +1,314 @@
+package uw.dao.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * sql指纹工具类.
+ * 把sql中的字面量、IN列表、多行values折叠掉，使同一类语句得到相同的指纹，便于按语句聚合统计.
+ *
+ * @author axeon
+ */
+public class SqlFingerprintUtils {
+
+    /**
+     * 指纹缓存的最大数量.
+     */
+    private static final int MAX_CACHE_SIZE = 10000;
+
+    /**
+     * 括号嵌套的最大层数，超过的部分不做列表折叠.
+     */
+    private static final int MAX_PAREN_DEPTH = 64;
+
+    /**
+     * 折叠后的参数列表.
+     */
+    private static final String COLLAPSED_LIST = "(?+)";
+
+    /**
+     * 指纹缓存，key=原始sql.
+     * 绝大多数sql都是带?绑定参数的固定语句，缓存后热路径上只是一次map查找.
+     */
+    private static final Map<String, String> fingerprintCache = new ConcurrentHashMap<>();
+
+    /**
+     * 表名缓存，key=原始sql.
+     */
+    private static final Map<String, String> tableNameCache = new ConcurrentHashMap<>();
+
+    /**
+     * 构造函数.
+     */
+    private SqlFingerprintUtils() {
+    }
+
+    /**
+     * 获得sql指纹，优先从缓存获取.
+     *
+     * @param sql SQL语句
+     * @return sql指纹
+     */
+    public static String getFingerprint(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String fingerprint = fingerprintCache.get(sql);
+        if (fingerprint == null) {
+            fingerprint = fingerprint(sql);
+            // 带字面量的sql会不断撑大缓存，满了直接清空重建。
+            if (fingerprintCache.size() >= MAX_CACHE_SIZE) {
+                fingerprintCache.clear();
+            }
+            fingerprintCache.put(sql, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 获得sql操作的主表名，优先从缓存获取.
+     *
+     * @param sql SQL语句
+     * @return 表名，无法识别时返回空字符串
+     */
+    public static String getTableName(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String tableName = tableNameCache.get(sql);
+        if (tableName == null) {
+            tableName = parseTableName(getFingerprint(sql));
+            if (tableNameCache.size() >= MAX_CACHE_SIZE) {
+                tableNameCache.clear();
+            }
+            tableNameCache.put(sql, tableName);
+        }
+        return tableName;
+    }
+
+    /**
+     * 从sql指纹中解析主表名.
+     * insert/replace取into后的表名，update取update后的表名，其余取第一个from后的表名.
+     *
+     * @param fingerprint sql指纹
+     * @return 表名，无法识别时返回空字符串
+     */
+    static String parseTableName(String fingerprint) {
+        int pos;
+        if (fingerprint.startsWith("insert") || fingerprint.startsWith("replace")) {
+            pos = fingerprint.indexOf(" into ");
+            pos = pos < 0 ? -1 : pos + 6;
+        } else if (fingerprint.startsWith("update ")) {
+            pos = 7;
+        } else {
+            pos = fingerprint.indexOf(" from ");
+            pos = pos < 0 ? -1 : pos + 6;
+        }
+        if (pos < 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(32);
+        for (int i = pos; i < fingerprint.length(); i++) {
+            char c = fingerprint.charAt(i);
+            if (c == '`' || c == '"') {
+                continue;
+            }
+            if (c == ' ' || c == ',' || c == '(' || c == ')' || c == ';') {
+                break;
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 计算sql指纹.
+     * <ol>
+     * <li>去掉注释，合并空白，转为小写。
+     * <li>字符串和数字字面量替换为?。
+     * <li>只包含?的括号列表折叠为(?+)，如in (?,?,?)。
+     * <li>多行values (?+),(?+)只保留一组。
+     * </ol>
+     *
+     * @param sql SQL语句
+     * @return sql指纹
+     */
+    public static String fingerprint(String sql) {
+        int len = sql.length();
+        StringBuilder sb = new StringBuilder(len);
+        int[] parenStack = new int[MAX_PAREN_DEPTH];
+        int depth = 0;
+        int i = 0;
+        while (i < len) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                // 字符串字面量，兼容''和\转义
+                i++;
+                while (i < len) {
+                    char q = sql.charAt(i);
+                    if (q == '\\') {
+                        i += 2;
+                        continue;
+                    }
+                    i++;
+                    if (q == c) {
+                        if (i < len && sql.charAt(i) == c) {
+                            i++;
+                            continue;
+                        }
+                        break;
+                    }
+                }
+                sb.append('?');
+            } else if (c == '`') {
+                // 标识符原样保留
+                int end = sql.indexOf('`', i + 1);
+                end = end < 0 ? len : end + 1;
+                appendLowerCase(sb, sql, i, end);
+                i = end;
+            } else if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? len : end;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+            } else if (Character.isWhitespace(c)) {
+                while (i < len && Character.isWhitespace(sql.charAt(i))) {
+                    i++;
+                }
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ') {
+                    sb.append(' ');
+                }
+            } else if (c >= '0' && c <= '9' && !isIdentifierPart(sb)) {
+                // 数字字面量，包含小数、十六进制和科学计数法
+                while (i < len && isNumberPart(sql.charAt(i))) {
+                    i++;
+                }
+                sb.append('?');
+            } else if (c == '(') {
+                if (depth < MAX_PAREN_DEPTH) {
+                    parenStack[depth] = sb.length();
+                }
+                depth++;
+                sb.append('(');
+                i++;
+            } else if (c == ')') {
+                sb.append(')');
+                i++;
+                if (depth > 0) {
+                    depth--;
+                    if (depth < MAX_PAREN_DEPTH) {
+                        collapseList(sb, parenStack[depth]);
+                    }
+                }
+            } else {
+                sb.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        int end = sb.length();
+        while (end > 0 && (sb.charAt(end - 1) == ' ' || sb.charAt(end - 1) == ';')) {
+            end--;
+        }
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    /**
+     * 如果括号内只有?，则折叠为(?+)，并合并紧邻的重复组.
+     *
+     * @param sb   输出
+     * @param open 左括号的位置
+     */
+    private static void collapseList(StringBuilder sb, int open) {
+        int close = sb.length() - 1;
+        boolean hasParam = false;
+        for (int k = open + 1; k < close; k++) {
+            char c = sb.charAt(k);
+            if (c == '?') {
+                hasParam = true;
+            } else if (c != ',' && c != ' ') {
+                return;
+            }
+        }
+        if (!hasParam) {
+            return;
+        }
+        sb.setLength(open);
+        // 检查前面是否已经是折叠组，如values (?+),(?+)
+        int p = open;
+        boolean hasComma = false;
+        while (p > 0 && (sb.charAt(p - 1) == ' ' || sb.charAt(p - 1) == ',')) {
+            if (sb.charAt(p - 1) == ',') {
+                hasComma = true;
+            }
+            p--;
+        }
+        if (hasComma && endsWith(sb, p, COLLAPSED_LIST)) {
+            sb.setLength(p);
+            return;
+        }
+        sb.append(COLLAPSED_LIST);
+    }
+
+    /**
+     * sb在end位置之前是否以指定字符串结尾.
+     *
+     * @param sb  输出
+     * @param end 结束位置
+     * @param str 字符串
+     * @return boolean
+     */
+    private static boolean endsWith(StringBuilder sb, int end, String str) {
+        int start = end - str.length();
+        if (start < 0) {
+            return false;
+        }
+        for (int k = 0; k < str.length(); k++) {
+            if (sb.charAt(start + k) != str.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 前一个字符是否是标识符的一部分，用于区分t1这样的名字和数字字面量.
+     *
+     * @param sb 输出
+     * @return boolean
+     */
+    private static boolean isIdentifierPart(StringBuilder sb) {
+        if (sb.length() == 0) {
+            return false;
+        }
+        char c = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '`';
+    }
+
+    /**
+     * 是否是数字字面量的一部分.
+     *
+     * @param c 字符
+     * @return boolean
+     */
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == 'x' || c == 'X' || c == 'e' || c == 'E'
+                || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * 按小写追加一段字符.
+     *
+     * @param sb    输出
+     * @param sql   sql
+     * @param start 开始位置
+     * @param end   结束位置
+     */
+    private static void appendLowerCase(StringBuilder sb, String sql, int start, int end) {
+        for (int k = start; k < end; k++) {
+            sb.append(Character.toLowerCase(sql.charAt(k)));
+        }
+    }
+
+}
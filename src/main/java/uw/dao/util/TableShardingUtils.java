@@ -3,13 +3,20 @@ package uw.dao.util;
 import uw.dao.conf.DaoConfig.TableShardConfig;
 import uw.dao.conf.DaoConfigManager;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 按日期分表的工具.
+ * 分表工具，支持按日期、按字段值hash和按字段值范围分表.
  *
  * @author axeon
  */
@@ -33,6 +40,11 @@ public class TableShardingUtils {
      */
     public static final ZoneId defaultZoneId = ZoneId.systemDefault();
 
+    /**
+     * 按表名缓存的当前及相邻周期的分表名.
+     */
+    private static final Map<String, ShardPeriod[]> periodCache = new ConcurrentHashMap<>();
+
     /**
      * 根据给定的日期给出表名.
      *
@@ -65,8 +77,349 @@ public class TableShardingUtils {
      * @return 表名
      */
     public static String getTableNameByDate(String tableName, Date date) {
-        // withNano=0是因为mysql精度太差。。。导致有时候四舍五入差了一秒
-        return getTableNameByDate(tableName, date.toInstant().atZone(defaultZoneId).withNano(0).toLocalDate());
+        return getTableNameByTime(tableName, date.getTime());
+    }
+
+    /**
+     * 根据给定的毫秒数给出表名.
+     * 当前及前后相邻周期的起止毫秒数和表名缓存在内存中，命中时只需要比较毫秒数.
+     *
+     * @param tableName 表名
+     * @param millis    毫秒数
+     * @return 表名
+     */
+    public static String getTableNameByTime(String tableName, long millis) {
+        ShardPeriod[] periods = periodCache.get(tableName);
+        if (periods != null) {
+            for (ShardPeriod period : periods) {
+                if (millis >= period.start && millis < period.end) {
+                    return period.name;
+                }
+            }
+        }
+        ShardPeriod period = getShardPeriod(tableName, millis);
+        // 只在当前周期变化时刷新缓存，历史数据不占用缓存。
+        long now = System.currentTimeMillis();
+        if (now >= period.start && now < period.end) {
+            if (period.start == Long.MIN_VALUE) {
+                periodCache.put(tableName, new ShardPeriod[]{period});
+            } else {
+                periodCache.put(tableName, new ShardPeriod[]{period, getShardPeriod(tableName, period.end),
+                        getShardPeriod(tableName, period.start - 1)});
+            }
+        }
+        return period.name;
+    }
+
+    /**
+     * 清除分表名缓存，配置变更时调用.
+     */
+    public static void clearCache() {
+        periodCache.clear();
+    }
+
+    /**
+     * 计算毫秒数所在的分表周期，不是按日期分表时返回覆盖全部时间的周期.
+     *
+     * @param tableName 表名
+     * @param millis    毫秒数
+     * @return 分表周期
+     */
+    private static ShardPeriod getShardPeriod(String tableName, long millis) {
+        TableShardConfig config = DaoConfigManager.getTableShardingConfig(tableName);
+        if (config != null && "date".equalsIgnoreCase(config.getShardType())) {
+            LocalDate date = Instant.ofEpochMilli(millis).atZone(defaultZoneId).toLocalDate();
+            LocalDate start;
+            LocalDate end;
+            DateTimeFormatter formatter;
+            switch (config.getShardRule()) {
+                case "day":
+                    start = date;
+                    end = date.plusDays(1);
+                    formatter = FORMATTER_DAY;
+                    break;
+                case "month":
+                    start = date.withDayOfMonth(1);
+                    end = start.plusMonths(1);
+                    formatter = FORMATTER_MONTH;
+                    break;
+                case "year":
+                    start = date.withDayOfYear(1);
+                    end = start.plusYears(1);
+                    formatter = FORMATTER_YEAR;
+                    break;
+                default:
+                    return new ShardPeriod(Long.MIN_VALUE, Long.MAX_VALUE, tableName);
+            }
+            return new ShardPeriod(start.atStartOfDay(defaultZoneId).toInstant().toEpochMilli(),
+                    end.atStartOfDay(defaultZoneId).toInstant().toEpochMilli(), (tableName + "_" + start.format(formatter)).intern());
+        }
+        return new ShardPeriod(Long.MIN_VALUE, Long.MAX_VALUE, tableName);
+    }
+
+    /**
+     * 根据日期范围给出全部分表名，按日期升序排列，不是按日期分表时只返回表名本身.
+     *
+     * @param tableName 表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @return 表名列表
+     */
+    public static List<String> getTableNamesByDateRange(String tableName, LocalDate startDate, LocalDate endDate) {
+        return getTableNamesByDateRange(tableName, startDate, endDate, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * 根据日期范围给出分表名，按日期升序排列，不是按日期分表时只返回表名本身.
+     * 最多返回maxCount+1个，调用者可以据此判断范围是否过大，避免无界的日期范围生成大量分表名.
+     *
+     * @param tableName 表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @param maxCount  最大分表数
+     * @return 表名列表
+     */
+    public static List<String> getTableNamesByDateRange(String tableName, LocalDate startDate, LocalDate endDate, int maxCount) {
+        TableShardConfig config = DaoConfigManager.getTableShardingConfig(tableName);
+        if (config == null || !"date".equalsIgnoreCase(config.getShardType())) {
+            return Collections.singletonList(tableName);
+        }
+        List<String> list = new ArrayList<>();
+        switch (config.getShardRule()) {
+            case "day":
+                for (LocalDate date = startDate; !date.isAfter(endDate) && list.size() <= maxCount; date = date.plusDays(1)) {
+                    list.add(tableName + "_" + date.format(FORMATTER_DAY));
+                }
+                break;
+            case "month":
+                for (LocalDate date = startDate.withDayOfMonth(1); !date.isAfter(endDate) && list.size() <= maxCount; date = date.plusMonths(1)) {
+                    list.add(tableName + "_" + date.format(FORMATTER_MONTH));
+                }
+                break;
+            case "year":
+                for (LocalDate date = startDate.withDayOfYear(1); !date.isAfter(endDate) && list.size() <= maxCount; date = date.plusYears(1)) {
+                    list.add(tableName + "_" + date.format(FORMATTER_YEAR));
+                }
+                break;
+            default:
+                list.add(tableName);
+                break;
+        }
+        return list;
+    }
+
+    /**
+     * 根据日期范围给出全部分表名，按日期升序排列，不是按日期分表时只返回表名本身.
+     *
+     * @param tableName 表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @return 表名列表
+     */
+    public static List<String> getTableNamesByDateRange(String tableName, Date startDate, Date endDate) {
+        return getTableNamesByDateRange(tableName, startDate, endDate, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * 根据日期范围给出分表名，按日期升序排列，不是按日期分表时只返回表名本身，最多返回maxCount+1个.
+     *
+     * @param tableName 表名
+     * @param startDate 开始日期，包含
+     * @param endDate   结束日期，包含
+     * @param maxCount  最大分表数
+     * @return 表名列表
+     */
+    public static List<String> getTableNamesByDateRange(String tableName, Date startDate, Date endDate, int maxCount) {
+        return getTableNamesByDateRange(tableName, startDate.toInstant().atZone(defaultZoneId).withNano(0).toLocalDate(),
+                endDate.toInstant().atZone(defaultZoneId).withNano(0).toLocalDate(), maxCount);
+    }
+
+    /**
+     * 是否按字段值分表，包括hash/range分表和配置了分片字段的date分表.
+     *
+     * @param config 分表配置
+     * @return boolean
+     */
+    public static boolean isValueSharding(TableShardConfig config) {
+        if (config == null) {
+            return false;
+        }
+        if ("date".equalsIgnoreCase(config.getShardType())) {
+            return config.getShardColumn() != null && config.getShardColumn().length() > 0;
+        }
+        return "hash".equalsIgnoreCase(config.getShardType()) || "range".equalsIgnoreCase(config.getShardType());
+    }
+
+    /**
+     * 获得按字段值分表的配置，不是按字段值分表时返回null.
+     *
+     * @param tableName 表名
+     * @return 分表配置
+     */
+    public static TableShardConfig getValueShardingConfig(String tableName) {
+        if (DaoConfigManager.getConfig() == null || DaoConfigManager.getConfig().getTableShard() == null) {
+            return null;
+        }
+        TableShardConfig config = DaoConfigManager.getTableShardingConfig(tableName);
+        return isValueSharding(config) ? config : null;
+    }
+
+    /**
+     * 根据分片字段的值给出分表名，不是按字段值分表时返回表名本身.
+     * date分表的分片字段支持Date/LocalDate/LocalDateTime类型.
+     *
+     * @param tableName 表名
+     * @param value     分片字段的值
+     * @return 表名
+     */
+    public static String getTableNameByValue(String tableName, Object value) {
+        TableShardConfig config = getValueShardingConfig(tableName);
+        if (config == null) {
+            return tableName;
+        }
+        if ("date".equalsIgnoreCase(config.getShardType())) {
+            if (value instanceof Date) {
+                return getTableNameByTime(tableName, ((Date) value).getTime());
+            }
+            return getTableNameByDate(tableName, toLocalDate(value));
+        }
+        return tableName + "_" + getShardIndex(config, value);
+    }
+
+    /**
+     * 根据分表名给出配置的原始表名，分表名为表名_日期或表名_序号，不是分表时返回表名本身.
+     *
+     * @param tableName 分表名
+     * @return 原始表名
+     */
+    public static String getBaseTableName(String tableName) {
+        int pos = tableName.lastIndexOf('_');
+        if (pos < 1 || pos == tableName.length() - 1) {
+            return tableName;
+        }
+        for (int i = pos + 1; i < tableName.length(); i++) {
+            char c = tableName.charAt(i);
+            if (c < '0' || c > '9') {
+                return tableName;
+            }
+        }
+        if (DaoConfigManager.getConfig() == null || DaoConfigManager.getConfig().getTableShard() == null) {
+            return tableName;
+        }
+        String baseTable = tableName.substring(0, pos);
+        return DaoConfigManager.getTableShardingConfig(baseTable) == null ? tableName : baseTable;
+    }
+
+    /**
+     * 把date分表的分片字段的值转换为LocalDate.
+     *
+     * @param value 分片字段的值
+     * @return LocalDate
+     */
+    private static LocalDate toLocalDate(Object value) {
+        if (value instanceof LocalDate) {
+            return (LocalDate) value;
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).withNano(0).toLocalDate();
+        }
+        throw new IllegalArgumentException("unsupported shard date value: " + value);
+    }
+
+    /**
+     * 根据分片字段的值计算分表序号.
+     * hash统一按整数值取模：数值取longValue，十进制整数字符串先解析为long，所以Long 123和"123"落在同一分表；
+     * 其它值按字符串的hashCode取模。range按数值或日期的毫秒数查找所在分段.
+     *
+     * @param config 分表配置
+     * @param value  分片字段的值
+     * @return 分表序号
+     */
+    public static int getShardIndex(TableShardConfig config, Object value) {
+        if ("hash".equalsIgnoreCase(config.getShardType())) {
+            int count = Math.max(1, config.getShardCount());
+            if (value instanceof Number) {
+                return (int) Math.floorMod(((Number) value).longValue(), (long) count);
+            }
+            String str = String.valueOf(value);
+            if (isLong(str)) {
+                return (int) Math.floorMod(Long.parseLong(str), (long) count);
+            }
+            return Math.floorMod(str.hashCode(), count);
+        }
+        List<Long> ranges = config.getShardRanges();
+        if (ranges == null || ranges.isEmpty()) {
+            return 0;
+        }
+        long num;
+        if (value instanceof Number) {
+            num = ((Number) value).longValue();
+        } else if (value instanceof Date) {
+            num = ((Date) value).getTime();
+        } else {
+            num = Long.parseLong(String.valueOf(value));
+        }
+        for (int i = 0; i < ranges.size(); i++) {
+            if (num < ranges.get(i)) {
+                return i;
+            }
+        }
+        return ranges.size();
+    }
+
+    /**
+     * 是否是long范围内的十进制整数字符串.
+     *
+     * @param str 字符串
+     * @return boolean
+     */
+    private static boolean isLong(String str) {
+        int start = str.startsWith("-") ? 1 : 0;
+        int len = str.length() - start;
+        if (len == 0 || len > 19) {
+            return false;
+        }
+        for (int i = start; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (len < 19) {
+            return true;
+        }
+        try {
+            Long.parseLong(str);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 一个日期分表的周期.
+     */
+    private static class ShardPeriod {
+
+        /**
+         * 开始毫秒数，包含.
+         */
+        private final long start;
+
+        /**
+         * 结束毫秒数，不包含.
+         */
+        private final long end;
+
+        /**
+         * 分表名.
+         */
+        private final String name;
+
+        ShardPeriod(long start, long end, String name) {
+            this.start = start;
+            this.end = end;
+            this.name = name;
+        }
     }
 
 }
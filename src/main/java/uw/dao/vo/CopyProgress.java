@@ -0,0 +1,164 @@
+package uw.dao.vo;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表复制的进度，复制过程中可以在其它线程读取.
+ *
+ * @author axeon
+ */
+public class CopyProgress {
+
+    /**
+     * 读取的行数.
+     */
+    private final AtomicLong readRows = new AtomicLong();
+
+    /**
+     * 写入的行数.
+     */
+    private final AtomicLong writtenRows = new AtomicLong();
+
+    /**
+     * 写入的批次数.
+     */
+    private final AtomicLong writtenBatches = new AtomicLong();
+
+    /**
+     * 等待写入的批次数.
+     */
+    private final AtomicLong queuedBatches = new AtomicLong();
+
+    /**
+     * 开始时间.
+     */
+    private volatile long startTime;
+
+    /**
+     * 结束时间，未结束时为0.
+     */
+    private volatile long endTime;
+
+    /**
+     * 出错信息，没有出错时为null.
+     */
+    private volatile String exception;
+
+    /**
+     * @return the readRows
+     */
+    public long getReadRows() {
+        return readRows.get();
+    }
+
+    /**
+     * @return the writtenRows
+     */
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    /**
+     * @return the writtenBatches
+     */
+    public long getWrittenBatches() {
+        return writtenBatches.get();
+    }
+
+    /**
+     * @return the queuedBatches
+     */
+    public long getQueuedBatches() {
+        return queuedBatches.get();
+    }
+
+    /**
+     * @return the startTime
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return the endTime
+     */
+    public long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the exception
+     */
+    public String getException() {
+        return exception;
+    }
+
+    /**
+     * 是否已结束.
+     *
+     * @return boolean
+     */
+    public boolean isFinished() {
+        return endTime > 0;
+    }
+
+    /**
+     * 每秒写入的行数.
+     *
+     * @return 行数
+     */
+    public double getWriteRate() {
+        long end = endTime > 0 ? endTime : System.currentTimeMillis();
+        return startTime == 0 || end <= startTime ? 0 : writtenRows.get() * 1000d / (end - startTime);
+    }
+
+    /**
+     * 开始复制.
+     */
+    public void start() {
+        startTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 结束复制.
+     *
+     * @param exception 出错信息，可以为null
+     */
+    public void finish(String exception) {
+        this.exception = exception;
+        endTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 读取一个批次.
+     *
+     * @param rows 行数
+     */
+    public void addRead(int rows) {
+        readRows.addAndGet(rows);
+        queuedBatches.incrementAndGet();
+    }
+
+    /**
+     * 写入一个批次.
+     *
+     * @param rows 行数
+     */
+    public void addWritten(int rows) {
+        writtenRows.addAndGet(rows);
+        writtenBatches.incrementAndGet();
+    }
+
+    /**
+     * 从队列取出一个批次.
+     */
+    public void takeQueued() {
+        queuedBatches.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "CopyProgress[read=" + readRows + ", written=" + writtenRows + ", batches=" + writtenBatches + ", queued=" + queuedBatches
+                + ", rate=" + (long) getWriteRate() + "/s" + (exception == null ? "" : ", exception=" + exception) + "]";
+    }
+}
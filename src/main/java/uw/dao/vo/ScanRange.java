@@ -0,0 +1,143 @@
+package uw.dao.vo;
+
+import java.io.Serializable;
+
+/**
+ * 按主键范围并行扫描时的一个范围，同时也是这个范围的断点.
+ * 扫描过程中会更新lastKey、rowCount和finished，保存后重新传入scan即可从断点继续.
+ *
+ * @author axeon
+ */
+public class ScanRange implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 范围序号.
+     */
+    private int index;
+
+    /**
+     * 开始主键，包含，为null表示不限.
+     */
+    private Long startKey;
+
+    /**
+     * 结束主键，包含，为null表示不限.
+     */
+    private Long endKey;
+
+    /**
+     * 已处理的最后一个主键，为null表示还没有开始.
+     */
+    private Long lastKey;
+
+    /**
+     * 已处理的行数.
+     */
+    private long rowCount;
+
+    /**
+     * 是否已完成.
+     */
+    private boolean finished;
+
+    public ScanRange() {
+    }
+
+    public ScanRange(int index, Long startKey, Long endKey) {
+        this.index = index;
+        this.startKey = startKey;
+        this.endKey = endKey;
+    }
+
+    /**
+     * @return the index
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param index the index to set
+     */
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * @return the startKey
+     */
+    public Long getStartKey() {
+        return startKey;
+    }
+
+    /**
+     * @param startKey the startKey to set
+     */
+    public void setStartKey(Long startKey) {
+        this.startKey = startKey;
+    }
+
+    /**
+     * @return the endKey
+     */
+    public Long getEndKey() {
+        return endKey;
+    }
+
+    /**
+     * @param endKey the endKey to set
+     */
+    public void setEndKey(Long endKey) {
+        this.endKey = endKey;
+    }
+
+    /**
+     * @return the lastKey
+     */
+    public Long getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * @param lastKey the lastKey to set
+     */
+    public void setLastKey(Long lastKey) {
+        this.lastKey = lastKey;
+    }
+
+    /**
+     * @return the rowCount
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @param rowCount the rowCount to set
+     */
+    public void setRowCount(long rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * @return the finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @param finished the finished to set
+     */
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanRange[" + index + ": " + startKey + " ~ " + endKey + ", lastKey=" + lastKey + ", rowCount=" + rowCount + ", finished="
+                + finished + "]";
+    }
+}
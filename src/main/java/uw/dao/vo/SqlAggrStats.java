@@ -0,0 +1,402 @@
+package uw.dao.vo;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+import java.util.Date;
+
+/**
+ * 按sql指纹和连接池聚合的周期性能数据，时间单位为微秒.
+ */
+public class SqlAggrStats {
+
+    /**
+     * connName 连接名.
+     */
+    private String connName;
+
+    /**
+     * sql指纹.
+     */
+    private String sqlFingerprint;
+
+    /**
+     * 执行次数.
+     */
+    private long exeCount;
+
+    /**
+     * 异常次数.
+     */
+    private long errorCount;
+
+    /**
+     * 返回/影响的总行数.
+     */
+    private long rowNum;
+
+    /**
+     * Conn时间总和.
+     */
+    private long connTimeSum;
+
+    /**
+     * Conn时间最大值.
+     */
+    private long connTimeMax;
+
+    /**
+     * Conn时间p99.
+     */
+    private long connTimeP99;
+
+    /**
+     * 数据库操作时间总和.
+     */
+    private long dbTimeSum;
+
+    /**
+     * 数据库操作时间最大值.
+     */
+    private long dbTimeMax;
+
+    /**
+     * 数据库操作时间p50.
+     */
+    private long dbTimeP50;
+
+    /**
+     * 数据库操作时间p99.
+     */
+    private long dbTimeP99;
+
+    /**
+     * 全部时间总和.
+     */
+    private long allTimeSum;
+
+    /**
+     * 全部时间最大值.
+     */
+    private long allTimeMax;
+
+    /**
+     * 全部时间p50.
+     */
+    private long allTimeP50;
+
+    /**
+     * 全部时间p90.
+     */
+    private long allTimeP90;
+
+    /**
+     * 全部时间p99.
+     */
+    private long allTimeP99;
+
+    /**
+     * 全部时间p999.
+     */
+    private long allTimeP999;
+
+    /**
+     * 统计开始时间.
+     */
+    private Date startDate;
+
+    /**
+     * 统计结束时间.
+     */
+    private Date endDate;
+
+    /**
+     * 重载toString.
+     *
+     * @return String
+     */
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
+    }
+
+    /**
+     * @return the connName
+     */
+    public String getConnName() {
+        return connName;
+    }
+
+    /**
+     * @param connName the connName to set
+     */
+    public void setConnName(String connName) {
+        this.connName = connName;
+    }
+
+    /**
+     * @return the sqlFingerprint
+     */
+    public String getSqlFingerprint() {
+        return sqlFingerprint;
+    }
+
+    /**
+     * @param sqlFingerprint the sqlFingerprint to set
+     */
+    public void setSqlFingerprint(String sqlFingerprint) {
+        this.sqlFingerprint = sqlFingerprint;
+    }
+
+    /**
+     * @return the exeCount
+     */
+    public long getExeCount() {
+        return exeCount;
+    }
+
+    /**
+     * @param exeCount the exeCount to set
+     */
+    public void setExeCount(long exeCount) {
+        this.exeCount = exeCount;
+    }
+
+    /**
+     * @return the errorCount
+     */
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @param errorCount the errorCount to set
+     */
+    public void setErrorCount(long errorCount) {
+        this.errorCount = errorCount;
+    }
+
+    /**
+     * @return the rowNum
+     */
+    public long getRowNum() {
+        return rowNum;
+    }
+
+    /**
+     * @param rowNum the rowNum to set
+     */
+    public void setRowNum(long rowNum) {
+        this.rowNum = rowNum;
+    }
+
+    /**
+     * @return the connTimeSum
+     */
+    public long getConnTimeSum() {
+        return connTimeSum;
+    }
+
+    /**
+     * @param connTimeSum the connTimeSum to set
+     */
+    public void setConnTimeSum(long connTimeSum) {
+        this.connTimeSum = connTimeSum;
+    }
+
+    /**
+     * @return the connTimeMax
+     */
+    public long getConnTimeMax() {
+        return connTimeMax;
+    }
+
+    /**
+     * @param connTimeMax the connTimeMax to set
+     */
+    public void setConnTimeMax(long connTimeMax) {
+        this.connTimeMax = connTimeMax;
+    }
+
+    /**
+     * @return the connTimeP99
+     */
+    public long getConnTimeP99() {
+        return connTimeP99;
+    }
+
+    /**
+     * @param connTimeP99 the connTimeP99 to set
+     */
+    public void setConnTimeP99(long connTimeP99) {
+        this.connTimeP99 = connTimeP99;
+    }
+
+    /**
+     * @return the dbTimeSum
+     */
+    public long getDbTimeSum() {
+        return dbTimeSum;
+    }
+
+    /**
+     * @param dbTimeSum the dbTimeSum to set
+     */
+    public void setDbTimeSum(long dbTimeSum) {
+        this.dbTimeSum = dbTimeSum;
+    }
+
+    /**
+     * @return the dbTimeMax
+     */
+    public long getDbTimeMax() {
+        return dbTimeMax;
+    }
+
+    /**
+     * @param dbTimeMax the dbTimeMax to set
+     */
+    public void setDbTimeMax(long dbTimeMax) {
+        this.dbTimeMax = dbTimeMax;
+    }
+
+    /**
+     * @return the dbTimeP50
+     */
+    public long getDbTimeP50() {
+        return dbTimeP50;
+    }
+
+    /**
+     * @param dbTimeP50 the dbTimeP50 to set
+     */
+    public void setDbTimeP50(long dbTimeP50) {
+        this.dbTimeP50 = dbTimeP50;
+    }
+
+    /**
+     * @return the dbTimeP99
+     */
+    public long getDbTimeP99() {
+        return dbTimeP99;
+    }
+
+    /**
+     * @param dbTimeP99 the dbTimeP99 to set
+     */
+    public void setDbTimeP99(long dbTimeP99) {
+        this.dbTimeP99 = dbTimeP99;
+    }
+
+    /**
+     * @return the allTimeSum
+     */
+    public long getAllTimeSum() {
+        return allTimeSum;
+    }
+
+    /**
+     * @param allTimeSum the allTimeSum to set
+     */
+    public void setAllTimeSum(long allTimeSum) {
+        this.allTimeSum = allTimeSum;
+    }
+
+    /**
+     * @return the allTimeMax
+     */
+    public long getAllTimeMax() {
+        return allTimeMax;
+    }
+
+    /**
+     * @param allTimeMax the allTimeMax to set
+     */
+    public void setAllTimeMax(long allTimeMax) {
+        this.allTimeMax = allTimeMax;
+    }
+
+    /**
+     * @return the allTimeP50
+     */
+    public long getAllTimeP50() {
+        return allTimeP50;
+    }
+
+    /**
+     * @param allTimeP50 the allTimeP50 to set
+     */
+    public void setAllTimeP50(long allTimeP50) {
+        this.allTimeP50 = allTimeP50;
+    }
+
+    /**
+     * @return the allTimeP90
+     */
+    public long getAllTimeP90() {
+        return allTimeP90;
+    }
+
+    /**
+     * @param allTimeP90 the allTimeP90 to set
+     */
+    public void setAllTimeP90(long allTimeP90) {
+        this.allTimeP90 = allTimeP90;
+    }
+
+    /**
+     * @return the allTimeP99
+     */
+    public long getAllTimeP99() {
+        return allTimeP99;
+    }
+
+    /**
+     * @param allTimeP99 the allTimeP99 to set
+     */
+    public void setAllTimeP99(long allTimeP99) {
+        this.allTimeP99 = allTimeP99;
+    }
+
+    /**
+     * @return the allTimeP999
+     */
+    public long getAllTimeP999() {
+        return allTimeP999;
+    }
+
+    /**
+     * @param allTimeP999 the allTimeP999 to set
+     */
+    public void setAllTimeP999(long allTimeP999) {
+        this.allTimeP999 = allTimeP999;
+    }
+
+    /**
+     * @return the startDate
+     */
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * @param startDate the startDate to set
+     */
+    public void setStartDate(Date startDate) {
+        this.startDate = startDate;
+    }
+
+    /**
+     * @return the endDate
+     */
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * @param endDate the endDate to set
+     */
+    public void setEndDate(Date endDate) {
+        this.endDate = endDate;
+    }
+}
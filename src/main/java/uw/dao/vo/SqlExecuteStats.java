@@ -36,17 +36,17 @@ public class SqlExecuteStats {
     private int rowNum;
 
     /**
-     * Conn时间.
+     * Conn时间，微秒.
      */
     private long connTime;
 
     /**
-     * 数据库操作消耗的时间.
+     * 数据库操作消耗的时间，微秒.
      */
     private long dbTime;
 
     /**
-     * 数据库层消耗的时间.
+     * 数据库层消耗的时间，微秒.
      */
     private long allTime;
 
@@ -60,6 +60,11 @@ public class SqlExecuteStats {
      */
     private Date actionDate;
 
+    /**
+     * 采样权重，即这条记录代表的执行次数。慢sql和异常sql全量记录，权重为1.
+     */
+    private double sampleWeight = 1;
+
     /**
      * SqlExecuteStats对象.
      *
@@ -67,8 +72,9 @@ public class SqlExecuteStats {
      * @param sql       SQL语句
      * @param param     参数
      * @param rowNum    返回/影响的行数
-     * @param dbTime    数据库操作消耗的时间
-     * @param allTime   数据库层消耗的时间
+     * @param connTime  Conn时间，微秒
+     * @param dbTime    数据库操作消耗的时间，微秒
+     * @param allTime   数据库层消耗的时间，微秒
      * @param exception 异常
      */
     public SqlExecuteStats(String connName, int connId, String sql, String param, int rowNum, long connTime, long dbTime, long allTime,
@@ -222,4 +228,18 @@ public class SqlExecuteStats {
     public void setConnTime(long connTime) {
         this.connTime = connTime;
     }
+
+    /**
+     * @return the sampleWeight
+     */
+    public double getSampleWeight() {
+        return sampleWeight;
+    }
+
+    /**
+     * @param sampleWeight the sampleWeight to set
+     */
+    public void setSampleWeight(double sampleWeight) {
+        this.sampleWeight = sampleWeight;
+    }
 }
@@ -0,0 +1,94 @@
+package uw.dao.vo;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+
+/**
+ * 连接池的PreparedStatement缓存统计，从启动开始累计.
+ */
+public class StatementCacheStats {
+
+    /**
+     * 连接池名.
+     */
+    private String poolName;
+
+    /**
+     * 命中次数.
+     */
+    private long hitCount;
+
+    /**
+     * 未命中次数.
+     */
+    private long missCount;
+
+    /**
+     * 因超出缓存数量而关闭的statement数.
+     */
+    private long evictCount;
+
+    /**
+     * 构造器.
+     *
+     * @param poolName   连接池名
+     * @param hitCount   命中次数
+     * @param missCount  未命中次数
+     * @param evictCount 淘汰次数
+     */
+    public StatementCacheStats(String poolName, long hitCount, long missCount, long evictCount) {
+        this.poolName = poolName;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictCount = evictCount;
+    }
+
+    /**
+     * 获得命中率，没有访问时为0.
+     *
+     * @return 命中率
+     */
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * 重载toString.
+     *
+     * @return String
+     */
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, ToStringStyle.MULTI_LINE_STYLE);
+    }
+
+    /**
+     * @return the poolName
+     */
+    public String getPoolName() {
+        return poolName;
+    }
+
+    /**
+     * @return the hitCount
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the missCount
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the evictCount
+     */
+    public long getEvictCount() {
+        return evictCount;
+    }
+
+}
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 实体信息.
@@ -27,6 +28,16 @@ public class TableMetaInfo {
      */
     private final Map<String, FieldMetaInfo> columnMap = new LinkedHashMap<String, FieldMetaInfo>();
 
+    /**
+     * 自增列，没有则为null.
+     */
+    private FieldMetaInfo autoIncrementField;
+
+    /**
+     * 生成的sql缓存. key=表名+操作类型.
+     */
+    private final Map<String, String> sqlCache = new ConcurrentHashMap<String, String>();
+
     /**
      * @return the tableName
      */
@@ -80,6 +91,36 @@ public class TableMetaInfo {
      */
     public void addColumnMap(String columnName, FieldMetaInfo fi) {
         this.columnMap.put(columnName, fi);
+        if (fi.isAutoIncrement() && autoIncrementField == null) {
+            autoIncrementField = fi;
+        }
+    }
+
+    /**
+     * @return the autoIncrementField
+     */
+    public FieldMetaInfo getAutoIncrementField() {
+        return autoIncrementField;
+    }
+
+    /**
+     * 获得缓存的sql.
+     *
+     * @param key 表名+操作类型
+     * @return sql，未缓存返回null
+     */
+    public String getCachedSql(String key) {
+        return sqlCache.get(key);
+    }
+
+    /**
+     * 缓存sql.
+     *
+     * @param key 表名+操作类型
+     * @param sql sql
+     */
+    public void putCachedSql(String key, String sql) {
+        sqlCache.put(key, sql);
     }
 
 }
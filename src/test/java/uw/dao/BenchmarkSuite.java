@@ -0,0 +1,47 @@
+package uw.dao;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * 映射、绑定、路由和统计热点路径的基准测试套件，基于桩数据库，同时输出吞吐量和gc分配速率.
+ * 参数为jmh的命令行参数，没有指定基准测试时运行全部；每个基准测试默认fork一个新的jvm，
+ * 线程数用-t指定，如-t 4，每次运行一种线程数.
+ */
+public class BenchmarkSuite {
+
+    /**
+     * 默认包含的基准测试.
+     */
+    private static final String DEFAULT_INCLUDE = "uw\\.dao\\.(MappingBenchmark|impl\\.BindingBenchmark|impl\\.RoutingBenchmark|service\\.LogStatsBenchmark)";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        run(DEFAULT_INCLUDE, args);
+    }
+
+    /**
+     * 运行基准测试，命令行中的参数优先.
+     *
+     * @param include 命令行没有指定基准测试时运行的基准测试正则
+     * @param args    jmh的命令行参数
+     * @throws RunnerException            运行异常
+     * @throws CommandLineOptionException 命令行参数错误
+     */
+    public static void run(String include, String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions cmdOptions = new CommandLineOptions(args);
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(cmdOptions);
+        if (cmdOptions.getIncludes().isEmpty()) {
+            builder.include(include);
+        }
+        if (!cmdOptions.getForkCount().hasValue()) {
+            builder.forks(1);
+        }
+        builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,133 @@
+package uw.dao;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uw.dao.annotation.ColumnMeta;
+import uw.dao.annotation.TableMeta;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于内嵌h2的DaoFactory端到端基准测试，覆盖save/load/list/upsert/queryForDataSet.
+ */
+@BenchmarkMode({Mode.Throughput})//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(4)//测试线程数量
+@State(Scope.Benchmark)//该状态为每个线程独享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class DaoBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .include(DaoBenchmark.class.getSimpleName())
+                .forks(0)
+                .build();
+        new Runner(opt).run();
+    }
+
+    /**
+     * 预置的行数.
+     */
+    private static final int ROWS = 10000;
+
+    static DaoFactory dao = DaoFactory.getInstance();
+
+    @Setup
+    public static void setup() throws TransactionException {
+        EmbeddedDb.setup();
+        dao.executeCommand("truncate table bench_item restart identity");
+        List<BenchItem> list = new ArrayList<>(ROWS);
+        for (int i = 1; i <= ROWS; i++) {
+            list.add(newItem(null, i));
+        }
+        dao.saveAll(list);
+    }
+
+    @Benchmark
+    @CompilerControl(CompilerControl.Mode.INLINE)
+    public static BenchItem save() throws TransactionException {
+        return dao.save(newItem(null, ThreadLocalRandom.current().nextInt(ROWS)));
+    }
+
+    @Benchmark
+    @CompilerControl(CompilerControl.Mode.INLINE)
+    public static Optional<BenchItem> load() throws TransactionException {
+        return dao.load(BenchItem.class, (long) ThreadLocalRandom.current().nextInt(1, ROWS + 1));
+    }
+
+    @Benchmark
+    @CompilerControl(CompilerControl.Mode.INLINE)
+    public static DataList<BenchItem> listPage() throws TransactionException {
+        return dao.list(BenchItem.class, "select * from bench_item where qty>? order by qty", new Object[]{10},
+                ThreadLocalRandom.current().nextInt(0, 500), 20, false);
+    }
+
+    @Benchmark
+    @CompilerControl(CompilerControl.Mode.INLINE)
+    public static int upsert() throws TransactionException {
+        int n = ThreadLocalRandom.current().nextInt(1, ROWS + 1);
+        return dao.upsert(newItem((long) n, n));
+    }
+
+    @Benchmark
+    @CompilerControl(CompilerControl.Mode.INLINE)
+    public static DataSet queryForDataSet() throws TransactionException {
+        DataSet ds = dao.queryForDataSet("select id,name,qty,price from bench_item where qty between ? and ?", new Object[]{100, 150});
+        while (ds.next()) {
+            ds.getLong(1);
+            ds.getString(2);
+        }
+        return ds;
+    }
+
+    private static BenchItem newItem(Long id, int n) {
+        BenchItem item = new BenchItem();
+        item.id = id;
+        item.name = "item" + n;
+        item.qty = n % 1000;
+        item.price = BigDecimal.valueOf(n, 2);
+        item.createDate = new Date();
+        return item;
+    }
+
+    @TableMeta(tableName = "bench_item", tableType = "table")
+    public static class BenchItem implements DataEntity {
+
+        @ColumnMeta(columnName = "id", dataType = "long", dataSize = 19, nullable = false, primaryKey = true, autoIncrement = true)
+        public Long id;
+
+        @ColumnMeta(columnName = "name", dataType = "String", dataSize = 50, nullable = true)
+        public String name;
+
+        @ColumnMeta(columnName = "qty", dataType = "int", dataSize = 10, nullable = true)
+        public int qty;
+
+        @ColumnMeta(columnName = "price", dataType = "java.math.BigDecimal", dataSize = 12, nullable = true)
+        public BigDecimal price;
+
+        @ColumnMeta(columnName = "create_date", dataType = "java.util.Date", dataSize = 23, nullable = true)
+        public Date createDate;
+
+        @Override
+        public Set<String> GET_UPDATED_COLUMN() {
+            return null;
+        }
+
+        @Override
+        public String GET_UPDATED_INFO() {
+            return null;
+        }
+    }
+}
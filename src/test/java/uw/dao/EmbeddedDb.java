@@ -0,0 +1,58 @@
+package uw.dao;
+
+import uw.dao.conf.DaoConfig;
+import uw.dao.conf.DaoConfigManager;
+
+import java.util.HashMap;
+
+/**
+ * 基准测试使用的内嵌h2数据库，不需要网络，可以在本机和CI上跑通完整的DaoFactory调用链.
+ *
+ * @author axeon
+ */
+public class EmbeddedDb {
+
+    /**
+     * 内存库，使用mysql兼容模式.
+     */
+    public static final String URL = "jdbc:h2:mem:uw_dao;MODE=MySQL;DB_CLOSE_DELAY=-1";
+
+    private static boolean initialized = false;
+
+    /**
+     * 初始化连接池配置和测试表，可以重复调用.
+     */
+    public static synchronized void setup() {
+        if (initialized) {
+            return;
+        }
+        DaoConfig daoConfig = new DaoConfig();
+        DaoConfig.ConnPool pool = new DaoConfig.ConnPool();
+        DaoConfig.ConnPoolConfig poolConfig = new DaoConfig.ConnPoolConfig();
+        poolConfig.setDriver("org.h2.Driver");
+        poolConfig.setUrl(URL);
+        poolConfig.setUsername("sa");
+        poolConfig.setPassword("");
+        poolConfig.setTestSql("select 1");
+        poolConfig.setMinConn(3);
+        poolConfig.setMaxConn(100);
+        poolConfig.setConnMaxAge(3600);
+        poolConfig.setConnBusyTimeout(120);
+        poolConfig.setConnIdleTimeout(120);
+        pool.setRoot(poolConfig);
+        pool.setList(new HashMap<>());
+        daoConfig.setConnPool(pool);
+        DaoConfigManager.setConfig(daoConfig);
+        DaoFactory dao = DaoFactory.getInstance();
+        try {
+            dao.executeCommand("create table if not exists sys_seq (seq_name varchar(100) primary key, seq_id bigint not null, "
+                    + "seq_desc varchar(200), increment_num int not null, create_date timestamp, last_update timestamp)");
+            dao.executeCommand("create table if not exists bench_item (id bigint auto_increment primary key, name varchar(50), "
+                    + "qty int, price decimal(12,2), create_date timestamp)");
+            dao.executeCommand("create index if not exists idx_bench_item_qty on bench_item (qty)");
+        } catch (TransactionException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        initialized = true;
+    }
+}
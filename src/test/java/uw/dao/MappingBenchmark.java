@@ -0,0 +1,98 @@
+package uw.dao;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import uw.dao.connectionpool.stubs.StubResultSet;
+import uw.dao.connectionpool.stubs.StubResultSetMetaData;
+
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 结果集映射的基准测试：实体列表映射、DataSet构造和按列名的类型化读取.
+ */
+@BenchmarkMode({Mode.Throughput})//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class MappingBenchmark {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        BenchmarkSuite.run(MappingBenchmark.class.getSimpleName(), args);
+    }
+
+    static DaoFactory dao = DaoFactory.getInstance();
+
+    /**
+     * 结果集的列数.
+     */
+    @Param({"4", "16", "32"})
+    public int columns;
+
+    /**
+     * 结果集的行数.
+     */
+    @Param({"1", "100", "1000"})
+    public int rows;
+
+    private String[] labels;
+
+    private int[] types;
+
+    @Setup
+    public void setup() {
+        StubDb.setup();
+        StubResultSet.setShape(columns, rows);
+        labels = new String[columns];
+        types = new int[columns];
+        for (int i = 0; i < columns; i++) {
+            labels[i] = "c" + (i + 1);
+            types[i] = StubResultSetMetaData.getType(i + 1);
+        }
+    }
+
+    @Benchmark
+    public DataList<WideEntity> entityList() throws TransactionException {
+        return dao.list(WideEntity.class, "select * from stub");
+    }
+
+    @Benchmark
+    public DataSet dataSetQuery() throws TransactionException {
+        return dao.queryForDataSet("select * from stub");
+    }
+
+    @Benchmark
+    public DataSet dataSetBuild() throws SQLException {
+        return new DataSet(new StubResultSet(), 0, 0, 0);
+    }
+
+    @Benchmark
+    public void dataSetAccess(Blackhole bh) throws SQLException {
+        DataSet ds = new DataSet(new StubResultSet(), 0, 0, 0);
+        while (ds.next()) {
+            for (int i = 0; i < labels.length; i++) {
+                switch (types[i]) {
+                    case Types.BIGINT:
+                        bh.consume(ds.getLong(labels[i]));
+                        break;
+                    case Types.INTEGER:
+                        bh.consume(ds.getInt(labels[i]));
+                        break;
+                    case Types.TIMESTAMP:
+                        bh.consume(ds.getDate(labels[i]));
+                        break;
+                    default:
+                        bh.consume(ds.getString(labels[i]));
+                        break;
+                }
+            }
+        }
+    }
+
+}
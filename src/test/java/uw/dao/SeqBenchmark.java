@@ -5,11 +5,8 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
-import uw.dao.conf.DaoConfig;
-import uw.dao.conf.DaoConfigManager;
 
 import java.sql.SQLException;
-import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
 
 @BenchmarkMode({Mode.Throughput})//基准测试类型
@@ -32,22 +29,7 @@ public class SeqBenchmark {
 
     @Setup
     public static void setup() {
-        DaoConfig daoConfig = new DaoConfig();
-        DaoConfig.ConnPool pool = new DaoConfig.ConnPool();
-        DaoConfig.ConnPoolConfig poolConfig = new DaoConfig.ConnPoolConfig();
-        poolConfig.setDriver("com.mysql.jdbc.Driver");
-        poolConfig.setUrl("jdbc:mysql://192.168.88.88:3300/saas?characterEncoding=utf-8&useSSL=false&zeroDateTimeBehavior=convertToNull&transformedBitIsBoolean=true");
-        poolConfig.setUsername("root");
-        poolConfig.setPassword("WR5QmENQQCHGCNps");
-        poolConfig.setMinConn(3);
-        poolConfig.setMaxConn(100);
-        poolConfig.setConnMaxAge(3600);
-        poolConfig.setConnBusyTimeout(120);
-        poolConfig.setConnIdleTimeout(120);
-        pool.setRoot(poolConfig);
-        pool.setList(new HashMap<>());
-        daoConfig.setConnPool(pool);
-        DaoConfigManager.setConfig(daoConfig);
+        EmbeddedDb.setup();
     }
 
     @Benchmark
@@ -0,0 +1,63 @@
+package uw.dao;
+
+import uw.dao.conf.DaoConfig;
+import uw.dao.conf.DaoConfigManager;
+
+import java.util.HashMap;
+
+/**
+ * 基准测试使用的桩数据库，连接、语句和结果集都是内存中的桩，只测量uw-dao自身的开销.
+ * 结果集的列数和行数通过StubResultSet.setShape设置.
+ *
+ * @author axeon
+ */
+public class StubDb {
+
+    /**
+     * 路由到log连接池的表名前缀.
+     */
+    public static final String LOG_PREFIX = "log_";
+
+    private static boolean initialized = false;
+
+    /**
+     * 初始化连接池、路由和sql统计配置，可以重复调用.
+     */
+    public static synchronized void setup() {
+        if (initialized) {
+            return;
+        }
+        DaoConfig daoConfig = new DaoConfig();
+        DaoConfig.ConnPool pool = new DaoConfig.ConnPool();
+        pool.setRoot(newPoolConfig());
+        pool.setList(new HashMap<>());
+        pool.getList().put("log", newPoolConfig());
+        daoConfig.setConnPool(pool);
+        DaoConfig.ConnRoute route = new DaoConfig.ConnRoute();
+        DaoConfig.ConnRouteConfig logRoute = new DaoConfig.ConnRouteConfig();
+        logRoute.setAll("log");
+        route.setList(new HashMap<>());
+        route.getList().put(LOG_PREFIX, logRoute);
+        daoConfig.setConnRoute(route);
+        DaoConfig.SqlStatsConfig sqlStats = daoConfig.getSqlStats();
+        sqlStats.setEnable(true);
+        sqlStats.setAggrEnable(true);
+        sqlStats.setSampleReservoirSize(16);
+        DaoConfigManager.setConfig(daoConfig);
+        initialized = true;
+    }
+
+    private static DaoConfig.ConnPoolConfig newPoolConfig() {
+        DaoConfig.ConnPoolConfig poolConfig = new DaoConfig.ConnPoolConfig();
+        poolConfig.setDriver("uw.dao.connectionpool.stubs.StubDriver");
+        poolConfig.setUrl("abc");
+        poolConfig.setUsername("test");
+        poolConfig.setPassword("test");
+        poolConfig.setMinConn(3);
+        poolConfig.setMaxConn(100);
+        poolConfig.setConnMaxAge(3600);
+        poolConfig.setConnBusyTimeout(120);
+        poolConfig.setConnIdleTimeout(120);
+        return poolConfig;
+    }
+}
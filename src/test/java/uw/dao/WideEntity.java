@@ -0,0 +1,168 @@
+package uw.dao;
+
+import uw.dao.annotation.ColumnMeta;
+import uw.dao.annotation.TableMeta;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * 基准测试使用的宽表实体，列名和类型与StubResultSet的c1..c32一致.
+ */
+@TableMeta(tableName = "stub", tableType = "table")
+public class WideEntity implements DataEntity {
+
+    /**
+     * 列数.
+     */
+    public static final int WIDTH = 32;
+
+    @ColumnMeta(columnName = "c1", dataType = "long", dataSize = 20, nullable = true, primaryKey = true)
+    public long c1;
+
+    @ColumnMeta(columnName = "c2", dataType = "String", dataSize = 20, nullable = true)
+    public String c2;
+
+    @ColumnMeta(columnName = "c3", dataType = "int", dataSize = 20, nullable = true)
+    public int c3;
+
+    @ColumnMeta(columnName = "c4", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c4;
+
+    @ColumnMeta(columnName = "c5", dataType = "long", dataSize = 20, nullable = true)
+    public long c5;
+
+    @ColumnMeta(columnName = "c6", dataType = "String", dataSize = 20, nullable = true)
+    public String c6;
+
+    @ColumnMeta(columnName = "c7", dataType = "int", dataSize = 20, nullable = true)
+    public int c7;
+
+    @ColumnMeta(columnName = "c8", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c8;
+
+    @ColumnMeta(columnName = "c9", dataType = "long", dataSize = 20, nullable = true)
+    public long c9;
+
+    @ColumnMeta(columnName = "c10", dataType = "String", dataSize = 20, nullable = true)
+    public String c10;
+
+    @ColumnMeta(columnName = "c11", dataType = "int", dataSize = 20, nullable = true)
+    public int c11;
+
+    @ColumnMeta(columnName = "c12", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c12;
+
+    @ColumnMeta(columnName = "c13", dataType = "long", dataSize = 20, nullable = true)
+    public long c13;
+
+    @ColumnMeta(columnName = "c14", dataType = "String", dataSize = 20, nullable = true)
+    public String c14;
+
+    @ColumnMeta(columnName = "c15", dataType = "int", dataSize = 20, nullable = true)
+    public int c15;
+
+    @ColumnMeta(columnName = "c16", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c16;
+
+    @ColumnMeta(columnName = "c17", dataType = "long", dataSize = 20, nullable = true)
+    public long c17;
+
+    @ColumnMeta(columnName = "c18", dataType = "String", dataSize = 20, nullable = true)
+    public String c18;
+
+    @ColumnMeta(columnName = "c19", dataType = "int", dataSize = 20, nullable = true)
+    public int c19;
+
+    @ColumnMeta(columnName = "c20", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c20;
+
+    @ColumnMeta(columnName = "c21", dataType = "long", dataSize = 20, nullable = true)
+    public long c21;
+
+    @ColumnMeta(columnName = "c22", dataType = "String", dataSize = 20, nullable = true)
+    public String c22;
+
+    @ColumnMeta(columnName = "c23", dataType = "int", dataSize = 20, nullable = true)
+    public int c23;
+
+    @ColumnMeta(columnName = "c24", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c24;
+
+    @ColumnMeta(columnName = "c25", dataType = "long", dataSize = 20, nullable = true)
+    public long c25;
+
+    @ColumnMeta(columnName = "c26", dataType = "String", dataSize = 20, nullable = true)
+    public String c26;
+
+    @ColumnMeta(columnName = "c27", dataType = "int", dataSize = 20, nullable = true)
+    public int c27;
+
+    @ColumnMeta(columnName = "c28", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c28;
+
+    @ColumnMeta(columnName = "c29", dataType = "long", dataSize = 20, nullable = true)
+    public long c29;
+
+    @ColumnMeta(columnName = "c30", dataType = "String", dataSize = 20, nullable = true)
+    public String c30;
+
+    @ColumnMeta(columnName = "c31", dataType = "int", dataSize = 20, nullable = true)
+    public int c31;
+
+    @ColumnMeta(columnName = "c32", dataType = "java.util.Date", dataSize = 20, nullable = true)
+    public Date c32;
+
+    /**
+     * 按StubResultSetMetaData的列类型填充所有字段.
+     *
+     * @param seed 数值
+     * @return WideEntity
+     */
+    public static WideEntity newInstance(int seed) {
+        WideEntity entity = new WideEntity();
+        entity.c1 = seed;
+        entity.c2 = "s" + seed;
+        entity.c3 = seed;
+        entity.c4 = new Date(seed);
+        entity.c5 = seed;
+        entity.c6 = "s" + seed;
+        entity.c7 = seed;
+        entity.c8 = new Date(seed);
+        entity.c9 = seed;
+        entity.c10 = "s" + seed;
+        entity.c11 = seed;
+        entity.c12 = new Date(seed);
+        entity.c13 = seed;
+        entity.c14 = "s" + seed;
+        entity.c15 = seed;
+        entity.c16 = new Date(seed);
+        entity.c17 = seed;
+        entity.c18 = "s" + seed;
+        entity.c19 = seed;
+        entity.c20 = new Date(seed);
+        entity.c21 = seed;
+        entity.c22 = "s" + seed;
+        entity.c23 = seed;
+        entity.c24 = new Date(seed);
+        entity.c25 = seed;
+        entity.c26 = "s" + seed;
+        entity.c27 = seed;
+        entity.c28 = new Date(seed);
+        entity.c29 = seed;
+        entity.c30 = "s" + seed;
+        entity.c31 = seed;
+        entity.c32 = new Date(seed);
+        return entity;
+    }
+
+    @Override
+    public Set<String> GET_UPDATED_COLUMN() {
+        return null;
+    }
+
+    @Override
+    public String GET_UPDATED_INFO() {
+        return null;
+    }
+}
@@ -28,9 +28,23 @@ import java.util.Map;
  * @author Brett Wooldridge
  */
 public class StubResultSet implements ResultSet {
-    private int counter;
+    private static final Timestamp TIMESTAMP = new Timestamp(1500000000000L);
+    private static volatile int columnCount = 10;
+    private static volatile int rowCount = 10;
+    private int row;
     private boolean closed;
 
+    /**
+     * 设置之后创建的结果集的列数和行数，列名为c1..cN，列类型见StubResultSetMetaData.
+     *
+     * @param columns 列数
+     * @param rows    行数
+     */
+    public static void setShape(int columns, int rows) {
+        columnCount = columns;
+        rowCount = rows;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -50,7 +64,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public boolean next() throws SQLException {
-        return (counter < 10);
+        return ++row <= rowCount;
     }
 
     /**
@@ -99,14 +113,14 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public int getInt(int columnIndex) throws SQLException {
-        return ++counter;
+        return row;
     }
 
     /**
      * {@inheritDoc}
      */
     public long getLong(int columnIndex) throws SQLException {
-        return 0;
+        return row;
     }
 
     /**
@@ -120,7 +134,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public double getDouble(int columnIndex) throws SQLException {
-        return 0;
+        return row;
     }
 
     /**
@@ -141,7 +155,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public Date getDate(int columnIndex) throws SQLException {
-        return null;
+        return new Date(TIMESTAMP.getTime());
     }
 
     /**
@@ -155,7 +169,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public Timestamp getTimestamp(int columnIndex) throws SQLException {
-        return null;
+        return TIMESTAMP;
     }
 
     /**
@@ -183,7 +197,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public String getString(String columnLabel) throws SQLException {
-        return null;
+        return getString(findColumn(columnLabel));
     }
 
     /**
@@ -211,14 +225,14 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public int getInt(String columnLabel) throws SQLException {
-        return 0;
+        return getInt(findColumn(columnLabel));
     }
 
     /**
      * {@inheritDoc}
      */
     public long getLong(String columnLabel) throws SQLException {
-        return 0;
+        return getLong(findColumn(columnLabel));
     }
 
     /**
@@ -232,7 +246,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public double getDouble(String columnLabel) throws SQLException {
-        return 0;
+        return getDouble(findColumn(columnLabel));
     }
 
     /**
@@ -253,7 +267,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public Date getDate(String columnLabel) throws SQLException {
-        return null;
+        return getDate(findColumn(columnLabel));
     }
 
     /**
@@ -267,7 +281,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public Timestamp getTimestamp(String columnLabel) throws SQLException {
-        return null;
+        return getTimestamp(findColumn(columnLabel));
     }
 
     /**
@@ -315,28 +329,37 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public ResultSetMetaData getMetaData() throws SQLException {
-        return null;
+        return new StubResultSetMetaData(columnCount);
     }
 
     /**
      * {@inheritDoc}
      */
     public Object getObject(int columnIndex) throws SQLException {
-        return null;
+        switch (StubResultSetMetaData.getType(columnIndex)) {
+            case Types.BIGINT:
+                return getLong(columnIndex);
+            case Types.INTEGER:
+                return getInt(columnIndex);
+            case Types.TIMESTAMP:
+                return getTimestamp(columnIndex);
+            default:
+                return getString(columnIndex);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     public Object getObject(String columnLabel) throws SQLException {
-        return null;
+        return getObject(findColumn(columnLabel));
     }
 
     /**
      * {@inheritDoc}
      */
     public int findColumn(String columnLabel) throws SQLException {
-        return 0;
+        return Integer.parseInt(columnLabel.substring(1));
     }
 
     /**
@@ -357,14 +380,14 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
-        return null;
+        return BigDecimal.ONE;
     }
 
     /**
      * {@inheritDoc}
      */
     public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
-        return null;
+        return getBigDecimal(findColumn(columnLabel));
     }
 
     /**
@@ -425,7 +448,7 @@ public class StubResultSet implements ResultSet {
      * {@inheritDoc}
      */
     public int getRow() throws SQLException {
-        return 0;
+        return row;
     }
 
     /**
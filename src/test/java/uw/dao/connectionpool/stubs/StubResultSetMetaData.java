@@ -0,0 +1,126 @@
+package uw.dao.connectionpool.stubs;
+
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 配合StubResultSet使用的元数据，列名为c1..cN，列类型按bigint/varchar/integer/timestamp循环.
+ */
+public class StubResultSetMetaData implements ResultSetMetaData {
+
+    private static final int[] TYPES = {Types.BIGINT, Types.VARCHAR, Types.INTEGER, Types.TIMESTAMP};
+
+    private static final String[] TYPE_NAMES = {"BIGINT", "VARCHAR", "INTEGER", "TIMESTAMP"};
+
+    private static final String[] CLASS_NAMES = {Long.class.getName(), String.class.getName(), Integer.class.getName(),
+            java.sql.Timestamp.class.getName()};
+
+    private final int columnCount;
+
+    public StubResultSetMetaData(int columnCount) {
+        this.columnCount = columnCount;
+    }
+
+    /**
+     * 获得列的类型.
+     *
+     * @param column 列序号，从1开始
+     * @return java.sql.Types中的类型
+     */
+    public static int getType(int column) {
+        return TYPES[(column - 1) % TYPES.length];
+    }
+
+    public int getColumnCount() throws SQLException {
+        return columnCount;
+    }
+
+    public boolean isAutoIncrement(int column) throws SQLException {
+        return false;
+    }
+
+    public boolean isCaseSensitive(int column) throws SQLException {
+        return false;
+    }
+
+    public boolean isSearchable(int column) throws SQLException {
+        return true;
+    }
+
+    public boolean isCurrency(int column) throws SQLException {
+        return false;
+    }
+
+    public int isNullable(int column) throws SQLException {
+        return columnNullable;
+    }
+
+    public boolean isSigned(int column) throws SQLException {
+        return getType(column) != Types.VARCHAR;
+    }
+
+    public int getColumnDisplaySize(int column) throws SQLException {
+        return 20;
+    }
+
+    public String getColumnLabel(int column) throws SQLException {
+        return "c" + column;
+    }
+
+    public String getColumnName(int column) throws SQLException {
+        return "c" + column;
+    }
+
+    public String getSchemaName(int column) throws SQLException {
+        return "";
+    }
+
+    public int getPrecision(int column) throws SQLException {
+        return 20;
+    }
+
+    public int getScale(int column) throws SQLException {
+        return 0;
+    }
+
+    public String getTableName(int column) throws SQLException {
+        return "stub";
+    }
+
+    public String getCatalogName(int column) throws SQLException {
+        return "";
+    }
+
+    public int getColumnType(int column) throws SQLException {
+        return getType(column);
+    }
+
+    public String getColumnTypeName(int column) throws SQLException {
+        return TYPE_NAMES[(column - 1) % TYPE_NAMES.length];
+    }
+
+    public boolean isReadOnly(int column) throws SQLException {
+        return true;
+    }
+
+    public boolean isWritable(int column) throws SQLException {
+        return false;
+    }
+
+    public boolean isDefinitelyWritable(int column) throws SQLException {
+        return false;
+    }
+
+    public String getColumnClassName(int column) throws SQLException {
+        return CLASS_NAMES[(column - 1) % CLASS_NAMES.length];
+    }
+
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return null;
+    }
+
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+}
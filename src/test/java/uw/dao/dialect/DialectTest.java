@@ -0,0 +1,96 @@
+package uw.dao.dialect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 方言sql拼装的测试.
+ */
+public class DialectTest {
+
+    private static final String[] COLUMNS = {"id", "name", "hits"};
+
+    private static final String[] PK_COLUMNS = {"id"};
+
+    @Test
+    public void parseSimpleSelect() {
+        assertArrayEquals(new String[]{"*", "t", null, null, null}, Dialect.parseSimpleSelect("select * from t"));
+        assertArrayEquals(new String[]{"a.id, a.name", "t", "a", "a.x=? and (a.y=1 or a.y=2)", "a.id desc"},
+                Dialect.parseSimpleSelect("select a.id, a.name from t a where a.x=? and (a.y=1 or a.y=2) order by a.id desc"));
+    }
+
+    @Test
+    public void parseSimpleSelectRejectsComplexQueries() {
+        assertNull(Dialect.parseSimpleSelect(null));
+        assertNull(Dialect.parseSimpleSelect("select * from t where id in (select id from u)"));
+        assertNull(Dialect.parseSimpleSelect("select count(*) from t"));
+        assertNull(Dialect.parseSimpleSelect("select * from t join u on t.id=u.id"));
+        assertNull(Dialect.parseSimpleSelect("select * from t order by lower(name)"));
+        assertNull(Dialect.parseSimpleSelect("select * from t limit 3"));
+        assertNull(Dialect.parseSimpleSelect("select * from t group by x"));
+    }
+
+    @Test
+    public void buildDeferredJoinSQL() {
+        assertEquals("select t.* from t inner join (select t.id uw_dj_pk from t where x=? limit ?,?) uw_dj on t.id = uw_dj.uw_dj_pk",
+                Dialect.buildDeferredJoinSQL(Dialect.parseSimpleSelect("select * from t where x=?"), "id", " limit ?,?"));
+        assertEquals("select a.name from t a inner join (select a.id uw_dj_pk from t a order by a.name) uw_dj on a.id = uw_dj.uw_dj_pk"
+                        + " order by a.name",
+                Dialect.buildDeferredJoinSQL(Dialect.parseSimpleSelect("select a.name from t a order by a.name"), "id", ""));
+    }
+
+    @Test
+    public void deferredJoinPagedSQL() {
+        String sql = "select * from t a where a.x=? order by a.y";
+        assertNull(new Dialect().getDeferredJoinPagedSQL(sql, "id", 10, 5));
+        assertArrayEquals(new Object[]{"select a.* from t a inner join (select a.id uw_dj_pk from t a where a.x=? order by a.y limit ?,?) uw_dj"
+                + " on a.id = uw_dj.uw_dj_pk order by a.y", 10, 5}, new MySQLDialect().getDeferredJoinPagedSQL(sql, "id", 10, 5));
+        assertArrayEquals(new Object[]{"select a.* from t a inner join (select a.id uw_dj_pk from t a where a.x=? order by a.y limit ? offset ?) uw_dj"
+                + " on a.id = uw_dj.uw_dj_pk order by a.y", 5, 10}, new H2Dialect().getDeferredJoinPagedSQL(sql, "id", 10, 5));
+        assertArrayEquals(new Object[]{"select a.* from t a inner join (select a.id uw_dj_pk from t a where a.x=? order by a.y limit ? offset ?) uw_dj"
+                + " on a.id = uw_dj.uw_dj_pk order by a.y", 5, 10}, new PostgreSQLDialect().getDeferredJoinPagedSQL(sql, "id", 10, 5));
+        assertArrayEquals(new Object[]{"select a.* from t a inner join (select uw_dj_pk from (select sub.uw_dj_pk, rownum rnum from"
+                + " (select a.id uw_dj_pk from t a where a.x=? order by a.y) sub where rownum <= ?) where rnum > ?) uw_dj"
+                + " on a.id = uw_dj.uw_dj_pk order by a.y", 15, 10}, new OracleDialect().getDeferredJoinPagedSQL(sql, "id", 10, 5));
+        assertNull(new MySQLDialect().getDeferredJoinPagedSQL("select count(*) from t", "id", 10, 5));
+    }
+
+    @Test
+    public void batchInsertSQL() {
+        for (Dialect dialect : new Dialect[]{new Dialect(), new MySQLDialect(), new H2Dialect(), new PostgreSQLDialect()}) {
+            assertEquals("insert into t (id,name,hits) values (?,?,?)", dialect.getBatchInsertSQL("t", COLUMNS, 1));
+            assertEquals("insert into t (id,name,hits) values (?,?,?),(?,?,?)", dialect.getBatchInsertSQL("t", COLUMNS, 2));
+        }
+        OracleDialect oracle = new OracleDialect();
+        assertEquals("insert all into t (id,name,hits) values (?,?,?) select 1 from dual", oracle.getBatchInsertSQL("t", COLUMNS, 1));
+        assertEquals("insert all into t (id,name,hits) values (?,?,?) into t (id,name,hits) values (?,?,?) select 1 from dual",
+                oracle.getBatchInsertSQL("t", COLUMNS, 2));
+    }
+
+    @Test
+    public void upsertSQL() {
+        assertNull(new Dialect().getUpsertSQL("t", COLUMNS, PK_COLUMNS));
+        assertEquals("insert into t (id,name,hits) values (?,?,?) on duplicate key update name=values(name),hits=values(hits)",
+                new MySQLDialect().getUpsertSQL("t", COLUMNS, PK_COLUMNS));
+        assertEquals("merge into t (id,name,hits) key (id) values (?,?,?)", new H2Dialect().getUpsertSQL("t", COLUMNS, PK_COLUMNS));
+        assertEquals("insert into t (id,name,hits) values (?,?,?) on conflict (id) do update set name=excluded.name,hits=excluded.hits",
+                new PostgreSQLDialect().getUpsertSQL("t", COLUMNS, PK_COLUMNS));
+        assertEquals("merge into t t using (select ? id,? name,? hits from dual) s on (t.id=s.id)"
+                        + " when matched then update set t.name=s.name,t.hits=s.hits"
+                        + " when not matched then insert (id,name,hits) values (s.id,s.name,s.hits)",
+                new OracleDialect().getUpsertSQL("t", COLUMNS, PK_COLUMNS));
+    }
+
+    @Test
+    public void upsertSQLWithPrimaryKeyOnly() {
+        assertEquals("insert into t (id) values (?) on duplicate key update id=values(id)", new MySQLDialect().getUpsertSQL("t", PK_COLUMNS, PK_COLUMNS));
+        assertEquals("merge into t (id) key (id) values (?)", new H2Dialect().getUpsertSQL("t", PK_COLUMNS, PK_COLUMNS));
+        assertEquals("insert into t (id) values (?) on conflict (id) do nothing", new PostgreSQLDialect().getUpsertSQL("t", PK_COLUMNS, PK_COLUMNS));
+        assertEquals("merge into t t using (select ? id from dual) s on (t.id=s.id) when not matched then insert (id) values (s.id)",
+                new OracleDialect().getUpsertSQL("t", PK_COLUMNS, PK_COLUMNS));
+    }
+
+}
@@ -0,0 +1,94 @@
+package uw.dao.impl;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import uw.dao.BenchmarkSuite;
+import uw.dao.StubDb;
+import uw.dao.WideEntity;
+import uw.dao.connectionpool.stubs.StubPreparedStatement;
+import uw.dao.connectionpool.stubs.StubResultSet;
+import uw.dao.util.DaoReflectUtils;
+import uw.dao.vo.FieldMetaInfo;
+import uw.dao.vo.TableMetaInfo;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DaoReflectUtils的基准测试：实体字段绑定到PreparedStatement、参数数组绑定和结果集读取到实体.
+ */
+@BenchmarkMode({Mode.Throughput})//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class BindingBenchmark {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        BenchmarkSuite.run(BindingBenchmark.class.getSimpleName(), args);
+    }
+
+    /**
+     * 绑定的列数.
+     */
+    @Param({"4", "16", "32"})
+    public int columns;
+
+    private FieldMetaInfo[] fields;
+
+    private WideEntity entity;
+
+    private Object[] params;
+
+    private PreparedStatement pstmt;
+
+    private ResultSet rs;
+
+    @Setup
+    public void setup() throws Exception {
+        StubDb.setup();
+        StubResultSet.setShape(WideEntity.WIDTH, 1);
+        TableMetaInfo emi = EntityCommandImpl.loadEntityMetaInfo(WideEntity.class);
+        entity = WideEntity.newInstance(42);
+        fields = new FieldMetaInfo[columns];
+        params = new Object[columns];
+        for (int i = 0; i < columns; i++) {
+            fields[i] = emi.getFieldMetaInfo("c" + (i + 1));
+            params[i] = fields[i].getField().get(entity);
+        }
+        pstmt = new StubPreparedStatement();
+        rs = new StubResultSet();
+        rs.next();
+    }
+
+    @Benchmark
+    public PreparedStatement bindEntity() throws Exception {
+        int seq = 0;
+        for (FieldMetaInfo fmi : fields) {
+            DaoReflectUtils.DAOLiteSaveReflect(pstmt, entity, fmi, ++seq);
+        }
+        return pstmt;
+    }
+
+    @Benchmark
+    public PreparedStatement bindParams() throws Exception {
+        for (int i = 0; i < params.length; i++) {
+            DaoReflectUtils.CommandUpdateReflect(pstmt, i + 1, params[i]);
+        }
+        return pstmt;
+    }
+
+    @Benchmark
+    public WideEntity loadEntity() throws Exception {
+        WideEntity target = new WideEntity();
+        for (FieldMetaInfo fmi : fields) {
+            DaoReflectUtils.DAOLiteLoadReflect(rs, target, fmi);
+        }
+        return target;
+    }
+
+}
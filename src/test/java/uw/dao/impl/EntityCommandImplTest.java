@@ -0,0 +1,79 @@
+package uw.dao.impl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按主键列表加载时in列表拆分的测试.
+ */
+public class EntityCommandImplTest {
+
+    private static final int[] BUCKETS = {1, 4, 16, 64, 256};
+
+    private static List<Long> ids(int count) {
+        List<Long> list = new ArrayList<>(count);
+        for (long i = 1; i <= count; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    @Test
+    public void emptyList() {
+        assertTrue(EntityCommandImpl.splitInList(Collections.emptyList(), BUCKETS, 1000).isEmpty());
+    }
+
+    @Test
+    public void padsToBucketWithLastId() {
+        List<Object[]> chunks = EntityCommandImpl.splitInList(ids(10), BUCKETS, 1000);
+        assertEquals(1, chunks.size());
+        assertEquals(16, chunks.get(0).length);
+        assertEquals(10L, chunks.get(0)[9]);
+        assertEquals(10L, chunks.get(0)[15]);
+    }
+
+    @Test
+    public void exactBucket() {
+        List<Object[]> chunks = EntityCommandImpl.splitInList(ids(4), BUCKETS, 1000);
+        assertEquals(1, chunks.size());
+        assertArrayEquals(new Object[]{1L, 2L, 3L, 4L}, chunks.get(0));
+    }
+
+    @Test
+    public void splitsByLargestBucket() {
+        List<Object[]> chunks = EntityCommandImpl.splitInList(ids(300), BUCKETS, 1000);
+        assertEquals(2, chunks.size());
+        assertEquals(256, chunks.get(0).length);
+        assertEquals(256L, chunks.get(0)[255]);
+        assertEquals(64, chunks.get(1).length);
+        assertEquals(257L, chunks.get(1)[0]);
+        assertEquals(300L, chunks.get(1)[63]);
+    }
+
+    @Test
+    public void bucketsLimitedByMaxSize() {
+        List<Object[]> chunks = EntityCommandImpl.splitInList(ids(10), BUCKETS, 10);
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new Object[]{1L, 2L, 3L, 4L}, chunks.get(0));
+        assertArrayEquals(new Object[]{5L, 6L, 7L, 8L}, chunks.get(1));
+        assertArrayEquals(new Object[]{9L, 10L, 10L, 10L}, chunks.get(2));
+    }
+
+    @Test
+    public void maxSizeSmallerThanAllBuckets() {
+        List<Object[]> chunks = EntityCommandImpl.splitInList(ids(25), new int[]{16, 64}, 10);
+        assertEquals(3, chunks.size());
+        for (Object[] chunk : chunks) {
+            assertEquals(10, chunk.length);
+        }
+        assertEquals(25L, chunks.get(2)[9]);
+    }
+
+}
@@ -0,0 +1,68 @@
+package uw.dao.impl;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import uw.dao.BenchmarkSuite;
+import uw.dao.StubDb;
+import uw.dao.conf.DaoConfigManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由的基准测试：从sql中解析连接名和按表名查找路由映射.
+ */
+@BenchmarkMode({Mode.Throughput})//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class RoutingBenchmark {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        BenchmarkSuite.run(RoutingBenchmark.class.getSimpleName(), args);
+    }
+
+    private static final String[] SQLS = {
+            "select * from order_info where id=?",
+            "SELECT a.id, a.name FROM\n    goods a, shop b where a.shop_id=b.id and b.id=?",
+            "update " + StubDb.LOG_PREFIX + "access set state=? where id=?",
+            "insert into user_info (id,name,create_date) values (?,?,?)",
+            "delete from " + StubDb.LOG_PREFIX + "error where create_date<?"};
+
+    /**
+     * 表的数量.
+     */
+    private static final int TABLES = 64;
+
+    private String[] tables;
+
+    @Setup
+    public void setup() {
+        StubDb.setup();
+        tables = new String[TABLES];
+        for (int i = 0; i < TABLES; i++) {
+            tables[i] = (i % 2 == 0 ? StubDb.LOG_PREFIX : "biz_") + "table_" + i;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(5)
+    public void connNameFromSql(Blackhole bh) {
+        for (String sql : SQLS) {
+            bh.consume(SQLUtils.getConnNameFromSQL(sql));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TABLES)
+    public void routeMapping(Blackhole bh) {
+        for (String table : tables) {
+            bh.consume(DaoConfigManager.getRouteMapping(table, "all"));
+        }
+    }
+
+}
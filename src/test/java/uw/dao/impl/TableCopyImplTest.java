@@ -0,0 +1,78 @@
+package uw.dao.impl;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 表复制时按目标列类型转换值的测试.
+ */
+public class TableCopyImplTest {
+
+    @Test
+    public void nullStaysNull() {
+        assertNull(TableCopyImpl.convertValue(null, Types.BIGINT));
+        assertNull(TableCopyImpl.convertValue(null, Types.VARCHAR));
+    }
+
+    @Test
+    public void integerTypes() {
+        assertEquals(5L, TableCopyImpl.convertValue(5, Types.BIGINT));
+        assertEquals(1L, TableCopyImpl.convertValue(Boolean.TRUE, Types.BIGINT));
+        assertEquals(42L, TableCopyImpl.convertValue(" 42 ", Types.BIGINT));
+        assertEquals(7, TableCopyImpl.convertValue(7L, Types.INTEGER));
+        assertEquals(0, TableCopyImpl.convertValue(Boolean.FALSE, Types.TINYINT));
+        assertEquals(3, TableCopyImpl.convertValue("3", Types.SMALLINT));
+    }
+
+    @Test
+    public void decimalAndFloatingTypes() {
+        assertEquals(new BigDecimal("1.5"), TableCopyImpl.convertValue(1.5d, Types.DECIMAL));
+        assertEquals(new BigDecimal("2.50"), TableCopyImpl.convertValue("2.50", Types.NUMERIC));
+        BigDecimal decimal = new BigDecimal("3.14");
+        assertSame(decimal, TableCopyImpl.convertValue(decimal, Types.DECIMAL));
+        assertEquals(1.25d, TableCopyImpl.convertValue("1.25", Types.DOUBLE));
+        assertEquals(2.0d, TableCopyImpl.convertValue(2, Types.FLOAT));
+    }
+
+    @Test
+    public void booleanTypes() {
+        assertEquals(true, TableCopyImpl.convertValue(1, Types.BIT));
+        assertEquals(false, TableCopyImpl.convertValue(0L, Types.BOOLEAN));
+        assertEquals(true, TableCopyImpl.convertValue("TRUE", Types.BOOLEAN));
+        assertEquals(true, TableCopyImpl.convertValue("1", Types.BIT));
+        assertEquals(false, TableCopyImpl.convertValue("no", Types.BOOLEAN));
+    }
+
+    @Test
+    public void stringTypes() {
+        assertEquals("中文", TableCopyImpl.convertValue("中文".getBytes(StandardCharsets.UTF_8), Types.VARCHAR));
+        assertEquals("1000", TableCopyImpl.convertValue(new BigDecimal("1E+3"), Types.CHAR));
+        assertEquals("7", TableCopyImpl.convertValue(7, Types.CLOB));
+    }
+
+    @Test
+    public void dateTypes() {
+        Date date = new Date(1700000000000L);
+        assertEquals(new java.sql.Date(date.getTime()), TableCopyImpl.convertValue(date, Types.DATE));
+        assertEquals(java.sql.Date.class, TableCopyImpl.convertValue(date, Types.DATE).getClass());
+        assertEquals(new Timestamp(date.getTime()), TableCopyImpl.convertValue(date, Types.TIMESTAMP));
+        Timestamp timestamp = new Timestamp(date.getTime());
+        assertSame(timestamp, TableCopyImpl.convertValue(timestamp, Types.TIMESTAMP));
+    }
+
+    @Test
+    public void otherTypesUnchanged() {
+        Object value = new Object();
+        assertSame(value, TableCopyImpl.convertValue(value, Types.OTHER));
+    }
+
+}
@@ -0,0 +1,59 @@
+package uw.dao.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import uw.dao.BenchmarkSuite;
+import uw.dao.StubDb;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MainService.logStats的基准测试，开启聚合统计和蓄水池采样，sql中有少量慢sql.
+ */
+@BenchmarkMode({Mode.Throughput})//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 3)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 5, time = -1, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class LogStatsBenchmark {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        BenchmarkSuite.run(LogStatsBenchmark.class.getSimpleName(), args);
+    }
+
+    /**
+     * 不同的sql指纹数量.
+     */
+    private static final int SQL_COUNT = 32;
+
+    private String[] sqls;
+
+    @Setup
+    public void setup() {
+        StubDb.setup();
+        MainService.start();
+        sqls = new String[SQL_COUNT];
+        for (int i = 0; i < SQL_COUNT; i++) {
+            sqls[i] = "select * from biz_table_" + i + " where id=?";
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        MainService.stop();
+    }
+
+    @Benchmark
+    public void logStats() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(SQL_COUNT);
+        // 约1%为超过sqlCostMin的慢sql
+        long allTime = random.nextInt(100) == 0 ? 50_000 : 200;
+        MainService.logStats("", 1, sqls[i], "[1]", 1, 10, allTime - 20, allTime, null);
+    }
+
+}
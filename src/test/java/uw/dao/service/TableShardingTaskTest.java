@@ -0,0 +1,36 @@
+package uw.dao.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 分表建表语句改写的测试.
+ */
+public class TableShardingTaskTest {
+
+    @Test
+    public void rewritesTableName() {
+        assertEquals("CREATE TABLE IF NOT EXISTS `log_20260101` (\n  `id` bigint NOT NULL\n) ENGINE=InnoDB",
+                TableShardingTask.rewriteCreateScript("CREATE TABLE `log` (\n  `id` bigint NOT NULL\n) ENGINE=InnoDB", "log", "log_20260101"));
+        assertEquals("CREATE TABLE IF NOT EXISTS log_0(id bigint)",
+                TableShardingTask.rewriteCreateScript("create table log(id bigint)", "LOG", "log_0"));
+        assertEquals("CREATE TABLE IF NOT EXISTS \"log_1\" (id bigint)",
+                TableShardingTask.rewriteCreateScript("  CREATE TABLE IF NOT EXISTS \"log\" (id bigint)", "log", "log_1"));
+    }
+
+    @Test
+    public void onlyRewritesCreatedTableName() {
+        assertEquals("CREATE TABLE IF NOT EXISTS log_2 (log_id bigint, KEY log (log_id))",
+                TableShardingTask.rewriteCreateScript("CREATE TABLE log (log_id bigint, KEY log (log_id))", "log", "log_2"));
+    }
+
+    @Test
+    public void rejectsUnrecognizedScript() {
+        assertNull(TableShardingTask.rewriteCreateScript(null, "log", "log_1"));
+        assertNull(TableShardingTask.rewriteCreateScript("CREATE TABLE log_x (id bigint)", "log", "log_1"));
+        assertNull(TableShardingTask.rewriteCreateScript("CREATE VIEW log AS select 1", "log", "log_1"));
+    }
+
+}